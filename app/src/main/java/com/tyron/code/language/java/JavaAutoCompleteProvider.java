@@ -51,7 +51,7 @@ public class JavaAutoCompleteProvider extends AbstractAutoCompleteProvider {
                             currentModule,
                             mEditor,
                             mEditor.getCurrentFile(),
-                            content.toString(),
+                            content.getSnapshot(),
                             prefix,
                             line,
                             column,
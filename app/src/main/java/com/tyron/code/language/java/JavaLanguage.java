@@ -68,10 +68,11 @@ public class JavaLanguage  implements Language, EditorFormatter, CodeAssistLangu
         @Nullable
         @Override
         public TextRange formatAsync(@NonNull Content text, @NonNull TextRange cursorRange) {
-            String format = com.tyron.eclipse.formatter.Formatter.format(text.toString(),
+            String original = text.toString();
+            String format = com.tyron.eclipse.formatter.Formatter.format(original,
                     cursorRange.getStartIndex(),
                     cursorRange.getEndIndex() - cursorRange.getStartIndex());
-            if (!text.toString().equals(format)) {
+            if (!original.equals(format)) {
                 text.delete(0, text.getLineCount() - 1);
                 text.insert(0, 0, format);
             }
@@ -5,6 +5,7 @@ import androidx.annotation.Nullable;
 
 import com.google.common.collect.Maps;
 import com.tyron.editor.AbstractContent;
+import com.tyron.editor.TextSnapshot;
 import com.tyron.editor.event.ContentEvent;
 import com.tyron.editor.event.ContentListener;
 import com.tyron.editor.event.impl.ContentEventImpl;
@@ -32,9 +33,19 @@ public class ContentWrapper extends Content implements com.tyron.editor.Content
         super(text, true);
 
         hasCalledSuper = true;
+        snapshot = TextSnapshot.of(this, modificationStamp);
     }
 
-    private long modificationStamp = 0;
+    /**
+     * Incremented on every edit, so results computed from an older {@link TextSnapshot} can be
+     * told apart from the current text
+     */
+    private volatile long modificationStamp = 0;
+
+    /**
+     * Kept in sync with the text on every edit so it can be returned without copying
+     */
+    private volatile TextSnapshot snapshot = TextSnapshot.empty();
     private final Map<String, Object> dataMap = Maps.newConcurrentMap();
     private final List<ContentListener> contentListeners = new CopyOnWriteArrayList<>();
 
@@ -52,6 +63,8 @@ public class ContentWrapper extends Content implements com.tyron.editor.Content
             return;
         }
         int offset = getCharIndex(line, column);
+        modificationStamp++;
+        snapshot = snapshot.insert(offset, text, modificationStamp);
         Content newText = this;
         CharSequence newString = newText.subSequence(offset, offset + text.length());
         updateText(newText, offset, "", newString, false, System.currentTimeMillis(), offset, 0,
@@ -86,6 +99,8 @@ public class ContentWrapper extends Content implements com.tyron.editor.Content
             return;
         }
 
+        modificationStamp++;
+        snapshot = snapshot.delete(startOffset, endOffset, modificationStamp);
         Content newText = this;
         updateText(newText, startOffset, oldString, "", false, System.currentTimeMillis(),
                 startOffset, endOffset - startOffset, startOffset);
@@ -159,4 +174,16 @@ public class ContentWrapper extends Content implements com.tyron.editor.Content
     public long getModificationStamp() {
         return modificationStamp;
     }
+
+    @NonNull
+    @Override
+    public TextSnapshot getSnapshot() {
+        TextSnapshot current = snapshot;
+        if (!hasCalledSuper || current.length() != length()) {
+            // the text has been changed without going through insert or delete
+            current = TextSnapshot.of(this, modificationStamp);
+            snapshot = current;
+        }
+        return current.withModificationStamp(modificationStamp);
+    }
 }
@@ -36,7 +36,9 @@ import com.tyron.common.util.DebouncerStore;
 import com.tyron.completion.java.util.JavaDataContextUtil;
 import com.tyron.completion.progress.ProgressManager;
 import com.tyron.diagnostics.DiagnosticProvider;
+import com.tyron.diagnostics.DiagnosticsResult;
 import com.tyron.editor.Content;
+import com.tyron.editor.TextSnapshot;
 import com.tyron.fileeditor.api.FileEditor;
 import com.tyron.language.api.CodeAssistLanguage;
 
@@ -48,10 +50,12 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import javax.tools.Diagnostic;
 
@@ -80,6 +84,11 @@ public class RosemoeEditorFacade {
 
     private View.OnTouchListener dragToOpenListener;
 
+    /**
+     * The regions last shown for each diagnostic provider, only accessed on the main thread
+     */
+    private final Map<Class<?>, List<DiagnosticRegion>> diagnosticsByProvider = new HashMap<>();
+
     RosemoeEditorFacade(RosemoeCodeEditor rosemoeCodeEditor,
                         Context context,
                         Content content,
@@ -119,37 +128,62 @@ public class RosemoeEditorFacade {
             return;
         }
 
+        // the snapshot does not change while it is read in the background
+        TextSnapshot snapshot = content.getSnapshot();
         if (language instanceof CodeAssistLanguage) {
-            ((CodeAssistLanguage) language).onContentChange(currentFile, content);
+            ((CodeAssistLanguage) language).onContentChange(currentFile, snapshot);
         }
 
-        Objects.requireNonNull(editor.getDiagnostics()).reset();
-
         ServiceLoader<DiagnosticProvider> providers = ServiceLoader.load(DiagnosticProvider.class);
         for (DiagnosticProvider provider : providers) {
-            List<? extends Diagnostic<?>> diagnostics =
-                    provider.getDiagnostics(module, currentFile);
-            Function<Diagnostic.Kind, Short> severitySupplier = it -> {
-                switch (it) {
-                    case ERROR:
-                        return DiagnosticRegion.SEVERITY_ERROR;
-                    case MANDATORY_WARNING:
-                    case WARNING:
-                        return DiagnosticRegion.SEVERITY_WARNING;
-                    default:
-                    case OTHER:
-                    case NOTE:
-                        return DiagnosticRegion.SEVERITY_NONE;
-                }
-            };
-            diagnostics.stream()
-                    .map(it -> new DiagnosticRegion((int) it.getStartPosition(),
-                            (int) it.getEndPosition(),
-                            severitySupplier.apply(it.getKind())))
-                    .forEach(Objects.requireNonNull(editor.getDiagnostics())::addDiagnostic);
+            provider.requestDiagnostics(module, currentFile, snapshot,
+                    snapshot.getModificationStamp(),
+                    result -> editor.post(() -> onDiagnostics(provider, result)));
         }
     }
 
+    /**
+     * Shows the diagnostics of a provider if they were computed from the current contents
+     * of the editor. Called on the main thread.
+     */
+    private void onDiagnostics(DiagnosticProvider provider, DiagnosticsResult result) {
+        if (result.getModificationStamp() != content.getModificationStamp()) {
+            // the contents changed since, a newer result will follow
+            return;
+        }
+        if (result.getPhase() == DiagnosticsResult.Phase.SYNTAX &&
+            result.getDiagnostics().isEmpty() &&
+            diagnosticsByProvider.containsKey(provider.getClass())) {
+            // keep the semantic diagnostics of the previous version until the new ones arrive
+            // instead of making them flicker while typing
+            return;
+        }
+
+        Function<Diagnostic.Kind, Short> severitySupplier = it -> {
+            switch (it) {
+                case ERROR:
+                    return DiagnosticRegion.SEVERITY_ERROR;
+                case MANDATORY_WARNING:
+                case WARNING:
+                    return DiagnosticRegion.SEVERITY_WARNING;
+                default:
+                case OTHER:
+                case NOTE:
+                    return DiagnosticRegion.SEVERITY_NONE;
+            }
+        };
+        List<DiagnosticRegion> regions = result.getDiagnostics().stream()
+                .map(it -> new DiagnosticRegion((int) it.getStartPosition(),
+                        (int) it.getEndPosition(),
+                        severitySupplier.apply(it.getKind())))
+                .collect(Collectors.toList());
+        diagnosticsByProvider.put(provider.getClass(), regions);
+
+        DiagnosticsContainer container = new DiagnosticsContainer();
+        diagnosticsByProvider.values().forEach(it -> it.forEach(container::addDiagnostic));
+        editor.setDiagnostics(container);
+    }
+
     @SuppressLint("ClickableViewAccessibility")
     private void configureEditor(CodeEditorView editor, FileObject file) {
         Language language = LanguageManager.getInstance().get(editor, file);
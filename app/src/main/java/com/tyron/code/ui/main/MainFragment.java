@@ -286,6 +286,9 @@ public class MainFragment extends Fragment implements ProjectManager.OnProjectOp
 
         ProjectManager manager = ProjectManager.getInstance();
         manager.removeOnProjectOpenListener(this);
+        if (mProject != null && !requireActivity().isChangingConfigurations()) {
+            manager.closeProject(mProject);
+        }
 
         if (mLogReceiver != null) {
             requireActivity().unregisterReceiver(mLogReceiver);
@@ -124,6 +124,10 @@ public class ProjectManager {
                                boolean downloadLibs,
                                TaskListener mListener,
                                ILogger logger) {
+        if (mCurrentProject != null) {
+            // the modules of the previous project are recreated even if it is opened again
+            releaseModules(mCurrentProject);
+        }
         mCurrentProject = project;
 
         boolean shouldReturn = false;
@@ -378,11 +382,22 @@ public class ProjectManager {
     }
 
     public void closeProject(@NonNull Project project) {
+        releaseModules(project);
         if (project.equals(mCurrentProject)) {
             mCurrentProject = null;
         }
     }
 
+    /**
+     * Releases the resources shared between the modules of the projects, such as their Kotlin
+     * environments
+     */
+    private void releaseModules(@NonNull Project project) {
+        for (Module module : project.getModules()) {
+            KotlinEnvironment.Companion.release(module);
+        }
+    }
+
     public synchronized Project getCurrentProject() {
         return mCurrentProject;
     }
@@ -0,0 +1,118 @@
+package com.tyron.builder.compiler.java;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares fingerprinting 200 libraries the way {@link CheckLibrariesTask} used to (two MD5
+ * passes over every file) with {@link LibraryFingerprints} on a cold and on a warm store.
+ *
+ * <p>The library sizes follow a typical AndroidX dependency set: mostly small aars with a
+ * few large ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LibraryFingerprintsBenchmark {
+
+    private static final int LIBRARY_COUNT = 200;
+
+    private File mDirectory;
+    private List<File> mLibraries;
+    private File mStore;
+    private LibraryFingerprints mWarmFingerprints;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        mDirectory = Files.createTempDirectory("library-fingerprints").toFile();
+        mLibraries = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < LIBRARY_COUNT; i++) {
+            int size;
+            if (i % 20 == 0) {
+                // material, compose and friends
+                size = 2 * 1024 * 1024 + random.nextInt(2 * 1024 * 1024);
+            } else {
+                size = 16 * 1024 + random.nextInt(512 * 1024);
+            }
+            byte[] bytes = new byte[size];
+            random.nextBytes(bytes);
+            File library = new File(mDirectory, "library-" + i + ".aar");
+            Files.write(library.toPath(), bytes);
+            mLibraries.add(library);
+        }
+
+        mStore = new File(mDirectory, "fingerprints.bin");
+        mWarmFingerprints = new LibraryFingerprints(mStore);
+        mWarmFingerprints.hash(mLibraries);
+        mWarmFingerprints.save();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(mDirectory);
+    }
+
+    @Benchmark
+    public void md5TwoPasses(Blackhole blackhole) throws Exception {
+        for (int pass = 0; pass < 2; pass++) {
+            for (File library : mLibraries) {
+                blackhole.consume(md5(library));
+            }
+        }
+    }
+
+    @Benchmark
+    public Map<File, String> coldFingerprints() {
+        return new LibraryFingerprints(new File(mDirectory, "cold.bin")).hash(mLibraries);
+    }
+
+    @Benchmark
+    public Map<File, String> warmFingerprints() {
+        return new LibraryFingerprints(mStore).hash(mLibraries);
+    }
+
+    @Benchmark
+    public Map<File, String> warmFingerprintsInMemory() {
+        return mWarmFingerprints.hash(mLibraries);
+    }
+
+    private static byte[] md5(File file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("MD5");
+        byte[] buffer = new byte[8192];
+        try (InputStream is = new FileInputStream(file)) {
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+}
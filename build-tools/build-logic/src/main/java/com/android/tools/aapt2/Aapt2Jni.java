@@ -40,7 +40,12 @@ public class Aapt2Jni {
 
     private String mFailureString;
 
-    private final List<DiagnosticWrapper> mDiagnostics = new ArrayList<>();
+    /**
+     * Diagnostics of the last invocation, kept per thread so that aapt2 can be run from
+     * multiple threads at the same time
+     */
+    private final ThreadLocal<List<DiagnosticWrapper>> mDiagnostics =
+            ThreadLocal.withInitial(ArrayList::new);
 
     private Aapt2Jni() {
 
@@ -103,11 +108,11 @@ public class Aapt2Jni {
             wrapper.setStartLine((int) line);
         }
         wrapper.setMessage(message);
-        mDiagnostics.add(wrapper);
+        mDiagnostics.get().add(wrapper);
     }
 
     private void clearLogs() {
-        mDiagnostics.clear();
+        mDiagnostics.get().clear();
     }
 
     /**
@@ -228,10 +233,13 @@ public class Aapt2Jni {
 
             logger.log(getLogLevel(level), path, getLineNumber(lineNumber), message);
         }
-        return logger.mDiagnostics.stream().anyMatch(it -> it.getKind() == Diagnostic.Kind.ERROR) ? 1 : 0;
+        return logger.mDiagnostics.get().stream().anyMatch(it -> it.getKind() == Diagnostic.Kind.ERROR) ? 1 : 0;
     }
 
+    /**
+     * @return The diagnostics of the last compile or link call made from the calling thread
+     */
     public static List<DiagnosticWrapper> getLogs() {
-        return getInstance().mDiagnostics;
+        return getInstance().mDiagnostics.get();
     }
 }
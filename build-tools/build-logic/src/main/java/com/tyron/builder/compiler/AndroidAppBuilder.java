@@ -5,6 +5,7 @@ import com.tyron.builder.compiler.apk.SignTask;
 import com.tyron.builder.compiler.apk.ZipAlignTask;
 import com.tyron.builder.compiler.dex.R8Task;
 import com.tyron.builder.compiler.firebase.GenerateFirebaseConfigTask;
+import com.tyron.builder.compiler.incremental.dex.DexLibrariesTask;
 import com.tyron.builder.compiler.incremental.dex.IncrementalD8Task;
 import com.tyron.builder.compiler.incremental.java.IncrementalJavaTask;
 import com.tyron.builder.compiler.incremental.kotlin.IncrementalKotlinCompiler;
@@ -47,10 +48,15 @@ public class AndroidAppBuilder extends BuilderImpl<AndroidModule> {
         tasks.add(new IncrementalAapt2Task(getProject(), module, logger, false));
         tasks.add(new GenerateViewBindingTask(getProject(), module, logger, true));
         tasks.add(new MergeSymbolsTask(getProject(), module, logger));
+        boolean useR8 = module.getSettings().getBoolean(ModuleSettings.USE_R8, false) &&
+                        type == BuildType.RELEASE;
+        if (!useR8) {
+            // only depends on the libraries, runs while the sources are being compiled
+            tasks.add(new DexLibrariesTask(getProject(), module, logger));
+        }
         tasks.add(new IncrementalKotlinCompiler(getProject(), module, logger));
         tasks.add(new IncrementalJavaTask(getProject(), module, logger));
-        if (module.getSettings().getBoolean(ModuleSettings.USE_R8, false) &&
-                type == BuildType.RELEASE) {
+        if (useR8) {
             tasks.add(new R8Task(getProject(), module, logger));
         } else {
             tasks.add(new IncrementalD8Task(getProject(), module, logger));
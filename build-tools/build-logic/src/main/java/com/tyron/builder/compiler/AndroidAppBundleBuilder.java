@@ -3,6 +3,7 @@ package com.tyron.builder.compiler;
 import com.tyron.builder.compiler.aab.AabTask;
 import com.tyron.builder.compiler.dex.R8Task;
 import com.tyron.builder.compiler.firebase.GenerateFirebaseConfigTask;
+import com.tyron.builder.compiler.incremental.dex.DexLibrariesTask;
 import com.tyron.builder.compiler.incremental.dex.IncrementalD8Task;
 import com.tyron.builder.compiler.incremental.java.IncrementalJavaTask;
 import com.tyron.builder.compiler.incremental.kotlin.IncrementalKotlinCompiler;
@@ -37,9 +38,14 @@ public class AndroidAppBundleBuilder extends BuilderImpl<AndroidModule> {
         tasks.add(new IncrementalAapt2Task(getProject(), getModule(), getLogger(), true));
         tasks.add(new GenerateViewBindingTask(getProject(), getModule(), getLogger(), true));
         tasks.add(new MergeSymbolsTask(getProject(), getModule(), getLogger()));
+        boolean useR8 = getModule().getSettings().getBoolean(ModuleSettings.USE_R8, false);
+        if (!useR8) {
+            // only depends on the libraries, runs while the sources are being compiled
+            tasks.add(new DexLibrariesTask(getProject(), getModule(), getLogger()));
+        }
         tasks.add(new IncrementalKotlinCompiler(getProject(), getModule(), getLogger()));
         tasks.add(new IncrementalJavaTask(getProject(), getModule(), getLogger()));
-        if (getModule().getSettings().getBoolean(ModuleSettings.USE_R8, false)) {
+        if (useR8) {
             tasks.add(new R8Task(getProject(), getModule(), getLogger()));
         } else {
             tasks.add(new IncrementalD8Task(getProject(), getModule(), getLogger()));
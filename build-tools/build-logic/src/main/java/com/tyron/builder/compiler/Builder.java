@@ -16,6 +16,17 @@ public interface Builder<T extends Module> {
     interface TaskListener {
         @MainThread
         void onTaskStarted(String name, String message, int progress);
+
+        /**
+         * Called when a task has finished successfully
+         *
+         * @param name     the name of the task
+         * @param duration the wall clock time the task took, in milliseconds
+         */
+        @MainThread
+        default void onTaskFinished(String name, long duration) {
+
+        }
     }
 
     void setTaskListener(TaskListener taskListener);
@@ -13,10 +13,30 @@ import com.tyron.builder.project.api.Module;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class BuilderImpl<T extends Module> implements Builder<T> {
 
+    /**
+     * The maximum number of tasks that can run at the same time
+     */
+    private static final int MAX_WORKERS =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
     private final Handler mMainHandler;
     private final Project mProject;
     private final T mModule;
@@ -29,7 +49,7 @@ public abstract class BuilderImpl<T extends Module> implements Builder<T> {
         mModule = module;
         mLogger = logger;
         mMainHandler = new Handler(Looper.getMainLooper());
-        mTasksRan = new ArrayList<>();
+        mTasksRan = Collections.synchronizedList(new ArrayList<>());
     }
 
     @NonNull
@@ -54,32 +74,222 @@ public abstract class BuilderImpl<T extends Module> implements Builder<T> {
         }
     }
 
+    protected void onTaskFinished(String name, long duration) {
+        if (mTaskListener != null) {
+            mTaskListener.onTaskFinished(name, duration);
+        }
+    }
+
+    /**
+     * Runs the tasks returned by {@link #getTasks(BuildType)}. A task starts as soon as every
+     * task before it that it conflicts with has finished, tasks that do not depend on each other
+     * run at the same time on a bounded pool of workers.
+     *
+     * <p>When a task fails or the build is cancelled no new tasks are started and the tasks
+     * that are still running are interrupted. Every task that has been started is cleaned up
+     * once they have stopped, then the failure is rethrown.
+     */
     @Override
     public final void build(BuildType type) throws CompilationFailedException, IOException {
         mTasksRan.clear();
         List<Task<? super T>> tasks = getTasks(type);
-        for (int i = 0, tasksSize = tasks.size(); i < tasksSize; i++) {
-            Task<? super T> task = tasks.get(i);
-            final float current = i;
+        int size = tasks.size();
+
+        List<List<Integer>> dependents = new ArrayList<>(size);
+        int[] remainingDependencies = new int[size];
+        for (int i = 0; i < size; i++) {
+            dependents.add(new ArrayList<>());
+            for (int j = 0; j < i; j++) {
+                if (conflicts(tasks.get(j), tasks.get(i))) {
+                    dependents.get(j).add(i);
+                    remainingDependencies[i]++;
+                }
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(MAX_WORKERS,
+                Math.max(1, size)), new TaskThreadFactory());
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(executor);
+        List<Task<? super T>> started = new ArrayList<>();
+        Map<Integer, Future<Integer>> runningFutures = new HashMap<>();
+        AtomicInteger finished = new AtomicInteger();
+        int running = 0;
+        Throwable failure = null;
+        boolean cancelled = false;
+
+        try {
+            for (int i = 0; i < size; i++) {
+                if (remainingDependencies[i] == 0) {
+                    runningFutures.put(i, submit(completionService, tasks, i, type, finished));
+                    started.add(tasks.get(i));
+                    running++;
+                }
+            }
+
+            while (running > 0) {
+                Future<Integer> future;
+                try {
+                    future = completionService.take();
+                } catch (InterruptedException e) {
+                    // the build has been cancelled, stop scheduling and interrupt the running tasks
+                    cancelled = true;
+                    cancelAll(runningFutures);
+                    continue;
+                }
+                running--;
+                runningFutures.values().remove(future);
+
+                int index;
+                try {
+                    index = future.get();
+                } catch (CancellationException e) {
+                    continue;
+                } catch (ExecutionException e) {
+                    if (failure == null || e.getCause() instanceof OutOfMemoryError) {
+                        failure = e.getCause();
+                    }
+                    cancelAll(runningFutures);
+                    continue;
+                } catch (InterruptedException e) {
+                    cancelled = true;
+                    cancelAll(runningFutures);
+                    continue;
+                }
+
+                mTasksRan.add(tasks.get(index));
+                if (Thread.currentThread().isInterrupted()) {
+                    cancelled = true;
+                    cancelAll(runningFutures);
+                }
+                if (failure != null || cancelled) {
+                    continue;
+                }
+                for (int dependent : dependents.get(index)) {
+                    if (--remainingDependencies[dependent] == 0) {
+                        runningFutures.put(dependent,
+                                submit(completionService, tasks, dependent, type, finished));
+                        started.add(tasks.get(dependent));
+                        running++;
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+            // a cancelled future completes before its task has reacted to the interrupt
+            awaitTermination(executor);
+        }
+
+        if (failure instanceof OutOfMemoryError) {
+            tasks.clear();
+            mTasksRan.clear();
+            saveCaches();
+            throw new CompilationFailedException("Builder ran out of memory", failure);
+        }
+
+        // clean every task that has been started, including the ones that failed
+        started.forEach(Task::clean);
+        saveCaches();
+
+        if (failure != null) {
+            if (failure instanceof CompilationFailedException) {
+                throw (CompilationFailedException) failure;
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            throw new CompilationFailedException(failure.getMessage(), failure);
+        }
+        if (cancelled) {
+            Thread.currentThread().interrupt();
+            throw new CompilationFailedException("Build was cancelled");
+        }
+    }
+
+    private Future<Integer> submit(CompletionService<Integer> completionService,
+                                   List<Task<? super T>> tasks,
+                                   int index,
+                                   BuildType type,
+                                   AtomicInteger finished) {
+        Task<? super T> task = tasks.get(index);
+        int total = tasks.size();
+        return completionService.submit(() -> {
             getLogger().info("Running " + task.getName());
+            final float current = finished.get();
+            mMainHandler.post(() -> updateProgress(task.getName(), "Task started",
+                    (int) ((current / (float) total) * 100f)));
+
+            long start = System.currentTimeMillis();
+            task.prepare(type);
+            task.run();
+            long duration = System.currentTimeMillis() - start;
+
+            finished.incrementAndGet();
+            getLogger().debug(task.getName() + " finished in " + duration + " ms");
+            mMainHandler.post(() -> onTaskFinished(task.getName(), duration));
+            return index;
+        });
+    }
+
+    private static void cancelAll(Map<Integer, Future<Integer>> runningFutures) {
+        for (Future<Integer> future : runningFutures.values()) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Waits for the tasks that have been interrupted to stop, so they are not cleaned up
+     * while they still write their outputs
+     */
+    private static void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
             try {
-                mMainHandler.post(() -> updateProgress(task.getName(), "Task started",
-                        (int) ((current / (float) tasks.size()) * 100f)));
-                task.prepare(type);
-                task.run();
-            } catch (Throwable e) {
-                if (e instanceof OutOfMemoryError) {
-                    tasks.clear();
-                    mTasksRan.clear();
-                    throw new CompilationFailedException("Builder ran out of memory", e);
+                if (executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
                 }
-                task.clean();
-                mTasksRan.forEach(Task::clean);
-                throw e;
+            } catch (InterruptedException e) {
+                interrupted = true;
             }
-            mTasksRan.add(task);
         }
-        mTasksRan.forEach(Task::clean);
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Whether the second task has to wait for the first one. Tasks that have not declared
+     * their inputs and outputs conflict with every other task.
+     */
+    private static boolean conflicts(Task<?> first, Task<?> second) {
+        Set<TaskArtifact> firstInputs = first.getInputs();
+        Set<TaskArtifact> firstOutputs = first.getOutputs();
+        Set<TaskArtifact> secondInputs = second.getInputs();
+        Set<TaskArtifact> secondOutputs = second.getOutputs();
+        if (firstInputs == null || firstOutputs == null ||
+            secondInputs == null || secondOutputs == null) {
+            return true;
+        }
+        return !Collections.disjoint(firstOutputs, secondInputs) ||
+               !Collections.disjoint(firstInputs, secondOutputs) ||
+               !Collections.disjoint(firstOutputs, secondOutputs);
+    }
+
+    /**
+     * Writes the incremental caches of the module to disk so the next build, even after
+     * a restart, only has to process what has changed
+     */
+    private void saveCaches() {
+        try {
+            mModule.saveCaches();
+        } catch (IOException e) {
+            getLogger().warning("Failed to save build caches: " + e.getMessage());
+        }
     }
 
     public abstract List<Task<? super T>> getTasks(BuildType type);
@@ -96,4 +306,16 @@ public abstract class BuilderImpl<T extends Module> implements Builder<T> {
     public ILogger getLogger() {
         return mLogger;
     }
+
+    private static class TaskThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Builder-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
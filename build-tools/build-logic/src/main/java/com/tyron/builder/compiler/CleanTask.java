@@ -70,6 +70,7 @@ public class CleanTask extends Task<AndroidModule> {
                 .clear();
         getModule().getCache(MergeSymbolsTask.CACHE_KEY, new Cache<>())
                 .clear();
+        FileUtils.deleteQuietly(IncrementalJavaTask.getClassDependencyIndexFile(getModule()));
     }
     private void cleanClasses() {
 
@@ -6,6 +6,7 @@ import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.Module;
 
 import java.io.IOException;
+import java.util.Set;
 
 /**
  *
@@ -44,6 +45,22 @@ public abstract class Task<T extends Module> {
      */
     public abstract String getName();
 
+    /**
+     * @return The artifacts this task reads, or null if they are unknown. A task with unknown
+     * inputs or outputs is never run at the same time as any other task.
+     */
+    public Set<TaskArtifact> getInputs() {
+        return null;
+    }
+
+    /**
+     * @return The artifacts this task writes, or null if they are unknown.
+     * @see #getInputs()
+     */
+    public Set<TaskArtifact> getOutputs() {
+        return null;
+    }
+
     /**
      * Called before run() to give the subclass information about the project
      * @throws IOException if an exception occurred during a file operation
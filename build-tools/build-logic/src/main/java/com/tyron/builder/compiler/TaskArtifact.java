@@ -0,0 +1,51 @@
+package com.tyron.builder.compiler;
+
+/**
+ * The intermediate artifacts of a build that tasks declare as their inputs and outputs.
+ * {@link BuilderImpl} uses them to find which tasks can run at the same time.
+ */
+public enum TaskArtifact {
+    /**
+     * The extracted libraries of the module
+     */
+    LIBRARIES,
+    /**
+     * The dex files of the libraries, stored next to each extracted library
+     */
+    LIBRARY_DEX,
+    /**
+     * The merged AndroidManifest.xml
+     */
+    MANIFEST,
+    /**
+     * The resource file generated from google-services.json
+     */
+    FIREBASE_CONFIG,
+    /**
+     * The resource file holding the crashlytics mapping id
+     */
+    CRASHLYTICS_CONFIG,
+    /**
+     * Java source files generated into the project sources, such as the injected logger
+     */
+    JAVA_SOURCES,
+    /**
+     * The compiled and linked resources along with the generated R classes
+     */
+    RESOURCES,
+    /**
+     * The R classes generated for each library
+     */
+    LIBRARY_SYMBOLS,
+    /**
+     * The generated view binding classes
+     */
+    VIEW_BINDINGS,
+    KOTLIN_CLASSES,
+    JAVA_CLASSES,
+    /**
+     * The dex files of the project classes
+     */
+    DEX,
+    APK
+}
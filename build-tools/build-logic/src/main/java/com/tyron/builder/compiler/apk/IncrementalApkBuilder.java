@@ -0,0 +1,344 @@
+package com.tyron.builder.compiler.apk;
+
+import com.android.sdklib.build.DuplicateFileException;
+import com.android.zipflinger.Entry;
+import com.android.zipflinger.Source;
+import com.android.zipflinger.Sources;
+import com.android.zipflinger.ZipArchive;
+import com.android.zipflinger.ZipSource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Packages an apk the same way as {@link com.android.sdklib.build.ApkBuilder} does, but updates
+ * the apk of the previous build in place instead of writing a new one.
+ *
+ * <p>Every entry is recorded along with a fingerprint of where it came from. When the apk is
+ * sealed, only the entries whose fingerprint changed are removed and written again, the
+ * central directory and the data of every other entry is kept as is. Entries copied from
+ * other zip files are copied without being recompressed and every uncompressed entry is
+ * aligned to 4 bytes, so the resulting apk does not need to be zip aligned.
+ */
+public class IncrementalApkBuilder {
+
+    private static final int VERSION = 1;
+    private static final long ALIGNMENT = 4;
+
+    /**
+     * Extensions of files that are already compressed, these are stored as is
+     */
+    private static final Set<String> NO_COMPRESS_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "jpg", "jpeg", "png", "gif", "webp", "wav", "mp2", "mp3", "ogg", "aac", "mpg", "mpeg",
+            "mid", "midi", "smf", "jet", "rtttl", "imy", "xmf", "mp4", "m4a", "m4v", "3gp",
+            "3gpp", "3g2", "3gpp2", "amr", "awb", "wma", "wmv", "webm", "mkv", "zip", "jar",
+            "apk"));
+
+    private static class PendingEntry {
+        private final String path;
+        private final String fingerprint;
+        private final File origin;
+        /**
+         * The entry of {@link #origin} to copy, or null if origin is the file to add
+         */
+        private final Entry zipEntry;
+
+        private PendingEntry(String path, String fingerprint, File origin, Entry zipEntry) {
+            this.path = path;
+            this.fingerprint = fingerprint;
+            this.origin = origin;
+            this.zipEntry = zipEntry;
+        }
+    }
+
+    private final File mApk;
+    private final File mStateFile;
+    private final Map<String, PendingEntry> mEntries = new LinkedHashMap<>();
+    private boolean mDebugMode;
+
+    public IncrementalApkBuilder(File apk) {
+        mApk = apk;
+        mStateFile = new File(apk.getPath() + ".state");
+    }
+
+    public void setDebugMode(boolean debugMode) {
+        mDebugMode = debugMode;
+    }
+
+    /**
+     * Adds every file entry of a zip file, used for the resources compiled by aapt2
+     */
+    public void addZipFile(File zip) throws IOException, DuplicateFileException {
+        ZipSource source = new ZipSource(zip.toPath());
+        for (Entry entry : source.entries().values()) {
+            if (!entry.isDirectory()) {
+                addZipEntry(zip, entry, entry.getName());
+            }
+        }
+    }
+
+    public void addFile(File file, String archivePath) throws DuplicateFileException {
+        add(new PendingEntry(archivePath, getFingerprint(file), file, null));
+    }
+
+    /**
+     * Adds the java resources of a jar file, class files and signature files are skipped
+     */
+    public void addResourcesFromJar(File jar) throws IOException, DuplicateFileException {
+        ZipSource source = new ZipSource(jar.toPath());
+        for (Entry entry : source.entries().values()) {
+            if (!entry.isDirectory() && checkPathForPackaging(entry.getName())) {
+                addZipEntry(jar, entry, entry.getName());
+            }
+        }
+    }
+
+    /**
+     * Adds the native libraries of a folder laid out as {@code <abi>/<library>.so}
+     */
+    public void addNativeLibraries(File nativeFolder) throws DuplicateFileException {
+        File[] abiFolders = nativeFolder.listFiles(File::isDirectory);
+        if (abiFolders == null) {
+            return;
+        }
+        for (File abiFolder : abiFolders) {
+            File[] libraries = abiFolder.listFiles(File::isFile);
+            if (libraries == null) {
+                continue;
+            }
+            for (File library : libraries) {
+                String name = library.getName();
+                if (name.endsWith(".so") || (mDebugMode && name.equals("gdbserver"))) {
+                    addFile(library, "lib/" + abiFolder.getName() + "/" + name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the java resources of a source folder
+     */
+    public void addSourceFolder(File folder) throws DuplicateFileException {
+        addSourceFolder(folder, "");
+    }
+
+    private void addSourceFolder(File folder, String prefix) throws DuplicateFileException {
+        File[] children = folder.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String name = child.getName();
+            if (child.isDirectory()) {
+                if (checkFolderForPackaging(name)) {
+                    addSourceFolder(child, prefix + name + "/");
+                }
+            } else if (checkFileForPackaging(name)) {
+                addFile(child, prefix + name);
+            }
+        }
+    }
+
+    /**
+     * Writes the apk, only the entries that changed since the previous call are written if
+     * the apk has not been modified since then.
+     */
+    public void sealApk() throws IOException {
+        Map<String, String> previous = readState();
+        Files.deleteIfExists(mStateFile.toPath());
+        if (previous == null) {
+            Files.deleteIfExists(mApk.toPath());
+        }
+
+        try {
+            writeEntries(previous);
+        } catch (IOException | RuntimeException e) {
+            // the apk may be half written, the next build has to start from scratch
+            Files.deleteIfExists(mApk.toPath());
+            throw e;
+        }
+        writeState();
+    }
+
+    private void writeEntries(Map<String, String> previous) throws IOException {
+        try (ZipArchive archive = new ZipArchive(mApk.toPath())) {
+            if (previous != null) {
+                for (Map.Entry<String, String> entry : previous.entrySet()) {
+                    PendingEntry pending = mEntries.get(entry.getKey());
+                    if (pending == null || !pending.fingerprint.equals(entry.getValue())) {
+                        archive.delete(entry.getKey());
+                    }
+                }
+            }
+
+            Map<File, ZipSource> zipSources = new LinkedHashMap<>();
+            for (PendingEntry entry : mEntries.values()) {
+                if (previous != null && entry.fingerprint.equals(previous.get(entry.path))) {
+                    continue;
+                }
+
+                if (entry.zipEntry == null) {
+                    archive.add(createSource(entry.origin, entry.path));
+                    continue;
+                }
+
+                ZipSource zipSource = zipSources.get(entry.origin);
+                if (zipSource == null) {
+                    zipSource = new ZipSource(entry.origin.toPath());
+                    zipSources.put(entry.origin, zipSource);
+                }
+                // compressed entries are copied as is, stored ones are aligned
+                long alignment = entry.zipEntry.isCompressed() ? Source.NO_ALIGNMENT : ALIGNMENT;
+                zipSource.select(entry.zipEntry.getName(), entry.path,
+                        ZipSource.COMPRESSION_NO_CHANGE, alignment);
+            }
+            for (ZipSource zipSource : zipSources.values()) {
+                archive.add(zipSource);
+            }
+        }
+    }
+
+    private Source createSource(File file, String path) throws IOException {
+        if (isNoCompress(path)) {
+            Source source = Sources.from(file, path, Deflater.NO_COMPRESSION);
+            source.align(ALIGNMENT);
+            return source;
+        }
+        // debug builds favor packaging speed over the size of the apk
+        int level = mDebugMode ? Deflater.BEST_SPEED : Deflater.DEFAULT_COMPRESSION;
+        return Sources.from(file, path, level);
+    }
+
+    private void addZipEntry(File zip, Entry entry, String path) throws DuplicateFileException {
+        String fingerprint = "zip:" + zip.getAbsolutePath() + ":" + entry.getCrc() + ":" +
+                             entry.getCompressedSize() + ":" + entry.getUncompressedSize() + ":" +
+                             entry.isCompressed();
+        add(new PendingEntry(path, fingerprint, zip, entry));
+    }
+
+    private void add(PendingEntry entry) throws DuplicateFileException {
+        PendingEntry existing = mEntries.get(entry.path);
+        if (existing != null) {
+            throw new DuplicateFileException(entry.path, existing.origin, entry.origin);
+        }
+        mEntries.put(entry.path, entry);
+    }
+
+    private static String getFingerprint(File file) {
+        return "file:" + file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+    }
+
+    private static boolean isNoCompress(String path) {
+        int dot = path.lastIndexOf('.');
+        if (dot == -1) {
+            return false;
+        }
+        return NO_COMPRESS_EXTENSIONS.contains(path.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Reads the fingerprints of the entries written by the previous build. Returns null if
+     * there is no usable previous apk, in which case it has to be written from scratch.
+     */
+    private Map<String, String> readState() {
+        if (!mStateFile.exists() || !mApk.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mStateFile)))) {
+            if (in.readInt() != VERSION ||
+                in.readBoolean() != mDebugMode ||
+                in.readLong() != mApk.length() ||
+                in.readLong() != mApk.lastModified()) {
+                return null;
+            }
+            int size = in.readInt();
+            Map<String, String> entries = new HashMap<>(size);
+            for (int i = 0; i < size; i++) {
+                entries.put(in.readUTF(), in.readUTF());
+            }
+            return entries;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeState() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(mStateFile)))) {
+            out.writeInt(VERSION);
+            out.writeBoolean(mDebugMode);
+            out.writeLong(mApk.length());
+            out.writeLong(mApk.lastModified());
+            out.writeInt(mEntries.size());
+            for (PendingEntry entry : mEntries.values()) {
+                out.writeUTF(entry.path);
+                out.writeUTF(entry.fingerprint);
+            }
+        }
+    }
+
+    /**
+     * Whether an entry of a jar should be packaged, mirrors the filter of ApkBuilder
+     */
+    private static boolean checkPathForPackaging(String path) {
+        String[] segments = path.split("/");
+        if (segments.length == 0) {
+            return false;
+        }
+        for (int i = 0; i < segments.length - 1; i++) {
+            if (!checkFolderForPackaging(segments[i])) {
+                return false;
+            }
+        }
+        return checkFileForPackaging(segments[segments.length - 1]);
+    }
+
+    private static boolean checkFolderForPackaging(String name) {
+        return !name.equalsIgnoreCase("CVS") &&
+               !name.equalsIgnoreCase(".svn") &&
+               !name.equalsIgnoreCase("SCCS") &&
+               !name.equalsIgnoreCase("META-INF") &&
+               !name.startsWith("_");
+    }
+
+    private static boolean checkFileForPackaging(String name) {
+        if (name.isEmpty() || name.charAt(0) == '.') {
+            return false;
+        }
+        String extension = "";
+        int dot = name.lastIndexOf('.');
+        if (dot != -1) {
+            extension = name.substring(dot + 1);
+        }
+        return !"aidl".equalsIgnoreCase(extension) &&
+               !"rs".equalsIgnoreCase(extension) &&
+               !"fs".equalsIgnoreCase(extension) &&
+               !"rsh".equalsIgnoreCase(extension) &&
+               !"d".equalsIgnoreCase(extension) &&
+               !"java".equalsIgnoreCase(extension) &&
+               !"scala".equalsIgnoreCase(extension) &&
+               !"class".equalsIgnoreCase(extension) &&
+               !"scc".equalsIgnoreCase(extension) &&
+               !"swp".equalsIgnoreCase(extension) &&
+               !"thumbs.db".equalsIgnoreCase(name) &&
+               !"picasa.ini".equalsIgnoreCase(name) &&
+               !"package.html".equalsIgnoreCase(name) &&
+               !"overview.html".equalsIgnoreCase(name);
+    }
+}
@@ -2,12 +2,10 @@ package com.tyron.builder.compiler.apk;
 
 import android.net.Uri;
 
-import com.android.sdklib.build.ApkBuilder;
-import com.android.sdklib.build.ApkCreationException;
 import com.android.sdklib.build.DuplicateFileException;
-import com.android.sdklib.build.SealedApkException;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.TaskArtifact;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.Project;
@@ -16,7 +14,9 @@ import com.tyron.builder.project.api.AndroidModule;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 public class PackageTask extends Task<AndroidModule> {
 
@@ -51,6 +51,17 @@ public class PackageTask extends Task<AndroidModule> {
         return "Package";
     }
 
+    @Override
+    public Set<TaskArtifact> getInputs() {
+        return EnumSet.of(TaskArtifact.LIBRARIES, TaskArtifact.LIBRARY_DEX, TaskArtifact.RESOURCES,
+                TaskArtifact.DEX);
+    }
+
+    @Override
+    public Set<TaskArtifact> getOutputs() {
+        return EnumSet.of(TaskArtifact.APK);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mBuildType = type;
@@ -82,12 +93,10 @@ public class PackageTask extends Task<AndroidModule> {
 
         int dexCount = 1;
         try {
-            ApkBuilder builder = new ApkBuilder(
-                    mApk.getAbsolutePath(),
-                    mGeneratedRes.getAbsolutePath(),
-                    mDexFile.getAbsolutePath(),
-                    null,
-                    null);
+            IncrementalApkBuilder builder = new IncrementalApkBuilder(mApk);
+            builder.setDebugMode(mBuildType == BuildType.DEBUG);
+            builder.addZipFile(mGeneratedRes);
+            builder.addFile(mDexFile, "classes.dex");
 
             for (File extraDex : mDexFiles) {
                 dexCount++;
@@ -111,7 +120,6 @@ public class PackageTask extends Task<AndroidModule> {
             }
 
             if (mBuildType == BuildType.DEBUG) {
-                builder.setDebugMode(true);
                 // For debug mode, dex files are not merged to save up compile time
                 for (File it : getModule().getLibraries()) {
                     File parent = it.getParentFile();
@@ -132,9 +140,8 @@ public class PackageTask extends Task<AndroidModule> {
                 builder.addSourceFolder(resourcesDir);
             }
 
+            // only the entries that changed since the last build are written again
             builder.sealApk();
-        } catch (ApkCreationException | SealedApkException e) {
-            throw new CompilationFailedException(e);
         } catch (DuplicateFileException e) {
             String message = "Duplicate files from two libraries detected. \n";
             message += "File1: " + e.getFile1() + " \n";
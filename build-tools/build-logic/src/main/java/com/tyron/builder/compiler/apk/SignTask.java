@@ -3,6 +3,7 @@ package com.tyron.builder.compiler.apk;
 import com.tyron.builder.compiler.ApkSigner;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.TaskArtifact;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.Project;
@@ -12,11 +13,18 @@ import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
 
 public class SignTask extends Task<AndroidModule> {
 
     private File mInputApk;
     private File mOutputApk;
+    /**
+     * Whether the input is the intermediate aligned apk. The generated apk is kept as the
+     * packager updates it incrementally on the next build.
+     */
+    private boolean mDeleteInput;
 
     public SignTask(Project project, AndroidModule module, ILogger logger) {
         super(project, module, logger);
@@ -27,13 +35,25 @@ public class SignTask extends Task<AndroidModule> {
         return "Sign";
     }
 
+    @Override
+    public Set<TaskArtifact> getInputs() {
+        return EnumSet.of(TaskArtifact.APK);
+    }
+
+    @Override
+    public Set<TaskArtifact> getOutputs() {
+        return EnumSet.of(TaskArtifact.APK);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mInputApk = new File(getModule().getBuildDirectory(), "bin/aligned.apk");
         mOutputApk = new File(getModule().getBuildDirectory(), "bin/signed.apk");
 
+        mDeleteInput = true;
         if (!mInputApk.exists()) {
             mInputApk = new File(getModule().getBuildDirectory(), "bin/generated.apk");
+            mDeleteInput = false;
         }
 
         if (!mInputApk.exists()) {
@@ -54,6 +74,8 @@ public class SignTask extends Task<AndroidModule> {
             throw new CompilationFailedException(e);
         }
 
-        FileUtils.forceDelete(mInputApk);
+        if (mDeleteInput) {
+            FileUtils.forceDelete(mInputApk);
+        }
     }
 }
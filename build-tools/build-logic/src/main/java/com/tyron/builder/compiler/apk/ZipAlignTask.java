@@ -4,6 +4,7 @@ import android.content.Context;
 
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.TaskArtifact;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.model.DiagnosticWrapper;
@@ -14,14 +15,28 @@ import com.tyron.common.util.BinaryExecutor;
 
 import javax.tools.Diagnostic;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
 
 public class ZipAlignTask extends Task<AndroidModule> {
 
     private static final String TAG = ZipAlignTask.class.getSimpleName();
+    private static final int ALIGNMENT = 4;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
 
     private File mApkFile;
 
@@ -34,6 +49,16 @@ public class ZipAlignTask extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<TaskArtifact> getInputs() {
+        return EnumSet.of(TaskArtifact.APK);
+    }
+
+    @Override
+    public Set<TaskArtifact> getOutputs() {
+        return EnumSet.of(TaskArtifact.APK);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mApkFile = new File(getModule().getBuildDirectory(), "bin/generated.apk");
@@ -45,13 +70,23 @@ public class ZipAlignTask extends Task<AndroidModule> {
 
     @Override
     public void run() throws IOException, CompilationFailedException {
+        File alignedApk = new File(mApkFile.getParent(), "aligned.apk");
+        if (isAligned(mApkFile, ALIGNMENT)) {
+            // the packager already aligns every uncompressed entry, the generated apk is signed
+            if (alignedApk.exists() && !alignedApk.delete()) {
+                throw new IOException("Unable to delete " + alignedApk);
+            }
+            getLogger().debug("APK is already aligned, skipping zipalign.");
+            return;
+        }
+
         File binary = getZipAlignBinary();
         List<String> args = new ArrayList<>();
         args.add(binary.getAbsolutePath());
         args.add("-f");
-        args.add("4");
+        args.add(String.valueOf(ALIGNMENT));
         args.add(mApkFile.getAbsolutePath());
-        args.add(mApkFile.getParent() + "/aligned.apk");
+        args.add(alignedApk.getAbsolutePath());
         BinaryExecutor executor = new BinaryExecutor();
         executor.setCommands(args);
 
@@ -87,6 +122,79 @@ public class ZipAlignTask extends Task<AndroidModule> {
         }
     }
 
+    /**
+     * Checks whether the data of every uncompressed entry of a zip file starts at an offset
+     * that is a multiple of the given alignment, only the central directory and the local
+     * headers of the uncompressed entries are read.
+     */
+    static boolean isAligned(File zip, int alignment) throws IOException {
+        try (FileChannel channel = FileChannel.open(zip.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int tailSize = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + 0xFFFF);
+            ByteBuffer tail = read(channel, size - tailSize, tailSize);
+
+            int end = -1;
+            for (int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+                if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                    end = i;
+                    break;
+                }
+            }
+            if (end == -1) {
+                return false;
+            }
+
+            int entries = tail.getShort(end + 10) & 0xFFFF;
+            long directorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+            long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+            if (directoryOffset + directorySize > size) {
+                // zip64 or a corrupt file, let zipalign deal with it
+                return false;
+            }
+
+            ByteBuffer directory = read(channel, directoryOffset, (int) directorySize);
+            int position = 0;
+            for (int i = 0; i < entries; i++) {
+                if (position + 46 > directorySize ||
+                    directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                    return false;
+                }
+                int method = directory.getShort(position + 10) & 0xFFFF;
+                int nameLength = directory.getShort(position + 28) & 0xFFFF;
+                int extraLength = directory.getShort(position + 30) & 0xFFFF;
+                int commentLength = directory.getShort(position + 32) & 0xFFFF;
+                long localHeaderOffset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+
+                if (method == ZipEntry.STORED) {
+                    ByteBuffer header = read(channel, localHeaderOffset, 30);
+                    if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                        return false;
+                    }
+                    long dataOffset = localHeaderOffset + 30 +
+                                      (header.getShort(26) & 0xFFFF) +
+                                      (header.getShort(28) & 0xFFFF);
+                    if (dataOffset % alignment != 0) {
+                        return false;
+                    }
+                }
+                position += 46 + nameLength + extraLength + commentLength;
+            }
+            return true;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long offset, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) == -1) {
+                throw new EOFException("Unexpected end of zip file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
     private Diagnostic.Kind getKind(String string) {
         String trimmed = string.trim();
         if (trimmed.startsWith("WARNING")) {
@@ -0,0 +1,360 @@
+package com.tyron.builder.compiler.cache;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.tyron.builder.BuildModule;
+
+import org.gradle.api.Action;
+import org.gradle.cache.PersistentCache;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.PersistentIndexedCacheParameters;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.local.internal.BuildCacheTempFileStore;
+import org.gradle.caching.local.internal.DirectoryBuildCacheService;
+import org.gradle.internal.Factory;
+import org.gradle.internal.serialize.Serializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * A build cache shared by all the projects, for outputs that only depend on the contents of
+ * libraries such as their dex files and compiled resources.
+ *
+ * <p>Entries are stored with a {@link DirectoryBuildCacheService} under a key computed from
+ * the content hashes of the inputs and the options of the tool that produced them, so a
+ * library that is used by several projects is only processed once.
+ */
+public class LibraryBuildCache {
+
+    private static final String TAG = "LibraryBuildCache";
+
+    /**
+     * Changing this invalidates all the existing entries
+     */
+    private static final int VERSION = 1;
+
+    private static final String FAILED_FILE_SUFFIX = ".failed";
+
+    /**
+     * Entries that have not been used for this long are deleted when the cache is opened
+     */
+    private static final long MAX_UNUSED_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+    private static volatile LibraryBuildCache sInstance;
+
+    /**
+     * @return The cache of the IDE, or null if the build is not running inside of the IDE
+     */
+    @Nullable
+    public static LibraryBuildCache getInstance() {
+        LibraryBuildCache instance = sInstance;
+        if (instance == null) {
+            synchronized (LibraryBuildCache.class) {
+                instance = sInstance;
+                if (instance == null) {
+                    Context context = BuildModule.getContext();
+                    if (context == null) {
+                        return null;
+                    }
+                    instance = new LibraryBuildCache(new File(context.getCacheDir(), "build-cache"));
+                    instance.deleteUnusedEntries(MAX_UNUSED_MILLIS);
+                    sInstance = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Computes the key of an entry from the name of the tool that produces it and the content
+     * hashes and options it depends on. The order of the inputs is significant.
+     */
+    @NonNull
+    public static BuildCacheKey createKey(@NonNull String tool, @NonNull String... inputs) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putInt(VERSION);
+        hasher.putString(tool, StandardCharsets.UTF_8);
+        for (String input : inputs) {
+            // the length is hashed as well so that ("ab", "c") and ("a", "bc") differ
+            hasher.putInt(input.length());
+            hasher.putString(input, StandardCharsets.UTF_8);
+        }
+        return new Key(hasher.hash());
+    }
+
+    private final File mBaseDir;
+    private final File mTempDir;
+    private final DirectoryBuildCacheService mService;
+
+    public LibraryBuildCache(@NonNull File baseDir) {
+        mBaseDir = baseDir;
+        mTempDir = new File(baseDir, "tmp");
+        mService = new DirectoryBuildCacheService(new LibraryCacheFileStore(baseDir),
+                new InProcessCache(baseDir, mTempDir), new TempFileStore(mTempDir),
+                file -> file.setLastModified(System.currentTimeMillis()), FAILED_FILE_SUFFIX);
+    }
+
+    /**
+     * Copies the entry with the given key to the target file.
+     *
+     * @return whether the entry exists, the target file is left untouched if it does not
+     */
+    public boolean loadFile(@NonNull BuildCacheKey key, @NonNull File target) {
+        AtomicBoolean loaded = new AtomicBoolean();
+        try {
+            mService.loadLocally(key, entry -> {
+                copy(entry, target);
+                loaded.set(true);
+            });
+        } catch (RuntimeException e) {
+            // the entry has been moved out of the way by the service, it will be stored again
+            Log.w(TAG, "Unable to load " + key.getDisplayName() + " into " + target, e);
+            return false;
+        }
+        return loaded.get();
+    }
+
+    /**
+     * Stores a copy of the given file under the given key. Failures are logged and ignored
+     * since the build does not depend on the cache.
+     */
+    public void storeFile(@NonNull BuildCacheKey key, @NonNull File source) {
+        try {
+            mService.withTempFile(key, temp -> {
+                copy(source, temp);
+                mService.storeLocally(key, temp);
+            });
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unable to store " + source + " as " + key.getDisplayName(), e);
+        }
+    }
+
+    /**
+     * Copies through a temporary file next to the target so the target is either the old
+     * file or the complete new one
+     */
+    private static void copy(File source, File target) {
+        File temp = null;
+        try {
+            File parent = target.getAbsoluteFile().getParentFile();
+            Files.createDirectories(parent.toPath());
+            temp = File.createTempFile(target.getName(), ".tmp", parent);
+            Files.copy(source.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes the entries that have not been loaded or stored for the given duration, along
+     * with the temporary files left behind by builds that were killed
+     */
+    public void deleteUnusedEntries(long maxUnusedMillis) {
+        long now = System.currentTimeMillis();
+        deleteOlderThan(mBaseDir, now - maxUnusedMillis);
+        deleteOlderThan(mTempDir, now - TimeUnit.DAYS.toMillis(1));
+    }
+
+    private static void deleteOlderThan(File dir, long threshold) {
+        File[] files = dir.listFiles(File::isFile);
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.lastModified() < threshold && !file.delete()) {
+                Log.w(TAG, "Unable to delete " + file);
+            }
+        }
+    }
+
+    @NonNull
+    public File getBaseDir() {
+        return mBaseDir;
+    }
+
+    private static class Key implements BuildCacheKey {
+
+        private final HashCode mHashCode;
+
+        private Key(HashCode hashCode) {
+            mHashCode = hashCode;
+        }
+
+        @Override
+        public String getHashCode() {
+            return mHashCode.toString();
+        }
+
+        @Override
+        public byte[] toByteArray() {
+            return mHashCode.asBytes();
+        }
+
+        @Override
+        public String getDisplayName() {
+            return getHashCode();
+        }
+
+        @Override
+        public String toString() {
+            return getHashCode();
+        }
+    }
+
+    private static class TempFileStore implements BuildCacheTempFileStore {
+
+        private final File mTempDir;
+
+        private TempFileStore(File tempDir) {
+            mTempDir = tempDir;
+        }
+
+        @Override
+        public void withTempFile(BuildCacheKey key, Action<? super File> action) {
+            File tempFile = null;
+            try {
+                Files.createDirectories(mTempDir.toPath());
+                tempFile = File.createTempFile(key.getHashCode() + "-", PARTIAL_FILE_SUFFIX,
+                        mTempDir);
+                action.execute(tempFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                if (tempFile != null) {
+                    tempFile.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds only run in the process of the IDE and {@link DirectoryBuildCacheService} already
+     * coordinates the threads of a process with its own lock, so no file lock is taken. For the
+     * same reason the indexed caches it creates are only kept in memory.
+     */
+    private static class InProcessCache implements PersistentCache {
+
+        private final File mBaseDir;
+        private final File mTempDir;
+        private final Map<String, InMemoryIndexedCache<?, ?>> mIndexedCaches =
+                new ConcurrentHashMap<>();
+
+        private InProcessCache(File baseDir, File tempDir) {
+            mBaseDir = baseDir;
+            mTempDir = tempDir;
+        }
+
+        @Override
+        public File getBaseDir() {
+            return mBaseDir;
+        }
+
+        @Override
+        public Collection<File> getReservedCacheFiles() {
+            return Collections.singletonList(mTempDir);
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "library build cache (" + mBaseDir + ")";
+        }
+
+        @Override
+        public <K, V> PersistentIndexedCache<K, V> createCache(PersistentIndexedCacheParameters<K, V> parameters) {
+            return createCache(parameters.getCacheName());
+        }
+
+        @Override
+        public <K, V> PersistentIndexedCache<K, V> createCache(String name,
+                                                               Class<K> keyType,
+                                                               Serializer<V> valueSerializer) {
+            return createCache(name);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <K, V> PersistentIndexedCache<K, V> createCache(String name) {
+            return (PersistentIndexedCache<K, V>) mIndexedCaches.computeIfAbsent(name,
+                    it -> new InMemoryIndexedCache<>());
+        }
+
+        @Override
+        public <K, V> boolean cacheExists(PersistentIndexedCacheParameters<K, V> parameters) {
+            return mIndexedCaches.containsKey(parameters.getCacheName());
+        }
+
+        @Override
+        public synchronized <T> T useCache(Factory<? extends T> action) {
+            return action.create();
+        }
+
+        @Override
+        public synchronized void useCache(Runnable action) {
+            action.run();
+        }
+
+        @Override
+        public <T> T withFileLock(Factory<? extends T> action) {
+            return action.create();
+        }
+
+        @Override
+        public void withFileLock(Runnable action) {
+            action.run();
+        }
+
+        @Override
+        public void close() {
+
+        }
+    }
+
+    private static class InMemoryIndexedCache<K, V> implements PersistentIndexedCache<K, V> {
+
+        private final Map<K, V> mValues = new ConcurrentHashMap<>();
+
+        @Nullable
+        @Override
+        public V getIfPresent(K key) {
+            return mValues.get(key);
+        }
+
+        @Override
+        public V get(K key, Function<? super K, ? extends V> producer) {
+            return mValues.computeIfAbsent(key, producer);
+        }
+
+        @Override
+        public void put(K key, V value) {
+            mValues.put(key, value);
+        }
+
+        @Override
+        public void remove(K key) {
+            mValues.remove(key);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.tyron.builder.compiler.cache;
+
+import androidx.annotation.Nullable;
+
+import com.google.common.hash.Hashing;
+
+import org.gradle.api.Action;
+import org.gradle.internal.resource.local.AbstractLocallyAvailableResource;
+import org.gradle.internal.resource.local.FileStoreAddActionException;
+import org.gradle.internal.resource.local.FileStoreException;
+import org.gradle.internal.resource.local.LocallyAvailableResource;
+import org.gradle.internal.resource.local.PathKeyFileStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Stores every entry of the {@link LibraryBuildCache} as a file named after its key.
+ *
+ * <p>Entries are moved into place atomically so a reader never sees a partially written
+ * entry, even if the IDE is killed while an entry is being stored.
+ */
+class LibraryCacheFileStore implements PathKeyFileStore {
+
+    private final File mBaseDir;
+
+    LibraryCacheFileStore(File baseDir) {
+        mBaseDir = baseDir;
+    }
+
+    private File getFile(String... path) {
+        File result = mBaseDir;
+        for (String p : path) {
+            result = new File(result, p);
+        }
+        return result;
+    }
+
+    @Nullable
+    @Override
+    public LocallyAvailableResource get(String... path) {
+        File file = getFile(path);
+        return file.isFile() ? new Entry(file) : null;
+    }
+
+    @Override
+    public LocallyAvailableResource move(String key, File source) {
+        File target = getFile(key);
+        try {
+            Files.createDirectories(mBaseDir.toPath());
+            try {
+                Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new FileStoreException("Failed to move " + source + " to " + target, e);
+        }
+        return new Entry(target);
+    }
+
+    @Override
+    public LocallyAvailableResource add(String key, Action<File> addAction) {
+        File temp = new File(mBaseDir, key + ".add");
+        try {
+            addAction.execute(temp);
+        } catch (Throwable e) {
+            temp.delete();
+            throw new FileStoreAddActionException("Failed to add into the library cache", e);
+        }
+        return move(key, temp);
+    }
+
+    @Override
+    public Set<? extends LocallyAvailableResource> search(String key) {
+        Set<Entry> entries = new LinkedHashSet<>();
+        File[] files = mBaseDir.listFiles(File::isFile);
+        if (files == null) {
+            return entries;
+        }
+        // entries are stored directly in the base directory, so only their names are matched
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + key);
+        for (File file : files) {
+            if (matcher.matches(file.toPath().getFileName())) {
+                entries.add(new Entry(file));
+            }
+        }
+        return entries;
+    }
+
+    private static class Entry extends AbstractLocallyAvailableResource {
+
+        private final File mFile;
+
+        private Entry(File file) {
+            super(() -> {
+                try {
+                    //noinspection deprecation
+                    return com.google.common.io.Files.asByteSource(file).hash(Hashing.sha1());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            mFile = file;
+        }
+
+        @Override
+        public File getFile() {
+            return mFile;
+        }
+    }
+}
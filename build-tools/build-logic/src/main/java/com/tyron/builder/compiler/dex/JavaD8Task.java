@@ -9,6 +9,7 @@ import com.android.tools.r8.DiagnosticsHandler;
 import com.android.tools.r8.OutputMode;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.TaskArtifact;
 import com.tyron.builder.compiler.incremental.dex.IncrementalD8Task;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
@@ -25,8 +26,10 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -44,6 +47,16 @@ public class JavaD8Task extends Task<JavaModule> {
         return "JavaD8Task";
     }
 
+    @Override
+    public Set<TaskArtifact> getInputs() {
+        return EnumSet.of(TaskArtifact.LIBRARIES, TaskArtifact.JAVA_CLASSES);
+    }
+
+    @Override
+    public Set<TaskArtifact> getOutputs() {
+        return EnumSet.of(TaskArtifact.DEX);
+    }
+
     private DiagnosticsHandler diagnosticsHandler;
     private List<Path> mClassFiles;
     private List<Path> mFilesToCompile;
@@ -70,7 +83,7 @@ public class JavaD8Task extends Task<JavaModule> {
         mClassFiles = new ArrayList<>(D8Task.getClassFiles(new File(getModule().getBuildDirectory(), "bin/java/classes")));
         mClassFiles.addAll(D8Task.getClassFiles(new File(getModule().getBuildDirectory(), "bin/kotlin/classes")));
         for (Cache.Key<String> key : new HashSet<>(mDexCache.getKeys())) {
-            if (!mFilesToCompile.contains(key.file)) {
+            if (!mClassFiles.contains(key.file)) {
                 File file = mDexCache.get(key.file, "dex").iterator().next();
                 deleteAllFiles(file, ".dex");
                 mDexCache.remove(key.file, "dex");
@@ -7,6 +7,7 @@ import com.android.tools.r8.R8Command;
 import com.android.tools.r8.origin.Origin;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.TaskArtifact;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.Project;
@@ -18,7 +19,9 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class R8Task extends Task<AndroidModule> {
@@ -34,6 +37,17 @@ public class R8Task extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<TaskArtifact> getInputs() {
+        return EnumSet.of(TaskArtifact.LIBRARIES, TaskArtifact.KOTLIN_CLASSES,
+                TaskArtifact.JAVA_CLASSES);
+    }
+
+    @Override
+    public Set<TaskArtifact> getOutputs() {
+        return EnumSet.of(TaskArtifact.DEX);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
 
@@ -4,6 +4,7 @@ import androidx.annotation.VisibleForTesting;
 
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.TaskArtifact;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.Project;
@@ -19,9 +20,11 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 public class GenerateFirebaseConfigTask extends Task<AndroidModule> {
 
@@ -57,6 +60,16 @@ public class GenerateFirebaseConfigTask extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<TaskArtifact> getInputs() {
+        return EnumSet.noneOf(TaskArtifact.class);
+    }
+
+    @Override
+    public Set<TaskArtifact> getOutputs() {
+        return EnumSet.of(TaskArtifact.FIREBASE_CONFIG);
+    }
+
     private File mConfigFile;
 
     @Override
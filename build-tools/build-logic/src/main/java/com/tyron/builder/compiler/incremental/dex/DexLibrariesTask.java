@@ -0,0 +1,227 @@
+package com.tyron.builder.compiler.incremental.dex;
+
+import androidx.annotation.Nullable;
+
+import com.android.tools.r8.CompilationMode;
+import com.android.tools.r8.D8;
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.DiagnosticsHandler;
+import com.android.tools.r8.OutputMode;
+import com.android.tools.r8.Version;
+import com.tyron.builder.compiler.BuildType;
+import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.TaskArtifact;
+import com.tyron.builder.compiler.cache.LibraryBuildCache;
+import com.tyron.builder.compiler.dex.DexDiagnosticHandler;
+import com.tyron.builder.compiler.java.CheckLibrariesTask;
+import com.tyron.builder.compiler.java.LibraryFingerprints;
+import com.tyron.builder.exception.CompilationFailedException;
+import com.tyron.builder.log.ILogger;
+import com.tyron.builder.model.CodeAssistLibrary;
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.api.AndroidModule;
+
+import org.gradle.caching.BuildCacheKey;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Dexes the libraries of the module that have not been dexed yet. It only depends on the
+ * libraries so it can run while the sources of the project are being compiled.
+ *
+ * <p>Dexed libraries are shared with the other projects through the {@link LibraryBuildCache}.
+ */
+public class DexLibrariesTask extends Task<AndroidModule> {
+
+    private static final String TAG = DexLibrariesTask.class.getSimpleName();
+
+    /**
+     * Below this API level D8 desugars default and static interface methods, which requires
+     * the classes of the other libraries
+     */
+    private static final int MIN_SDK_INTERFACE_METHODS = 24;
+
+    private DiagnosticsHandler mDiagnosticsHandler;
+
+    public DexLibrariesTask(Project project, AndroidModule module, ILogger logger) {
+        super(project, module, logger);
+    }
+
+    @Override
+    public String getName() {
+        return TAG;
+    }
+
+    @Override
+    public Set<TaskArtifact> getInputs() {
+        return EnumSet.of(TaskArtifact.LIBRARIES);
+    }
+
+    @Override
+    public Set<TaskArtifact> getOutputs() {
+        return EnumSet.of(TaskArtifact.LIBRARY_DEX);
+    }
+
+    @Override
+    public void prepare(BuildType type) throws IOException {
+        mDiagnosticsHandler = new DexDiagnosticHandler(getLogger(), getModule());
+    }
+
+    @Override
+    public void run() throws IOException, CompilationFailedException {
+        try {
+            dexLibraries(getModule(), getLogger(), mDiagnosticsHandler);
+        } catch (com.android.tools.r8.CompilationFailedException e) {
+            throw new CompilationFailedException(e);
+        }
+    }
+
+    /**
+     * Ensures that all libraries of the module have been dex-ed, the dex file of a library is
+     * written next to its classes.jar
+     *
+     * @throws com.android.tools.r8.CompilationFailedException if the compilation has failed
+     */
+    public static void dexLibraries(AndroidModule module,
+                                    ILogger logger,
+                                    DiagnosticsHandler diagnosticsHandler)
+            throws com.android.tools.r8.CompilationFailedException {
+        List<File> libraries = module.getLibraries();
+        LibraryBuildCache cache = LibraryBuildCache.getInstance();
+        LibraryFingerprints fingerprints = null;
+        Map<File, String> hashes = null;
+
+        for (File lib : libraries) {
+            File parentFile = lib.getParentFile();
+            if (parentFile == null) {
+                continue;
+            }
+            File[] libFiles = lib.getParentFile().listFiles();
+            if (libFiles == null) {
+                if (!lib.delete()) {
+                    logger.warning("Failed to delete " + lib.getAbsolutePath());
+                }
+            } else {
+                File dex = new File(lib.getParentFile(), "classes.dex");
+                if (dex.exists()) {
+                    continue;
+                }
+                if (lib.exists()) {
+                    String message;
+                    CodeAssistLibrary library = module.getLibrary(parentFile.getName());
+                    if (library != null) {
+                        boolean declared = library.getDeclaration() != null;
+                        message = "Dexing library " +
+                                  (declared ? library.getDeclaration() : library.getSourceFile()
+                                          .getName());
+                    } else {
+                        message = "Dexing jar " + parentFile.getName();
+                    }
+
+                    BuildCacheKey key = null;
+                    if (cache != null) {
+                        if (hashes == null) {
+                            fingerprints = CheckLibrariesTask.getFingerprints(module);
+                            List<File> inputs = new ArrayList<>(libraries);
+                            getLibraryFiles(module).forEach(path -> inputs.add(path.toFile()));
+                            hashes = fingerprints.hash(inputs);
+                        }
+                        key = getCacheKey(module, lib, hashes);
+                        if (key != null && cache.loadFile(key, dex)) {
+                            logger.debug(message + " (from build cache)");
+                            continue;
+                        }
+                    }
+
+                    logger.debug(message);
+                    D8Command command = D8Command.builder(diagnosticsHandler)
+                                    .addLibraryFiles(getLibraryFiles(module))
+                                    .addClasspathFiles(libraries.stream().map(File::toPath)
+                                                               .collect(Collectors.toList()))
+                                    .addProgramFiles(lib.toPath())
+                                    .setMode(CompilationMode.RELEASE)
+                                    .setMinApiLevel(module.getMinSdk())
+                                    .setOutput(lib.getParentFile().toPath(), OutputMode.DexIndexed)
+                                    .build();
+                    D8.run(command);
+
+                    // libraries with more than 64K methods are split into several dex files
+                    // which are not cached
+                    File[] dexFiles = parentFile.listFiles(c -> c.getName().endsWith(".dex"));
+                    if (key != null && dexFiles != null && dexFiles.length == 1 && dex.exists()) {
+                        cache.storeFile(key, dex);
+                    }
+                }
+            }
+        }
+
+        if (fingerprints != null) {
+            try {
+                fingerprints.save();
+            } catch (IOException e) {
+                logger.warning("Failed to save library fingerprints: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The dex file of a library depends on its contents, the version and options of D8 and the
+     * boot classpath. When interface methods are desugared it also depends on the other
+     * libraries, so it is then only shared by projects with the same libraries.
+     *
+     * @return The key of the dex file in the {@link LibraryBuildCache}, or null if one of the
+     * inputs could not be read
+     */
+    @Nullable
+    private static BuildCacheKey getCacheKey(AndroidModule module,
+                                             File lib,
+                                             Map<File, String> hashes) {
+        String hash = hashes.get(lib);
+        if (hash == null) {
+            return null;
+        }
+        List<String> inputs = new ArrayList<>();
+        inputs.add(Version.getVersionString());
+        inputs.add(CompilationMode.RELEASE.name());
+        inputs.add(String.valueOf(module.getMinSdk()));
+        inputs.add(hash);
+        for (Path path : getLibraryFiles(module)) {
+            String libraryHash = hashes.get(path.toFile());
+            if (libraryHash == null) {
+                return null;
+            }
+            inputs.add(libraryHash);
+        }
+        if (module.getMinSdk() < MIN_SDK_INTERFACE_METHODS) {
+            List<String> classpath = new ArrayList<>();
+            for (File library : module.getLibraries()) {
+                String libraryHash = hashes.get(library);
+                if (libraryHash == null) {
+                    return null;
+                }
+                if (!library.equals(lib)) {
+                    classpath.add(libraryHash);
+                }
+            }
+            Collections.sort(classpath);
+            inputs.addAll(classpath);
+        }
+        return LibraryBuildCache.createKey("d8-library", inputs.toArray(new String[0]));
+    }
+
+    private static List<Path> getLibraryFiles(AndroidModule module) {
+        List<Path> path = new ArrayList<>();
+        path.add(module.getLambdaStubsJarFile().toPath());
+        path.add(module.getBootstrapJarFile().toPath());
+        return path;
+    }
+}
@@ -7,15 +7,16 @@ import com.android.tools.r8.DiagnosticsHandler;
 import com.android.tools.r8.OutputMode;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.TaskArtifact;
 import com.tyron.builder.compiler.dex.D8Task;
 import com.tyron.builder.compiler.dex.DexDiagnosticHandler;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
-import com.tyron.builder.model.CodeAssistLibrary;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.builder.project.cache.CacheHolder;
 import com.tyron.common.util.Cache;
+import com.tyron.common.util.DataExternalizer;
 
 import org.apache.commons.io.FileUtils;
 
@@ -25,8 +26,10 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class IncrementalD8Task extends Task<AndroidModule> {
@@ -34,7 +37,8 @@ public class IncrementalD8Task extends Task<AndroidModule> {
     private static final String TAG = IncrementalD8Task.class.getSimpleName();
 
     public static final CacheHolder.CacheKey<String, List<File>> CACHE_KEY =
-            new CacheHolder.CacheKey<>("dexCache");
+            new CacheHolder.PersistentCacheKey<>("dexCache", DataExternalizer.STRING,
+                    DataExternalizer.FILE_LIST);
 
     private DiagnosticsHandler diagnosticsHandler;
     private List<Path> mClassFiles;
@@ -55,6 +59,17 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<TaskArtifact> getInputs() {
+        return EnumSet.of(TaskArtifact.LIBRARIES, TaskArtifact.LIBRARY_DEX,
+                TaskArtifact.KOTLIN_CLASSES, TaskArtifact.JAVA_CLASSES);
+    }
+
+    @Override
+    public Set<TaskArtifact> getOutputs() {
+        return EnumSet.of(TaskArtifact.DEX);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mBuildType = type;
@@ -73,7 +88,7 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         mClassFiles.addAll(D8Task.getClassFiles(
                 new File(getModule().getBuildDirectory(), "bin/kotlin/classes")));
         for (Cache.Key<String> key : new HashSet<>(mDexCache.getKeys())) {
-            if (!mFilesToCompile.contains(key.file)) {
+            if (!mClassFiles.contains(key.file)) {
                 File file = mDexCache.get(key.file, "dex").iterator().next();
                 deleteAllFiles(file, ".dex");
                 mDexCache.remove(key.file, "dex");
@@ -194,53 +209,13 @@ public class IncrementalD8Task extends Task<AndroidModule> {
     }
 
     /**
-     * Ensures that all libraries of the project has been dex-ed
+     * Ensures that all libraries of the project has been dex-ed, this is usually already done
+     * by {@link DexLibrariesTask}
      *
      * @throws com.android.tools.r8.CompilationFailedException if the compilation has failed
      */
     protected void ensureDexedLibraries() throws com.android.tools.r8.CompilationFailedException {
-        List<File> libraries = getModule().getLibraries();
-
-        for (File lib : libraries) {
-            File parentFile = lib.getParentFile();
-            if (parentFile == null) {
-                continue;
-            }
-            File[] libFiles = lib.getParentFile().listFiles();
-            if (libFiles == null) {
-                if (!lib.delete()) {
-                    getLogger().warning("Failed to delete " + lib.getAbsolutePath());
-                }
-            } else {
-                File dex = new File(lib.getParentFile(), "classes.dex");
-                if (dex.exists()) {
-                    continue;
-                }
-                if (lib.exists()) {
-                    String message;
-                    CodeAssistLibrary library = getModule().getLibrary(parentFile.getName());
-                    if (library != null) {
-                        boolean declared = library.getDeclaration() != null;
-                        message = "Dexing library " +
-                                  (declared ? library.getDeclaration() : library.getSourceFile()
-                                          .getName());
-                    } else {
-                        message = "Dexing jar " + parentFile.getName();
-                    }
-                    getLogger().debug(message);
-                    D8Command command = D8Command.builder(diagnosticsHandler)
-                                    .addLibraryFiles(getLibraryFiles())
-                                    .addClasspathFiles(libraries.stream().map(File::toPath)
-                                                               .collect(Collectors.toList()))
-                                    .addProgramFiles(lib.toPath())
-                                    .setMode(CompilationMode.RELEASE)
-                                    .setMinApiLevel(getModule().getMinSdk())
-                                    .setOutput(lib.getParentFile().toPath(), OutputMode.DexIndexed)
-                                    .build();
-                    D8.run(command);
-                }
-            }
-        }
+        DexLibrariesTask.dexLibraries(getModule(), getLogger(), diagnosticsHandler);
     }
 
     private List<Path> getLibraryFiles() {
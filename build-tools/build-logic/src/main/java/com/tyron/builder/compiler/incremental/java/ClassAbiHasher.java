@@ -0,0 +1,157 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Computes a hash of the parts of a class file that other classes can compile against:
+ * the class header, the non private fields and methods and their annotations.
+ * Method bodies, private members and debug information do not contribute to the hash,
+ * so editing the implementation of a method keeps the hash stable.
+ */
+class ClassAbiHasher extends ClassVisitor {
+
+    private final List<String> mHeader = new ArrayList<>();
+    private final List<String> mMembers = new ArrayList<>();
+
+    private ClassAbiHasher() {
+        super(Opcodes.ASM9);
+    }
+
+    public static HashCode hash(ClassReader reader) {
+        ClassAbiHasher hasher = new ClassAbiHasher();
+        reader.accept(hasher, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+        // members are sorted so that reordering declarations doesn't change the ABI
+        Collections.sort(hasher.mMembers);
+
+        Hasher result = Hashing.murmur3_128().newHasher();
+        for (String header : hasher.mHeader) {
+            result.putUnencodedChars(header).putByte((byte) 0);
+        }
+        for (String member : hasher.mMembers) {
+            result.putUnencodedChars(member).putByte((byte) 0);
+        }
+        return result.hash();
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName,
+                      String[] interfaces) {
+        mHeader.add("class " + access + " " + name + " " + signature + " " + superName + " " +
+                    (interfaces == null ? "" : Arrays.toString(interfaces)));
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+        mHeader.add("annotation " + descriptor);
+        return null;
+    }
+
+    @Override
+    public void visitInnerClass(String name, String outerName, String innerName, int access) {
+        if (!isPrivate(access)) {
+            mHeader.add("inner " + name + " " + outerName + " " + innerName + " " + access);
+        }
+    }
+
+    @Override
+    public void visitPermittedSubclass(String permittedSubclass) {
+        mHeader.add("permitted " + permittedSubclass);
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String descriptor, String signature,
+                                   Object value) {
+        if (isPrivate(access)) {
+            return null;
+        }
+        String field = "field " + access + " " + name + " " + descriptor + " " + signature + " " +
+                       value;
+        mMembers.add(field);
+        return new FieldVisitor(api) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String annotation, boolean visible) {
+                mMembers.add(field + " @" + annotation);
+                return null;
+            }
+        };
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                                     String[] exceptions) {
+        if (isPrivate(access) || (access & Opcodes.ACC_SYNTHETIC) != 0) {
+            return null;
+        }
+        String method = "method " + access + " " + name + " " + descriptor + " " + signature +
+                        " " + (exceptions == null ? "" : Arrays.toString(exceptions));
+        mMembers.add(method);
+        return new MethodVisitor(api) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String annotation, boolean visible) {
+                mMembers.add(method + " @" + annotation);
+                return null;
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotationDefault() {
+                // the default value of an annotation attribute is inlined by the compiler
+                return new ValueRecorder(method + " default");
+            }
+        };
+    }
+
+    /**
+     * Records the values of an annotation default into the members of the ABI
+     */
+    private class ValueRecorder extends AnnotationVisitor {
+
+        private final String mPrefix;
+
+        ValueRecorder(String prefix) {
+            super(Opcodes.ASM9);
+            mPrefix = prefix;
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            String string = value != null && value.getClass().isArray()
+                    ? Arrays.deepToString(new Object[]{value})
+                    : String.valueOf(value);
+            mMembers.add(mPrefix + " " + name + "=" + string);
+        }
+
+        @Override
+        public void visitEnum(String name, String descriptor, String value) {
+            mMembers.add(mPrefix + " " + name + "=" + descriptor + "." + value);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String name, String descriptor) {
+            return new ValueRecorder(mPrefix + " " + name + "=@" + descriptor);
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(String name) {
+            return new ValueRecorder(mPrefix + " " + name + "[]");
+        }
+    }
+
+    private static boolean isPrivate(int access) {
+        return (access & Opcodes.ACC_PRIVATE) != 0;
+    }
+}
@@ -0,0 +1,276 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import com.google.common.hash.HashCode;
+
+import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.api.internal.tasks.compile.incremental.asm.ClassDependenciesVisitor;
+import org.gradle.api.internal.tasks.compile.incremental.compilerapi.deps.DependentsSet;
+import org.gradle.api.internal.tasks.compile.incremental.deps.ClassAnalysis;
+import org.gradle.api.internal.tasks.compile.incremental.deps.ClassDependentsAccumulator;
+import org.gradle.api.internal.tasks.compile.incremental.deps.ClassSetAnalysis;
+import org.gradle.internal.serialize.HashCodeSerializer;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.objectweb.asm.ClassReader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+
+/**
+ * A persistent class level dependency graph of the compiled classes of a module.
+ *
+ * <p>Every class is stored along with the source file that produced it, its
+ * {@link ClassAnalysis} and a hash of its ABI. When a source file is recompiled, the classes
+ * whose ABI changed are reported so that only their transitive dependents have to be compiled
+ * again. The graph is answered by Gradle's {@link ClassSetAnalysis}.
+ */
+public class ClassDependencyIndex {
+
+    private static final int VERSION = 1;
+
+    private static class ClassEntry {
+        private final File source;
+        private final ClassAnalysis analysis;
+        private final HashCode abiHash;
+
+        private ClassEntry(File source, ClassAnalysis analysis, HashCode abiHash) {
+            this.source = source;
+            this.analysis = analysis;
+            this.abiHash = abiHash;
+        }
+    }
+
+    private final File mStore;
+    private final StringInterner mInterner = new StringInterner();
+    private final Map<String, ClassEntry> mClasses = new HashMap<>();
+    private ClassSetAnalysis mAnalysis;
+    private boolean mModified;
+
+    /**
+     * Reads the index from the given file, if the file does not exist or is unreadable an empty
+     * index is returned.
+     */
+    public static ClassDependencyIndex load(File store) {
+        ClassDependencyIndex index = new ClassDependencyIndex(store);
+        if (store.exists()) {
+            try {
+                index.read();
+            } catch (Exception e) {
+                index.mClasses.clear();
+                index.mModified = true;
+            }
+        }
+        return index;
+    }
+
+    private ClassDependencyIndex(File store) {
+        mStore = store;
+    }
+
+    public boolean isEmpty() {
+        return mClasses.isEmpty();
+    }
+
+    /**
+     * @return The source files that have classes recorded in this index
+     */
+    public Set<File> getSources() {
+        Set<File> sources = new HashSet<>();
+        for (ClassEntry entry : mClasses.values()) {
+            sources.add(entry.source);
+        }
+        return sources;
+    }
+
+    /**
+     * @return The names of the classes that were generated from the given source file
+     */
+    public Set<String> getClasses(File source) {
+        Set<String> classes = new HashSet<>();
+        for (Map.Entry<String, ClassEntry> entry : mClasses.entrySet()) {
+            if (entry.getValue().source.equals(source)) {
+                classes.add(entry.getKey());
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * @return The source file that generated the given class, or null if it is unknown
+     */
+    public File getSource(String className) {
+        ClassEntry entry = mClasses.get(className);
+        if (entry == null) {
+            return null;
+        }
+        return entry.source;
+    }
+
+    /**
+     * Replaces the classes recorded for a source file with the newly compiled ones.
+     *
+     * @param source           the source file that has been compiled
+     * @param classFiles       the class files generated from it, keyed by binary class name
+     * @param changedConstants receives the inlineable constants that have been changed or removed
+     * @return the names of the classes whose ABI changed, including added and removed classes
+     */
+    public Set<String> update(File source,
+                              Map<String, File> classFiles,
+                              Map<String, IntSet> changedConstants) throws IOException {
+        Set<String> changed = new HashSet<>();
+        for (String removed : getClasses(source)) {
+            if (!classFiles.containsKey(removed)) {
+                ClassEntry entry = mClasses.remove(removed);
+                addChangedConstants(removed, entry.analysis.getConstants(), null,
+                        changedConstants);
+                changed.add(removed);
+            }
+        }
+
+        for (Map.Entry<String, File> classFile : classFiles.entrySet()) {
+            String className = classFile.getKey();
+            ClassReader reader = new ClassReader(Files.readAllBytes(classFile.getValue().toPath()));
+            ClassAnalysis analysis = ClassDependenciesVisitor.analyze(className, reader, mInterner);
+            HashCode abiHash = ClassAbiHasher.hash(reader);
+
+            ClassEntry previous = mClasses.put(className, new ClassEntry(source, analysis, abiHash));
+            if (previous == null) {
+                changed.add(className);
+            } else {
+                addChangedConstants(className, previous.analysis.getConstants(),
+                        analysis.getConstants(), changedConstants);
+                if (!previous.abiHash.equals(abiHash)) {
+                    changed.add(className);
+                }
+            }
+        }
+
+        mAnalysis = null;
+        mModified = true;
+        return changed;
+    }
+
+    /**
+     * Removes the classes generated from a source file that no longer exists
+     *
+     * @return the names of the removed classes
+     */
+    public Set<String> remove(File source, Map<String, IntSet> changedConstants) {
+        Set<String> removed = new HashSet<>();
+        Iterator<Map.Entry<String, ClassEntry>> iterator = mClasses.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, ClassEntry> entry = iterator.next();
+            if (entry.getValue().source.equals(source)) {
+                addChangedConstants(entry.getKey(), entry.getValue().analysis.getConstants(),
+                        null, changedConstants);
+                removed.add(entry.getKey());
+                iterator.remove();
+            }
+        }
+        if (!removed.isEmpty()) {
+            mAnalysis = null;
+            mModified = true;
+        }
+        return removed;
+    }
+
+    /**
+     * Finds the classes that have to be recompiled because of a change in the given classes.
+     * Classes referencing a changed class are always included, classes that expose it in their
+     * own ABI are followed transitively.
+     */
+    public DependentsSet getDependents(Collection<String> changedClasses,
+                                       Map<String, IntSet> changedConstants) {
+        if (mAnalysis == null) {
+            ClassDependentsAccumulator accumulator = new ClassDependentsAccumulator();
+            for (ClassEntry entry : mClasses.values()) {
+                accumulator.addClass(entry.analysis, entry.abiHash);
+            }
+            mAnalysis = new ClassSetAnalysis(accumulator.getAnalysis());
+        }
+        return mAnalysis.findTransitiveDependents(changedClasses, changedConstants);
+    }
+
+    public void clear() {
+        mClasses.clear();
+        mAnalysis = null;
+        mModified = true;
+    }
+
+    private static void addChangedConstants(String className,
+                                            IntSet previous,
+                                            IntSet current,
+                                            Map<String, IntSet> changedConstants) {
+        if (previous.isEmpty()) {
+            return;
+        }
+        IntSet difference = new IntOpenHashSet(previous);
+        if (current != null) {
+            difference.removeAll(current);
+        }
+        if (!difference.isEmpty()) {
+            changedConstants.put(className, difference);
+        }
+    }
+
+    private void read() throws Exception {
+        HashCodeSerializer hashSerializer = new HashCodeSerializer();
+        ClassAnalysis.Serializer analysisSerializer = new ClassAnalysis.Serializer(mInterner);
+        try (KryoBackedDecoder decoder = new KryoBackedDecoder(new FileInputStream(mStore))) {
+            if (decoder.readSmallInt() != VERSION) {
+                throw new IOException("Unsupported class dependency index version");
+            }
+            Map<String, File> sources = new HashMap<>();
+            int size = decoder.readSmallInt();
+            for (int i = 0; i < size; i++) {
+                String sourcePath = decoder.readString();
+                File source = sources.computeIfAbsent(sourcePath, File::new);
+                ClassAnalysis analysis = analysisSerializer.read(decoder);
+                HashCode abiHash = hashSerializer.read(decoder);
+                mClasses.put(analysis.getClassName(), new ClassEntry(source, analysis, abiHash));
+            }
+        }
+    }
+
+    /**
+     * Writes the index to disk if it has been modified since it was loaded
+     */
+    public void save() throws IOException {
+        if (!mModified) {
+            return;
+        }
+        File parent = mStore.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+
+        HashCodeSerializer hashSerializer = new HashCodeSerializer();
+        ClassAnalysis.Serializer analysisSerializer = new ClassAnalysis.Serializer(mInterner);
+        try (KryoBackedEncoder encoder = new KryoBackedEncoder(new FileOutputStream(mStore))) {
+            encoder.writeSmallInt(VERSION);
+            encoder.writeSmallInt(mClasses.size());
+            for (ClassEntry entry : mClasses.values()) {
+                encoder.writeString(entry.source.getAbsolutePath());
+                analysisSerializer.write(encoder, entry.analysis);
+                hashSerializer.write(encoder, entry.abiHash);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Unable to write class dependency index", e);
+        }
+        mModified = false;
+    }
+}
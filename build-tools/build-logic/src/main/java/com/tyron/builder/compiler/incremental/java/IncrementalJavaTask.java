@@ -3,10 +3,13 @@ package com.tyron.builder.compiler.incremental.java;
 import androidx.annotation.VisibleForTesting;
 
 import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
 import com.sun.tools.javac.api.JavacTool;
 import com.sun.tools.javac.file.JavacFileManager;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.TaskArtifact;
 import com.tyron.builder.compiler.incremental.kotlin.IncrementalKotlinCompiler;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
@@ -14,40 +17,51 @@ import com.tyron.builder.model.DiagnosticWrapper;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.builder.project.api.JavaModule;
+import com.tyron.builder.project.api.Module;
 import com.tyron.builder.project.cache.CacheHolder;
 import com.tyron.common.util.Cache;
+import com.tyron.common.util.DataExternalizer;
 
 import org.apache.commons.io.FileUtils;
+import org.gradle.api.internal.tasks.compile.incremental.compilerapi.deps.DependentsSet;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Objects;
+import java.util.Map;
+import java.util.Set;
 
 import javax.tools.DiagnosticListener;
 import javax.tools.JavaFileObject;
 import javax.tools.SimpleJavaFileObject;
 import javax.tools.StandardLocation;
 
+import it.unimi.dsi.fastutil.ints.IntSet;
+
 public class IncrementalJavaTask extends Task<JavaModule> {
 
     public static final CacheHolder.CacheKey<String, List<File>> CACHE_KEY =
-            new CacheHolder.CacheKey<>("javaCache");
+            new CacheHolder.PersistentCacheKey<>("javaCache", DataExternalizer.STRING,
+                    DataExternalizer.FILE_LIST);
     private static final String TAG = IncrementalJavaTask.class.getSimpleName();
 
     private File mOutputDir;
     private List<File> mJavaFiles;
     private List<File> mFilesToCompile;
     private Cache<String, List<File>> mClassCache;
+    private ClassDependencyIndex mIndex;
+    private Set<String> mRemovedClasses;
+    private Map<String, IntSet> mRemovedConstants;
 
     public IncrementalJavaTask(Project project, JavaModule module, ILogger logger) {
         super(project, module, logger);
@@ -58,6 +72,18 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         return TAG;
     }
 
+    @Override
+    public Set<TaskArtifact> getInputs() {
+        return EnumSet.of(TaskArtifact.LIBRARIES, TaskArtifact.JAVA_SOURCES, TaskArtifact.RESOURCES,
+                TaskArtifact.LIBRARY_SYMBOLS, TaskArtifact.VIEW_BINDINGS,
+                TaskArtifact.KOTLIN_CLASSES);
+    }
+
+    @Override
+    public Set<TaskArtifact> getOutputs() {
+        return EnumSet.of(TaskArtifact.JAVA_CLASSES);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mOutputDir = new File(getModule().getBuildDirectory(), "bin/java/classes");
@@ -66,38 +92,113 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         }
 
         mFilesToCompile = new ArrayList<>();
+        mRemovedClasses = new HashSet<>();
+        mRemovedConstants = new HashMap<>();
         mClassCache = getModule().getCache(CACHE_KEY, new Cache<>());
+        mIndex = ClassDependencyIndex.load(getClassDependencyIndexFile(getModule()));
 
-        mJavaFiles = new ArrayList<>(getModule().getJavaFiles().values());
+        mJavaFiles = new ArrayList<>();
+        for (File file : getModule().getJavaFiles().values()) {
+            mJavaFiles.add(file.getAbsoluteFile());
+        }
         if (getModule() instanceof AndroidModule) {
-            mJavaFiles.addAll(((AndroidModule) getModule()).getResourceClasses().values());
+            for (File file : ((AndroidModule) getModule()).getResourceClasses().values()) {
+                mJavaFiles.add(file.getAbsoluteFile());
+            }
         }
-        for (Cache.Key<String> key : new HashSet<>(mClassCache.getKeys())) {
-            if (!mJavaFiles.contains(key.file.toFile())) {
-                File file = mClassCache.get(key.file, "class").iterator().next();
-                deleteAllFiles(file, ".class");
+        Set<File> javaFiles = new HashSet<>(mJavaFiles);
+
+        for (Cache.Key<String> key : mClassCache.getKeys()) {
+            if (!javaFiles.contains(key.file.toFile())) {
                 mClassCache.remove(key.file, "class", "dex");
             }
         }
+        for (File source : mIndex.getSources()) {
+            if (!javaFiles.contains(source)) {
+                Set<String> removed = mIndex.remove(source, mRemovedConstants);
+                for (String className : removed) {
+                    deleteClassFile(className);
+                }
+                mRemovedClasses.addAll(removed);
+            }
+        }
 
+        // without a dependency graph the dependents of a change cannot be found
+        boolean full = mIndex.isEmpty();
         for (File file : mJavaFiles) {
-            Path filePath = file.toPath();
-            if (mClassCache.needs(filePath, "class")) {
+            if (full || mClassCache.needs(file.toPath(), "class")) {
                 mFilesToCompile.add(file);
             }
         }
-
     }
 
     private boolean mHasErrors = false;
 
     @Override
     public void run() throws IOException, CompilationFailedException {
-        if (mFilesToCompile.isEmpty()) {
-            return;
+        Set<File> compiled = new HashSet<>();
+        Set<File> pending = new LinkedHashSet<>(mFilesToCompile);
+        Set<String> changedClasses = mRemovedClasses;
+        Map<String, IntSet> changedConstants = mRemovedConstants;
+        try {
+            while (true) {
+                pending.addAll(findDependentSources(changedClasses, changedConstants));
+                pending.removeAll(compiled);
+                if (pending.isEmpty()) {
+                    break;
+                }
+
+                changedClasses = new HashSet<>();
+                changedConstants = new HashMap<>();
+                compile(new ArrayList<>(pending), changedClasses, changedConstants);
+                compiled.addAll(pending);
+                pending.clear();
+            }
+        } finally {
+            // keep the classes of the rounds that succeeded, the sources of a failed round
+            // are still out of date in the class cache and are compiled again next time
+            mFilesToCompile = new ArrayList<>(compiled);
+            mIndex.save();
+        }
+    }
+
+    /**
+     * Finds the source files that have to be recompiled because the ABI of the given
+     * classes has changed
+     */
+    private Set<File> findDependentSources(Set<String> changedClasses,
+                                           Map<String, IntSet> changedConstants) {
+        if (changedClasses.isEmpty()) {
+            return Collections.emptySet();
+        }
+        DependentsSet dependents = mIndex.getDependents(changedClasses, changedConstants);
+        if (dependents.isDependencyToAll()) {
+            getLogger().debug("Full recompilation is required because " +
+                              dependents.getDescription());
+            return new HashSet<>(mJavaFiles);
+        }
+
+        Set<File> javaFiles = new HashSet<>(mJavaFiles);
+        Set<File> sources = new HashSet<>();
+        for (String className : dependents.getAllDependentClasses()) {
+            File source = mIndex.getSource(className);
+            if (source != null && javaFiles.contains(source)) {
+                sources.add(source);
+            }
         }
+        return sources;
+    }
 
-        getLogger().debug("Compiling java files");
+    private void compile(List<File> filesToCompile,
+                         Set<String> changedClasses,
+                         Map<String, IntSet> changedConstants) throws IOException,
+            CompilationFailedException {
+        getLogger().debug("Compiling " + filesToCompile.size() + " java file(s)");
+
+        // the files stay out of date until they compile successfully
+        for (File file : filesToCompile) {
+            mClassCache.remove(file.toPath(), "class");
+        }
 
         DiagnosticListener<JavaFileObject> diagnosticCollector = diagnostic -> {
             switch (diagnostic.getKind()) {
@@ -136,7 +237,7 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         }
 
         List<JavaFileObject> javaFileObjects = new ArrayList<>();
-        for (File file : mFilesToCompile) {
+        for (File file : filesToCompile) {
             javaFileObjects.add(new SimpleJavaFileObject(file.toURI(), JavaFileObject.Kind.SOURCE) {
                 @Override
                 public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
@@ -153,61 +254,29 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         JavacTask task = tool.getTask(null, standardJavaFileManager, diagnosticCollector,
                 options, null, javaFileObjects);
 
-        HashMap<String, List<File>> compiledFiles = new HashMap<>();
-        try {
-
-            task.parse();
-            task.analyze();
-            Iterable<? extends JavaFileObject> generate = task.generate();
-            for (JavaFileObject fileObject : generate) {
-                String path = fileObject.getName();
-                File classFile = new File(path);
-                if (classFile. exists()) {
-                    String classPath = classFile.getAbsolutePath().replace("build/bin/classes/",
-                            "src/main/java/").replace(".class", ".java");
-                    if (classFile.getName().indexOf('$') != -1) {
-                        classPath = classPath.substring(0, classPath.indexOf('$')) + ".java";
-                    }
-                    File file = new File(classPath);
-                    if (!file.exists()) {
-                        file = new File(classPath.replace("src/main/java", "build/gen"));
-                    }
-
-                    if (!compiledFiles.containsKey(file.getAbsolutePath())) {
-                        ArrayList<File> list = new ArrayList<>();
-                        list.add(classFile);
-                        compiledFiles.put(file.getAbsolutePath(), list);
-                    } else {
-                        Objects.requireNonNull(compiledFiles.get(file.getAbsolutePath())).add(classFile);
-                    }
-                    mClassCache.load(file.toPath(), "class", Collections.singletonList(classFile));
+        // source file -> (binary class name -> class file) of every generated class
+        Map<File, Map<String, File>> generated = new HashMap<>();
+        for (File file : filesToCompile) {
+            generated.put(file, new HashMap<>());
+        }
+        task.addTaskListener(new TaskListener() {
+            @Override
+            public void finished(TaskEvent e) {
+                if (e.getKind() != TaskEvent.Kind.GENERATE || e.getTypeElement() == null) {
+                    return;
                 }
+                File source = new File(e.getSourceFile().toUri()).getAbsoluteFile();
+                String className = task.getElements().getBinaryName(e.getTypeElement())
+                        .toString();
+                generated.computeIfAbsent(source, it -> new HashMap<>())
+                        .put(className, getClassFile(className));
             }
+        });
 
-            compiledFiles.forEach((key, values) -> {
-                File sourceFile = new File(key);
-                String name = sourceFile.getName().replace(".java", "");
-                File first = values.iterator().next();
-                File parent = first.getParentFile();
-                if (parent != null) {
-                    File[] children = parent.listFiles(c -> {
-                        if (!c.getName().contains("$")) {
-                            return false;
-                        }
-                        String baseClassName = c.getName().substring(0, c.getName().indexOf('$'));
-                        return baseClassName.equals(name);
-                    });
-                    if (children != null) {
-                        for (File file : children) {
-                            if (!values.contains(file)) {
-                                if (file.delete()) {
-                                    getLogger().debug("Deleted file " + file.getAbsolutePath());
-                                }
-                            }
-                        }
-                    }
-                }
-            });
+        try {
+            task.parse();
+            task.analyze();
+            task.generate();
         } catch (Exception e) {
             throw new CompilationFailedException(e);
         }
@@ -215,6 +284,18 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         if (mHasErrors) {
             throw new CompilationFailedException("Compilation failed, check logs for more details");
         }
+
+        for (Map.Entry<File, Map<String, File>> entry : generated.entrySet()) {
+            File source = entry.getKey();
+            Map<String, File> classes = entry.getValue();
+            for (String previous : mIndex.getClasses(source)) {
+                if (!classes.containsKey(previous)) {
+                    deleteClassFile(previous);
+                }
+            }
+            changedClasses.addAll(mIndex.update(source, classes, changedConstants));
+            mClassCache.load(source.toPath(), "class", new ArrayList<>(classes.values()));
+        }
     }
 
     @VisibleForTesting
@@ -222,27 +303,22 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         return mFilesToCompile;
     }
 
-    private File findClassFile(String packageName) {
-        String path = packageName.replace(".", "/").concat(".class");
-        return new File(mOutputDir, path);
+    private File getClassFile(String className) {
+        return new File(mOutputDir, className.replace('.', '/') + ".class");
     }
 
-    private void deleteAllFiles(File classFile, String ext) throws IOException {
-        File parent = classFile.getParentFile();
-        String name = classFile.getName().replace(ext, "");
-        if (parent != null) {
-            File[] children =
-                    parent.listFiles((c) -> c.getName().endsWith(ext) && c.getName().contains("$"));
-            if (children != null) {
-                for (File child : children) {
-                    if (child.getName().startsWith(name)) {
-                        FileUtils.delete(child);
-                    }
-                }
-            }
-        }
+    private void deleteClassFile(String className) throws IOException {
+        File classFile = getClassFile(className);
         if (classFile.exists()) {
             FileUtils.delete(classFile);
+            getLogger().debug("Deleted file " + classFile.getAbsolutePath());
         }
     }
+
+    /**
+     * @return The file where the class dependency graph of the module is stored
+     */
+    public static File getClassDependencyIndexFile(Module module) {
+        return new File(module.getBuildDirectory(), "caches/javaClassDependencies.bin");
+    }
 }
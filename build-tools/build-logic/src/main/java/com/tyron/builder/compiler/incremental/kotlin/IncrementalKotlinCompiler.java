@@ -7,6 +7,7 @@ import androidx.annotation.NonNull;
 import com.google.common.base.Throwables;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.TaskArtifact;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.model.DiagnosticWrapper;
@@ -31,8 +32,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import kotlin.jvm.functions.Function0;
@@ -56,6 +59,17 @@ public class IncrementalKotlinCompiler extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<TaskArtifact> getInputs() {
+        return EnumSet.of(TaskArtifact.LIBRARIES, TaskArtifact.JAVA_SOURCES, TaskArtifact.RESOURCES,
+                TaskArtifact.LIBRARY_SYMBOLS, TaskArtifact.VIEW_BINDINGS);
+    }
+
+    @Override
+    public Set<TaskArtifact> getOutputs() {
+        return EnumSet.of(TaskArtifact.KOTLIN_CLASSES);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mFilesToCompile = new ArrayList<>();
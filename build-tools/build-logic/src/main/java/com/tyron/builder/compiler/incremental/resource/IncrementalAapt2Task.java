@@ -1,8 +1,14 @@
 package com.tyron.builder.compiler.incremental.resource;
 
+import androidx.annotation.Nullable;
+
 import com.android.tools.aapt2.Aapt2Jni;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.TaskArtifact;
+import com.tyron.builder.compiler.cache.LibraryBuildCache;
+import com.tyron.builder.compiler.java.CheckLibrariesTask;
+import com.tyron.builder.compiler.java.LibraryFingerprints;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.log.LogUtils;
@@ -14,16 +20,25 @@ import com.tyron.builder.project.api.Module;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.gradle.caching.BuildCacheKey;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 public class IncrementalAapt2Task extends Task<AndroidModule> {
@@ -45,6 +60,17 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<TaskArtifact> getInputs() {
+        return EnumSet.of(TaskArtifact.LIBRARIES, TaskArtifact.MANIFEST,
+                TaskArtifact.FIREBASE_CONFIG, TaskArtifact.CRASHLYTICS_CONFIG);
+    }
+
+    @Override
+    public Set<TaskArtifact> getOutputs() {
+        return EnumSet.of(TaskArtifact.RESOURCES);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
 
@@ -104,9 +130,18 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
         copyMapToDir(files);
     }
 
+    /**
+     * Compiles the resources of the given libraries in parallel. The compiled resources of a
+     * library are stored as {@code bin/res/<library hash>.zip}, since the contents of a library
+     * never change for a given hash they are only compiled once. They are also shared with the
+     * other projects through the {@link LibraryBuildCache}.
+     */
     private void compileLibraries(List<File> libraries) throws IOException,
             CompilationFailedException {
-        getLogger().debug("Compiling libraries.");
+        if (libraries.isEmpty()) {
+            return;
+        }
+        getLogger().debug("Compiling " + libraries.size() + " libraries.");
 
         File output = new File(getModule().getBuildDirectory(), "bin/res");
         if (!output.exists()) {
@@ -115,34 +150,127 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
             }
         }
 
-        for (File file : libraries) {
-            File parent = file.getParentFile();
-            if (parent == null) {
-                throw new IOException("CodeAssistLibrary folder doesn't exist");
-            }
-            File[] files = parent.listFiles();
-            if (files == null) {
-                continue;
+        LibraryBuildCache cache = LibraryBuildCache.getInstance();
+        String aapt2Hash = cache != null ? getAapt2Hash() : null;
+
+        int workers = Math.max(1, Math.min(libraries.size(),
+                Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        List<Future<LibraryResult>> futures = new ArrayList<>(libraries.size());
+        try {
+            for (File library : libraries) {
+                BuildCacheKey key = aapt2Hash != null ? getCacheKey(library, aapt2Hash) : null;
+                futures.add(executor.submit(() -> compileLibrary(library, output, cache, key)));
             }
 
-            for (File inside : files) {
-                if (inside.isDirectory() && inside.getName().equals("res")) {
-                    List<String> args = new ArrayList<>();
-                    args.add("--dir");
-                    args.add(inside.getAbsolutePath());
-                    args.add("-o");
-                    args.add(createNewFile(output, parent.getName() + ".zip").getAbsolutePath());
-
-                    int compile = Aapt2Jni.compile(args);
-                    List<DiagnosticWrapper> logs = Aapt2Jni.getLogs();
-                    LogUtils.log(logs, getLogger());
-
-                    if (compile != 0) {
-                        throw new CompilationFailedException(
-                                "Compilation failed, check logs for more details.");
+            // results are logged in the order of the libraries to keep the logs stable
+            boolean failed = false;
+            for (Future<LibraryResult> future : futures) {
+                LibraryResult result;
+                try {
+                    result = future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
                     }
+                    throw new CompilationFailedException(cause.getMessage(), cause);
                 }
+                LogUtils.log(result.logs, getLogger());
+                failed |= result.exitCode != 0;
+            }
+
+            if (failed) {
+                throw new CompilationFailedException(
+                        "Compilation failed, check logs for more details.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompilationFailedException("Resource compilation was interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Compiles the res directory of a library into a temporary file that is only moved to its
+     * final location once aapt2 has succeeded, so a failed compilation is never mistaken for a
+     * cached result.
+     */
+    private static LibraryResult compileLibrary(File library,
+                                                File output,
+                                                @Nullable LibraryBuildCache cache,
+                                                @Nullable BuildCacheKey key) throws IOException {
+        File parent = library.getParentFile();
+        if (parent == null) {
+            throw new IOException("CodeAssistLibrary folder doesn't exist");
+        }
+        File resDir = new File(parent, "res");
+        File compiled = new File(output, parent.getName() + ".zip");
+        File temp = new File(output, parent.getName() + ".zip.tmp");
+        Files.deleteIfExists(temp.toPath());
+
+        if (cache != null && key != null && cache.loadFile(key, compiled)) {
+            return new LibraryResult(0, Collections.emptyList());
+        }
+
+        List<String> args = new ArrayList<>();
+        args.add("--dir");
+        args.add(resDir.getAbsolutePath());
+        args.add("-o");
+        args.add(temp.getAbsolutePath());
+
+        int exitCode = Aapt2Jni.compile(args);
+        // the logs are per thread, copy them before this worker compiles another library
+        List<DiagnosticWrapper> logs = new ArrayList<>(Aapt2Jni.getLogs());
+
+        if (exitCode == 0 && temp.exists()) {
+            Files.move(temp.toPath(), compiled.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            if (cache != null && key != null) {
+                cache.storeFile(key, compiled);
             }
+        } else {
+            Files.deleteIfExists(temp.toPath());
+        }
+        return new LibraryResult(exitCode, logs);
+    }
+
+    /**
+     * @return The key of the compiled resources of a library in the {@link LibraryBuildCache},
+     * or null if the name of its folder is not the content hash of the library
+     */
+    @Nullable
+    private BuildCacheKey getCacheKey(File library, String aapt2Hash) {
+        File parent = library.getParentFile();
+        if (parent == null || getModule().getLibrary(parent.getName()) == null) {
+            return null;
+        }
+        return LibraryBuildCache.createKey("aapt2-compile", aapt2Hash, parent.getName());
+    }
+
+    /**
+     * @return The content hash of the aapt2 binary, so that compiled resources are not shared
+     * between different versions of aapt2
+     */
+    @Nullable
+    private String getAapt2Hash() {
+        LibraryFingerprints fingerprints = CheckLibrariesTask.getFingerprints(getModule());
+        String hash = fingerprints.hash(new File(Aapt2Jni.getBinary()));
+        try {
+            fingerprints.save();
+        } catch (IOException e) {
+            getLogger().warning("Failed to save library fingerprints: " + e.getMessage());
+        }
+        return hash;
+    }
+
+    private static class LibraryResult {
+        private final int exitCode;
+        private final List<DiagnosticWrapper> logs;
+
+        private LibraryResult(int exitCode, List<DiagnosticWrapper> logs) {
+            this.exitCode = exitCode;
+            this.logs = logs;
         }
     }
 
@@ -441,9 +569,10 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
     }
 
     /**
-     * Returns the list of resource directories of libraries that needs to be compiled
-     * It determines whether the library should be compiled by checking the build/bin/res folder,
-     * if it contains a zip file with its name, then its most likely the same library
+     * Returns the list of libraries whose resources need to be compiled. Libraries are stored
+     * in a directory named after the hash of their contents, so a library is compiled only if
+     * build/bin/res doesn't contain a zip file with that name. Zip files of libraries that
+     * have been removed are deleted so they are not linked.
      */
     private List<File> getLibraries() throws IOException {
         File resDir = new File(getModule().getBuildDirectory(), "bin/res");
@@ -454,6 +583,7 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
         }
 
         List<File> libraries = new ArrayList<>();
+        Set<String> compiledNames = new HashSet<>();
 
         for (File library : getModule().getLibraries()) {
             File parent = library.getParentFile();
@@ -464,13 +594,27 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
                     continue;
                 }
 
-                File check = new File(resDir, parent.getName() + ".zip");
-                if (!check.exists()) {
+                String name = parent.getName() + ".zip";
+                if (!compiledNames.add(name)) {
+                    continue;
+                }
+                File check = new File(resDir, name);
+                if (!check.exists() || check.length() == 0) {
                     libraries.add(library);
                 }
             }
         }
 
+        File[] compiled = resDir.listFiles(c -> c.isFile() &&
+                (c.getName().endsWith(".zip") || c.getName().endsWith(".zip.tmp")));
+        if (compiled != null) {
+            for (File file : compiled) {
+                if (!compiledNames.contains(file.getName())) {
+                    Files.deleteIfExists(file.toPath());
+                }
+            }
+        }
+
         return libraries;
     }
 
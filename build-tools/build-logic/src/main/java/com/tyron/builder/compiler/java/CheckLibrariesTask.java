@@ -6,6 +6,7 @@ import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.TaskArtifact;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.model.CodeAssistLibrary;
@@ -15,16 +16,14 @@ import com.tyron.builder.project.api.Module;
 import com.tyron.common.util.Decompress;
 
 import org.apache.commons.io.FileUtils;
+import org.jetbrains.kotlin.com.intellij.openapi.util.Key;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -37,6 +36,9 @@ import java.util.zip.ZipFile;
  */
 public class CheckLibrariesTask extends Task<JavaModule> {
 
+    private static final Key<LibraryFingerprints> FINGERPRINTS_KEY =
+            Key.create("libraryFingerprints");
+
     public CheckLibrariesTask(Project project, JavaModule module, ILogger logger) {
         super(project, module, logger);
     }
@@ -46,6 +48,16 @@ public class CheckLibrariesTask extends Task<JavaModule> {
         return CheckLibrariesTask.class.getSimpleName();
     }
 
+    @Override
+    public Set<TaskArtifact> getInputs() {
+        return EnumSet.noneOf(TaskArtifact.class);
+    }
+
+    @Override
+    public Set<TaskArtifact> getOutputs() {
+        return EnumSet.of(TaskArtifact.LIBRARIES);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
 
@@ -59,16 +71,15 @@ public class CheckLibrariesTask extends Task<JavaModule> {
     private void checkLibraries(JavaModule project, ILogger logger, List<File> newLibraries) throws IOException {
         Set<CodeAssistLibrary> libraries = new HashSet<>();
 
-        Map<String, CodeAssistLibrary> fileLibsHashes = new HashMap<>();
-        File[] fileLibraries = project.getLibraryDirectory().listFiles(c ->
+        List<CodeAssistLibrary> fileLibraries = new ArrayList<>();
+        File[] libraryFiles = project.getLibraryDirectory().listFiles(c ->
                 c.getName().endsWith(".aar") || c.getName().endsWith(".jar"));
-        if (fileLibraries != null) {
-            for (File fileLibrary : fileLibraries) {
-                try {
-                    ZipFile zipFile = new ZipFile(fileLibrary);
+        if (libraryFiles != null) {
+            for (File fileLibrary : libraryFiles) {
+                try (ZipFile ignored = new ZipFile(fileLibrary)) {
                     CodeAssistLibrary library = new CodeAssistLibrary();
                     library.setSourceFile(fileLibrary);
-                    fileLibsHashes.put(calculateMD5(fileLibrary), library);
+                    fileLibraries.add(library);
                 } catch (IOException e) {
                     String message = "File " + fileLibrary +
                             " is corrupt! Ignoring.";
@@ -94,9 +105,16 @@ public class CheckLibrariesTask extends Task<JavaModule> {
 
         }
 
-        Map<String, CodeAssistLibrary> md5Map = new HashMap<>();
-        libraries.forEach(it ->
-                md5Map.put(calculateMD5(it.getSourceFile()), it));
+        // every library file is hashed at most once, and only if it changed since the last build
+        Set<File> files = new HashSet<>();
+        fileLibraries.forEach(it -> files.add(it.getSourceFile()));
+        libraries.forEach(it -> files.add(it.getSourceFile()));
+        files.remove(null);
+        LibraryFingerprints fingerprints = getFingerprints(project);
+        Map<File, String> hashes = fingerprints.hash(files);
+
+        Map<String, CodeAssistLibrary> fileLibsHashes = mapByHash(fileLibraries, hashes);
+        Map<String, CodeAssistLibrary> md5Map = mapByHash(libraries, hashes);
         File buildLibs = new File(project.getBuildDirectory(), "libs");
         File[] buildLibraryDirs = buildLibs.listFiles(File::isDirectory);
         if (buildLibraryDirs != null) {
@@ -110,6 +128,41 @@ public class CheckLibrariesTask extends Task<JavaModule> {
         }
 
         saveLibraryToProject(project, md5Map, fileLibsHashes);
+
+        try {
+            fingerprints.save();
+        } catch (IOException e) {
+            logger.warning("Failed to save library fingerprints: " + e.getMessage());
+        }
+    }
+
+    private static Map<String, CodeAssistLibrary> mapByHash(Collection<CodeAssistLibrary> libraries,
+                                                            Map<File, String> hashes) {
+        Map<String, CodeAssistLibrary> map = new HashMap<>();
+        for (CodeAssistLibrary library : libraries) {
+            String hash = hashes.get(library.getSourceFile());
+            if (hash != null) {
+                map.put(hash, library);
+            }
+        }
+        return map;
+    }
+
+    public static File getFingerprintsFile(Module module) {
+        return new File(module.getBuildDirectory(), "caches/libraryFingerprints.bin");
+    }
+
+    /**
+     * @return The library fingerprints of the module. Tasks that run concurrently share this
+     * instance so that they do not overwrite each other's fingerprints when saving them.
+     */
+    public static LibraryFingerprints getFingerprints(Module module) {
+        LibraryFingerprints fingerprints = module.getUserData(FINGERPRINTS_KEY);
+        if (fingerprints == null) {
+            fingerprints = module.putUserDataIfAbsent(FINGERPRINTS_KEY,
+                    new LibraryFingerprints(getFingerprintsFile(module)));
+        }
+        return fingerprints;
     }
 
     private void saveLibraryToProject(Module module, Map<String, CodeAssistLibrary> libraries, Map<String, CodeAssistLibrary> fileLibraries) throws IOException {
@@ -146,48 +199,4 @@ public class CheckLibrariesTask extends Task<JavaModule> {
                 .putString("libraries", librariesString)
                 .apply();
     }
-
-    public static String calculateMD5(File updateFile) {
-        InputStream is;
-        try {
-            is = new FileInputStream(updateFile);
-        } catch (FileNotFoundException e) {
-            Log.e("calculateMD5", "Exception while getting FileInputStream", e);
-            return null;
-        }
-
-        return calculateMD5(is);
-    }
-
-    public static String calculateMD5(InputStream is) {
-        MessageDigest digest;
-        try {
-            digest = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            Log.e("calculateMD5", "Exception while getting Digest", e);
-            return null;
-        }
-
-        byte[] buffer = new byte[8192];
-        int read;
-        try {
-            while ((read = is.read(buffer)) > 0) {
-                digest.update(buffer, 0, read);
-            }
-            byte[] md5sum = digest.digest();
-            BigInteger bigInt = new BigInteger(1, md5sum);
-            String output = bigInt.toString(16);
-            // Fill to 32 chars
-            output = String.format("%32s", output).replace(' ', '0');
-            return output;
-        } catch (IOException e) {
-            throw new RuntimeException("Unable to process file for MD5", e);
-        } finally {
-            try {
-                is.close();
-            } catch (IOException e) {
-                Log.e("calculateMD5", "Exception on closing MD5 input stream", e);
-            }
-        }
-    }
 }
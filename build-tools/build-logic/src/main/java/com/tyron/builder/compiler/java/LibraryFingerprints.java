@@ -0,0 +1,229 @@
+package com.tyron.builder.compiler.java;
+
+import androidx.annotation.Nullable;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the content hash of library files so they only have to be read again when they
+ * change.
+ *
+ * <p>A file is considered unchanged if its path, size, last modified time and file key
+ * (the inode on unix file systems) are the same as when it was last hashed. Files are hashed
+ * with murmur3 which is much cheaper than a cryptographic digest, changed files are hashed in
+ * parallel.
+ *
+ * <p>The fingerprints of a module should be obtained through {@link
+ * CheckLibrariesTask#getFingerprints}, a store is only consistent if it is saved by a single
+ * instance.
+ */
+public class LibraryFingerprints {
+
+    private static final int MAGIC = 0x4c494246;
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> sBuffers =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    private static class Fingerprint {
+        private final long length;
+        private final long lastModified;
+        private final String fileKey;
+        private final String hash;
+
+        private Fingerprint(long length, long lastModified, String fileKey, String hash) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+            this.hash = hash;
+        }
+
+        private boolean matches(BasicFileAttributes attributes) {
+            return length == attributes.size() &&
+                   lastModified == attributes.lastModifiedTime().toMillis() &&
+                   fileKey.equals(getFileKey(attributes));
+        }
+    }
+
+    private final File mStore;
+    private final Map<String, Fingerprint> mFingerprints = new ConcurrentHashMap<>();
+    private volatile boolean mModified;
+
+    /**
+     * Creates the fingerprints and reads the previously stored ones from the given file,
+     * an unreadable store is ignored.
+     */
+    public LibraryFingerprints(File store) {
+        mStore = store;
+        if (store.exists()) {
+            try {
+                read();
+            } catch (IOException | RuntimeException e) {
+                mFingerprints.clear();
+                mModified = true;
+            }
+        }
+    }
+
+    /**
+     * Returns the content hash of every readable file in the given collection. Files that
+     * have changed since they were last hashed are hashed in parallel.
+     */
+    public Map<File, String> hash(Collection<File> files) {
+        Map<File, String> hashes = new ConcurrentHashMap<>();
+        files.parallelStream()
+                .distinct()
+                .forEach(file -> {
+                    String hash = hash(file);
+                    if (hash != null) {
+                        hashes.put(file, hash);
+                    }
+                });
+        return hashes;
+    }
+
+    /**
+     * @return The content hash of the file, or null if it cannot be read
+     */
+    @Nullable
+    public String hash(File file) {
+        String path = file.getAbsolutePath();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException e) {
+            if (mFingerprints.remove(path) != null) {
+                mModified = true;
+            }
+            return null;
+        }
+
+        Fingerprint fingerprint = mFingerprints.get(path);
+        if (fingerprint != null && fingerprint.matches(attributes)) {
+            return fingerprint.hash;
+        }
+
+        String hash;
+        try {
+            hash = hashContents(file);
+        } catch (IOException e) {
+            return null;
+        }
+        mFingerprints.put(path, new Fingerprint(attributes.size(),
+                attributes.lastModifiedTime().toMillis(), getFileKey(attributes), hash));
+        mModified = true;
+        return hash;
+    }
+
+    /**
+     * Hashes the contents of a file with a reusable direct buffer per thread so that no
+     * buffers are allocated per file.
+     */
+    public static String hashContents(File file) throws IOException {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        ByteBuffer buffer = sBuffers.get();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                hasher.putBytes(buffer);
+                buffer.clear();
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    private static String getFileKey(BasicFileAttributes attributes) {
+        return Objects.toString(attributes.fileKey(), "");
+    }
+
+    private void read() throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mStore), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unrecognized fingerprint store " + mStore);
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String path = in.readUTF();
+                long length = in.readLong();
+                long lastModified = in.readLong();
+                String fileKey = in.readUTF();
+                String hash = in.readUTF();
+                mFingerprints.put(path, new Fingerprint(length, lastModified, fileKey, hash));
+            }
+        }
+    }
+
+    /**
+     * Writes the fingerprints to disk if they have changed, fingerprints of files that no
+     * longer exist are dropped.
+     */
+    public synchronized void save() throws IOException {
+        Iterator<String> iterator = mFingerprints.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (!new File(iterator.next()).exists()) {
+                iterator.remove();
+                mModified = true;
+            }
+        }
+        if (!mModified) {
+            return;
+        }
+
+        File parent = mStore.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+
+        // cleared before the copy so that a file hashed while saving is saved the next time
+        mModified = false;
+        Map<String, Fingerprint> fingerprints = new HashMap<>(mFingerprints);
+        File temp = File.createTempFile(mStore.getName(), ".tmp", parent);
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(fingerprints.size());
+                for (Map.Entry<String, Fingerprint> entry : fingerprints.entrySet()) {
+                    Fingerprint fingerprint = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(fingerprint.length);
+                    out.writeLong(fingerprint.lastModified);
+                    out.writeUTF(fingerprint.fileKey);
+                    out.writeUTF(fingerprint.hash);
+                }
+            }
+            Files.move(temp.toPath(), mStore.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            mModified = true;
+            throw e;
+        } finally {
+            temp.delete();
+        }
+    }
+}
@@ -5,6 +5,7 @@ import android.util.Pair;
 
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.TaskArtifact;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.Project;
@@ -32,7 +33,9 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 public class InjectLoggerTask extends Task<AndroidModule> {
 
@@ -145,6 +148,17 @@ public class InjectLoggerTask extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<TaskArtifact> getInputs() {
+        return EnumSet.of(TaskArtifact.MANIFEST);
+    }
+
+    @Override
+    public Set<TaskArtifact> getOutputs() {
+        // the manifest is rewritten to point to the injected application class
+        return EnumSet.of(TaskArtifact.JAVA_SOURCES, TaskArtifact.MANIFEST);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         getModule().getJavaFiles();
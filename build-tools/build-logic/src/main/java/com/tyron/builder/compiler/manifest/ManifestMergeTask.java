@@ -2,6 +2,7 @@ package com.tyron.builder.compiler.manifest;
 
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.TaskArtifact;
 import com.tyron.builder.compiler.manifest.ManifestMerger2.SystemProperty;
 import com.tyron.builder.compiler.manifest.xml.XmlFormatPreferences;
 import com.tyron.builder.compiler.manifest.xml.XmlFormatStyle;
@@ -19,7 +20,9 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 public class ManifestMergeTask extends Task<AndroidModule> {
 
@@ -37,6 +40,16 @@ public class ManifestMergeTask extends Task<AndroidModule> {
         return "ManifestMerger";
     }
 
+    @Override
+    public Set<TaskArtifact> getInputs() {
+        return EnumSet.of(TaskArtifact.LIBRARIES);
+    }
+
+    @Override
+    public Set<TaskArtifact> getOutputs() {
+        return EnumSet.of(TaskArtifact.MANIFEST);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mPackageName = getApplicationId();
@@ -3,6 +3,7 @@ package com.tyron.builder.compiler.viewbinding
 import android.util.Log
 import com.tyron.builder.compiler.BuildType
 import com.tyron.builder.compiler.Task
+import com.tyron.builder.compiler.TaskArtifact
 import com.tyron.builder.exception.CompilationFailedException
 import com.tyron.builder.log.ILogger
 import com.tyron.builder.model.ModuleSettings
@@ -22,6 +23,7 @@ import org.apache.commons.io.FileUtils
 import java.io.File
 import java.io.IOException
 import java.nio.charset.StandardCharsets
+import java.util.EnumSet
 
 /**
  * @param addToClasspath true if the generated binding classes
@@ -38,6 +40,10 @@ class GenerateViewBindingTask(
 
     override fun getName() = TAG
 
+    override fun getInputs(): Set<TaskArtifact> = EnumSet.noneOf(TaskArtifact::class.java)
+
+    override fun getOutputs(): Set<TaskArtifact> = EnumSet.of(TaskArtifact.VIEW_BINDINGS)
+
     override fun prepare(type: BuildType?) {
         outputDirectory = File(module.buildDirectory, VIEW_BINDING_GEN_DIR)
         doPrepare()
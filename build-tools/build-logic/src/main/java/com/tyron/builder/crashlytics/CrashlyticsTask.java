@@ -2,6 +2,7 @@ package com.tyron.builder.crashlytics;
 
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.TaskArtifact;
 import com.tyron.builder.compiler.manifest.resources.ResourceType;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
@@ -23,7 +24,9 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Task to inject crashlytics build id to the resource directory
@@ -51,6 +54,16 @@ public class CrashlyticsTask extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<TaskArtifact> getInputs() {
+        return EnumSet.of(TaskArtifact.LIBRARIES);
+    }
+
+    @Override
+    public Set<TaskArtifact> getOutputs() {
+        return EnumSet.of(TaskArtifact.CRASHLYTICS_CONFIG);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mContainsCrashlytics = getModule().getAllClasses().contains(CORE_CLASS);
@@ -56,7 +56,8 @@ public class SourceFileObject extends SimpleJavaFileObject {
 		if (mProject != null) {
 			Optional<CharSequence> fileContent = mProject.getFileManager().getFileContent(mFile.toFile());
 			if (fileContent.isPresent()) {
-				return replaceContents(String.valueOf(fileContent.get()));
+				// the content may be an immutable snapshot, it is read as is without copying
+				return fileContent.get();
 			}
 		}
 
@@ -42,6 +42,7 @@ import org.gradle.internal.execution.WorkInputListeners;
 import org.gradle.api.internal.file.FileCollectionFactory;
 import org.gradle.api.internal.file.FilePropertyFactory;
 import org.gradle.internal.hash.DefaultFileHasher;
+import org.gradle.internal.hash.FastFileHasher;
 import org.gradle.internal.hash.FileHasher;
 import org.gradle.internal.hash.StreamHasher;
 import org.gradle.internal.installation.CurrentGradleInstallation;
@@ -97,6 +98,11 @@ import java.util.List;
 
 public class GlobalServices extends WorkerSharedGlobalScopeServices {
 
+    /**
+     * Set to false to hash file contents with MD5 instead of {@link FastFileHasher}.
+     */
+    public static final String FAST_FILE_HASHING_PROPERTY = "org.gradle.internal.fast-file-hashing";
+
     protected final ClassPath additionalModuleClassPath;
 
     public GlobalServices(final boolean longLiving) {
@@ -214,6 +220,9 @@ public class GlobalServices extends WorkerSharedGlobalScopeServices {
     FileHasher createFileHasher(
             StreamHasher streamHasher
     ) {
+        if (Boolean.parseBoolean(System.getProperty(FAST_FILE_HASHING_PROPERTY, "true"))) {
+            return new FastFileHasher();
+        }
         return new DefaultFileHasher(streamHasher);
     }
 
@@ -0,0 +1,80 @@
+package org.gradle.internal.hash;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link FileHasher} for up-to-date checks that hashes file contents with 128-bit murmur3
+ * instead of MD5, without copying them to the heap.
+ *
+ * <p>Small files are read into a direct buffer per thread, larger files are memory mapped in
+ * windows of at most {@link #MAX_MAPPING_SIZE} bytes. The hashes are not compatible with the
+ * ones of {@link DefaultFileHasher} and must not be used where a cryptographic hash is needed.
+ */
+public class FastFileHasher implements FileHasher {
+    private static final HashCode SIGNATURE = Hashes.signature(FastFileHasher.class);
+    private static final HashFunction MURMUR3 = Hashing.murmur3_128();
+
+    /**
+     * Files of at least this size are memory mapped, mapping smaller files costs more than reading them.
+     */
+    static final long MAPPING_THRESHOLD = 256 * 1024;
+
+    /**
+     * Limits the address space used by a single mapping, which matters on 32-bit devices.
+     */
+    static final long MAX_MAPPING_SIZE = 16 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    @Override
+    public HashCode hash(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return hash(channel);
+        } catch (NoSuchFileException e) {
+            throw new UncheckedIOException(String.format("Failed to create hash for file '%s' as it does not exist.", file), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Failed to create hash for file '%s'.", file), e);
+        }
+    }
+
+    @Override
+    public HashCode hash(File file, long length, long lastModified) {
+        return hash(file);
+    }
+
+    private static HashCode hash(FileChannel channel) throws IOException {
+        Hasher hasher = MURMUR3.newHasher();
+        Hashes.putHash(hasher, SIGNATURE);
+        long size = channel.size();
+        if (size >= MAPPING_THRESHOLD) {
+            for (long position = 0; position < size; position += MAX_MAPPING_SIZE) {
+                long length = Math.min(MAX_MAPPING_SIZE, size - position);
+                hasher.putBytes(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+            }
+        } else {
+            ByteBuffer buffer = BUFFERS.get();
+            while (true) {
+                buffer.clear();
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+                buffer.flip();
+                hasher.putBytes(buffer);
+            }
+        }
+        return hasher.hash();
+    }
+}
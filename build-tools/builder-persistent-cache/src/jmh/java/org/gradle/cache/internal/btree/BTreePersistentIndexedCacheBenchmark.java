@@ -0,0 +1,95 @@
+package org.gradle.cache.internal.btree;
+
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Random lookups and updates in a cache of 1M entries, the size of the execution history of a
+ * large project. The {@code readWhileWriting} group checks that lookups are not blocked by a
+ * thread updating the cache at the same time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BTreePersistentIndexedCacheBenchmark {
+
+    private static final int ENTRIES = 1_000_000;
+
+    private File mCacheFile;
+    private BTreePersistentIndexedCache<Long, String> mCache;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        mCacheFile = Files.createTempFile("btree", ".bin").toFile();
+        mCacheFile.delete();
+        mCache = new BTreePersistentIndexedCache<>(mCacheFile, BaseSerializerFactory.LONG_SERIALIZER,
+                BaseSerializerFactory.STRING_SERIALIZER);
+        for (long key = 0; key < ENTRIES; key++) {
+            mCache.put(key, valueOf(key));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mCache.close();
+        mCacheFile.delete();
+    }
+
+    private static long randomKey() {
+        return ThreadLocalRandom.current().nextInt(ENTRIES);
+    }
+
+    /**
+     * Values keep the same size, so updates are written in place like most updates of file hashes
+     */
+    private static String valueOf(long key) {
+        return String.format("value-%08d", key);
+    }
+
+    @Benchmark
+    public String get() {
+        return mCache.get(randomKey());
+    }
+
+    @Benchmark
+    public void put() {
+        long key = randomKey();
+        mCache.put(key, valueOf(key));
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(3)
+    public String concurrentGet() {
+        return get();
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(1)
+    public void concurrentPut() {
+        put();
+    }
+}
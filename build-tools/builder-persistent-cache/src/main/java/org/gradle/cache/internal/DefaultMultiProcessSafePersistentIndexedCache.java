@@ -12,7 +12,8 @@ import java.util.function.Function;
 public class DefaultMultiProcessSafePersistentIndexedCache<K, V> implements MultiProcessSafePersistentIndexedCache<K, V> {
     private final FileAccess fileAccess;
     private final Factory<BTreePersistentIndexedCache<K, V>> factory;
-    private BTreePersistentIndexedCache<K, V> cache;
+    // Read without a lock by the threads looking up entries concurrently
+    private volatile BTreePersistentIndexedCache<K, V> cache;
 
     public DefaultMultiProcessSafePersistentIndexedCache(Factory<BTreePersistentIndexedCache<K, V>> factory, FileAccess fileAccess) {
         this.factory = factory;
@@ -66,9 +67,10 @@ public class DefaultMultiProcessSafePersistentIndexedCache<K, V> implements Mult
 
     @Override
     public void finishWork() {
-        if (cache != null) {
+        BTreePersistentIndexedCache<K, V> current = cache;
+        if (current != null) {
             try {
-                fileAccess.writeFile(() -> cache.close());
+                fileAccess.writeFile(current::close);
             } finally {
                 cache = null;
             }
@@ -80,11 +82,17 @@ public class DefaultMultiProcessSafePersistentIndexedCache<K, V> implements Mult
     }
 
     private BTreePersistentIndexedCache<K, V> getCache() {
-        if (cache == null) {
-            // Use writeFile because the cache can internally recover from datafile
-            // corruption, so we don't care at this level if it's corrupt
-            fileAccess.writeFile(() -> cache = factory.create());
+        BTreePersistentIndexedCache<K, V> current = cache;
+        if (current == null) {
+            synchronized (this) {
+                if (cache == null) {
+                    // Use writeFile because the cache can internally recover from datafile
+                    // corruption, so we don't care at this level if it's corrupt
+                    fileAccess.writeFile(() -> cache = factory.create());
+                }
+                current = cache;
+            }
         }
-        return cache;
+        return current;
     }
 }
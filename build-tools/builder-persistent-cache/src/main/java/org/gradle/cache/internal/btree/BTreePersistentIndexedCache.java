@@ -12,37 +12,60 @@ import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.locks.StampedLock;
 
 // todo - stream serialised value to file
 // todo - handle hash collisions (properly, this time)
 // todo - don't store null links to child blocks in leaf index blocks
 // todo - align block boundaries
-// todo - thread safety control
 // todo - merge small values into a single data block
 // todo - discard when file corrupt
 // todo - include data directly in index entry when serializer can guarantee small fixed sized data
 // todo - free list leaks disk space
 // todo - merge adjacent free blocks
 // todo - use more efficient lookup for free block with nearest size
+/**
+ * A persistent map of hashed keys to values, stored as a B-tree of index blocks in a memory
+ * mapped file.
+ *
+ * <p>Updates are made by one thread at a time, but any number of threads can call
+ * {@link #get(Object)} concurrently with them. Lookups walk the index blocks directly in the
+ * mapping without deserializing them, and are optimistic: they only take the read lock when a
+ * write happened while they were running.
+ */
 @SuppressWarnings("unchecked")
 public class BTreePersistentIndexedCache<K, V> {
     private static final Logger LOGGER = LoggerFactory.getLogger(BTreePersistentIndexedCache.class.getSimpleName());
+    private static final byte HEADER_BLOCK_TYPE = 0x55;
+    private static final byte INDEX_BLOCK_TYPE = 0x77;
+    private static final byte DATA_BLOCK_TYPE = 0x33;
+    private static final int INDEX_ENTRY_SIZE = 3 * Block.LONG_SIZE;
+    /**
+     * Deeper than any valid tree, stops lookups that follow pointers being rewritten.
+     */
+    private static final int MAX_DEPTH = 64;
     private final File cacheFile;
-    private final KeyHasher<K> keyHasher;
+    private final ThreadLocal<KeyHasher<K>> keyHasher;
     private final Serializer<V> serializer;
     private final short maxChildIndexEntries;
     private final int minIndexChildNodes;
+    private final MappedBlockStore fileStore;
     private final StateCheckBlockStore store;
+    private final StampedLock lock = new StampedLock();
     private HeaderBlock header;
+    private volatile long rootPos = -1;
 
     public BTreePersistentIndexedCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
         this(cacheFile, keySerializer, valueSerializer, (short) 512, 512);
@@ -51,11 +74,12 @@ public class BTreePersistentIndexedCache<K, V> {
     public BTreePersistentIndexedCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer,
                                        short maxChildIndexEntries, int maxFreeListEntries) {
         this.cacheFile = cacheFile;
-        this.keyHasher = new KeyHasher<K>(keySerializer);
+        this.keyHasher = ThreadLocal.withInitial(() -> new KeyHasher<K>(keySerializer));
         this.serializer = valueSerializer;
         this.maxChildIndexEntries = maxChildIndexEntries;
         this.minIndexChildNodes = maxChildIndexEntries / 2;
-        BlockStore cachingStore = new CachingBlockStore(new FileBackedBlockStore(cacheFile), ImmutableSet
+        this.fileStore = new MappedBlockStore(cacheFile);
+        BlockStore cachingStore = new CachingBlockStore(fileStore, ImmutableSet
                 .of(IndexBlock.class, FreeListBlockStore.FreeListBlock.class));
         this.store = new StateCheckBlockStore(new FreeListBlockStore(cachingStore, maxFreeListEntries));
         try {
@@ -107,18 +131,31 @@ public class BTreePersistentIndexedCache<K, V> {
 
         store.open(initAction, factory);
         header = store.readFirst(HeaderBlock.class);
+        publishRoot();
+    }
+
+    /**
+     * Makes the current root visible to {@link #get(Object)}, once all the blocks have been written.
+     */
+    private void publishRoot() {
+        rootPos = header.index.rootPos.getPos();
     }
 
     public V get(K key) {
         try {
             try {
-                DataBlock block = header.getRoot().get(key);
-                if (block != null) {
-                    return block.getValue();
+                byte[] value = find(keyHasher.get().getHashCode(key));
+                if (value != null) {
+                    return serializer.read(new KryoBackedDecoder(new ByteArrayInputStream(value)));
                 }
                 return null;
             } catch (CorruptedCacheException e) {
-                rebuild();
+                long stamp = lock.writeLock();
+                try {
+                    rebuild();
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
                 return null;
             }
         } catch (Exception e) {
@@ -126,9 +163,91 @@ public class BTreePersistentIndexedCache<K, V> {
         }
     }
 
+    /**
+     * Returns the serialized value for the given hash code. The lookup first runs without any
+     * lock, and runs again under the read lock if a write happened meanwhile.
+     */
+    @Nullable
+    private byte[] find(long hashCode) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                byte[] value = doFind(hashCode);
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            } catch (RuntimeException e) {
+                // Inconsistent blocks are expected when they were rewritten during the lookup
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return doFind(hashCode);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Nullable
+    private byte[] doFind(long hashCode) {
+        if (!store.isOpen()) {
+            throw new IllegalStateException(String.format("%s is closed.", this));
+        }
+        long pos = rootPos;
+        for (int depth = 0; depth < MAX_DEPTH; depth++) {
+            ByteBuffer block = fileStore.readPayload(pos, INDEX_BLOCK_TYPE);
+            int count = block.getInt();
+            int entries = block.position();
+            if (count < 0 || count > (block.remaining() - Block.LONG_SIZE) / INDEX_ENTRY_SIZE) {
+                throw new CorruptedCacheException(String.format("Corrupted index block %s found in %s.", pos, this));
+            }
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long entryHashCode = block.getLong(entries + mid * INDEX_ENTRY_SIZE);
+                if (entryHashCode < hashCode) {
+                    low = mid + 1;
+                } else if (entryHashCode > hashCode) {
+                    high = mid - 1;
+                } else {
+                    return readValue(block.getLong(entries + mid * INDEX_ENTRY_SIZE + Block.LONG_SIZE));
+                }
+            }
+            if (low == count) {
+                pos = block.getLong(entries + count * INDEX_ENTRY_SIZE);
+            } else {
+                pos = block.getLong(entries + low * INDEX_ENTRY_SIZE + 2 * Block.LONG_SIZE);
+            }
+            if (pos < 0) {
+                return null;
+            }
+        }
+        throw new CorruptedCacheException(String.format("Index of %s is too deep.", this));
+    }
+
+    private byte[] readValue(long pos) {
+        ByteBuffer block = fileStore.readPayload(pos, DATA_BLOCK_TYPE);
+        if (block.remaining() < 2 * Block.INT_SIZE) {
+            throw new CorruptedCacheException(String.format("Corrupted data block %s found in %s.", pos, this));
+        }
+        block.getInt(); // allocated size
+        int bytes = block.getInt();
+        if (bytes < 0 || bytes > block.remaining()) {
+            throw new CorruptedCacheException(String.format("Corrupted data block %s found in %s.", pos, this));
+        }
+        byte[] value = new byte[bytes];
+        block.get(value);
+        return value;
+    }
+
     public void put(K key, V value) {
+        long stamp = lock.writeLock();
         try {
-            long hashCode = keyHasher.getHashCode(key);
+            long hashCode = keyHasher.get().getHashCode(key);
             Lookup lookup = header.getRoot().find(hashCode);
             DataBlock newBlock = null;
             if (lookup.entry != null) {
@@ -146,12 +265,16 @@ public class BTreePersistentIndexedCache<K, V> {
                 lookup.indexBlock.put(hashCode, newBlock.getPos());
             }
             store.flush();
+            publishRoot();
         } catch (Exception e) {
             throw new UncheckedIOException(String.format("Could not add entry '%s' to %s.", key, this), e);
+        } finally {
+            lock.unlockWrite(stamp);
         }
     }
 
     public void remove(K key) {
+        long stamp = lock.writeLock();
         try {
             Lookup lookup = header.getRoot().find(key);
             if (lookup.entry == null) {
@@ -161,8 +284,11 @@ public class BTreePersistentIndexedCache<K, V> {
             DataBlock block = store.read(lookup.entry.dataBlock, DataBlock.class);
             store.remove(block);
             store.flush();
+            publishRoot();
         } catch (Exception e) {
             throw new UncheckedIOException(String.format("Could not remove entry '%s' from %s.", key, this), e);
+        } finally {
+            lock.unlockWrite(stamp);
         }
     }
 
@@ -175,15 +301,27 @@ public class BTreePersistentIndexedCache<K, V> {
     }
 
     public void reset() {
-        close();
+        long stamp = lock.writeLock();
         try {
+            doClose();
             open();
         } catch (Exception e) {
             throw new UncheckedIOException(e);
+        } finally {
+            lock.unlockWrite(stamp);
         }
     }
 
     public void close() {
+        long stamp = lock.writeLock();
+        try {
+            doClose();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void doClose() {
         LOGGER.debug("Closing " + this);
         try {
             store.close();
@@ -199,19 +337,22 @@ public class BTreePersistentIndexedCache<K, V> {
     private void rebuild() {
         LOGGER.warn(this + " is corrupt. Discarding.");
         try {
-            clear();
+            doClear();
         } catch (Exception e) {
             LOGGER.warn(this + " couldn't be rebuilt. Closing.");
-            close();
+            doClose();
         }
     }
 
     public void verify() {
+        long stamp = lock.writeLock();
         try {
             doVerify();
         } catch (Exception e) {
             throw new UncheckedIOException(String.format("Some problems were found when checking the integrity of %s.",
                     this), e);
+        } finally {
+            lock.unlockWrite(stamp);
         }
     }
 
@@ -279,8 +420,17 @@ public class BTreePersistentIndexedCache<K, V> {
     }
 
     public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            doClear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void doClear() {
         store.clear();
-        close();
+        doClose();
         try {
             doOpen();
         } catch (Exception e) {
@@ -322,7 +472,7 @@ public class BTreePersistentIndexedCache<K, V> {
 
         @Override
         protected byte getType() {
-            return 0x55;
+            return HEADER_BLOCK_TYPE;
         }
 
         @Override
@@ -361,7 +511,7 @@ public class BTreePersistentIndexedCache<K, V> {
 
         @Override
         protected byte getType() {
-            return 0x77;
+            return INDEX_BLOCK_TYPE;
         }
 
         @Override
@@ -450,17 +600,8 @@ public class BTreePersistentIndexedCache<K, V> {
             maybeSplit();
         }
 
-        public DataBlock get(K key) throws Exception {
-            Lookup lookup = find(key);
-            if (lookup.entry == null) {
-                return null;
-            }
-
-            return store.read(lookup.entry.dataBlock, DataBlock.class);
-        }
-
         public Lookup find(K key) throws Exception {
-            long checksum = keyHasher.getHashCode(key);
+            long checksum = keyHasher.get().getHashCode(key);
             return find(checksum);
         }
 
@@ -679,7 +820,7 @@ public class BTreePersistentIndexedCache<K, V> {
 
         @Override
         protected byte getType() {
-            return 0x33;
+            return DATA_BLOCK_TYPE;
         }
 
         @Override
@@ -0,0 +1,474 @@
+package org.gradle.cache.internal.btree;
+
+import org.gradle.api.UncheckedIOException;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A {@link BlockStore} that reads and writes the blocks of the cache file through memory
+ * mappings instead of seeking in the file, using the same block layout as
+ * {@link FileBackedBlockStore} after a small store header.
+ *
+ * <p>Blocks are written by a single thread, but {@link #readPayload(long, byte)} can be called
+ * by any thread, even while the store is cleared or closed. Since accessing a mapping past the
+ * end of its file crashes the process, the file is never shrunk: the end of the last block is
+ * kept in the store header and clearing the store only resets it.
+ *
+ * <p>The file is mapped in regions that are never remapped and that no block spans, so growing
+ * the file only maps the new space.
+ */
+public class MappedBlockStore implements BlockStore {
+    private static final int MAGIC = 0x4d424c4b;
+    private static final int VERSION = 1;
+    private static final int STORE_HEADER_SIZE = 2 * Block.INT_SIZE + Block.LONG_SIZE; // magic, version, end
+    private static final int END_OFFSET = 2 * Block.INT_SIZE;
+    private static final int HEADER_SIZE = 1 + Block.INT_SIZE; // type, payload size
+    private static final int TAIL_SIZE = Block.INT_SIZE;
+    private static final long MIN_REGION_SIZE = 64 * 1024;
+    private static final long MAX_REGION_SIZE = 16 * 1024 * 1024;
+    private static final Region[] NO_REGIONS = new Region[0];
+
+    private final File cacheFile;
+    private final BlockOutputStream blockOutput = new BlockOutputStream();
+    private final DataOutputStream dataOutput = new DataOutputStream(blockOutput);
+    private FileChannel channel;
+    private boolean writable;
+    private volatile Region[] regions = NO_REGIONS;
+    private volatile long end;
+    private long nextBlock;
+    private Factory factory;
+
+    public MappedBlockStore(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    @Override
+    public String toString() {
+        return "cache '" + cacheFile + "'";
+    }
+
+    @Override
+    public void open(Runnable runnable, Factory factory) {
+        this.factory = factory;
+        try {
+            cacheFile.getParentFile().mkdirs();
+            openChannel();
+            long fileSize = channel.size();
+            // a file too small for the header is not mapped, the first allocation maps a region
+            // with room for both the header and the block
+            if (fileSize >= STORE_HEADER_SIZE) {
+                regions = new Region[]{map(0, fileSize)};
+            }
+            long storedEnd = readStoredEnd(fileSize);
+            if (storedEnd > STORE_HEADER_SIZE) {
+                end = storedEnd;
+                nextBlock = storedEnd;
+            } else {
+                // a new or cleared file, or one in another format whose contents are discarded
+                end = STORE_HEADER_SIZE;
+                nextBlock = STORE_HEADER_SIZE;
+                runnable.run();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void openChannel() throws IOException {
+        try {
+            channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            writable = true;
+        } catch (AccessDeniedException e) {
+            channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ);
+            writable = false;
+        }
+    }
+
+    /**
+     * Returns the end of the last block recorded in the store header, or -1 if the file does
+     * not start with a valid header.
+     */
+    private long readStoredEnd(long fileSize) {
+        if (fileSize < STORE_HEADER_SIZE) {
+            return -1;
+        }
+        ByteBuffer header = regions[0].buffer;
+        if (header.getInt(0) != MAGIC || header.getInt(Block.INT_SIZE) != VERSION) {
+            return -1;
+        }
+        long storedEnd = header.getLong(END_OFFSET);
+        return storedEnd >= STORE_HEADER_SIZE && storedEnd <= fileSize ? storedEnd : -1;
+    }
+
+    private void writeEnd(long end) {
+        ByteBuffer header = regions[0].buffer;
+        header.putInt(0, MAGIC);
+        header.putInt(Block.INT_SIZE, VERSION);
+        header.putLong(END_OFFSET, end);
+        this.end = end;
+    }
+
+    @Override
+    public void close() {
+        // the regions stay mapped until they are garbage collected, readers may still use them
+        regions = NO_REGIONS;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void clear() {
+        if (regions.length > 0) {
+            writeEnd(STORE_HEADER_SIZE);
+        } else {
+            end = STORE_HEADER_SIZE;
+        }
+        nextBlock = STORE_HEADER_SIZE;
+    }
+
+    @Override
+    public void attach(BlockPayload block) {
+        if (block.getBlock() == null) {
+            block.setBlock(new BlockImpl(block));
+        }
+    }
+
+    @Override
+    public void remove(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        blockImpl.detach();
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public <T extends BlockPayload> T readFirst(Class<T> payloadType) {
+        return read(BlockPointer.pos(STORE_HEADER_SIZE), payloadType);
+    }
+
+    @Override
+    public <T extends BlockPayload> T read(BlockPointer pos, Class<T> payloadType) {
+        assert !pos.isNull();
+        try {
+            T payload = payloadType.cast(factory.create(payloadType));
+            BlockImpl block = new BlockImpl(payload, pos);
+            block.read();
+            return payload;
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void write(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        try {
+            blockImpl.write();
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the payload of the block at the given position without deserializing it. This does
+     * not make any system call and can be called while another thread writes to this store, in
+     * which case the contents of the returned buffer may be inconsistent and the caller has to
+     * detect it.
+     *
+     * @return A buffer positioned at the start of the payload and limited to its end
+     */
+    public ByteBuffer readPayload(long pos, byte type) {
+        // the end is read first, the regions of the blocks before it are already published
+        long end = this.end;
+        Region region = findRegion(regions, pos);
+        if (region == null) {
+            throw payloadCorruptedException(pos);
+        }
+        long blockEnd = Math.min(end, region.end());
+        if (pos + HEADER_SIZE + TAIL_SIZE > blockEnd) {
+            throw payloadCorruptedException(pos);
+        }
+        ByteBuffer buffer = region.buffer.duplicate();
+        int start = (int) (pos - region.start);
+        if (buffer.get(start) != type) {
+            throw payloadCorruptedException(pos);
+        }
+        int payloadSize = buffer.getInt(start + 1);
+        if (payloadSize < 0 || pos + HEADER_SIZE + TAIL_SIZE + payloadSize > blockEnd) {
+            throw payloadCorruptedException(pos);
+        }
+        buffer.limit(start + HEADER_SIZE + payloadSize);
+        buffer.position(start + HEADER_SIZE);
+        return buffer;
+    }
+
+    private RuntimeException payloadCorruptedException(long pos) {
+        return new CorruptedCacheException(String.format("Corrupted block %s found in %s.", pos, this));
+    }
+
+    /**
+     * Returns the region that contains the given position, or null if it is not mapped.
+     */
+    @Nullable
+    private static Region findRegion(Region[] regions, long pos) {
+        int low = 0;
+        int high = regions.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Region region = regions[mid];
+            if (pos < region.start) {
+                high = mid - 1;
+            } else if (pos >= region.end()) {
+                low = mid + 1;
+            } else {
+                return region;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Allocates the given number of bytes in the first region after the last block that has
+     * enough space left, the rest of a region that is too small is left unused.
+     */
+    private long alloc(long length) {
+        for (Region region : regions) {
+            long pos = Math.max(nextBlock, region.start);
+            if (pos + length <= region.end()) {
+                nextBlock = pos + length;
+                return pos;
+            }
+        }
+        try {
+            Region region = addRegion(length);
+            long pos = Math.max(nextBlock, region.start);
+            nextBlock = pos + length;
+            return pos;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Maps a new region at the end of the file with room for at least the given number of bytes.
+     * Regions grow with the file so that small caches stay small and large ones only use a few
+     * regions.
+     */
+    private Region addRegion(long length) throws IOException {
+        Region[] current = regions;
+        long start = current.length == 0 ? 0 : current[current.length - 1].end();
+        long minSize = start == 0 ? STORE_HEADER_SIZE + length : length;
+        long size = Math.max(minSize, Math.min(Math.max(start, MIN_REGION_SIZE), MAX_REGION_SIZE));
+        Region region = map(start, size);
+        Region[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = region;
+        regions = updated;
+        return region;
+    }
+
+    private Region map(long start, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(String.format("%s exceeds the maximum size of a mapping.", this));
+        }
+        FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+        return new Region(start, channel.map(mode, start, size));
+    }
+
+    private static final class Region {
+        private final long start;
+        private final MappedByteBuffer buffer;
+
+        private Region(long start, MappedByteBuffer buffer) {
+            this.start = start;
+            this.buffer = buffer;
+        }
+
+        private long end() {
+            return start + buffer.capacity();
+        }
+    }
+
+    private final class BlockImpl extends Block {
+        private BlockPointer pos;
+        private int payloadSize;
+
+        private BlockImpl(BlockPayload payload, BlockPointer pos) {
+            this(payload);
+            setPos(pos);
+        }
+
+        public BlockImpl(BlockPayload payload) {
+            super(payload);
+            pos = null;
+            payloadSize = -1;
+        }
+
+        @Override
+        public boolean hasPos() {
+            return pos != null;
+        }
+
+        @Override
+        public BlockPointer getPos() {
+            if (pos == null) {
+                pos = BlockPointer.pos(alloc(getSize()));
+            }
+            return pos;
+        }
+
+        @Override
+        public void setPos(BlockPointer pos) {
+            assert this.pos == null && !pos.isNull();
+            this.pos = pos;
+        }
+
+        @Override
+        public int getSize() {
+            if (payloadSize < 0) {
+                payloadSize = getPayload().getSize();
+            }
+            return payloadSize + HEADER_SIZE + TAIL_SIZE;
+        }
+
+        @Override
+        public void setSize(int size) {
+            int newPayloadSize = size - HEADER_SIZE - TAIL_SIZE;
+            assert newPayloadSize >= payloadSize;
+            payloadSize = newPayloadSize;
+        }
+
+        public void write() throws Exception {
+            long pos = getPos().getPos();
+            BlockPayload payload = getPayload();
+
+            // Write header
+            blockOutput.reset();
+            dataOutput.writeByte(payload.getType());
+            dataOutput.writeInt(payloadSize);
+
+            // Write body
+            payload.write(dataOutput);
+
+            // Write count
+            dataOutput.writeInt(blockOutput.size());
+            dataOutput.flush();
+
+            long finalSize = Math.max(pos + HEADER_SIZE + TAIL_SIZE + payloadSize, pos + blockOutput.size());
+            Region region = findRegion(regions, pos);
+            if (region == null || finalSize > region.end()) {
+                throw blockCorruptedException();
+            }
+            blockOutput.writeTo(region.buffer, (int) (pos - region.start));
+
+            if (end < finalSize) {
+                writeEnd(finalSize);
+            }
+        }
+
+        public void read() throws Exception {
+            long pos = getPos().getPos();
+            assert pos >= 0;
+            Region region = findRegion(regions, pos);
+            long blockEnd = region == null ? 0 : Math.min(end, region.end());
+            if (pos + HEADER_SIZE >= blockEnd) {
+                throw blockCorruptedException();
+            }
+
+            ByteBuffer buffer = region.buffer.duplicate();
+            int start = (int) (pos - region.start);
+            buffer.position(start);
+            DataInputStream inputStream = new DataInputStream(new ByteBufferInputStream(buffer));
+
+            BlockPayload payload = getPayload();
+
+            // Read header
+            byte type = inputStream.readByte();
+            if (type != payload.getType()) {
+                throw blockCorruptedException();
+            }
+
+            // Read body
+            payloadSize = inputStream.readInt();
+            if (pos + HEADER_SIZE + TAIL_SIZE + payloadSize > blockEnd) {
+                throw blockCorruptedException();
+            }
+            payload.read(inputStream);
+
+            // Read and verify count
+            long actualCount = buffer.position() - start;
+            long count = inputStream.readInt();
+            if (actualCount != count) {
+                throw blockCorruptedException();
+            }
+        }
+
+        @Override
+        public RuntimeException blockCorruptedException() {
+            return new CorruptedCacheException(String.format("Corrupted %s found in %s.", this,
+                    MappedBlockStore.this));
+        }
+    }
+
+    /**
+     * Collects a serialized block so it can be copied into the mapping at once.
+     */
+    private static class BlockOutputStream extends ByteArrayOutputStream {
+        BlockOutputStream() {
+            super(1024);
+        }
+
+        void writeTo(ByteBuffer target, int offset) {
+            ByteBuffer buffer = target.duplicate();
+            buffer.position(offset);
+            buffer.put(buf, 0, count);
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
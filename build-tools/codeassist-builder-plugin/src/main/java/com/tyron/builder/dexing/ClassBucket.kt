@@ -9,9 +9,17 @@ import kotlin.math.abs
 /**
  * A bucket of class files. Multiple buckets are split from a [ClassBucketGroup] using an internal
  * algorithm, and each one is identified by a bucket number.
+ *
+ * Buckets created by [ClassBucketPartitioner] list the class files and packages they contain in
+ * [units]. Otherwise class files are assigned to buckets by hashing their paths.
  */
-class ClassBucket(val bucketGroup: ClassBucketGroup, val bucketNumber: Int) :
-    Serializable {
+class ClassBucket(
+    val bucketGroup: ClassBucketGroup,
+    val bucketNumber: Int,
+    private val units: Set<String>? = null,
+    /** The total size of the class files in this bucket, or 0 if it is not known. */
+    val estimatedSize: Long = 0
+) : Serializable {
 
     /**
      * Returns a subset of the class files in this bucket, selected by the given filter.
@@ -27,47 +35,57 @@ class ClassBucket(val bucketGroup: ClassBucketGroup, val bucketNumber: Int) :
             classFiles = Stream.concat(
                 classFiles,
                 classFileInput.entries { rootPath, relativePath ->
-                    getBucketNumber(
-                        relativePath,
-                        bucketGroup.numOfBuckets,
-                        bucketGroup is JarBucketGroup
-                    ) == bucketNumber
-                            && filter(rootPath.toFile(), relativePath)
+                    isInBucket(relativePath) && filter(rootPath.toFile(), relativePath)
                 })
         }
         return classFiles
     }
 
-    /** Returns the bucket number for a class file or jar entry having the given relative path. */
-    private fun getBucketNumber(
-        relativePath: String,
-        numberOfBuckets: Int,
-        isJarFile: Boolean
-    ): Int {
-        check(!File(relativePath).isAbsolute) {
-            "Expected relative path but found absolute path: $relativePath"
+    private fun isInBucket(relativePath: String): Boolean {
+        if (units == null) {
+            return getBucketNumber(
+                relativePath,
+                bucketGroup.numOfBuckets,
+                bucketGroup is JarBucketGroup
+            ) == bucketNumber
         }
-
-        val pathOfPackageOrClass = if (isJarFile) {
-            // For an input jar, each bucket has a separate output jar. We group classes of the same
-            // package into the same bucket, so that their corresponding dex files are put in the
-            // same output jar. This is not required, but it makes the downstream DexMergingTask
-            // more efficient (see `getBucketNumber` in DexMergingTask).
-            File(relativePath).parent ?: ""
-        } else {
-            // For an input directory, all buckets share the same output directory, so grouping
-            // classes by package has no effect on the output. We use relative paths instead to
-            // distribute classes into buckets more evenly.
-            relativePath
-        }
-        // Normalize the path so that it is stable across filesystems. (For jar entries, the paths
-        // are already normalized.)
-        val normalizedPath = File(pathOfPackageOrClass).invariantSeparatorsPath
-
-        return abs(normalizedPath.hashCode()) % numberOfBuckets
+        val normalizedPath = File(relativePath).invariantSeparatorsPath
+        return normalizedPath in units || (bucketGroup is JarBucketGroup
+                && ClassBucketPartitioner.getPackageUnit(normalizedPath) in units)
     }
 
     companion object {
         private const val serialVersionUID = 1L
+
+        /**
+         * Returns the bucket number for a class file or jar entry having the given relative path.
+         */
+        internal fun getBucketNumber(
+            relativePath: String,
+            numberOfBuckets: Int,
+            isJarFile: Boolean
+        ): Int {
+            check(!File(relativePath).isAbsolute) {
+                "Expected relative path but found absolute path: $relativePath"
+            }
+
+            val pathOfPackageOrClass = if (isJarFile) {
+                // For an input jar, each bucket has a separate output jar. We group classes of the
+                // same package into the same bucket, so that their corresponding dex files are put
+                // in the same output jar. This is not required, but it makes the downstream
+                // DexMergingTask more efficient (see `getBucketNumber` in DexMergingTask).
+                File(relativePath).parent ?: ""
+            } else {
+                // For an input directory, all buckets share the same output directory, so
+                // grouping classes by package has no effect on the output. We use relative paths
+                // instead to distribute classes into buckets more evenly.
+                relativePath
+            }
+            // Normalize the path so that it is stable across filesystems. (For jar entries, the
+            // paths are already normalized.)
+            val normalizedPath = File(pathOfPackageOrClass).invariantSeparatorsPath
+
+            return abs(normalizedPath.hashCode()) % numberOfBuckets
+        }
     }
 }
\ No newline at end of file
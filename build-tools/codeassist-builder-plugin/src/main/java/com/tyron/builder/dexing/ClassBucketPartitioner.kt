@@ -0,0 +1,138 @@
+package com.tyron.builder.dexing
+
+import java.io.File
+import java.util.PriorityQueue
+import java.util.zip.ZipFile
+
+/**
+ * Splits a [ClassBucketGroup] into [ClassBucket]'s of roughly the same total class file size, so
+ * that a bucket with many or large (e.g. generated) classes does not become the long pole of
+ * dexing.
+ *
+ * Class files are assigned in units: a class file for a directory, and a package for a jar so that
+ * the classes of a package are put in the same output jar (see [ClassBucket]). A package that is
+ * larger than a bucket should be is split into its class files. Units are assigned largest first
+ * to the bucket with the smallest total size, so the assignment only depends on the names and
+ * sizes of the class files.
+ */
+object ClassBucketPartitioner {
+
+    /**
+     * Returns the sizes of the class files of the group, keyed by their relative path with '/'
+     * separators.
+     */
+    fun getClassFileSizes(group: ClassBucketGroup): Map<String, Long> {
+        val sizes = HashMap<String, Long>()
+        when (group) {
+            is DirectoryBucketGroup -> group.getRoots().forEach { rootDir ->
+                rootDir.walk().filter { it.isFile }.forEach { file ->
+                    val relativePath = file.relativeTo(rootDir).invariantSeparatorsPath
+                    if (ClassFileInput.CLASS_MATCHER.test(relativePath)) {
+                        sizes.merge(relativePath, file.length(), Long::plus)
+                    }
+                }
+            }
+            is JarBucketGroup -> if (group.jarFile.isFile) {
+                ZipFile(group.jarFile).use { zip ->
+                    for (entry in zip.entries()) {
+                        if (ClassFileInput.CLASS_MATCHER.test(entry.name)) {
+                            // the size is unknown for entries written as a stream
+                            val size = if (entry.size >= 0) entry.size else entry.compressedSize
+                            sizes[entry.name] = size.coerceAtLeast(1)
+                        }
+                    }
+                }
+            }
+        }
+        return sizes
+    }
+
+    /**
+     * Assigns the units of the given class files to buckets. Units in [fixedUnits] keep their
+     * bucket, the other ones are added to the buckets with the smallest total size.
+     *
+     * @return the bucket number of each unit
+     */
+    fun assign(
+        group: ClassBucketGroup,
+        classFileSizes: Map<String, Long>,
+        fixedUnits: Map<String, Int> = emptyMap()
+    ): Map<String, Int> {
+        val unitSizes = getUnitSizes(group, classFileSizes)
+        val bucketSizes = LongArray(group.numOfBuckets)
+        val assignment = HashMap<String, Int>(unitSizes.size)
+        val newUnits = ArrayList<Map.Entry<String, Long>>()
+        for (unit in unitSizes.entries) {
+            val bucket = fixedUnits[unit.key]
+            if (bucket != null && bucket in 0 until group.numOfBuckets) {
+                assignment[unit.key] = bucket
+                bucketSizes[bucket] += unit.value
+            } else {
+                newUnits.add(unit)
+            }
+        }
+
+        val buckets = PriorityQueue<Int>(group.numOfBuckets,
+            compareBy<Int> { bucketSizes[it] }.thenBy { it })
+        buckets.addAll(0 until group.numOfBuckets)
+        newUnits.sortWith(
+            compareByDescending<Map.Entry<String, Long>> { it.value }.thenBy { it.key })
+        for (unit in newUnits) {
+            val bucket = buckets.poll()
+            assignment[unit.key] = bucket
+            bucketSizes[bucket] += unit.value
+            buckets.add(bucket)
+        }
+        return assignment
+    }
+
+    /** Creates the buckets of the given assignment, largest first. */
+    fun createBuckets(
+        group: ClassBucketGroup,
+        classFileSizes: Map<String, Long>,
+        assignment: Map<String, Int>
+    ): List<ClassBucket> {
+        val units = Array(group.numOfBuckets) { HashSet<String>() }
+        val bucketSizes = LongArray(group.numOfBuckets)
+        for ((relativePath, size) in classFileSizes) {
+            val unit =
+                if (relativePath in assignment) relativePath else getPackageUnit(relativePath)
+            val bucket = assignment.getValue(unit)
+            units[bucket].add(unit)
+            bucketSizes[bucket] += size
+        }
+        return (0 until group.numOfBuckets)
+            .map { ClassBucket(group, it, units[it], bucketSizes[it]) }
+            .sortedByDescending { it.estimatedSize }
+    }
+
+    /** Returns the unit of all the classes of the package of a jar entry. */
+    internal fun getPackageUnit(relativePath: String): String {
+        // the trailing separator keeps packages apart from class files
+        return relativePath.substringBeforeLast('/', "") + "/"
+    }
+
+    private fun getUnitSizes(
+        group: ClassBucketGroup,
+        classFileSizes: Map<String, Long>
+    ): Map<String, Long> {
+        if (group !is JarBucketGroup) {
+            return classFileSizes
+        }
+        val packageSizes = HashMap<String, Long>()
+        classFileSizes.forEach { (relativePath, size) ->
+            packageSizes.merge(getPackageUnit(relativePath), size, Long::plus)
+        }
+        val maxPackageSize = classFileSizes.values.sum() / group.numOfBuckets
+        val unitSizes = HashMap<String, Long>()
+        classFileSizes.forEach { (relativePath, size) ->
+            val packageUnit = getPackageUnit(relativePath)
+            if (packageSizes.getValue(packageUnit) > maxPackageSize) {
+                unitSizes[relativePath] = size
+            } else {
+                unitSizes.merge(packageUnit, size, Long::plus)
+            }
+        }
+        return unitSizes
+    }
+}
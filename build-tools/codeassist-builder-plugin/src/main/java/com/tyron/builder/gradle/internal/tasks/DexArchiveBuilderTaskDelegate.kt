@@ -24,6 +24,7 @@ import java.io.ObjectInputStream
 import java.io.ObjectOutputStream
 import java.nio.file.Path
 import java.util.ArrayList
+import java.util.concurrent.TimeUnit
 
 /**
  * Delegate for the [DexArchiveBuilderTask]. This is where the actual processing happens. Using the
@@ -72,6 +73,12 @@ class DexArchiveBuilderTaskDelegate(
 ) {
     private val outputMapping = OutputMapping(isIncremental)
 
+    /**
+     * Work of all the inputs, submitted largest first once the inputs have been split into
+     * buckets so that the workers that finish early pick up the smaller buckets.
+     */
+    private val pendingWork = mutableListOf<Pair<ClassBucket, () -> Unit>>()
+
     //(b/141854812) Temporarily disable incremental support when core library desugaring enabled in release build
     private val isIncremental =
         isIncremental && projectOutputs.keepRules == null && subProjectOutputs?.keepRules == null
@@ -193,11 +200,17 @@ class DexArchiveBuilderTaskDelegate(
                     )
                 }
 
+                val start = System.nanoTime()
+                pendingWork.sortByDescending { it.first.estimatedSize }
+                pendingWork.forEach { it.second() }
+                pendingWork.clear()
+
                 // all work items have been submitted, now wait for completion.
                 // TODO (gavra): use build services in worker actions so ClassFileProviderFactory are not closed too early
                 workerExecutor.await()
 
-                loggerWrapper.debug("Done with all dex archive conversions")
+                val elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                loggerWrapper.debug("Done with all dex archive conversions in $elapsedMillis ms")
             }
         } catch (e: Exception) {
             loggerWrapper.error(Throwables.getStackTraceAsString(e))
@@ -346,7 +359,12 @@ class DexArchiveBuilderTaskDelegate(
     ) {
         inputs.getRoots().forEach { loggerWrapper.debug("Dexing ${it.absolutePath}") }
 
-        for (bucketId in 0 until numberOfBuckets) {
+        val classBuckets = getClassBuckets(inputs, isIncremental, desugarGraphDir)
+        loggerWrapper.debug(
+            "Split ${inputs.getRoots()} into buckets of ${classBuckets.map { it.estimatedSize }} bytes"
+        )
+        for (classBucket in classBuckets) {
+            val bucketId = classBucket.bucketNumber
             // For directory inputs, we prefer dexPerClass mode to support incremental dexing per
             // class, but dexPerClass mode is not supported by D8 when generating keep rules for
             // core library desugaring
@@ -379,26 +397,104 @@ class DexArchiveBuilderTaskDelegate(
                 }
             }
 
-            val classBucket = ClassBucket(inputs, bucketId)
-            workerExecutor.noIsolation().submit(DexWorkAction::class.java) { params ->
+            pendingWork.add(classBucket to {
+                submitDexWork(
+                    classBucket,
+                    preDexOutputFile,
+                    dexPerClass,
+                    bootClasspath,
+                    classpath,
+                    outputKeepRuleFile,
+                    isIncremental,
+                    changedFiles,
+                    desugarGraphDir
+                )
+            })
+        }
+    }
+
+    private fun submitDexWork(
+        classBucket: ClassBucket,
+        preDexOutputFile: File,
+        dexPerClass: Boolean,
+        bootClasspath: ClasspathServiceKey,
+        classpath: ClasspathServiceKey,
+        outputKeepRuleFile: File?,
+        isIncremental: Boolean,
+        changedFiles: Set<File>,
+        desugarGraphDir: File?
+    ) {
+        workerExecutor.noIsolation().submit(DexWorkAction::class.java) { params ->
 //                params.initializeWith(projectPath, taskPath, analyticsService)
-                params.dexSpec.set(
-                    IncrementalDexSpec(
-                        inputClassFiles = classBucket,
-                        outputPath = preDexOutputFile,
-                        dexParams = dexParams.toDexParametersForWorkers(
-                            dexPerClass,
-                            bootClasspath,
-                            classpath,
-                            outputKeepRuleFile
-                        ),
-                        isIncremental = isIncremental,
-                        changedFiles = changedFiles,
-                        desugarGraphFile = desugarGraphDir?.let {
-                            getDesugarGraphFile(it, classBucket)
-                        }
-                    ))
+            params.dexSpec.set(
+                IncrementalDexSpec(
+                    inputClassFiles = classBucket,
+                    outputPath = preDexOutputFile,
+                    dexParams = dexParams.toDexParametersForWorkers(
+                        dexPerClass,
+                        bootClasspath,
+                        classpath,
+                        outputKeepRuleFile
+                    ),
+                    isIncremental = isIncremental,
+                    changedFiles = changedFiles,
+                    desugarGraphFile = desugarGraphDir?.let {
+                        getDesugarGraphFile(it, classBucket)
+                    }
+                ))
+        }
+    }
+
+    /**
+     * Splits the inputs into buckets of about the same size. Incremental runs keep the buckets of
+     * the classes of directories when desugaring, as the desugaring graph of a class is stored in
+     * the graph of its bucket.
+     */
+    private fun getClassBuckets(
+        inputs: ClassBucketGroup,
+        isIncremental: Boolean,
+        desugarGraphDir: File?
+    ): List<ClassBucket> {
+        val classFileSizes = ClassBucketPartitioner.getClassFileSizes(inputs)
+        if (inputs !is DirectoryBucketGroup || desugarGraphDir == null) {
+            val assignment = ClassBucketPartitioner.assign(inputs, classFileSizes)
+            return ClassBucketPartitioner.createBuckets(inputs, classFileSizes, assignment)
+        }
+
+        val assignmentFile = desugarGraphDir.resolve("dirs_buckets.bin")
+        val previousAssignment = if (isIncremental) readBucketAssignment(assignmentFile) else null
+        if (isIncremental && previousAssignment == null) {
+            // The graphs cannot be matched with the classes anymore, the buckets fall back to
+            // processing all of their classes when their graph is missing
+            desugarGraphDir.listFiles { file -> file.name.startsWith("dirs_bucket_") }
+                ?.forEach { GFileUtils.deleteQuietly(it) }
+        }
+        val assignment = ClassBucketPartitioner.assign(
+            inputs,
+            classFileSizes,
+            previousAssignment ?: emptyMap()
+        )
+        GFileUtils.mkdirs(assignmentFile.parentFile)
+        ObjectOutputStream(assignmentFile.outputStream().buffered()).use {
+            it.writeObject(HashMap(assignment))
+        }
+        return ClassBucketPartitioner.createBuckets(inputs, classFileSizes, assignment)
+    }
+
+    private fun readBucketAssignment(assignmentFile: File): Map<String, Int>? {
+        if (!assignmentFile.isFile) {
+            return null
+        }
+        return try {
+            ObjectInputStream(assignmentFile.inputStream().buffered()).use {
+                @Suppress("UNCHECKED_CAST")
+                it.readObject() as Map<String, Int>
             }
+        } catch (e: Exception) {
+            loggerWrapper.warn(
+                "Reading bucket assignment from $assignmentFile failed. Exception: ${e.message}"
+            )
+            null
         }
     }
 
@@ -16,6 +16,7 @@ import java.io.FileInputStream
 import java.io.FileOutputStream
 import java.io.ObjectInputStream
 import java.io.ObjectOutputStream
+import java.util.concurrent.TimeUnit
 
 /** Work action to process a bucket of class files. */
 abstract class DexWorkAction : WorkAction<DexWorkActionParams> {
@@ -149,12 +150,23 @@ private fun process(
 ) {
     val inputRoots = inputClassFiles.bucketGroup.getRoots()
     inputRoots.forEach { loggerWrapper.debug("Dexing '${it.path}' to '${outputPath.path}'") }
+    val start = System.nanoTime()
+    var classCount = 0
     try {
         Closer.create().use { closer ->
-            inputClassFiles.getClassFiles(filter = inputFilter, closer = closer).use {
-                dexArchiveBuilder.convert(it, outputPath.toPath(), desugarGraphUpdater)
-            }
+            inputClassFiles.getClassFiles(filter = inputFilter, closer = closer)
+                .peek { classCount++ }
+                .use {
+                    dexArchiveBuilder.convert(it, outputPath.toPath(), desugarGraphUpdater)
+                }
         }
+        // Shows the buckets that take longer than the others, see ClassBucketPartitioner
+        val elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+        loggerWrapper.info(
+            "Dexed $classCount classes of bucket ${inputClassFiles.bucketNumber} of " +
+                    "${inputRoots.joinToString(", ") { it.name }} " +
+                    "(${inputClassFiles.estimatedSize} bytes) in $elapsedMillis ms"
+        )
     } catch (ex: DexArchiveBuilderException) {
         throw DexArchiveBuilderException(
             "Failed to process: ${inputRoots.joinToString(", ") { it.path }}",
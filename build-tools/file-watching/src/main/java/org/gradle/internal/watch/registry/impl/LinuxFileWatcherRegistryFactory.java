@@ -1,108 +1,391 @@
 package org.gradle.internal.watch.registry.impl;
 
-import static net.rubygrapefruit.platform.internal.jni.LinuxFileEventFunctions.*;
+import static org.gradle.internal.watch.registry.impl.HierarchicalFileWatcherUpdater.FileSystemLocationToWatchValidator.NO_VALIDATION;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 
-import org.gradle.internal.file.FileType;
-import org.gradle.internal.snapshot.SnapshotHierarchy;
 import org.gradle.internal.watch.registry.FileWatcherProbeRegistry;
 import org.gradle.internal.watch.registry.FileWatcherUpdater;
 
 import net.rubygrapefruit.platform.NativeIntegrationUnavailableException;
 import net.rubygrapefruit.platform.file.FileWatchEvent;
+import net.rubygrapefruit.platform.file.FileWatchEvent.ChangeType;
 import net.rubygrapefruit.platform.file.FileWatcher;
 import net.rubygrapefruit.platform.internal.jni.AbstractFileEventFunctions;
 import net.rubygrapefruit.platform.internal.jni.InsufficientResourcesForWatchingException;
 
-import org.apache.commons.vfs2.FileChangeEvent;
-import org.apache.commons.vfs2.FileListener;
-import org.apache.commons.vfs2.FileObject;
-import org.apache.commons.vfs2.FileSystemException;
-import org.apache.commons.vfs2.FileSystemManager;
-import org.apache.commons.vfs2.VFS;
-import org.apache.commons.vfs2.impl.DefaultFileMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 public class LinuxFileWatcherRegistryFactory extends AbstractFileWatcherRegistryFactory<LinuxFileWatcherRegistryFactory.LinuxFileEventFunctions, LinuxFileWatcherRegistryFactory.LinuxFileWatcher> {
 
-    private final BlockingQueue<FileWatchEvent> queue = new ArrayBlockingQueue<>(10);
+    /**
+     * Receives the events of a {@link LinuxFileWatcher}, from the watcher thread.
+     */
+    protected interface FileEventListener {
+        void onChange(ChangeType type, String absolutePath);
 
-    protected static class LinuxFileWatcher implements FileWatcher {
+        /**
+         * Events under the given path were lost, or all events if the path is null.
+         */
+        void onOverflow(@Nullable String absolutePath);
 
-        private final FileSystemManager manager;
-        private DefaultFileMonitor fileMonitor;
-        private final FileListener fileListener;
+        void onFailure(Throwable failure);
 
-        public LinuxFileWatcher(FileListener fileListener) {
-            try {
-                manager = VFS.getManager();
-            } catch (FileSystemException e) {
-                throw new RuntimeException(e);
-            }
-            this.fileListener = fileListener;
+        void onTerminated();
+    }
+
+    /**
+     * Watches directory hierarchies with inotify through a {@link WatchService}.
+     *
+     * <p>inotify is not recursive, so every directory of a watched hierarchy is registered, and
+     * directories created later are registered when their creation is reported. Files created
+     * in a new directory before it is registered are covered by the event for the directory.
+     *
+     * <p>Events are collected in batches: after the first event the watcher keeps reading until
+     * no event arrives for {@link #BATCH_WINDOW_MILLIS}, or for at most {@link #MAX_BATCH_MILLIS}
+     * so that changes are still reported during long bursts. Within a batch there is at most one
+     * event per path, and events under a directory that was created or removed in the same
+     * batch are dropped, since invalidating the directory invalidates everything inside it.
+     * If the kernel queue overflows, or a batch still has more than {@link #MAX_BATCH_EVENTS}
+     * paths, an overflow is reported for the affected hierarchies instead.
+     */
+    protected static class LinuxFileWatcher implements FileWatcher {
+        private static final Logger LOGGER = LoggerFactory.getLogger(LinuxFileWatcher.class);
+
+        static final long BATCH_WINDOW_MILLIS = 20;
+        static final long MAX_BATCH_MILLIS = 200;
+        static final int MAX_BATCH_EVENTS = 4096;
+
+        private final FileEventListener listener;
+        private final WatchService watchService;
+        private final Thread thread;
+        private final CountDownLatch terminated = new CountDownLatch(1);
+
+        private final Object lock = new Object();
+        // Guarded by lock
+        private final Set<Path> watchedRoots = new HashSet<>();
+        private final Map<WatchKey, Path> directoriesByKey = new HashMap<>();
+        private final Map<Path, WatchKey> keysByDirectory = new HashMap<>();
+
+        public LinuxFileWatcher(FileEventListener listener) throws IOException {
+            this.listener = listener;
+            this.watchService = FileSystems.getDefault().newWatchService();
+            this.thread = new Thread(this::run, "File watcher");
+            thread.setDaemon(true);
+            thread.start();
         }
 
         @Override
         public void startWatching(Collection<File> collection) throws InsufficientResourcesForWatchingException {
-            if (fileMonitor != null) {
-                return;
+            synchronized (lock) {
+                for (File file : collection) {
+                    Path root = file.toPath().toAbsolutePath();
+                    if (watchedRoots.add(root)) {
+                        registerHierarchy(root);
+                    }
+                }
             }
-
-            List<FileObject> files = resolveFileObjects(collection);
-            fileMonitor = new DefaultFileMonitor(fileListener);
-            fileMonitor.setRecursive(true);
-            files.forEach(fileMonitor::addFile);
-            fileMonitor.start();
         }
 
         @Override
         public boolean stopWatching(Collection<File> collection) {
-            if (fileMonitor == null) {
-                return false;
+            boolean stopped = false;
+            synchronized (lock) {
+                for (File file : collection) {
+                    Path root = file.toPath().toAbsolutePath();
+                    if (watchedRoots.remove(root)) {
+                        cancelHierarchy(root);
+                        stopped = true;
+                    }
+                }
             }
-            List<FileObject> fileObjects = resolveFileObjects(collection);
-            fileObjects.forEach(fileMonitor::removeFile);
-            return true;
+            return stopped;
         }
 
-        private List<FileObject> resolveFileObjects(Collection<File> collection) {
-            return collection.stream()
-                    .map(File::toString)
-                    .map(path -> {
-                        try {
-                            return manager.resolveFile(path);
-                        } catch (FileSystemException e) {
-                            return null;
-                        }
-                    })
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
+        /**
+         * Stops watching the hierarchies whose root directory does not exist anymore, since
+         * the registered directories may have been moved elsewhere.
+         */
+        public Collection<File> stopWatchingMovedPaths() {
+            List<File> moved = new ArrayList<>();
+            synchronized (lock) {
+                for (Iterator<Path> iterator = watchedRoots.iterator(); iterator.hasNext(); ) {
+                    Path root = iterator.next();
+                    WatchKey key = keysByDirectory.get(root);
+                    if (key == null || !key.isValid() || !Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS)) {
+                        iterator.remove();
+                        cancelHierarchy(root);
+                        moved.add(root.toFile());
+                    }
+                }
+            }
+            return moved;
         }
 
         @Override
         public void shutdown() {
-            if (fileMonitor != null) {
-                fileMonitor.stop();
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOGGER.debug("Couldn't close the watch service", e);
             }
         }
 
         @Override
-        public boolean awaitTermination(long l, TimeUnit timeUnit) throws InterruptedException {
-            shutdown();
-            return true;
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return terminated.await(timeout, unit);
+        }
+
+        // Guarded by lock
+        private void registerHierarchy(Path root) throws InsufficientResourcesForWatchingException {
+            try {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                        if (!keysByDirectory.containsKey(dir)) {
+                            WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                            directoriesByKey.put(key, dir);
+                            keysByDirectory.put(dir, key);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        // removed while walking, its removal is reported to the parent
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (NoSuchFileException e) {
+                // nothing to watch yet
+            } catch (ClosedWatchServiceException e) {
+                // shutting down
+            } catch (IOException e) {
+                if (e.getMessage() != null && e.getMessage().contains("inotify")) {
+                    throw new InsufficientResourcesForWatchingException(e.getMessage());
+                }
+                LOGGER.debug("Couldn't watch {}", root, e);
+            }
+        }
+
+        // Guarded by lock
+        private void cancelHierarchy(Path root) {
+            for (Iterator<Map.Entry<Path, WatchKey>> iterator = keysByDirectory.entrySet().iterator(); iterator.hasNext(); ) {
+                Map.Entry<Path, WatchKey> entry = iterator.next();
+                Path directory = entry.getKey();
+                if (directory.startsWith(root) && !isInOtherRoot(directory, root)) {
+                    entry.getValue().cancel();
+                    directoriesByKey.remove(entry.getValue());
+                    iterator.remove();
+                }
+            }
+        }
+
+        // Guarded by lock
+        private boolean isInOtherRoot(Path directory, Path root) {
+            for (Path other : watchedRoots) {
+                if (!other.equals(root) && directory.startsWith(other)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void run() {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    Batch batch = new Batch();
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_BATCH_MILLIS);
+                    do {
+                        readEvents(key, batch);
+                        key = System.nanoTime() < deadline
+                                ? watchService.poll(BATCH_WINDOW_MILLIS, TimeUnit.MILLISECONDS)
+                                : null;
+                    } while (key != null);
+                    batch.report();
+                }
+            } catch (ClosedWatchServiceException e) {
+                // stopped
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                listener.onFailure(t);
+            } finally {
+                listener.onTerminated();
+                terminated.countDown();
+            }
         }
 
-        public Collection<File> stopWatchingMovedPaths(Collection<File> directoriesToCheck) {
-            return Collections.emptyList();
+        private void readEvents(WatchKey key, Batch batch) {
+            for (WatchEvent<?> event : key.pollEvents()) {
+                synchronized (lock) {
+                    Path directory = directoriesByKey.get(key);
+                    if (directory == null) {
+                        // stopped watching in the meantime
+                        continue;
+                    }
+                    if (event.kind() == OVERFLOW) {
+                        batch.overflow(findRoot(directory));
+                        continue;
+                    }
+                    Path path = directory.resolve((Path) event.context());
+                    if (event.kind() == ENTRY_CREATE) {
+                        if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                            batch.directoryChanged(path);
+                            try {
+                                registerHierarchy(path);
+                            } catch (InsufficientResourcesForWatchingException e) {
+                                LOGGER.info("Couldn't watch new directory {}: {}", path, e.getMessage());
+                                batch.overflow(findRoot(directory));
+                            }
+                        }
+                        batch.add(ChangeType.CREATED, path);
+                    } else if (event.kind() == ENTRY_DELETE) {
+                        if (keysByDirectory.containsKey(path)) {
+                            batch.directoryChanged(path);
+                        }
+                        batch.add(ChangeType.REMOVED, path);
+                    } else {
+                        batch.add(ChangeType.MODIFIED, path);
+                    }
+                }
+            }
+            if (!key.reset()) {
+                synchronized (lock) {
+                    Path directory = directoriesByKey.remove(key);
+                    if (directory != null) {
+                        keysByDirectory.remove(directory);
+                        if (watchedRoots.contains(directory)) {
+                            // the root itself is gone, nobody else reports it
+                            batch.add(ChangeType.INVALIDATED, directory);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Guarded by lock
+        @Nullable
+        private Path findRoot(Path path) {
+            for (Path root : watchedRoots) {
+                if (path.startsWith(root)) {
+                    return root;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * The coalesced events of one batch.
+         */
+        private class Batch {
+            private final Map<Path, ChangeType> changes = new LinkedHashMap<>();
+            private final Set<Path> changedDirectories = new HashSet<>();
+            private final Set<Path> overflowedRoots = new HashSet<>();
+            private boolean overflowedAll;
+            private int receivedEvents;
+
+            void add(ChangeType type, Path path) {
+                receivedEvents++;
+                ChangeType previous = changes.get(path);
+                if (previous == ChangeType.CREATED && type == ChangeType.MODIFIED) {
+                    // still a new file
+                    return;
+                }
+                changes.put(path, type);
+            }
+
+            void directoryChanged(Path directory) {
+                changedDirectories.add(directory);
+            }
+
+            void overflow(@Nullable Path root) {
+                if (root == null) {
+                    overflowedAll = true;
+                } else {
+                    overflowedRoots.add(root);
+                }
+            }
+
+            void report() {
+                if (overflowedAll) {
+                    listener.onOverflow(null);
+                    return;
+                }
+                List<Map.Entry<Path, ChangeType>> coalesced = new ArrayList<>();
+                for (Map.Entry<Path, ChangeType> change : changes.entrySet()) {
+                    if (!isCovered(change.getKey())) {
+                        coalesced.add(change);
+                    }
+                }
+                if (coalesced.size() > MAX_BATCH_EVENTS) {
+                    synchronized (lock) {
+                        for (Map.Entry<Path, ChangeType> change : coalesced) {
+                            Path root = findRoot(change.getKey());
+                            if (root == null) {
+                                // the root itself was removed
+                                root = change.getKey();
+                            }
+                            overflowedRoots.add(root);
+                        }
+                    }
+                    coalesced.clear();
+                }
+                for (Path root : overflowedRoots) {
+                    listener.onOverflow(root.toString());
+                }
+                for (Map.Entry<Path, ChangeType> change : coalesced) {
+                    listener.onChange(change.getValue(), change.getKey().toString());
+                }
+                LOGGER.debug("Received {} file events, reported {} changes and {} overflows",
+                        receivedEvents, coalesced.size(), overflowedRoots.size());
+            }
+
+            /**
+             * Whether an ancestor of the path was created or removed in this batch, or is in a
+             * hierarchy that overflowed.
+             */
+            private boolean isCovered(Path path) {
+                for (Path parent = path.getParent(); parent != null; parent = parent.getParent()) {
+                    if (changedDirectories.contains(parent) || overflowedRoots.contains(parent)) {
+                        return true;
+                    }
+                }
+                return overflowedRoots.contains(path);
+            }
         }
     }
 
@@ -126,83 +409,47 @@ public class LinuxFileWatcherRegistryFactory extends AbstractFileWatcherRegistry
                                                          long l,
                                                          TimeUnit timeUnit,
                                                          NativeFileWatcherCallback nativeFileWatcherCallback) throws InterruptedException {
-                    return new LinuxFileWatcher(new FileListener() {
-                        @Override
-                        public void fileCreated(FileChangeEvent event) throws Exception {
-                            FileObject fileObject = event.getFileObject();
-                            nativeFileWatcherCallback.reportChangeEvent(FileWatchEvent.ChangeType.CREATED.ordinal(), fileObject.getPath().toString());
-                        }
-
-                        @Override
-                        public void fileDeleted(FileChangeEvent event) throws Exception {
-                            FileObject fileObject = event.getFileObject();
-                            nativeFileWatcherCallback.reportChangeEvent(
-                                    FileWatchEvent.ChangeType.REMOVED.ordinal(),
-                                    fileObject.getPath().toString()
-                            );
-                        }
-
-                        @Override
-                        public void fileChanged(FileChangeEvent event) throws Exception {
-                            FileObject fileObject = event.getFileObject();
-                            nativeFileWatcherCallback.reportChangeEvent(
-                                    FileWatchEvent.ChangeType.MODIFIED.ordinal(),
-                                    fileObject.getPath().toString()
-                            );
-                        }
-                    });
+                    try {
+                        return new LinuxFileWatcher(new FileEventListener() {
+                            @Override
+                            public void onChange(ChangeType type, String absolutePath) {
+                                nativeFileWatcherCallback.reportChangeEvent(type.ordinal(), absolutePath);
+                            }
+
+                            @Override
+                            public void onOverflow(@Nullable String absolutePath) {
+                                nativeFileWatcherCallback.reportOverflow(absolutePath);
+                            }
+
+                            @Override
+                            public void onFailure(Throwable failure) {
+                                nativeFileWatcherCallback.reportFailure(failure);
+                            }
+
+                            @Override
+                            public void onTerminated() {
+                                nativeFileWatcherCallback.reportTermination();
+                            }
+                        });
+                    } catch (IOException e) {
+                        throw new NativeIntegrationUnavailableException("Couldn't create a watch service: " + e.getMessage());
+                    }
                 }
             };
         }
     }
 
-    private int getChangeTypeIndex(FileWatchEvent.ChangeType event) {
-        return event.ordinal();
-    }
-
     public LinuxFileWatcherRegistryFactory(Predicate<String> watchFilter) throws NativeIntegrationUnavailableException {
         super(new LinuxFileEventFunctions(), watchFilter);
     }
 
     @Override
     protected LinuxFileWatcher createFileWatcher(BlockingQueue<FileWatchEvent> fileEvents) throws InterruptedException {
-        AbstractWatcherBuilder<LinuxFileWatcher> linuxFileWatcherAbstractWatcherBuilder =
-                this.fileEventFunctions.newWatcher(fileEvents);
-        return linuxFileWatcherAbstractWatcherBuilder.start();
+        return fileEventFunctions.newWatcher(fileEvents).start();
     }
 
     @Override
     protected FileWatcherUpdater createFileWatcherUpdater(LinuxFileWatcher watcher, FileWatcherProbeRegistry probeRegistry, WatchableHierarchies watchableHierarchies) {
-        return new NonHierarchicalFileWatcherUpdater(watcher, probeRegistry, watchableHierarchies, new LinuxMovedDirectoryHandler(watcher, watchableHierarchies));
-    }
-
-    private static class LinuxMovedDirectoryHandler implements AbstractFileWatcherUpdater.MovedDirectoryHandler {
-        private final LinuxFileWatcher watcher;
-        private final WatchableHierarchies watchableHierarchies;
-
-        public LinuxMovedDirectoryHandler(LinuxFileWatcher watcher, WatchableHierarchies watchableHierarchies) {
-            this.watcher = watcher;
-            this.watchableHierarchies = watchableHierarchies;
-        }
-
-        @Override
-        public Collection<File> stopWatchingMovedDirectories(SnapshotHierarchy vfsRoot) {
-            Collection<File> directoriesToCheck = vfsRoot.rootSnapshots()
-                    .filter(snapshot -> snapshot.getType() != FileType.Missing)
-                    .filter(watchableHierarchies::shouldWatch)
-                    .map(snapshot -> {
-                        switch (snapshot.getType()) {
-                            case RegularFile:
-                                return new File(snapshot.getAbsolutePath()).getParentFile();
-                            case Directory:
-                                return new File(snapshot.getAbsolutePath());
-                            default:
-                                throw new IllegalArgumentException("Unexpected file type:" + snapshot.getType());
-                        }
-                    })
-                    .collect(Collectors.toList());
-            return watcher.stopWatchingMovedPaths(directoriesToCheck);
-        }
+        return new HierarchicalFileWatcherUpdater(watcher, NO_VALIDATION, probeRegistry, watchableHierarchies, root -> watcher.stopWatchingMovedPaths());
     }
 }
-
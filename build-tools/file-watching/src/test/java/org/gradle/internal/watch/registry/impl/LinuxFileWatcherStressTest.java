@@ -0,0 +1,216 @@
+package org.gradle.internal.watch.registry.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import net.rubygrapefruit.platform.file.FileWatchEvent.ChangeType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class LinuxFileWatcherStressTest {
+
+    private static final int DIRECTORIES = 20;
+    private static final int FILES_PER_DIRECTORY = 250;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final RecordingListener listener = new RecordingListener();
+    private LinuxFileWatcherRegistryFactory.LinuxFileWatcher watcher;
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue(System.getProperty("os.name").toLowerCase().contains("linux"));
+        root = temporaryFolder.newFolder("root");
+        watcher = new LinuxFileWatcherRegistryFactory.LinuxFileWatcher(listener);
+        watcher.startWatching(Collections.singletonList(root));
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (watcher != null) {
+            watcher.shutdown();
+            assertTrue(watcher.awaitTermination(5, TimeUnit.SECONDS));
+            assertNull(listener.failure.get());
+        }
+    }
+
+    @Test
+    public void reportsChangesInNewDirectories() throws Exception {
+        File directory = new File(root, "created");
+        assertTrue(directory.mkdir());
+        listener.awaitChange(directory);
+
+        File file = new File(directory, "file.txt");
+        Files.write(file.toPath(), "contents".getBytes(StandardCharsets.UTF_8));
+        listener.awaitChange(file);
+
+        assertTrue(file.delete());
+        listener.awaitRemoved(file);
+    }
+
+    @Test
+    public void createsAndDeletesThousandsOfFiles() throws Exception {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < DIRECTORIES; i++) {
+            File directory = new File(root, "directory" + i);
+            assertTrue(directory.mkdir());
+            for (int j = 0; j < FILES_PER_DIRECTORY; j++) {
+                File file = new File(directory, "file" + j + ".txt");
+                Files.write(file.toPath(), ("contents " + j).getBytes(StandardCharsets.UTF_8));
+                files.add(file);
+            }
+        }
+        listener.awaitInvalidated(files);
+        assertTrue("No events after creating " + files.size() + " files",
+                listener.events.get() + listener.overflows.get() > 0);
+
+        listener.clear();
+        for (File file : files) {
+            assertTrue(file.delete());
+        }
+        for (int i = 0; i < DIRECTORIES; i++) {
+            assertTrue(new File(root, "directory" + i).delete());
+        }
+        listener.awaitInvalidated(files);
+        assertTrue("No events after deleting " + files.size() + " files",
+                listener.events.get() + listener.overflows.get() > 0);
+    }
+
+    @Test
+    public void stopsReportingAfterStopWatching() throws Exception {
+        assertTrue(watcher.stopWatching(Collections.singletonList(root)));
+        assertFalse(watcher.stopWatching(Collections.singletonList(root)));
+
+        Files.write(new File(root, "file.txt").toPath(), new byte[0]);
+        listener.awaitQuiet();
+        assertEquals(0, listener.events.get());
+    }
+
+    @Test
+    public void reportsMovedRoot() throws Exception {
+        File moved = new File(temporaryFolder.getRoot(), "moved");
+        assertTrue(root.renameTo(moved));
+
+        assertEquals(Collections.singletonList(root), new ArrayList<>(watcher.stopWatchingMovedPaths()));
+        assertTrue(watcher.stopWatchingMovedPaths().isEmpty());
+    }
+
+    private static class RecordingListener implements LinuxFileWatcherRegistryFactory.FileEventListener {
+        private final Set<String> changedPaths = ConcurrentHashMap.newKeySet();
+        private final Set<String> removedPaths = ConcurrentHashMap.newKeySet();
+        private final Set<String> overflowedPaths = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger events = new AtomicInteger();
+        private final AtomicInteger overflows = new AtomicInteger();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private volatile long lastEventNanos = System.nanoTime();
+
+        @Override
+        public void onChange(ChangeType type, String absolutePath) {
+            changedPaths.add(absolutePath);
+            if (type == ChangeType.REMOVED) {
+                removedPaths.add(absolutePath);
+            }
+            events.incrementAndGet();
+            lastEventNanos = System.nanoTime();
+        }
+
+        @Override
+        public void onOverflow(@Nullable String absolutePath) {
+            overflowedPaths.add(absolutePath == null ? "/" : absolutePath);
+            overflows.incrementAndGet();
+            lastEventNanos = System.nanoTime();
+        }
+
+        @Override
+        public void onFailure(Throwable failure) {
+            this.failure.compareAndSet(null, failure);
+        }
+
+        @Override
+        public void onTerminated() {
+        }
+
+        void clear() {
+            changedPaths.clear();
+            removedPaths.clear();
+            overflowedPaths.clear();
+            events.set(0);
+            overflows.set(0);
+        }
+
+        /**
+         * Whether the file or one of its parent directories was reported, either as a change
+         * or as an overflow.
+         */
+        boolean isInvalidated(File file) {
+            for (File current = file; current != null; current = current.getParentFile()) {
+                String path = current.getAbsolutePath();
+                if (changedPaths.contains(path) || overflowedPaths.contains(path)) {
+                    return true;
+                }
+            }
+            return overflowedPaths.contains("/");
+        }
+
+        void awaitInvalidated(List<File> files) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            for (File file : files) {
+                while (!isInvalidated(file)) {
+                    assertTrue("Change not reported for " + file, System.nanoTime() < deadline);
+                    Thread.sleep(10);
+                }
+            }
+        }
+
+        void awaitChange(File file) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!changedPaths.contains(file.getAbsolutePath())) {
+                assertTrue("No event for " + file, System.nanoTime() < deadline);
+                Thread.sleep(10);
+            }
+        }
+
+        void awaitRemoved(File file) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!removedPaths.contains(file.getAbsolutePath())) {
+                assertTrue("No removal reported for " + file, System.nanoTime() < deadline);
+                Thread.sleep(10);
+            }
+        }
+
+        /**
+         * Waits until no event was reported for a few batch windows.
+         */
+        void awaitQuiet() throws InterruptedException {
+            long quietNanos = TimeUnit.MILLISECONDS.toNanos(10 * LinuxFileWatcherRegistryFactory.LinuxFileWatcher.BATCH_WINDOW_MILLIS);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (System.nanoTime() - lastEventNanos < quietNanos) {
+                assertTrue("Events did not settle", System.nanoTime() < deadline);
+                Thread.sleep(50);
+            }
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.tyron.builder.project.cache;
 
 import com.tyron.common.util.Cache;
+import com.tyron.common.util.DataExternalizer;
+
+import java.io.IOException;
 
 public interface CacheHolder {
 
@@ -17,7 +20,38 @@ public interface CacheHolder {
         }
     }
 
+    /**
+     * A cache key whose cache is stored on disk, its contents are restored the first time it is
+     * requested and written back through {@link #saveCaches()}
+     */
+    class PersistentCacheKey<K, V> extends CacheKey<K, V> {
+
+        private final DataExternalizer<K> keyExternalizer;
+        private final DataExternalizer<V> valueExternalizer;
+
+        public PersistentCacheKey(String name,
+                                  DataExternalizer<K> keyExternalizer,
+                                  DataExternalizer<V> valueExternalizer) {
+            super(name);
+            this.keyExternalizer = keyExternalizer;
+            this.valueExternalizer = valueExternalizer;
+        }
+
+        public DataExternalizer<K> getKeyExternalizer() {
+            return keyExternalizer;
+        }
+
+        public DataExternalizer<V> getValueExternalizer() {
+            return valueExternalizer;
+        }
+    }
+
     <K, V> Cache<K, V> getCache(CacheKey<K, V> key, Cache<K, V> defaultValue);
 
     <K, V> void put(CacheKey<K, V> key, Cache<K, V> value);
+
+    /**
+     * Writes every persistent cache that has been modified to disk
+     */
+    void saveCaches() throws IOException;
 }
@@ -32,11 +32,16 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 public class AndroidModuleImpl extends JavaModuleImpl implements AndroidModule {
 
     private final Map<String, File> mKotlinFiles;
+    /**
+     * Written by build tasks that run at the same time, such as the resource and view binding
+     * tasks
+     */
     private final Map<String, File> mResourceClasses;
 
     private final Set<String> moduleDependencies = new HashSet<>();
@@ -53,7 +58,7 @@ public class AndroidModuleImpl extends JavaModuleImpl implements AndroidModule {
         super(root);
 
         mKotlinFiles = new HashMap<>();
-        mResourceClasses = new HashMap<>(1);
+        mResourceClasses = new ConcurrentHashMap<>(1);
     }
 
     @Override
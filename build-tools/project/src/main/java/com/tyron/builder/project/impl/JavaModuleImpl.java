@@ -7,6 +7,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.tyron.builder.model.CodeAssistLibrary;
 import com.tyron.builder.project.api.JavaModule;
+import com.tyron.builder.project.util.ClassIndex;
 import com.tyron.builder.project.util.PackageTrie;
 import com.tyron.common.util.StringSearch;
 
@@ -18,6 +19,7 @@ import org.jetbrains.kotlin.com.intellij.util.ReflectionUtil;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -29,8 +31,8 @@ import java.util.jar.JarFile;
 
 public class JavaModuleImpl extends ModuleImpl implements JavaModule {
 
-    // Map of fully qualified names and the jar they are contained in
-    private final Map<String, File> mClassFiles;
+    // the index of the classes of every jar
+    private final Map<File, ClassIndex> mJarIndexes;
     private final Map<String, File> mJavaFiles;
     private final Map<String, CodeAssistLibrary> mLibraryHashMap;
     private final Map<String, File> mInjectedClassesMap;
@@ -42,7 +44,7 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
     public JavaModuleImpl(File root) {
         super(root);
         mJavaFiles = new HashMap<>();
-        mClassFiles = new HashMap<>();
+        mJarIndexes = new HashMap<>();
         mLibraries = new HashSet<>();
         mInjectedClassesMap = new HashMap<>();
         mLibraryHashMap = new HashMap<>();
@@ -97,7 +99,11 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
     public Set<String> getAllClasses() {
         Set<String> classes = new HashSet<>();
         classes.addAll(mJavaFiles.keySet());
-        classes.addAll(mClassFiles.keySet());
+        for (ClassIndex index : mJarIndexes.values()) {
+            for (int i = 0; i < index.size(); i++) {
+                classes.add(index.getName(i));
+            }
+        }
         classes.addAll(mInjectedClassesMap.keySet());
         return classes;
     }
@@ -117,8 +123,6 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
             return;
         }
         try {
-            // noinspection unused, used to check if jar is valid.
-            JarFile jarFile = new JarFile(jar);
             putJar(jar);
             mLibraries.add(jar);
         } catch (IOException e) {
@@ -126,10 +130,43 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
         }
     }
 
+    /**
+     * Indexes the classes of a jar. The index is stored next to the jar and memory mapped
+     * so the jar only has to be read again when it changes.
+     */
     protected void putJar(File file) throws IOException {
         if (file == null) {
             return;
         }
+        ClassIndex index = loadIndex(file);
+        ClassIndex previous = mJarIndexes.put(file, index);
+        if (previous != null) {
+            mClassIndex.removeIndex(previous);
+        }
+        mClassIndex.addIndex(index);
+    }
+
+    private static ClassIndex loadIndex(File jar) throws IOException {
+        File indexFile = new File(jar.getPath() + ".index");
+        if (indexFile.exists() && indexFile.lastModified() >= jar.lastModified()) {
+            try {
+                return ClassIndex.open(indexFile);
+            } catch (IOException e) {
+                // corrupted, index the jar again
+            }
+        }
+
+        ClassIndex index = ClassIndex.build(getClassNames(jar));
+        try {
+            index.write(indexFile);
+        } catch (IOException e) {
+            // the jar may be read only, keep the index in memory
+        }
+        return index;
+    }
+
+    private static List<String> getClassNames(File file) throws IOException {
+        List<String> classNames = new ArrayList<>();
         try (JarFile jar = new JarFile(file)) {
             Enumeration<JarEntry> entries = jar.entries();
             while (entries.hasMoreElements()) {
@@ -148,10 +185,10 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
                 String packageName = entry.getName().replace("/", ".")
                         .substring(0, entry.getName().length() - ".class".length());
 
-                mClassFiles.put(packageName, file);
-                mClassIndex.add(packageName);
+                classNames.add(packageName);
             }
         }
+        return classNames;
     }
 
     @NonNull
@@ -255,5 +292,9 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
         mJavaFiles.clear();
         mLibraries.clear();
         mLibraryHashMap.clear();
+        for (ClassIndex index : mJarIndexes.values()) {
+            mClassIndex.removeIndex(index);
+        }
+        mJarIndexes.clear();
     }
 }
@@ -6,6 +6,7 @@ import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.project.api.FileManager;
 import com.tyron.builder.project.api.Module;
 import com.tyron.common.util.Cache;
+import com.tyron.common.util.PersistentCache;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.kotlin.com.intellij.openapi.util.Key;
@@ -148,22 +149,41 @@ public class ModuleImpl implements Module {
     private final Map<CacheKey<?, ?>, Cache<?, ?>> mCacheMap = new HashMap<>();
 
     @Override
-    public <K, V> Cache<K, V> getCache(CacheKey<K, V> key, Cache<K, V> defaultValue) {
+    public synchronized <K, V> Cache<K, V> getCache(CacheKey<K, V> key, Cache<K, V> defaultValue) {
         Object o = mCacheMap.get(key);
         if (o == null) {
-            put(key, defaultValue);
-            return defaultValue;
+            Cache<K, V> cache = defaultValue;
+            if (key instanceof PersistentCacheKey) {
+                PersistentCacheKey<K, V> persistentKey = (PersistentCacheKey<K, V>) key;
+                cache = new PersistentCache<>(getCacheStore(key),
+                        persistentKey.getKeyExternalizer(), persistentKey.getValueExternalizer());
+            }
+            put(key, cache);
+            return cache;
         }
         //noinspection unchecked
         return (Cache<K, V>) o;
     }
 
-    public <K, V> void removeCache(CacheKey<K, V> key) {
+    @Override
+    public synchronized void saveCaches() throws IOException {
+        for (Cache<?, ?> cache : mCacheMap.values()) {
+            if (cache instanceof PersistentCache) {
+                ((PersistentCache<?, ?>) cache).save();
+            }
+        }
+    }
+
+    private File getCacheStore(CacheKey<?, ?> key) {
+        return new File(getBuildDirectory(), "caches/" + key.getName() + ".bin");
+    }
+
+    public synchronized <K, V> void removeCache(CacheKey<K, V> key) {
         mCacheMap.remove(key);
     }
 
     @Override
-    public <K, V> void put(CacheKey<K, V> key, Cache<K, V> value) {
+    public synchronized <K, V> void put(CacheKey<K, V> key, Cache<K, V> value) {
         mCacheMap.put(key, value);
     }
 }
@@ -0,0 +1,350 @@
+package com.tyron.builder.project.util;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.TreeSet;
+
+/**
+ * An immutable index of fully qualified class names, stored in a few flat arrays instead of
+ * a node per package segment.
+ *
+ * <p>The names are kept sorted in a single char array, so the names in a package or with
+ * a given prefix form a contiguous range found with a binary search. A second array orders
+ * the names by their simple name for lookups by simple name. Queries compare against the
+ * stored chars directly and do not allocate, only {@link #getName(int)} creates a string.
+ * Simple names are ordered ignoring case, so that a prefix typed in any case is one range.
+ *
+ * <p>The index can be written to a file and memory mapped when opened, in which case the
+ * names are read from the page cache rather than copied to the heap.
+ *
+ * <p>File layout, every value is big endian:
+ * <pre>
+ *     int magic, int version, int count, int charCount
+ *     int[count + 1] name offsets
+ *     int[count]     simple name offsets
+ *     int[count]     name indices sorted by simple name, ignoring case
+ *     char[charCount] names
+ * </pre>
+ */
+public final class ClassIndex {
+
+    private static final int MAGIC = 0x434c5349;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+
+    private static final ClassIndex EMPTY = build(new TreeSet<>());
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+    private final IntBuffer mOffsets;
+    private final IntBuffer mSimpleOffsets;
+    private final IntBuffer mSimpleOrder;
+    private final CharBuffer mChars;
+
+    private ClassIndex(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE ||
+            buffer.getInt(0) != MAGIC ||
+            buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a class index");
+        }
+        mBuffer = buffer;
+        mCount = buffer.getInt(8);
+        int charCount = buffer.getInt(12);
+        int charsStart = HEADER_SIZE + (3 * mCount + 1) * Integer.BYTES;
+        if (mCount < 0 || charCount < 0 ||
+            buffer.capacity() != charsStart + charCount * Character.BYTES) {
+            throw new IOException("Truncated class index");
+        }
+        int intsSize = mCount * Integer.BYTES;
+        mOffsets = slice(buffer, HEADER_SIZE, intsSize + Integer.BYTES).asIntBuffer();
+        mSimpleOffsets = slice(buffer, HEADER_SIZE + intsSize + Integer.BYTES, intsSize)
+                .asIntBuffer();
+        mSimpleOrder = slice(buffer, HEADER_SIZE + 2 * intsSize + Integer.BYTES, intsSize)
+                .asIntBuffer();
+        mChars = slice(buffer, charsStart, charCount * Character.BYTES).asCharBuffer();
+    }
+
+    public static ClassIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Builds an index of the given fully qualified names, duplicates are ignored
+     */
+    @NonNull
+    public static ClassIndex build(@NonNull Collection<String> names) {
+        String[] sorted = new TreeSet<>(names).toArray(new String[0]);
+        int count = sorted.length;
+        int charCount = 0;
+        for (String name : sorted) {
+            charCount += name.length();
+        }
+
+        int charsStart = HEADER_SIZE + (3 * count + 1) * Integer.BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(charsStart + charCount * Character.BYTES);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(count);
+        buffer.putInt(charCount);
+
+        int offset = 0;
+        for (String name : sorted) {
+            buffer.putInt(offset);
+            offset += name.length();
+        }
+        buffer.putInt(offset);
+
+        offset = 0;
+        for (String name : sorted) {
+            buffer.putInt(offset + name.lastIndexOf('.') + 1);
+            offset += name.length();
+        }
+
+        Integer[] simpleOrder = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            simpleOrder[i] = i;
+        }
+        Arrays.sort(simpleOrder, Comparator
+                .comparing((Integer i) -> getSimpleName(sorted[i]), String.CASE_INSENSITIVE_ORDER)
+                .thenComparing(i -> getSimpleName(sorted[i]))
+                .thenComparing(i -> i));
+        for (Integer index : simpleOrder) {
+            buffer.putInt(index);
+        }
+
+        for (String name : sorted) {
+            for (int i = 0; i < name.length(); i++) {
+                buffer.putChar(name.charAt(i));
+            }
+        }
+        buffer.flip();
+
+        try {
+            return new ClassIndex(buffer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Opens an index written by {@link #write(File)}, the file is memory mapped
+     */
+    @NonNull
+    public static ClassIndex open(@NonNull File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new ClassIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes the index to the given file, replacing it atomically
+     */
+    public void write(@NonNull File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = mBuffer.duplicate();
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * @return The fully qualified name at the given index, names are sorted
+     */
+    @NonNull
+    public String getName(int index) {
+        int start = mOffsets.get(index);
+        int end = mOffsets.get(index + 1);
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = mChars.get(start + i);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return The simple name of the class at the given index
+     */
+    @NonNull
+    public String getSimpleName(int index) {
+        int start = mSimpleOffsets.get(index);
+        int end = mOffsets.get(index + 1);
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = mChars.get(start + i);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return Whether the simple name of the class at the given index starts with the given
+     * prefix, matching case
+     */
+    public boolean simpleNameStartsWith(int index, @NonNull CharSequence prefix) {
+        int start = mSimpleOffsets.get(index);
+        return compare(start, mOffsets.get(index + 1), prefix, true, false) == 0;
+    }
+
+    public int getNameLength(int index) {
+        return mOffsets.get(index + 1) - mOffsets.get(index);
+    }
+
+    public char getNameChar(int index, int position) {
+        return mChars.get(mOffsets.get(index) + position);
+    }
+
+    /**
+     * @return The position in the name at the given index where its simple name starts
+     */
+    public int getSimpleNameStart(int index) {
+        return mSimpleOffsets.get(index) - mOffsets.get(index);
+    }
+
+    /**
+     * @return The index of the given fully qualified name, or -1 if it is not indexed
+     */
+    public int indexOf(@NonNull CharSequence name) {
+        int low = 0;
+        int high = mCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int compare = compare(mOffsets.get(middle), mOffsets.get(middle + 1), name, false,
+                    false);
+            if (compare < 0) {
+                low = middle + 1;
+            } else if (compare > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(@NonNull CharSequence name) {
+        return indexOf(name) != -1;
+    }
+
+    /**
+     * @return The first index of the names starting with the given prefix, the names with the
+     * prefix are the ones from this index to {@link #prefixEnd(CharSequence)}
+     */
+    public int prefixStart(@NonNull CharSequence prefix) {
+        return lowerBound(prefix, false, false);
+    }
+
+    /**
+     * @return The index after the last name starting with the given prefix
+     */
+    public int prefixEnd(@NonNull CharSequence prefix) {
+        return lowerBound(prefix, false, true);
+    }
+
+    /**
+     * @return The first position in simple name order of the names whose simple name starts
+     * with the given prefix ignoring case, use {@link #getSimpleNameOrder(int)} to get the
+     * name index
+     */
+    public int simpleNamePrefixStart(@NonNull CharSequence prefix) {
+        return lowerBound(prefix, true, false);
+    }
+
+    /**
+     * @return The position in simple name order after the last name whose simple name starts
+     * with the given prefix ignoring case
+     */
+    public int simpleNamePrefixEnd(@NonNull CharSequence prefix) {
+        return lowerBound(prefix, true, true);
+    }
+
+    /**
+     * @return The index of the name at the given position when sorted by simple name
+     */
+    public int getSimpleNameOrder(int position) {
+        return mSimpleOrder.get(position);
+    }
+
+    /**
+     * Finds the first position whose name compares greater than or equal to the prefix, or
+     * strictly greater if {@code after} is true. Names starting with the prefix compare equal.
+     */
+    private int lowerBound(CharSequence prefix, boolean simpleName, boolean after) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int index = simpleName ? mSimpleOrder.get(middle) : middle;
+            int start = simpleName ? mSimpleOffsets.get(index) : mOffsets.get(index);
+            int compare = compare(start, mOffsets.get(index + 1), prefix, true, simpleName);
+            if (compare < 0 || (after && compare == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares the stored chars from {@code start} to {@code end} with the given text. If
+     * {@code prefix} is true, stored chars starting with the text compare equal. Case is
+     * ignored the same way as {@link String#CASE_INSENSITIVE_ORDER} if {@code ignoreCase}
+     * is true.
+     */
+    private int compare(int start, int end, CharSequence text, boolean prefix,
+                        boolean ignoreCase) {
+        int length = end - start;
+        int textLength = text.length();
+        int min = Math.min(length, textLength);
+        for (int i = 0; i < min; i++) {
+            char stored = mChars.get(start + i);
+            char other = text.charAt(i);
+            if (stored == other) {
+                continue;
+            }
+            if (ignoreCase) {
+                stored = Character.toLowerCase(Character.toUpperCase(stored));
+                other = Character.toLowerCase(Character.toUpperCase(other));
+                if (stored == other) {
+                    continue;
+                }
+            }
+            return stored - other;
+        }
+        if (prefix && length >= textLength) {
+            return 0;
+        }
+        return length - textLength;
+    }
+
+    private static String getSimpleName(String name) {
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int size) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.limit(offset + size);
+        duplicate.position(offset);
+        return duplicate.slice();
+    }
+}
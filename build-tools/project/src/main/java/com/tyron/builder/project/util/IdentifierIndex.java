@@ -0,0 +1,406 @@
+package com.tyron.builder.project.util;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.listener.FileListener;
+
+import org.jetbrains.kotlin.com.intellij.openapi.util.Key;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An inverted index from the identifiers written in the source files of a module to the files
+ * that contain them, so that a lookup by name only has to open the candidate files.
+ *
+ * <p>Every word that is a valid java identifier is indexed, including the ones in comments and
+ * string literals, so the files returned may not actually reference the identifier but no file
+ * that does is left out.
+ *
+ * <p>The index is built in the background with {@link #update(Collection)}, files opened in the
+ * editor are updated from the snapshot events of the {@link
+ * com.tyron.builder.project.api.FileManager} and the index is written to the build directory of
+ * the module so that the files that have not changed are not read again in the next session.
+ * Queries can be made from any thread while the index is being updated.
+ */
+public class IdentifierIndex implements FileListener {
+
+    private static final String TAG = IdentifierIndex.class.getSimpleName();
+
+    private static final Key<IdentifierIndex> KEY = Key.create("identifierIndex");
+
+    private static final int MAGIC = 0x49444e58;
+    private static final int VERSION = 1;
+
+    /**
+     * How long to wait after a change before the index is written to disk
+     */
+    private static final long SAVE_DELAY_SECONDS = 10;
+
+    private static final ScheduledExecutorService sExecutor =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Identifier indexer");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * @return The index of the given module, loaded from its build directory and registered to
+     * its file manager the first time it is requested
+     */
+    @NonNull
+    public static IdentifierIndex getInstance(@NonNull Module module) {
+        IdentifierIndex index = module.getUserData(KEY);
+        if (index != null) {
+            return index;
+        }
+        IdentifierIndex created =
+                new IdentifierIndex(new File(module.getBuildDirectory(), "caches/identifiers.bin"));
+        index = module.putUserDataIfAbsent(KEY, created);
+        if (index == created && module.getUserData(KEY) == created) {
+            sExecutor.execute(created::load);
+            module.getFileManager().addSnapshotListener(created);
+        }
+        return index;
+    }
+
+    private static final class Entry {
+
+        /**
+         * The time the contents were read, the entry is stale once the file is modified after it
+         */
+        private final long mStamp;
+
+        /**
+         * The identifiers of the file, sorted
+         */
+        private final String[] mIdentifiers;
+
+        /**
+         * Whether the identifiers come from unsaved contents of the editor instead of the file
+         * on disk, such entries are not persisted
+         */
+        private final boolean mSnapshot;
+
+        private Entry(long stamp, String[] identifiers, boolean snapshot) {
+            mStamp = stamp;
+            mIdentifiers = identifiers;
+            mSnapshot = snapshot;
+        }
+    }
+
+    private final File mStore;
+    private final Map<File, Entry> mEntries = new ConcurrentHashMap<>();
+    private final Map<String, Set<File>> mFiles = new ConcurrentHashMap<>();
+    private final AtomicBoolean mSaveScheduled = new AtomicBoolean();
+
+    /**
+     * @param store The file the index is persisted to, or null to keep it in memory only
+     */
+    public IdentifierIndex(File store) {
+        mStore = store;
+    }
+
+    /**
+     * Indexes the given files in the background. Only the files that have been modified since
+     * they were last indexed are read, indexed files that are not in the collection anymore
+     * are removed.
+     *
+     * @return A future that completes once every file has been indexed
+     */
+    public Future<?> update(@NonNull Collection<File> files) {
+        Set<File> copy = new HashSet<>(files);
+        return sExecutor.submit(() -> {
+            for (File file : new ArrayList<>(mEntries.keySet())) {
+                if (!copy.contains(file)) {
+                    remove(file);
+                }
+            }
+            for (File file : copy) {
+                getUpToDateEntry(file);
+            }
+            scheduleSave();
+        });
+    }
+
+    /**
+     * Indexes the given contents of the file, e.g. the contents of a file opened in the editor
+     * that has not been saved yet. The entry is kept in memory only, the next session reads
+     * the file from disk again.
+     */
+    public void update(@NonNull File file, @NonNull CharSequence contents) {
+        put(file, new Entry(System.currentTimeMillis(), collectIdentifiers(contents), true));
+    }
+
+    public synchronized void remove(@NonNull File file) {
+        Entry removed = mEntries.remove(file);
+        if (removed != null) {
+            removeFromFiles(file, removed.mIdentifiers);
+            scheduleSave();
+        }
+    }
+
+    @Override
+    public void onSnapshotChanged(File file, CharSequence contents) {
+        if (!file.getName().endsWith(".java")) {
+            return;
+        }
+        // the contents may be a mutable buffer of the editor
+        String copy = contents.toString();
+        sExecutor.execute(() -> update(file, copy));
+    }
+
+    /**
+     * @return Whether the file contains the given identifier, the file is read if it has not
+     * been indexed or has changed since
+     */
+    public boolean containsWord(@NonNull File file, @NonNull String identifier) {
+        Entry entry = getUpToDateEntry(file);
+        return entry != null && Arrays.binarySearch(entry.mIdentifiers, identifier) >= 0;
+    }
+
+    /**
+     * @return The indexed files containing the given identifier. The returned set is a live
+     * view and must not be modified.
+     */
+    @NonNull
+    public Set<File> getFiles(@NonNull String identifier) {
+        Set<File> files = mFiles.get(identifier);
+        if (files == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(files);
+    }
+
+    /**
+     * @return The indexed files that contain every identifier of the query, e.g. searching
+     * for {@code list.add} returns the files containing both {@code list} and {@code add}
+     */
+    @NonNull
+    public Set<File> search(@NonNull CharSequence query) {
+        String[] identifiers = collectIdentifiers(query);
+        if (identifiers.length == 0) {
+            return Collections.emptySet();
+        }
+        // start from the identifier found in the least files
+        Set<File> smallest = null;
+        for (String identifier : identifiers) {
+            Set<File> files = getFiles(identifier);
+            if (smallest == null || files.size() < smallest.size()) {
+                smallest = files;
+            }
+        }
+        Set<File> result = new HashSet<>();
+        for (File file : smallest) {
+            Entry entry = mEntries.get(file);
+            if (entry != null && containsAll(entry, identifiers)) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    private Entry getUpToDateEntry(File file) {
+        Entry entry = mEntries.get(file);
+        long lastModified = file.lastModified();
+        if (lastModified == 0) {
+            // the file has been deleted
+            if (entry != null) {
+                remove(file);
+            }
+            return null;
+        }
+        if (entry != null && entry.mStamp >= lastModified) {
+            return entry;
+        }
+        try {
+            String contents = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            entry = new Entry(lastModified, collectIdentifiers(contents), false);
+        } catch (NoSuchFileException e) {
+            remove(file);
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to index " + file, e);
+            return null;
+        }
+        put(file, entry);
+        scheduleSave();
+        return entry;
+    }
+
+    private synchronized void put(File file, Entry entry) {
+        Entry old = mEntries.get(file);
+        if (old != null && old.mStamp > entry.mStamp) {
+            // a newer snapshot has been indexed in the meantime
+            return;
+        }
+        mEntries.put(file, entry);
+        for (String identifier : entry.mIdentifiers) {
+            mFiles.computeIfAbsent(identifier, it -> ConcurrentHashMap.newKeySet()).add(file);
+        }
+        if (old != null) {
+            List<String> removed = new ArrayList<>();
+            for (String identifier : old.mIdentifiers) {
+                if (Arrays.binarySearch(entry.mIdentifiers, identifier) < 0) {
+                    removed.add(identifier);
+                }
+            }
+            removeFromFiles(file, removed.toArray(new String[0]));
+        }
+    }
+
+    private void removeFromFiles(File file, String[] identifiers) {
+        for (String identifier : identifiers) {
+            Set<File> files = mFiles.get(identifier);
+            if (files != null) {
+                files.remove(file);
+                if (files.isEmpty()) {
+                    mFiles.remove(identifier);
+                }
+            }
+        }
+    }
+
+    private static boolean containsAll(Entry entry, String[] identifiers) {
+        for (String identifier : identifiers) {
+            if (Arrays.binarySearch(entry.mIdentifiers, identifier) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The sorted and distinct identifiers found in the text
+     */
+    private static String[] collectIdentifiers(CharSequence text) {
+        Set<String> identifiers = new TreeSet<>();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (!Character.isJavaIdentifierPart(c)) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < length && Character.isJavaIdentifierPart(text.charAt(i))) {
+                i++;
+            }
+            if (Character.isJavaIdentifierStart(c)) {
+                identifiers.add(text.subSequence(start, i).toString());
+            }
+        }
+        return identifiers.toArray(new String[0]);
+    }
+
+    private void scheduleSave() {
+        if (mStore == null || !mSaveScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        sExecutor.schedule(() -> {
+            mSaveScheduled.set(false);
+            try {
+                save();
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to save the identifier index", e);
+            }
+        }, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Writes the index to its store, replacing it atomically
+     */
+    public void save() throws IOException {
+        if (mStore == null) {
+            return;
+        }
+        File parent = mStore.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File temp = new File(mStore.getPath() + ".tmp");
+        try (OutputStream stream = Files.newOutputStream(temp.toPath());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            List<Map.Entry<File, Entry>> entries = new ArrayList<>();
+            for (Map.Entry<File, Entry> entry : mEntries.entrySet()) {
+                if (!entry.getValue().mSnapshot) {
+                    entries.add(entry);
+                }
+            }
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<File, Entry> entry : entries) {
+                out.writeUTF(entry.getKey().getPath());
+                out.writeLong(entry.getValue().mStamp);
+                String[] identifiers = entry.getValue().mIdentifiers;
+                out.writeInt(identifiers.length);
+                for (String identifier : identifiers) {
+                    out.writeUTF(identifier);
+                }
+            }
+        }
+        Files.move(temp.toPath(), mStore.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads the index written by {@link #save()}, entries of files that are stale are read
+     * again when they are queried or updated
+     */
+    public void load() {
+        if (mStore == null || !mStore.exists()) {
+            return;
+        }
+        try (InputStream stream = Files.newInputStream(mStore.toPath());
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                File file = new File(in.readUTF());
+                long stamp = in.readLong();
+                String[] identifiers = new String[in.readInt()];
+                for (int j = 0; j < identifiers.length; j++) {
+                    identifiers[j] = in.readUTF();
+                }
+                put(file, new Entry(stamp, identifiers, false));
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to load the identifier index, it will be built again", e);
+        }
+    }
+}
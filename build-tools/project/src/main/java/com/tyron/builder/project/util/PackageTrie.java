@@ -2,33 +2,42 @@ package com.tyron.builder.project.util;
 
 import androidx.annotation.NonNull;
 
+import com.tyron.common.util.FuzzyMatcher;
+
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
-import java.util.function.Function;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
- * A trie that stores package segments to a node.
+ * An index of fully qualified class names that can be queried by package.
+ *
+ * <p>Classes of libraries are added as immutable {@link ClassIndex}es, usually memory mapped
+ * from a file built once per library. Classes added by name, such as the sources of the
+ * project, are kept in a sorted set. Both store the names sorted so that the classes of a
+ * package are a contiguous range, e.g. {@code java.lang.String} and
+ * {@code java.lang.Object} are both found in the range of names starting with
+ * {@code java.lang.}
  *
- * Example: The package java.lang.String and java.lang.Object will be stored as:
- * <p>
- *     java
- *      |
- *     lang
- *     /  \
- * String Object
- * </p>
+ * <p>Classes can also be looked up by the prefix of their simple name, for the names added
+ * by name a {@link ClassIndex} is built again lazily after they change.
  */
 public class PackageTrie {
 
-    private final Node mRoot;
+    private final NavigableSet<String> mNames = new ConcurrentSkipListSet<>();
+    private final List<ClassIndex> mIndexes = new CopyOnWriteArrayList<>();
+
+    /**
+     * The index of {@link #mNames}, null if it has changed since it was built
+     */
+    private ClassIndex mNamesIndex;
 
     public PackageTrie() {
-        mRoot = new Node();
+
     }
 
     /**
@@ -37,13 +46,20 @@ public class PackageTrie {
      * @param fqn The fully qualified name of a class, including its name
      */
     public void add(@NonNull String fqn) {
-        String[] parts = getParts(fqn);
-        Node current = mRoot;
-        for (String part : parts) {
-            current = current.getOrCreateChild(part);
+        if (mNames.add(fqn)) {
+            invalidateNamesIndex();
         }
-        // this is the end node, so mark it as a leaf
-        current.isLeaf = true;
+    }
+
+    /**
+     * Add all the classes of an index, usually the classes of a library.
+     */
+    public void addIndex(@NonNull ClassIndex index) {
+        mIndexes.add(index);
+    }
+
+    public void removeIndex(@NonNull ClassIndex index) {
+        mIndexes.remove(index);
     }
 
     public void remove(@NonNull String fqn) {
@@ -56,161 +72,175 @@ public class PackageTrie {
      * If leafOnly is false, passing "java" to the package name will remove all the packages
      * starting with that package. e.g all java.lang, java.util packages
      *
-     * If leafOnly is true, only leaf nodes matching the leaf of the specified name will be deleted.
-     * The leaf of the package name is the last word after its dot.
+     * If leafOnly is true, only the class with the specified name will be deleted.
+     *
+     * Only classes added through {@link #add(String)} can be removed, classes of an index
+     * are removed along with the index.
      *
      * @param fqn The package name
      * @param leafOnly Whether to delete the leaf only
      */
     public void remove(@NonNull String fqn, boolean leafOnly) {
-        String[] parts = getParts(fqn);
-        Node current = mRoot;
-        for (int i = 0; i < parts.length; i++) {
-            String part = parts[i];
-            boolean isLeaf = i == parts.length - 1;
+        mNames.remove(fqn);
+        if (!leafOnly) {
+            mNames.subSet(fqn + '.', fqn + (char) ('.' + 1)).clear();
+        }
+        invalidateNamesIndex();
+    }
 
-            if (current == null) {
-                break;
-            }
-            if (current.getChildren() == null) {
-                current = null;
-            } else {
-                Node next = current.getChildren().get(part);
-                if (next != null && (isLeaf || !leafOnly)) {
-                    current.getChildren().remove(next.getValue());
-                }
-                current = next;
-            }
+    /**
+     * Passes the fully qualified name of every class whose simple name starts with the given
+     * prefix to the consumer.
+     *
+     * @param caseSensitive whether the case of the prefix has to match
+     */
+    public void processClassesBySimpleName(@NonNull String prefix,
+                                           boolean caseSensitive,
+                                           @NonNull Consumer<String> consumer) {
+        processClassesBySimpleName(getNamesIndex(), prefix, caseSensitive, consumer);
+        for (ClassIndex index : mIndexes) {
+            processClassesBySimpleName(index, prefix, caseSensitive, consumer);
         }
     }
 
-    public List<String> getMatchingPackages(String packageQuery) {
-        List<String> result = new ArrayList<>();
-        StringBuilder currentPackage = new StringBuilder();
-        String[] parts = getParts(packageQuery);
-        Node current = mRoot;
-        for (String part : parts) {
-            if (current == null || current.getChildren() == null || !current.getChildren().containsKey(part)) {
-                return result;
-            }
+    /**
+     * Passes the fully qualified name of every class whose simple name matches the given
+     * pattern by camel humps to the consumer, e.g. {@code ArrLi} matches {@code ArrayList}
+     */
+    public void processClassesByCamelHumps(@NonNull String pattern,
+                                           @NonNull Consumer<String> consumer) {
+        processClassesByCamelHumps(getNamesIndex(), pattern, consumer);
+        for (ClassIndex index : mIndexes) {
+            processClassesByCamelHumps(index, pattern, consumer);
+        }
+    }
 
-            if (current.isLeaf) {
-                String fqn = currentPackage.length() > 0
-                        ? currentPackage + "." + part
-                        : part;
-                result.add(fqn);
-            } else {
-                boolean insertDot = currentPackage.length() > 0;
-                if (insertDot) {
-                    currentPackage.append('.');
-                }
-                currentPackage.append(part);
+    private static void processClassesBySimpleName(ClassIndex index,
+                                                   String prefix,
+                                                   boolean caseSensitive,
+                                                   Consumer<String> consumer) {
+        int end = index.simpleNamePrefixEnd(prefix);
+        for (int i = index.simpleNamePrefixStart(prefix); i < end; i++) {
+            int nameIndex = index.getSimpleNameOrder(i);
+            if (!caseSensitive || index.simpleNameStartsWith(nameIndex, prefix)) {
+                consumer.accept(index.getName(nameIndex));
             }
-
-            current = current.getChildren().get(part);
         }
+    }
 
-        if (current.getChildren() != null) {
-            for (Node node : current.getChildren().values()) {
-                recurse(node, currentPackage.toString(), result);
+    private static void processClassesByCamelHumps(ClassIndex index,
+                                                   String pattern,
+                                                   Consumer<String> consumer) {
+        if (pattern.isEmpty()) {
+            return;
+        }
+        // the first character of the pattern has to start the simple name
+        String first = pattern.substring(0, 1);
+        int end = index.simpleNamePrefixEnd(first);
+        for (int i = index.simpleNamePrefixStart(first); i < end; i++) {
+            int nameIndex = index.getSimpleNameOrder(i);
+            if (FuzzyMatcher.matchesCamelHumps(index.getSimpleName(nameIndex), pattern)) {
+                consumer.accept(index.getName(nameIndex));
             }
         }
-
-        return result;
     }
 
-    public Set<String> getTopLevelNonLeafNodes() {
-        if (mRoot.getChildren() == null) {
-            return Collections.emptySet();
+    private synchronized ClassIndex getNamesIndex() {
+        if (mNamesIndex == null) {
+            mNamesIndex = ClassIndex.build(mNames);
         }
-
-        return mRoot.getChildren().keySet();
+        return mNamesIndex;
     }
 
-    public Set<String> getLeafNodes() {
-        return new HashSet<>(getLeafNodes("", mRoot));
+    private synchronized void invalidateNamesIndex() {
+        mNamesIndex = null;
     }
 
-    private Set<String> getLeafNodes(String currentPackage, Node current) {
-        if (current.isLeaf) {
-            return Collections.singleton(currentPackage);
-        } else {
-            if (current.getChildren() == null || current.getChildren().isEmpty()) {
-                return Collections.emptySet();
-            }
-            Set<String> leafNodes = new HashSet<>();
-            for (Node value : current.getChildren().values()) {
-                String newPackage = currentPackage.isEmpty()
-                        ? value.getValue()
-                        : currentPackage + "." + value.getValue();
-                leafNodes.addAll(getLeafNodes(newPackage, value));
+    /**
+     * @return Whether a class with the given fully qualified name is indexed
+     */
+    public boolean contains(@NonNull String fqn) {
+        if (mNames.contains(fqn)) {
+            return true;
+        }
+        for (ClassIndex index : mIndexes) {
+            if (index.contains(fqn)) {
+                return true;
             }
-            return leafNodes;
         }
+        return false;
     }
 
-    private void recurse(Node node, String currentPackage, List<String> result) {
-        if (node.isLeaf) {
-            String newResult = currentPackage.length() > 0
-                    ? currentPackage + "." + node.getValue()
-                    : node.getValue();
-            result.add(newResult);
+    /**
+     * @return The fully qualified names of the classes in the given package and its
+     * sub packages
+     */
+    public List<String> getMatchingPackages(String packageQuery) {
+        List<String> result = new ArrayList<>();
+        String prefix = packageQuery.isEmpty() ? "" : packageQuery + '.';
+        if (prefix.isEmpty()) {
+            result.addAll(mNames);
         } else {
-            currentPackage = currentPackage.isEmpty()
-                    ? node.getValue()
-                    : currentPackage + "." + node.getValue();
-        }
-
-        if (node.getChildren() == null) {
-            return;
+            result.addAll(mNames.subSet(prefix, packageQuery + (char) ('.' + 1)));
         }
-        for (Node child : node.getChildren().values()) {
-            recurse(child, currentPackage, result);
+        for (ClassIndex index : mIndexes) {
+            int end = index.prefixEnd(prefix);
+            for (int i = index.prefixStart(prefix); i < end; i++) {
+                result.add(index.getName(i));
+            }
         }
+        return result;
     }
 
-    private String[] getParts(String fqn) {
-        if (fqn.contains(".")) {
-            return fqn.split("\\.");
+    /**
+     * @return The first segment of every indexed name, e.g. {@code java} and {@code android}
+     */
+    public Set<String> getTopLevelNonLeafNodes() {
+        Set<String> result = new HashSet<>();
+        for (String name : mNames) {
+            result.add(getFirstSegment(name));
+        }
+        for (ClassIndex index : mIndexes) {
+            int i = 0;
+            while (i < index.size()) {
+                String segment = getFirstSegment(index, i);
+                result.add(segment);
+                if (segment.length() == index.getNameLength(i)) {
+                    i++;
+                } else {
+                    // names are sorted, skip the rest of the names in this segment
+                    i = index.prefixEnd(segment + '.');
+                }
+            }
         }
-        return new String[]{fqn};
+        return result;
     }
 
-    private static class Node {
-
-        private Map<String, Node> mChildren;
-
-        private boolean isLeaf;
-
-        private String mValue;
-
-        public Node() {
-
-        }
-
-        public Node(String value) {
-            mValue = value;
-        }
-
-        public Node getOrCreateChild(String part) {
-            if (mChildren == null) {
-                mChildren = new HashMap<>();
+    public Set<String> getLeafNodes() {
+        Set<String> result = new HashSet<>(mNames);
+        for (ClassIndex index : mIndexes) {
+            for (int i = 0; i < index.size(); i++) {
+                result.add(index.getName(i));
             }
-
-            return mChildren.computeIfAbsent(part, Node::new);
-        }
-
-        public Map<String, Node> getChildren() {
-            return mChildren;
         }
+        return result;
+    }
 
-        public String getValue() {
-            return mValue;
-        }
+    private static String getFirstSegment(String name) {
+        int dot = name.indexOf('.');
+        return dot == -1 ? name : name.substring(0, dot);
+    }
 
-        @Override
-        public String toString() {
-            return "Node{" + "isLeaf=" + isLeaf + ", mValue='" + mValue + '\'' + '}';
+    private static String getFirstSegment(ClassIndex index, int i) {
+        int length = index.getNameLength(i);
+        StringBuilder builder = new StringBuilder();
+        for (int position = 0; position < length; position++) {
+            char c = index.getNameChar(i, position);
+            if (c == '.') {
+                break;
+            }
+            builder.append(c);
         }
+        return builder.toString();
     }
 }
@@ -0,0 +1,93 @@
+package com.tyron.builder.project.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+
+public class ClassIndexTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static final ClassIndex INDEX = ClassIndex.build(Arrays.asList(
+            "java.lang.String", "java.lang.Object", "java.util.List", "java.util.ArrayList",
+            "java.util.concurrent.ConcurrentHashMap", "android.view.View", "Default",
+            "java.lang.String"));
+
+    @Test
+    public void testLookup() {
+        assertEquals(7, INDEX.size());
+        assertTrue(INDEX.contains("java.lang.String"));
+        assertTrue(INDEX.contains("Default"));
+        assertFalse(INDEX.contains("java.lang"));
+        assertFalse(INDEX.contains("java.lang.Strin"));
+        assertEquals("java.lang.Object", INDEX.getName(INDEX.indexOf("java.lang.Object")));
+    }
+
+    @Test
+    public void testPrefix() {
+        assertEquals(2, INDEX.prefixEnd("java.lang.") - INDEX.prefixStart("java.lang."));
+        assertEquals(3, INDEX.prefixEnd("java.util.") - INDEX.prefixStart("java.util."));
+        assertEquals(0, INDEX.prefixEnd("javax.") - INDEX.prefixStart("javax."));
+        assertEquals(7, INDEX.prefixEnd("") - INDEX.prefixStart(""));
+    }
+
+    @Test
+    public void testSimpleName() {
+        int start = INDEX.simpleNamePrefixStart("Str");
+        int end = INDEX.simpleNamePrefixEnd("Str");
+        assertEquals(1, end - start);
+        assertEquals("java.lang.String", INDEX.getName(INDEX.getSimpleNameOrder(start)));
+
+        // simple names are matched ignoring case
+        start = INDEX.simpleNamePrefixStart("str");
+        assertEquals(1, INDEX.simpleNamePrefixEnd("str") - start);
+        assertFalse(INDEX.simpleNameStartsWith(INDEX.getSimpleNameOrder(start), "str"));
+        assertTrue(INDEX.simpleNameStartsWith(INDEX.getSimpleNameOrder(start), "Str"));
+
+        start = INDEX.simpleNamePrefixStart("");
+        assertEquals("ArrayList", simpleName(INDEX.getSimpleNameOrder(start)));
+        assertEquals("View", simpleName(INDEX.getSimpleNameOrder(INDEX.size() - 1)));
+    }
+
+    @Test
+    public void testWriteAndOpen() throws Exception {
+        File file = mFolder.newFile("classes.index");
+        INDEX.write(file);
+
+        ClassIndex index = ClassIndex.open(file);
+        assertEquals(INDEX.size(), index.size());
+        for (int i = 0; i < index.size(); i++) {
+            assertEquals(INDEX.getName(i), index.getName(i));
+            assertEquals(INDEX.getSimpleNameOrder(i), index.getSimpleNameOrder(i));
+        }
+        assertTrue(index.contains("java.util.concurrent.ConcurrentHashMap"));
+    }
+
+    @Test
+    public void testPackageTrieWithIndex() {
+        PackageTrie trie = new PackageTrie();
+        trie.addIndex(INDEX);
+        trie.add("com.example.Main");
+
+        assertEquals(5, trie.getMatchingPackages("java").size());
+        assertEquals(1, trie.getMatchingPackages("com.example").size());
+        assertEquals(4, trie.getTopLevelNonLeafNodes().size());
+        assertTrue(trie.contains("android.view.View"));
+
+        trie.removeIndex(INDEX);
+        assertFalse(trie.contains("android.view.View"));
+    }
+
+    private static String simpleName(int index) {
+        String name = INDEX.getName(index);
+        return name.substring(INDEX.getSimpleNameStart(index));
+    }
+}
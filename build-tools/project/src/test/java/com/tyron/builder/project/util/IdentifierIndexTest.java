@@ -0,0 +1,96 @@
+package com.tyron.builder.project.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+public class IdentifierIndexTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testSearch() throws Exception {
+        File first = write("First.java", "class First { List<String> mList; }");
+        File second = write("Second.java", "class Second { /* List */ int mList2; }");
+
+        IdentifierIndex index = new IdentifierIndex(null);
+        index.update(Arrays.asList(first, second)).get();
+
+        assertEquals(new HashSet<>(Arrays.asList(first, second)), index.getFiles("List"));
+        assertEquals(Collections.singleton(first), index.search("mList"));
+        assertEquals(Collections.singleton(first), index.search("List.String"));
+        assertTrue(index.search("Map").isEmpty());
+        assertTrue(index.search("2").isEmpty());
+        assertTrue(index.containsWord(second, "mList2"));
+        assertFalse(index.containsWord(second, "mList"));
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        File file = write("Main.java", "class Main { String mName; }");
+
+        IdentifierIndex index = new IdentifierIndex(null);
+        index.update(Collections.singletonList(file)).get();
+        assertTrue(index.containsWord(file, "mName"));
+
+        // contents of the editor that have not been saved
+        index.update(file, "class Main { String mTitle; }");
+        assertTrue(index.getFiles("mName").isEmpty());
+        assertEquals(Collections.singleton(file), index.getFiles("mTitle"));
+
+        index.update(Collections.emptyList()).get();
+        assertEquals(0, index.size());
+        assertTrue(index.getFiles("Main").isEmpty());
+    }
+
+    @Test
+    public void testPersistence() throws Exception {
+        File file = write("Main.java", "class Main { String mName; }");
+        File store = new File(mFolder.getRoot(), "caches/identifiers.bin");
+
+        IdentifierIndex index = new IdentifierIndex(store);
+        index.update(Collections.singletonList(file)).get();
+        index.save();
+
+        IdentifierIndex loaded = new IdentifierIndex(store);
+        loaded.load();
+        assertEquals(1, loaded.size());
+        assertEquals(Collections.singleton(file), loaded.search("mName"));
+    }
+
+    @Test
+    public void testUnsavedContentsAreNotPersisted() throws Exception {
+        File file = write("Main.java", "class Main { String mName; }");
+        File store = new File(mFolder.getRoot(), "caches/identifiers.bin");
+
+        IdentifierIndex index = new IdentifierIndex(store);
+        index.update(Collections.singletonList(file)).get();
+        index.update(file, "class Main { String mTitle; }");
+        index.save();
+
+        // the editor is closed without saving, the next session sees the file on disk
+        IdentifierIndex loaded = new IdentifierIndex(store);
+        loaded.load();
+        assertEquals(0, loaded.size());
+        assertTrue(loaded.containsWord(file, "mName"));
+        assertFalse(loaded.containsWord(file, "mTitle"));
+    }
+
+    private File write(String name, String contents) throws Exception {
+        File file = mFolder.newFile(name);
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
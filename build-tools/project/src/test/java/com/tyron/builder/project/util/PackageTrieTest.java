@@ -2,6 +2,8 @@ package com.tyron.builder.project.util;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class PackageTrieTest {
@@ -47,4 +49,37 @@ public class PackageTrieTest {
         List<String> packages = trie.getMatchingPackages("a");
         assert packages.size() == 1;
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSimpleNames() {
+        PackageTrie trie = new PackageTrie();
+        trie.add("java.util.ArrayList");
+        trie.add("java.util.List");
+        trie.add("com.example.arrays.ArrayListAdapter");
+        trie.addIndex(ClassIndex.build(Arrays.asList("java.util.concurrent.ArrayBlockingQueue",
+                "android.widget.ArrayAdapter")));
+
+        List<String> names = new ArrayList<>();
+        trie.processClassesBySimpleName("Array", true, names::add);
+        assert names.size() == 4;
+
+        names.clear();
+        trie.processClassesBySimpleName("arrayl", false, names::add);
+        assert names.size() == 2;
+
+        names.clear();
+        trie.processClassesBySimpleName("arrayl", true, names::add);
+        assert names.isEmpty();
+
+        names.clear();
+        trie.processClassesByCamelHumps("ALA", names::add);
+        assert names.size() == 1;
+        assert names.contains("com.example.arrays.ArrayListAdapter");
+
+        // the index of the added names is kept up to date
+        trie.remove("com.example.arrays.ArrayListAdapter");
+        names.clear();
+        trie.processClassesByCamelHumps("ALA", names::add);
+        assert names.isEmpty();
+    }
+}
@@ -0,0 +1,96 @@
+package org.gradle.internal.snapshot.impl;
+
+import com.google.common.collect.Interners;
+import org.apache.commons.io.FileUtils;
+import org.gradle.internal.hash.DefaultFileHasher;
+import org.gradle.internal.hash.DefaultStreamHasher;
+import org.gradle.internal.hash.FastFileHasher;
+import org.gradle.internal.hash.FileHasher;
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Compares snapshotting a 500 MB classpath directory with MD5 and with {@link FastFileHasher},
+ * hashing the files one after the other or in parallel.
+ *
+ * <p>The jar sizes follow a typical Android classpath: mostly small libraries with a few large
+ * ones. The files stay in the page cache, so this measures hashing rather than the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DirectorySnapshotterBenchmark {
+
+    private static final long CLASSPATH_SIZE = 500L * 1024 * 1024;
+
+    @Param({"md5", "fast"})
+    public String hasher;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private File mDirectory;
+    private DirectorySnapshotter mSnapshotter;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        mDirectory = Files.createTempDirectory("classpath").toFile();
+        Random random = new Random(42);
+        long total = 0;
+        for (int i = 0; total < CLASSPATH_SIZE; i++) {
+            int size;
+            if (i % 20 == 0) {
+                // play services, kotlin stdlib and friends
+                size = 8 * 1024 * 1024 + random.nextInt(8 * 1024 * 1024);
+            } else {
+                size = 16 * 1024 + random.nextInt(1024 * 1024);
+            }
+            byte[] bytes = new byte[size];
+            random.nextBytes(bytes);
+            File directory = new File(mDirectory, "library-" + (i % 50));
+            directory.mkdirs();
+            Files.write(new File(directory, "classes-" + i + ".jar").toPath(), bytes);
+            total += size;
+        }
+
+        FileHasher fileHasher = "md5".equals(hasher)
+                ? new DefaultFileHasher(new DefaultStreamHasher())
+                : new FastFileHasher();
+        mSnapshotter = new DirectorySnapshotter(fileHasher, Interners.newWeakInterner(), Collections.emptyList(),
+                new DirectorySnapshotterStatistics.Collector(), parallel ? ForkJoinPool.commonPool() : null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(mDirectory);
+    }
+
+    @Benchmark
+    public FileSystemLocationSnapshot snapshot() {
+        return mSnapshotter.snapshot(mDirectory.getAbsolutePath(), null, new AtomicBoolean(), snapshot -> {});
+    }
+}
@@ -3,6 +3,7 @@ package org.gradle.internal.snapshot.impl;
 import static org.gradle.internal.file.FileMetadata.*;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Interner;
 import com.google.common.collect.Iterables;
@@ -36,9 +37,14 @@ import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -72,12 +78,22 @@ public class DirectorySnapshotter {
     private final Interner<String> stringInterner;
     private final DefaultExcludes defaultExcludes;
     private final DirectorySnapshotterStatistics.Collector collector;
+    @Nullable
+    private final Executor hashingExecutor;
 
     public DirectorySnapshotter(FileHasher hasher, Interner<String> stringInterner, Collection<String> defaultExcludes, DirectorySnapshotterStatistics.Collector collector) {
+        this(hasher, stringInterner, defaultExcludes, collector, null);
+    }
+
+    /**
+     * @param hashingExecutor When not null, the files of a directory are hashed in parallel on this executor.
+     */
+    public DirectorySnapshotter(FileHasher hasher, Interner<String> stringInterner, Collection<String> defaultExcludes, DirectorySnapshotterStatistics.Collector collector, @Nullable Executor hashingExecutor) {
         this.hasher = hasher;
         this.stringInterner = stringInterner;
         this.defaultExcludes = new DefaultExcludes(defaultExcludes);
         this.collector = collector;
+        this.hashingExecutor = hashingExecutor;
     }
 
     /**
@@ -98,13 +114,105 @@ public class DirectorySnapshotter {
      * @return The (possible filtered) snapshot of the directory.
      */
     public FileSystemLocationSnapshot snapshot(String absolutePath, @Nullable SnapshottingFilter.DirectoryWalkerPredicate predicate, final AtomicBoolean hasBeenFiltered, Consumer<FileSystemLocationSnapshot> unfilteredSnapshotConsumer) {
+        ParallelFileHasher parallelHasher = null;
         try {
             Path rootPath = Paths.get(absolutePath);
+            FileHasher hasher = this.hasher;
+            if (hashingExecutor != null) {
+                parallelHasher = startHashing(rootPath, predicate, hashingExecutor);
+                hasher = parallelHasher;
+            }
             PathVisitor visitor = new PathVisitor(predicate, hasBeenFiltered, hasher, stringInterner, defaultExcludes, collector, EMPTY_SYMBOLIC_LINK_MAPPING, unfilteredSnapshotConsumer);
             Files.walkFileTree(rootPath, DONT_FOLLOW_SYMLINKS, Integer.MAX_VALUE, visitor);
             return visitor.getResult();
         } catch (IOException e) {
             throw new UncheckedIOException(String.format("Could not list contents of directory '%s'.", absolutePath), e);
+        } finally {
+            if (parallelHasher != null) {
+                parallelHasher.cancel();
+            }
+        }
+    }
+
+    /**
+     * Walks the directory once with the same filters as the snapshot, only to find the files it contains,
+     * and starts hashing them on the executor. The snapshot is then built by a second walk that waits for these hashes.
+     */
+    private ParallelFileHasher startHashing(Path rootPath, @Nullable SnapshottingFilter.DirectoryWalkerPredicate predicate, Executor executor) throws IOException {
+        ParallelFileHasher parallelHasher = new ParallelFileHasher(hasher, executor);
+        PathVisitor visitor = new PathVisitor(predicate, new AtomicBoolean(), parallelHasher, stringInterner, defaultExcludes, new DirectorySnapshotterStatistics.Collector(), EMPTY_SYMBOLIC_LINK_MAPPING, snapshot -> {});
+        try {
+            Files.walkFileTree(rootPath, DONT_FOLLOW_SYMLINKS, Integer.MAX_VALUE, visitor);
+        } catch (IOException | RuntimeException e) {
+            parallelHasher.cancel();
+            throw e;
+        }
+        parallelHasher.finishCollecting();
+        return parallelHasher;
+    }
+
+    /**
+     * Hashes the files reported while collecting on an executor, and then returns these hashes
+     * as long as the metadata of the file has not changed in the meantime.
+     */
+    private static class ParallelFileHasher implements FileHasher {
+        private static final HashCode PLACEHOLDER = HashCode.fromInt(0);
+
+        private final FileHasher delegate;
+        private final Executor executor;
+        private final Map<String, PendingHash> pendingHashes = new HashMap<>();
+        private boolean collecting = true;
+
+        ParallelFileHasher(FileHasher delegate, Executor executor) {
+            this.delegate = delegate;
+            this.executor = executor;
+        }
+
+        void finishCollecting() {
+            collecting = false;
+        }
+
+        void cancel() {
+            for (PendingHash pendingHash : pendingHashes.values()) {
+                pendingHash.hash.cancel(false);
+            }
+            pendingHashes.clear();
+        }
+
+        @Override
+        public HashCode hash(File file) {
+            return delegate.hash(file);
+        }
+
+        @Override
+        public HashCode hash(File file, long length, long lastModified) {
+            if (collecting) {
+                CompletableFuture<HashCode> hash = CompletableFuture.supplyAsync(() -> delegate.hash(file, length, lastModified), executor);
+                pendingHashes.put(file.getPath(), new PendingHash(length, lastModified, hash));
+                return PLACEHOLDER;
+            }
+            PendingHash pendingHash = pendingHashes.remove(file.getPath());
+            if (pendingHash == null || pendingHash.length != length || pendingHash.lastModified != lastModified) {
+                return delegate.hash(file, length, lastModified);
+            }
+            try {
+                return pendingHash.hash.join();
+            } catch (CompletionException e) {
+                Throwables.throwIfUnchecked(e.getCause());
+                throw e;
+            }
+        }
+
+        private static class PendingHash {
+            private final long length;
+            private final long lastModified;
+            private final CompletableFuture<HashCode> hash;
+
+            PendingHash(long length, long lastModified, CompletableFuture<HashCode> hash) {
+                this.length = length;
+                this.lastModified = lastModified;
+                this.hash = hash;
+            }
         }
     }
 
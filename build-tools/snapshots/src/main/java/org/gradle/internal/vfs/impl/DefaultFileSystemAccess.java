@@ -26,6 +26,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.function.Consumer;
@@ -59,7 +60,7 @@ public class DefaultFileSystemAccess implements FileSystemAccess {
         this.writeListener = writeListener;
         this.statisticsCollector = statisticsCollector;
         this.defaultExcludes = ImmutableList.copyOf(defaultExcludes);
-        this.directorySnapshotter = new DirectorySnapshotter(hasher, stringInterner, this.defaultExcludes, statisticsCollector);
+        this.directorySnapshotter = new DirectorySnapshotter(hasher, stringInterner, this.defaultExcludes, statisticsCollector, ForkJoinPool.commonPool());
         this.hasher = hasher;
         this.virtualFileSystem = virtualFileSystem;
     }
@@ -220,7 +221,7 @@ public class DefaultFileSystemAccess implements FileSystemAccess {
         if (!defaultExcludes.equals(newDefaultExcludes)) {
             LOGGER.debug("Default excludes changes from " + defaultExcludes + " to " + newDefaultExcludes);
             defaultExcludes = newDefaultExcludes;
-            directorySnapshotter = new DirectorySnapshotter(hasher, stringInterner, newDefaultExcludes, statisticsCollector);
+            directorySnapshotter = new DirectorySnapshotter(hasher, stringInterner, newDefaultExcludes, statisticsCollector, ForkJoinPool.commonPool());
             virtualFileSystem.invalidateAll();
         }
     }
@@ -0,0 +1,136 @@
+package com.tyron.common.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import me.xdrop.fuzzywuzzy.FuzzySearch;
+
+/**
+ * Matches every class name of android.jar against a few typed prefixes, once the way
+ * CompletionPrefixMatcher used to (lower casing both names and computing a Levenshtein ratio)
+ * and once with {@link FuzzyMatcher}, with and without precomputed masks.
+ *
+ * <p>The android.jar is taken from the {@code android.jar} system property, or the newest
+ * platform of the sdk pointed to by {@code ANDROID_HOME} or {@code ANDROID_SDK_ROOT}.
+ * Run with {@code -prof gc} to compare the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FuzzyMatcherBenchmark {
+
+    private static final int MINIMUM_SCORE = 70;
+
+    @Param({"s", "Str", "ArrLi", "actvty", "rcyclrvw"})
+    public String prefix;
+
+    private String[] mNames;
+    private long[] mLetters;
+    private long[] mHumps;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        List<String> names = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(findAndroidJar())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (!name.endsWith(".class")) {
+                    continue;
+                }
+                name = name.substring(name.lastIndexOf('/') + 1, name.length() - ".class".length());
+                names.add(name.substring(name.lastIndexOf('$') + 1));
+            }
+        }
+        mNames = names.toArray(new String[0]);
+        mLetters = new long[mNames.length];
+        mHumps = new long[mNames.length];
+        for (int i = 0; i < mNames.length; i++) {
+            mLetters[i] = FuzzyMatcher.letterMask(mNames[i]);
+            mHumps[i] = FuzzyMatcher.humpMask(mNames[i]);
+        }
+    }
+
+    @Benchmark
+    public void fuzzySearchRatio(Blackhole blackhole) {
+        for (String name : mNames) {
+            boolean matches = name.startsWith(prefix) ||
+                              name.toLowerCase().startsWith(prefix.toLowerCase()) ||
+                              FuzzySearch.ratio(name, prefix) > MINIMUM_SCORE;
+            blackhole.consume(matches);
+        }
+    }
+
+    @Benchmark
+    public void fuzzyMatcher(Blackhole blackhole) {
+        for (String name : mNames) {
+            blackhole.consume(FuzzyMatcher.score(name, prefix));
+        }
+    }
+
+    @Benchmark
+    public void fuzzyMatcherPrecomputed(Blackhole blackhole) {
+        for (int i = 0; i < mNames.length; i++) {
+            blackhole.consume(FuzzyMatcher.score(mNames[i], mLetters[i], mHumps[i], prefix));
+        }
+    }
+
+    private static File findAndroidJar() {
+        String property = System.getProperty("android.jar");
+        if (property != null) {
+            return new File(property);
+        }
+        for (String variable : new String[]{"ANDROID_HOME", "ANDROID_SDK_ROOT"}) {
+            String sdk = System.getenv(variable);
+            if (sdk == null) {
+                continue;
+            }
+            File[] platforms = new File(sdk, "platforms").listFiles(File::isDirectory);
+            if (platforms == null) {
+                continue;
+            }
+            Arrays.sort(platforms, (first, second) ->
+                    Integer.compare(getApiLevel(second), getApiLevel(first)));
+            for (File platform : platforms) {
+                File androidJar = new File(platform, "android.jar");
+                if (androidJar.exists()) {
+                    return androidJar;
+                }
+            }
+        }
+        throw new IllegalStateException("Unable to find android.jar, set the android.jar " +
+                                        "system property or ANDROID_HOME");
+    }
+
+    private static int getApiLevel(File platform) {
+        try {
+            return Integer.parseInt(platform.getName().substring("android-".length()));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+}
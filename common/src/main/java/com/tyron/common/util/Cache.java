@@ -1,17 +1,42 @@
 package com.tyron.common.util;
 
+import com.google.common.hash.Hashing;
+
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.attribute.FileTime;
-import java.time.Instant;
-import java.util.HashMap;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
-/** Cache maps a file + an arbitrary key to a value. When the file is modified, the mapping expires. */
+/**
+ * Cache maps a file + an arbitrary key to a value. When the contents of the file changes,
+ * every mapping associated with that file expires.
+ *
+ * <p>Freshness is checked against the size and modification time recorded when the value was
+ * loaded, the file is only re-hashed when those differ so that touching a file without changing
+ * its contents does not invalidate it. Entries are kept in access order and the least recently
+ * used ones are evicted once the estimated size of the cache exceeds its byte budget.
+ */
 public class Cache<K, V> {
+
+    /**
+     * The default byte budget of a cache
+     */
+    public static final long DEFAULT_MAX_WEIGHT = 32 * 1024 * 1024;
+
+    /**
+     * Rough per entry overhead of the map node, key and stamp objects
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+
     public static class Key<K> {
         public final Path file;
         public final K key;
@@ -34,67 +59,209 @@ public class Cache<K, V> {
         }
     }
 
-    private class Value {
+    static class Value<V> {
         final V value;
-        final Instant created = Instant.now();
+        /**
+         * Size of the file at the time the value was loaded
+         */
+        long length;
+        /**
+         * Last modified time of the file in milliseconds at the time the value was loaded
+         */
+        long lastModified;
+        /**
+         * Hash of the contents of the file at the time the value was loaded
+         */
+        final long hash;
+        final long weight;
 
-        Value(V value) {
+        Value(V value, long length, long lastModified, long hash, long weight) {
             this.value = value;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.weight = weight;
         }
     }
 
-    private final Map<Key<K>, Value> map = new HashMap<>();
+    private final Map<Key<K>, Value<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxWeight;
+    private long totalWeight;
+    private long modCount;
+
+    public Cache() {
+        this(DEFAULT_MAX_WEIGHT);
+    }
+
+    public Cache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
 
     public boolean has(Path file, K k) {
         return !needs(file, k);
     }
 
-    public void clear() {
+    public synchronized void clear() {
         map.clear();
+        totalWeight = 0;
+        modCount++;
     }
 
-    public boolean needs(Path file, K k) {
+    public synchronized boolean needs(Path file, K k) {
         // If key is not in map, it needs to be loaded
         Key<K> key = new Key<>(file, k);
-        if (!map.containsKey(key)) return true;
+        Value<V> value = map.get(key);
+        if (value == null) return true;
 
-        // If key was loaded before file was last modified, it needs to be reloaded
-        Value value = map.get(key);
-        FileTime modified = null;
+        BasicFileAttributes attributes;
         try {
-            modified = Files.getLastModifiedTime(file);
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
         } catch (IOException e) {
-            modified = FileTime.from(Instant.now());
+            return true;
+        }
+
+        long length = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        if (value.length == length && value.lastModified == lastModified) {
+            return false;
+        }
+
+        // the stamp has changed, only consider it modified if the contents are different
+        if (value.length == length && value.hash == hash(file)) {
+            value.lastModified = lastModified;
+            modCount++;
+            return false;
+        }
+
+        removeAll(file);
+        return true;
+    }
+
+    /**
+     * Removes every key associated with the given file
+     */
+    public synchronized void removeAll(Path file) {
+        Iterator<Map.Entry<Key<K>, Value<V>>> iterator = map.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key<K>, Value<V>> entry = iterator.next();
+            if (entry.getKey().file.equals(file)) {
+                totalWeight -= entry.getValue().weight;
+                iterator.remove();
+                modCount++;
+            }
         }
-        // TODO remove all keys associated with file when file changes
-        boolean before = value.created.isBefore(modified.toInstant());
-        return before;
     }
 
     @SafeVarargs
-    public final void remove(Path file, K... keys) {
+    public final synchronized void remove(Path file, K... keys) {
         for (K k : keys) {
             Key<K> key = new Key<>(file, k);
-            map.remove(key);
+            Value<V> removed = map.remove(key);
+            if (removed != null) {
+                totalWeight -= removed.weight;
+                modCount++;
+            }
         }
     }
 
-    public Set<Key<K>> getKeys() {
-        return map.keySet();
+    /**
+     * @return A snapshot of the keys currently in this cache
+     */
+    public synchronized Set<Key<K>> getKeys() {
+        return Collections.unmodifiableSet(new HashSet<>(map.keySet()));
     }
 
-    public void load(Path file, K k, V v) {
-        // TODO limit total size of cache
-        Key<K> key = new Key<>(file, k);
-        Value value = new Value(v);
-        map.put(key, value);
+    public synchronized void load(Path file, K k, V v) {
+        long length = -1;
+        long lastModified = -1;
+        try {
+            BasicFileAttributes attributes =
+                    Files.readAttributes(file, BasicFileAttributes.class);
+            length = attributes.size();
+            lastModified = attributes.lastModifiedTime().toMillis();
+        } catch (IOException ignored) {
+            // a missing file will always need to be reloaded
+        }
+        put(new Key<>(file, k), new Value<>(v, length, lastModified, hash(file), 0));
     }
 
-    public V get(Path file, K k) {
+    public synchronized V get(Path file, K k) {
         Key<K> key = new Key<>(file, k);
-        if (!map.containsKey(key)) {
+        Value<V> value = map.get(key);
+        if (value == null) {
             throw new IllegalArgumentException(k + " is not in map " + map);
         }
-        return (V) map.get(key).value;
+        return value.value;
+    }
+
+    /**
+     * @return The estimated size in bytes of the entries of this cache
+     */
+    public synchronized long getWeight() {
+        return totalWeight;
+    }
+
+    synchronized void put(Key<K> key, Value<V> value) {
+        Value<V> weighted = new Value<>(value.value, value.length, value.lastModified,
+                value.hash, weigh(key, value.value));
+        Value<V> previous = map.put(key, weighted);
+        if (previous != null) {
+            totalWeight -= previous.weight;
+        }
+        totalWeight += weighted.weight;
+        modCount++;
+        trim();
+    }
+
+    synchronized List<Map.Entry<Key<K>, Value<V>>> entries() {
+        return new ArrayList<>(map.entrySet());
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache fits in its budget
+     */
+    private void trim() {
+        Iterator<Map.Entry<Key<K>, Value<V>>> iterator = map.entrySet().iterator();
+        while (totalWeight > maxWeight && iterator.hasNext()) {
+            Map.Entry<Key<K>, Value<V>> eldest = iterator.next();
+            totalWeight -= eldest.getValue().weight;
+            iterator.remove();
+            modCount++;
+        }
+    }
+
+    /**
+     * Estimates the number of bytes retained by an entry
+     */
+    protected long weigh(Key<K> key, V value) {
+        long weight = ENTRY_OVERHEAD + 2L * key.file.toString().length();
+        if (key.key instanceof CharSequence) {
+            weight += 2L * ((CharSequence) key.key).length();
+        }
+        if (value instanceof Iterable) {
+            for (Object o : (Iterable<?>) value) {
+                weight += 16 + 2L * String.valueOf(o).length();
+            }
+        } else if (value != null) {
+            weight += 16 + 2L * String.valueOf(value).length();
+        }
+        return weight;
+    }
+
+    /**
+     * @return A counter that is incremented every time the contents of this cache change
+     */
+    synchronized long getModificationCount() {
+        return modCount;
+    }
+
+    static long hash(Path file) {
+        try {
+            return com.google.common.io.Files.asByteSource(file.toFile())
+                    .hash(Hashing.murmur3_128())
+                    .asLong();
+        } catch (IOException e) {
+            return 0;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,65 @@
+package com.tyron.common.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes and reads values of a given type to a compact binary stream.
+ */
+public interface DataExternalizer<T> {
+
+    void save(DataOutput out, T value) throws IOException;
+
+    T read(DataInput in) throws IOException;
+
+    DataExternalizer<Void> VOID = new DataExternalizer<Void>() {
+        @Override
+        public void save(DataOutput out, Void value) {
+
+        }
+
+        @Override
+        public Void read(DataInput in) {
+            return null;
+        }
+    };
+
+    DataExternalizer<String> STRING = new DataExternalizer<String>() {
+        @Override
+        public void save(DataOutput out, String value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeUTF(value);
+            }
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+    };
+
+    DataExternalizer<List<File>> FILE_LIST = new DataExternalizer<List<File>>() {
+        @Override
+        public void save(DataOutput out, List<File> value) throws IOException {
+            out.writeInt(value.size());
+            for (File file : value) {
+                out.writeUTF(file.getPath());
+            }
+        }
+
+        @Override
+        public List<File> read(DataInput in) throws IOException {
+            int size = in.readInt();
+            List<File> files = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                files.add(new File(in.readUTF()));
+            }
+            return files;
+        }
+    };
+}
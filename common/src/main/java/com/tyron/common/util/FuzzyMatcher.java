@@ -0,0 +1,317 @@
+package com.tyron.common.util;
+
+/**
+ * Matches a pattern against a candidate name by camel humps or as a subsequence without
+ * allocating, so it can be run on every candidate on every keystroke.
+ *
+ * <p>A match is found in one of the following ways, from the best to the worst:
+ * <ul>
+ *     <li>Camel humps: every character of the pattern either follows the previously matched
+ *     character or starts a hump of the candidate, e.g. {@code ALis} matches
+ *     {@code ArrayList}</li>
+ *     <li>Subsequence: the first characters match and the rest of the pattern appears in order,
+ *     e.g. {@code arlt} matches {@code ArrayList}</li>
+ *     <li>Infix: the pattern appears as is inside the candidate, e.g. {@code ring} matches
+ *     {@code String}. Only patterns of at least {@value #MIN_INFIX_LENGTH} characters are
+ *     matched this way</li>
+ * </ul>
+ * Characters are compared case insensitively, matching the exact case improves the score.
+ *
+ * <p>The letters and hump starts of a candidate can be computed once with
+ * {@link #letterMask(CharSequence)} and {@link #humpMask(CharSequence)} and passed to
+ * {@link #score(CharSequence, long, long, CharSequence)}, the letter mask lets candidates that
+ * do not contain every character of the pattern be rejected without looking at them.
+ */
+public final class FuzzyMatcher {
+
+    /**
+     * Returned by the score methods when the pattern does not match
+     */
+    public static final int NO_MATCH = Integer.MIN_VALUE;
+
+    /**
+     * Use as the letter mask of a candidate when it is not known
+     */
+    public static final long UNKNOWN_LETTERS = -1L;
+
+    /**
+     * Use as the hump mask of a candidate when it is not known
+     */
+    public static final long UNKNOWN_HUMPS = 0L;
+
+    private static final int MIN_INFIX_LENGTH = 3;
+
+    private static final int TIER_INFIX = 1;
+    private static final int TIER_SUBSEQUENCE = 2;
+    private static final int TIER_HUMPS = 3;
+    private static final int TIER_SCALE = 1 << 16;
+    private static final int BASE_SCORE = TIER_SCALE / 2;
+
+    private static final int CHAR_SCORE = 4;
+    private static final int CONSECUTIVE_BONUS = 4;
+    private static final int HUMP_BONUS = 6;
+    private static final int START_BONUS = 10;
+    private static final int CASE_BONUS = 1;
+    private static final int MAX_GAP_PENALTY = 4;
+
+    private static final int DIGITS_SHIFT = 26;
+    private static final long UNDERSCORE_BIT = 1L << 36;
+    private static final long DOLLAR_BIT = 1L << 37;
+    private static final long OTHER_BIT = 1L << 38;
+
+    private FuzzyMatcher() {
+
+    }
+
+    /**
+     * @return A mask of the characters contained in the text, ignoring case
+     */
+    public static long letterMask(CharSequence text) {
+        long mask = 0;
+        for (int i = 0; i < text.length(); i++) {
+            mask |= letterBit(text.charAt(i));
+        }
+        return mask;
+    }
+
+    /**
+     * @return A mask where bit {@code i} is set if the character at index {@code i} starts a
+     * hump, only the first 64 characters are recorded
+     */
+    public static long humpMask(CharSequence text) {
+        long mask = 0;
+        int length = Math.min(text.length(), Long.SIZE);
+        for (int i = 0; i < length; i++) {
+            if (isHumpStart(text, i)) {
+                mask |= 1L << i;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @return Whether the pattern matches the candidate in any way
+     */
+    public static boolean matches(CharSequence candidate, CharSequence pattern) {
+        return score(candidate, pattern) != NO_MATCH;
+    }
+
+    /**
+     * @return Whether every character of the pattern either follows the previous one or starts
+     * a hump of the candidate, starting from the first hump
+     */
+    public static boolean matchesCamelHumps(CharSequence candidate, CharSequence pattern) {
+        if (pattern.length() == 0) {
+            return true;
+        }
+        if (pattern.length() > candidate.length() ||
+            !equalsIgnoreCase(candidate.charAt(0), pattern.charAt(0))) {
+            return false;
+        }
+        return matchHumps(candidate, UNKNOWN_HUMPS, false, pattern) != NO_MATCH;
+    }
+
+    /**
+     * @return The score of the match, greater is better, or {@link #NO_MATCH}
+     */
+    public static int score(CharSequence candidate, CharSequence pattern) {
+        return score(candidate, UNKNOWN_LETTERS, UNKNOWN_HUMPS, pattern);
+    }
+
+    /**
+     * Scores a candidate whose masks have been computed beforehand.
+     *
+     * @param candidate        the name to match
+     * @param candidateLetters the {@link #letterMask(CharSequence)} of the candidate or
+     *                         {@link #UNKNOWN_LETTERS}
+     * @param candidateHumps   the {@link #humpMask(CharSequence)} of the candidate or
+     *                         {@link #UNKNOWN_HUMPS}
+     * @param pattern          the text typed by the user
+     * @return The score of the match, greater is better, or {@link #NO_MATCH}
+     */
+    public static int score(CharSequence candidate,
+                            long candidateLetters,
+                            long candidateHumps,
+                            CharSequence pattern) {
+        int patternLength = pattern.length();
+        if (patternLength == 0) {
+            return TIER_HUMPS * TIER_SCALE;
+        }
+        if (patternLength > candidate.length()) {
+            return NO_MATCH;
+        }
+        if ((letterMask(pattern) & ~candidateLetters) != 0) {
+            return NO_MATCH;
+        }
+        boolean humpsKnown = candidateHumps != UNKNOWN_HUMPS;
+
+        int score = matchHumps(candidate, candidateHumps, humpsKnown, pattern);
+        if (score != NO_MATCH) {
+            return tier(TIER_HUMPS, score);
+        }
+        score = matchSubsequence(candidate, pattern);
+        if (score != NO_MATCH) {
+            return tier(TIER_SUBSEQUENCE, score);
+        }
+        score = matchInfix(candidate, candidateHumps, humpsKnown, pattern);
+        if (score != NO_MATCH) {
+            return tier(TIER_INFIX, score);
+        }
+        return NO_MATCH;
+    }
+
+    private static int matchHumps(CharSequence candidate,
+                                  long humps,
+                                  boolean humpsKnown,
+                                  CharSequence pattern) {
+        int length = candidate.length();
+        int score = 0;
+        int index = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            char p = pattern.charAt(i);
+            if (i > 0 && index < length && equalsIgnoreCase(candidate.charAt(index), p)) {
+                score += CHAR_SCORE + CONSECUTIVE_BONUS + caseBonus(candidate.charAt(index), p);
+                index++;
+                continue;
+            }
+
+            int hump = index;
+            while (hump < length &&
+                   !(isHumpStart(candidate, humps, humpsKnown, hump) &&
+                     equalsIgnoreCase(candidate.charAt(hump), p))) {
+                hump++;
+            }
+            if (hump == length) {
+                return NO_MATCH;
+            }
+            score += CHAR_SCORE + HUMP_BONUS + caseBonus(candidate.charAt(hump), p);
+            score -= Math.min(hump - index, MAX_GAP_PENALTY);
+            if (hump == 0) {
+                score += START_BONUS;
+            }
+            index = hump + 1;
+        }
+        return score - (length - index);
+    }
+
+    private static int matchSubsequence(CharSequence candidate, CharSequence pattern) {
+        if (!equalsIgnoreCase(candidate.charAt(0), pattern.charAt(0))) {
+            return NO_MATCH;
+        }
+        int length = candidate.length();
+        int score = START_BONUS + CHAR_SCORE + caseBonus(candidate.charAt(0), pattern.charAt(0));
+        int index = 1;
+        for (int i = 1; i < pattern.length(); i++) {
+            char p = pattern.charAt(i);
+            int start = index;
+            while (index < length && !equalsIgnoreCase(candidate.charAt(index), p)) {
+                index++;
+            }
+            if (index == length) {
+                return NO_MATCH;
+            }
+            score += CHAR_SCORE + caseBonus(candidate.charAt(index), p);
+            score += index == start ? CONSECUTIVE_BONUS : -Math.min(index - start,
+                    MAX_GAP_PENALTY);
+            index++;
+        }
+        return score - (length - index);
+    }
+
+    private static int matchInfix(CharSequence candidate,
+                                  long humps,
+                                  boolean humpsKnown,
+                                  CharSequence pattern) {
+        int patternLength = pattern.length();
+        if (patternLength < MIN_INFIX_LENGTH) {
+            return NO_MATCH;
+        }
+        int last = candidate.length() - patternLength;
+        for (int start = 1; start <= last; start++) {
+            int i = 0;
+            int caseBonus = 0;
+            while (i < patternLength &&
+                   equalsIgnoreCase(candidate.charAt(start + i), pattern.charAt(i))) {
+                caseBonus += caseBonus(candidate.charAt(start + i), pattern.charAt(i));
+                i++;
+            }
+            if (i == patternLength) {
+                int score = patternLength * (CHAR_SCORE + CONSECUTIVE_BONUS) + caseBonus;
+                if (isHumpStart(candidate, humps, humpsKnown, start)) {
+                    score += HUMP_BONUS;
+                }
+                return score - Math.min(start, MAX_GAP_PENALTY) -
+                       (candidate.length() - start - patternLength);
+            }
+        }
+        return NO_MATCH;
+    }
+
+    private static int tier(int tier, int score) {
+        int clamped = Math.max(0, Math.min(TIER_SCALE - 1, BASE_SCORE + score));
+        return tier * TIER_SCALE + clamped;
+    }
+
+    private static boolean isHumpStart(CharSequence text,
+                                       long humps,
+                                       boolean humpsKnown,
+                                       int index) {
+        if (humpsKnown && index < Long.SIZE) {
+            return (humps & (1L << index)) != 0;
+        }
+        return isHumpStart(text, index);
+    }
+
+    private static boolean isHumpStart(CharSequence text, int index) {
+        char c = text.charAt(index);
+        if (!Character.isLetterOrDigit(c)) {
+            return false;
+        }
+        if (index == 0) {
+            return true;
+        }
+        char previous = text.charAt(index - 1);
+        if (!Character.isLetterOrDigit(previous)) {
+            return true;
+        }
+        if (Character.isUpperCase(c)) {
+            // the last upper case letter of an acronym starts a hump, e.g. URLConnection
+            return !Character.isUpperCase(previous) ||
+                   (index + 1 < text.length() && Character.isLowerCase(text.charAt(index + 1)));
+        }
+        return Character.isDigit(c) && !Character.isDigit(previous);
+    }
+
+    private static int caseBonus(char candidate, char pattern) {
+        return candidate == pattern ? CASE_BONUS : 0;
+    }
+
+    private static boolean equalsIgnoreCase(char first, char second) {
+        if (first == second) {
+            return true;
+        }
+        char upperFirst = Character.toUpperCase(first);
+        char upperSecond = Character.toUpperCase(second);
+        return upperFirst == upperSecond ||
+               Character.toLowerCase(upperFirst) == Character.toLowerCase(upperSecond);
+    }
+
+    private static long letterBit(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return 1L << (c - 'a');
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return 1L << (c - 'A');
+        }
+        if (c >= '0' && c <= '9') {
+            return 1L << (DIGITS_SHIFT + c - '0');
+        }
+        if (c == '_') {
+            return UNDERSCORE_BIT;
+        }
+        if (c == '$') {
+            return DOLLAR_BIT;
+        }
+        return OTHER_BIT;
+    }
+}
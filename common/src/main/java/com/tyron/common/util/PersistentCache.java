@@ -0,0 +1,129 @@
+package com.tyron.common.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link Cache} that is backed by a binary file on disk so that its contents survive
+ * process restarts.
+ *
+ * <p>The whole store is read once when the cache is created and written back by
+ * {@link #save()} only if it has been modified since it was last read or written. Entries are
+ * persisted in access order so the least recently used ones are still evicted first after
+ * the cache is reloaded.
+ */
+public class PersistentCache<K, V> extends Cache<K, V> {
+
+    private static final int MAGIC = 0x43414348;
+    private static final int VERSION = 1;
+
+    private final File mStore;
+    private final DataExternalizer<K> mKeyExternalizer;
+    private final DataExternalizer<V> mValueExternalizer;
+
+    private long mSavedModificationCount;
+
+    public PersistentCache(File store,
+                           DataExternalizer<K> keyExternalizer,
+                           DataExternalizer<V> valueExternalizer) {
+        this(store, keyExternalizer, valueExternalizer, DEFAULT_MAX_WEIGHT);
+    }
+
+    public PersistentCache(File store,
+                           DataExternalizer<K> keyExternalizer,
+                           DataExternalizer<V> valueExternalizer,
+                           long maxWeight) {
+        super(maxWeight);
+        mStore = store;
+        mKeyExternalizer = keyExternalizer;
+        mValueExternalizer = valueExternalizer;
+
+        if (mStore.exists()) {
+            try {
+                read();
+            } catch (IOException | RuntimeException e) {
+                // the store is corrupted or from an older version, start from scratch
+                super.clear();
+                //noinspection ResultOfMethodCallIgnored
+                mStore.delete();
+            }
+        }
+        mSavedModificationCount = getModificationCount();
+    }
+
+    public File getStore() {
+        return mStore;
+    }
+
+    private void read() throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mStore), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unrecognized cache store " + mStore);
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                Path file = Paths.get(in.readUTF());
+                K key = mKeyExternalizer.read(in);
+                long length = in.readLong();
+                long lastModified = in.readLong();
+                long hash = in.readLong();
+                V value = mValueExternalizer.read(in);
+                put(new Key<>(file, key), new Value<>(value, length, lastModified, hash, 0));
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated cache store " + mStore, e);
+        }
+    }
+
+    /**
+     * Writes the contents of this cache to its store if it has been modified. The store is
+     * written to a temporary file first and then moved so that a crash in the middle of a
+     * write never leaves a truncated store behind.
+     */
+    public synchronized void save() throws IOException {
+        long modificationCount = getModificationCount();
+        if (modificationCount == mSavedModificationCount && mStore.exists()) {
+            return;
+        }
+
+        File parent = mStore.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create cache directory " + parent);
+        }
+
+        File temp = new File(mStore.getPath() + ".tmp");
+        List<Map.Entry<Key<K>, Value<V>>> entries = entries();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<Key<K>, Value<V>> entry : entries) {
+                Key<K> key = entry.getKey();
+                Value<V> value = entry.getValue();
+                out.writeUTF(key.file.toString());
+                mKeyExternalizer.save(out, key.key);
+                out.writeLong(value.length);
+                out.writeLong(value.lastModified);
+                out.writeLong(value.hash);
+                mValueExternalizer.save(out, value.value);
+            }
+        }
+        Files.move(temp.toPath(), mStore.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        mSavedModificationCount = modificationCount;
+    }
+}
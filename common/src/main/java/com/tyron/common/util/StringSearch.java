@@ -204,12 +204,13 @@ public class StringSearch {
 //        }
         try (FileChannel channel = FileChannel.open(java)) {
             // Read up to 1 MB of data from file
-            int limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            return search.nextWord(SEARCH_BUFFER) != -1;
+            ByteBuffer buffer = SEARCH_BUFFER.get();
+            int limit = Math.min((int) channel.size(), buffer.capacity());
+            buffer.position(0);
+            buffer.limit(limit);
+            channel.read(buffer);
+            buffer.position(0);
+            return search.nextWord(buffer) != -1;
         } catch (NoSuchFileException e) {
             return false;
         } catch (IOException e) {
@@ -350,12 +351,13 @@ public class StringSearch {
 //        }
         try (FileChannel channel = FileChannel.open(java)) {
             // Read up to 1 MB of data from file
-            int limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            return search.next(SEARCH_BUFFER) != -1;
+            ByteBuffer buffer = SEARCH_BUFFER.get();
+            int limit = Math.min((int) channel.size(), buffer.capacity());
+            buffer.position(0);
+            buffer.limit(limit);
+            channel.read(buffer);
+            buffer.position(0);
+            return search.next(buffer) != -1;
         } catch (NoSuchFileException e) {
             return false;
         } catch (IOException e) {
@@ -416,5 +418,9 @@ public class StringSearch {
         }
     }
 
-    private static final ByteBuffer SEARCH_BUFFER = ByteBuffer.allocateDirect(1024 * 1024);
+    /**
+     * The buffer files are read into, one per thread as searches may run concurrently
+     */
+    private static final ThreadLocal<ByteBuffer> SEARCH_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(1024 * 1024));
 }
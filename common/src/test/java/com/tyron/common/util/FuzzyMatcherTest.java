@@ -0,0 +1,57 @@
+package com.tyron.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FuzzyMatcherTest {
+
+    @Test
+    public void testCamelHumps() {
+        assertTrue(FuzzyMatcher.matches("ArrayList", "AL"));
+        assertTrue(FuzzyMatcher.matches("ArrayList", "arrLis"));
+        assertTrue(FuzzyMatcher.matches("URLConnection", "UC"));
+        assertTrue(FuzzyMatcher.matches("getString", "str"));
+        assertTrue(FuzzyMatcher.matches("MY_CONSTANT_VALUE", "mcv"));
+    }
+
+    @Test
+    public void testSubsequenceAndInfix() {
+        assertTrue(FuzzyMatcher.matches("ArrayList", "arlt"));
+        assertTrue(FuzzyMatcher.matches("String", "ring"));
+        assertFalse(FuzzyMatcher.matches("String", "ri"));
+        assertFalse(FuzzyMatcher.matches("ArrayList", "xyz"));
+        assertFalse(FuzzyMatcher.matches("List", "ArrayList"));
+    }
+
+    @Test
+    public void testOrdering() {
+        int humps = FuzzyMatcher.score("ArrayList", "AL");
+        int subsequence = FuzzyMatcher.score("ArrayList", "arlt");
+        int infix = FuzzyMatcher.score("String", "ring");
+        assertTrue(humps > subsequence);
+        assertTrue(subsequence > infix);
+
+        assertTrue(FuzzyMatcher.score("HashMap", "HM") > FuzzyMatcher.score("HashMap", "hm"));
+        assertTrue(FuzzyMatcher.score("HashMap", "HM") >
+                   FuzzyMatcher.score("ConcurrentHashMap", "HM"));
+    }
+
+    @Test
+    public void testPrecomputedMasks() {
+        String[] candidates = {"ArrayList", "URLConnection", "getString", "String", "a_b_c",
+                "ThisIsAVeryLongClassNameThatHasMoreThanSixtyFourCharactersInTotalForSure"};
+        String[] patterns = {"AL", "uc", "str", "ring", "abc", "TotalFS", "zz"};
+        for (String candidate : candidates) {
+            long letters = FuzzyMatcher.letterMask(candidate);
+            long humps = FuzzyMatcher.humpMask(candidate);
+            for (String pattern : patterns) {
+                assertEquals(candidate + " " + pattern,
+                        FuzzyMatcher.score(candidate, pattern),
+                        FuzzyMatcher.score(candidate, letters, humps, pattern));
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.tyron.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+public class PersistentCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testReloadFromDisk() throws IOException {
+        File source = write("Main.java", "class Main {}");
+        File store = new File(mFolder.getRoot(), "caches/javaCache.bin");
+
+        PersistentCache<String, List<File>> cache = newCache(store);
+        assertTrue(cache.needs(source.toPath(), "class"));
+        cache.load(source.toPath(), "class", Collections.singletonList(new File("Main.class")));
+        cache.save();
+
+        PersistentCache<String, List<File>> reloaded = newCache(store);
+        assertFalse(reloaded.needs(source.toPath(), "class"));
+        assertEquals(Collections.singletonList(new File("Main.class")),
+                reloaded.get(source.toPath(), "class"));
+    }
+
+    @Test
+    public void testTouchWithoutChangeIsFresh() throws IOException {
+        File source = write("Main.java", "class Main {}");
+        PersistentCache<String, List<File>> cache =
+                newCache(new File(mFolder.getRoot(), "cache.bin"));
+        cache.load(source.toPath(), "class", Collections.emptyList());
+
+        assertTrue(source.setLastModified(source.lastModified() + 10_000));
+        assertFalse(cache.needs(source.toPath(), "class"));
+
+        write("Main.java", "class Main { int a; }");
+        assertTrue(cache.needs(source.toPath(), "class"));
+        assertTrue(cache.getKeys().isEmpty());
+    }
+
+    @Test
+    public void testEvictsByWeight() throws IOException {
+        Cache<String, String> cache = new Cache<>(1024);
+        for (int i = 0; i < 100; i++) {
+            File file = write("File" + i + ".txt", String.valueOf(i));
+            cache.load(file.toPath(), "key", "value");
+        }
+        assertTrue(cache.getWeight() <= 1024);
+        assertTrue(cache.getKeys().size() < 100);
+        // the most recently loaded entry is always kept
+        assertFalse(cache.needs(new File(mFolder.getRoot(), "File99.txt").toPath(), "key"));
+    }
+
+    private PersistentCache<String, List<File>> newCache(File store) {
+        return new PersistentCache<>(store, DataExternalizer.STRING, DataExternalizer.FILE_LIST);
+    }
+
+    private File write(String name, String contents) throws IOException {
+        File file = new File(mFolder.getRoot(), name);
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -14,7 +14,7 @@ public class CompletionParameters {
     private final Project mProject;
     private final Module mModule;
     private final File mFile;
-    private final String mContents;
+    private final CharSequence mContents;
     private final String mPrefix;
     private final int mLine;
     private final int mColumn;
@@ -29,7 +29,7 @@ public class CompletionParameters {
                                  Module module,
                                  Editor editor,
                                  File file,
-                                 String contents,
+                                 CharSequence contents,
                                  String prefix,
                                  int line,
                                  int column,
@@ -57,7 +57,10 @@ public class CompletionParameters {
         return mFile;
     }
 
-    public String getContents() {
+    /**
+     * @return The contents of the file, usually an immutable snapshot of the editor
+     */
+    public CharSequence getContents() {
         return mContents;
     }
 
@@ -110,7 +113,7 @@ public class CompletionParameters {
         private Project project;
         private Module module;
         private File file;
-        private String contents;
+        private CharSequence contents;
         private String prefix;
         private int line;
         private int column;
@@ -136,7 +139,7 @@ public class CompletionParameters {
             return this;
         }
 
-        public Builder setContents(String contents) {
+        public Builder setContents(CharSequence contents) {
             this.contents = contents;
             return this;
         }
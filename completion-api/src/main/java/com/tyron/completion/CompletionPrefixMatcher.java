@@ -1,17 +1,12 @@
 package com.tyron.completion;
 
-import me.xdrop.fuzzywuzzy.FuzzySearch;
+import com.tyron.common.util.FuzzyMatcher;
 
 /**
  * Logic of matching a completion name with a given completion prefix
  */
 public class CompletionPrefixMatcher {
 
-    /**
-     * The minimum score needed for a candidate to be considered as partial match.
-     */
-    private static final int MINIMUM_SCORE = 70;
-
     /**
      * How well does the candidate name match the completion prefix.
      *
@@ -29,22 +24,46 @@ public class CompletionPrefixMatcher {
     }
 
     public static MatchLevel computeMatchLevel(String candidateName, String completionPrefix) {
+        MatchLevel matchLevel = computePrefixMatchLevel(candidateName, completionPrefix);
+        if (matchLevel != MatchLevel.NOT_MATCH) {
+            return matchLevel;
+        }
+        if (FuzzyMatcher.matches(candidateName, completionPrefix)) {
+            return MatchLevel.PARTIAL_MATCH;
+        }
+        return MatchLevel.NOT_MATCH;
+    }
+
+    /**
+     * Same as {@link #computeMatchLevel(String, String)} without looking for partial matches,
+     * for callers that also need the {@link #computeMatchScore(CharSequence, CharSequence) score}
+     * of a partial match and would otherwise match the candidate twice.
+     */
+    public static MatchLevel computePrefixMatchLevel(String candidateName,
+                                                     String completionPrefix) {
         if (candidateName.startsWith(completionPrefix)) {
             return candidateName.length() == completionPrefix.length()
                     ? MatchLevel.CASE_SENSITIVE_EQUAL
                     : MatchLevel.CASE_SENSITIVE_PREFIX;
         }
 
-        if (candidateName.toLowerCase().startsWith(completionPrefix.toLowerCase())) {
+        if (candidateName.regionMatches(true, 0, completionPrefix, 0, completionPrefix.length())) {
             return candidateName.length() == completionPrefix.length()
                     ? MatchLevel.CASE_INSENSITIVE_EQUAL
                     : MatchLevel.CASE_INSENSITIVE_PREFIX;
         }
-
-        int score = FuzzySearch.ratio(candidateName, completionPrefix);
-        if (score > MINIMUM_SCORE) {
-            return MatchLevel.PARTIAL_MATCH;
-        }
         return MatchLevel.NOT_MATCH;
     }
+
+    /**
+     * How well does the candidate name match the completion prefix within its
+     * {@link MatchLevel}, greater is better.
+     *
+     * @return The score, or {@link FuzzyMatcher#NO_MATCH} if the candidate does not match
+     *
+     * @see FuzzyMatcher#score(CharSequence, CharSequence)
+     */
+    public static int computeMatchScore(CharSequence candidateName, CharSequence completionPrefix) {
+        return FuzzyMatcher.score(candidateName, completionPrefix);
+    }
 }
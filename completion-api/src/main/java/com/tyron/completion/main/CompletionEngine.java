@@ -39,7 +39,7 @@ public class CompletionEngine {
                                    Module module,
                                    Editor editor,
                                    File file,
-                                   String contents,
+                                   CharSequence contents,
                                    String prefix,
                                    int line,
                                    int column,
@@ -21,6 +21,8 @@ public class CompletionItem implements Comparable<CompletionItem> {
     public static final Comparator<CompletionItem> COMPARATOR =
             Comparator.comparing((CompletionItem item) -> item.getMatchLevel()
                     .ordinal(), Comparator.reverseOrder())
+                    .thenComparing(Comparator.comparingInt(CompletionItem::getMatchScore)
+                            .reversed())
                     .thenComparing(CompletionItem::getSortText)
                     .thenComparing(it -> it.getFilterTexts()
                             .isEmpty() ? it.getLabel() : it.getFilterTexts()
@@ -52,6 +54,7 @@ public class CompletionItem implements Comparable<CompletionItem> {
     private String sortText;
     private List<String> filterTexts = new ArrayList<>(1);
     private CompletionPrefixMatcher.MatchLevel matchLevel;
+    private int matchScore;
 
     public CompletionItem() {
         this.insertHandler = new DefaultInsertHandler(CompletionUtils.JAVA_PREDICATE, this);
@@ -103,6 +106,17 @@ public class CompletionItem implements Comparable<CompletionItem> {
         this.matchLevel = matchLevel;
     }
 
+    /**
+     * @return How well the item matches the prefix within its match level, greater is better
+     */
+    public int getMatchScore() {
+        return matchScore;
+    }
+
+    public void setMatchScore(int matchScore) {
+        this.matchScore = matchScore;
+    }
+
     public enum Kind {
         OVERRIDE, IMPORT, NORMAL
     }
@@ -6,13 +6,13 @@ import static java.util.stream.Collectors.toList;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Ordering;
 import com.google.errorprone.annotations.Immutable;
+import com.tyron.common.util.FuzzyMatcher;
 import com.tyron.completion.CompletionPrefixMatcher;
 import com.tyron.completion.CompletionPrefixMatcher.MatchLevel;
 import com.tyron.completion.CompletionProvider;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
@@ -94,21 +94,29 @@ public class CompletionList {
         }
 
         public Builder addItem(CompletionItem item) {
-            List<MatchLevel> matchLevels = new ArrayList<>();
+            MatchLevel matchLevel = MatchLevel.NOT_MATCH;
+            int matchScore = FuzzyMatcher.NO_MATCH;
             for (String filterText : item.getFilterTexts()) {
-                MatchLevel matchLevel =
-                        CompletionPrefixMatcher.computeMatchLevel(filterText, completionPrefix);
-                if (matchLevel == MatchLevel.NOT_MATCH) {
-                    continue;
+                MatchLevel level = CompletionPrefixMatcher
+                        .computePrefixMatchLevel(filterText, completionPrefix);
+                if (level == MatchLevel.NOT_MATCH) {
+                    // the score tells whether it is a partial match, so match it only once
+                    int score = CompletionPrefixMatcher.computeMatchScore(filterText,
+                            completionPrefix);
+                    if (score != FuzzyMatcher.NO_MATCH) {
+                        level = MatchLevel.PARTIAL_MATCH;
+                        matchScore = Math.max(matchScore, score);
+                    }
+                }
+                if (level.compareTo(matchLevel) > 0) {
+                    matchLevel = level;
                 }
-                matchLevels.add(matchLevel);
             }
-            if (matchLevels.isEmpty()) {
+            if (matchLevel == MatchLevel.NOT_MATCH) {
                 return this;
             }
-            Collections.sort(matchLevels);
-            MatchLevel matchLevel = matchLevels.get(matchLevels.size() - 1);
             item.setMatchLevel(matchLevel);
+            item.setMatchScore(matchLevel == MatchLevel.PARTIAL_MATCH ? matchScore : 0);
             items.add(item);
             return this;
         }
@@ -1,23 +1,54 @@
 package com.tyron.resolver;
 
-import android.text.TextUtils;
-
 import com.tyron.resolver.model.Dependency;
 import com.tyron.resolver.model.Pom;
 import com.tyron.resolver.repository.RepositoryManager;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * Resolves the transitive dependencies of a set of declared dependencies.
+ *
+ * <p>The poms of the dependency graph are first retrieved concurrently, after which the
+ * graph is walked to pick the highest version of every conflicting library. When a lock file
+ * is set, the result is stored in it along with the declared dependencies, resolving the same
+ * declared dependencies again returns the locked poms without going through the graph.
+ */
 public class DependencyResolver {
 
+    private static final int LOCK_MAGIC = 0x4c4f434b;
+    private static final int LOCK_VERSION = 1;
+    private static final int MAX_CONCURRENT_REQUESTS = 8;
+
     private final RepositoryManager repository;
     private final Map<Pom, String> resolvedPoms;
 
     private ResolveListener mListener;
+    private File mLockFile;
+    private int mFailures;
 
     public DependencyResolver(RepositoryManager repository) {
         this.repository = repository;
@@ -34,25 +65,57 @@ public class DependencyResolver {
         void onFailure(String message);
     }
 
+    /**
+     * Sets the file where the resolved dependencies are locked, the poms returned from a
+     * lock file only contain their coordinates and packaging.
+     */
+    public void setLockFile(File lockFile) {
+        mLockFile = lockFile;
+    }
+
     public List<Pom> resolveDependencies(List<Dependency> declaredDependencies) {
+        List<String> lockKey = getLockKey(declaredDependencies);
+        if (mLockFile != null) {
+            List<Pom> locked = readLockFile(lockKey);
+            if (locked != null) {
+                if (mListener != null) {
+                    mListener.onResolve("Dependencies are up to date");
+                }
+                return locked;
+            }
+        }
+
+        List<String> declarations = new ArrayList<>();
+        for (Dependency dependency : declaredDependencies) {
+            declarations.add(dependency.toString());
+        }
+        Map<String, Pom> fetched = fetchPoms(declarations, false);
+
         List<Pom> poms = new ArrayList<>();
+        boolean complete = true;
         for (Dependency dependency : declaredDependencies) {
             if (mListener != null) {
                 mListener.onResolve("Getting POM: " + dependency);
             }
 
-            Pom pom = repository.getPom(dependency.toString());
+            Pom pom = fetched.get(dependency.toString());
             if (pom != null) {
                 pom.setExcludes(dependency.getExcludes());
                 pom.setUserDefined(true);
                 poms.add(pom);
             } else {
+                complete = false;
                 if (mListener != null) {
                     mListener.onFailure("Unable to retrieve POM of " + dependency);
                 }
             }
         }
-        return resolve(poms);
+
+        List<Pom> resolved = resolve(poms);
+        if (mLockFile != null && complete && mFailures == 0) {
+            writeLockFile(lockKey, resolved);
+        }
+        return resolved;
     }
 
     /**
@@ -60,12 +123,130 @@ public class DependencyResolver {
      * the conflicting libraries
      */
     public List<Pom> resolve(List<Pom> declaredDependencies) {
+        mFailures = 0;
+        prefetch(declaredDependencies);
         for (Pom pom : declaredDependencies) {
             resolve(pom);
         }
         return new ArrayList<>(resolvedPoms.keySet());
     }
 
+    /**
+     * Retrieves the poms of the whole dependency graph concurrently, so that walking the
+     * graph afterwards only hits the parsed poms of the repository.
+     */
+    private void prefetch(List<Pom> declaredDependencies) {
+        List<String> declarations = new ArrayList<>();
+        for (Pom pom : declaredDependencies) {
+            for (Dependency dependency : getDependencies(pom)) {
+                declarations.add(dependency.toString());
+            }
+        }
+        fetchPoms(declarations, true);
+    }
+
+    /**
+     * Retrieves the poms of the given declarations concurrently.
+     *
+     * @param transitive whether the dependencies of the retrieved poms are retrieved as well
+     * @return The retrieved poms keyed by their declaration
+     */
+    private Map<String, Pom> fetchPoms(List<String> declarations, boolean transitive) {
+        Map<String, Pom> poms = new HashMap<>();
+        if (declarations.isEmpty()) {
+            return poms;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(MAX_CONCURRENT_REQUESTS, declarations.size()), runnable -> {
+                    Thread thread = new Thread(runnable, "DependencyResolver");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        CompletionService<Pom> completionService = new ExecutorCompletionService<>(executor);
+        Map<Future<Pom>, String> requests = new HashMap<>();
+        Set<String> requested = new HashSet<>();
+        try {
+            for (String declaration : declarations) {
+                if (requested.add(declaration)) {
+                    requests.put(completionService.submit(() -> repository.getPom(declaration)),
+                            declaration);
+                }
+            }
+
+            while (!requests.isEmpty()) {
+                Future<Pom> future = completionService.take();
+                String declaration = requests.remove(future);
+                Pom pom;
+                try {
+                    pom = future.get();
+                } catch (ExecutionException e) {
+                    pom = null;
+                }
+                if (pom == null) {
+                    continue;
+                }
+                poms.put(declaration, pom);
+                if (!transitive) {
+                    continue;
+                }
+
+                for (Dependency dependency : getDependencies(pom)) {
+                    String child = dependency.toString();
+                    if (requested.add(child)) {
+                        requests.put(completionService.submit(() -> repository.getPom(child)),
+                                child);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        return poms;
+    }
+
+    /**
+     * @return The dependencies of the pom that are not excluded or only used for tests
+     */
+    private static List<Dependency> getDependencies(Pom pom) {
+        List<Dependency> dependencies = new ArrayList<>();
+        for (Dependency dependency : pom.getDependencies()) {
+            if ("test".equals(dependency.getScope())) {
+                continue;
+            }
+            if (isExcluded(pom.getExcludes(), dependency)) {
+                continue;
+            }
+            dependencies.add(dependency);
+        }
+        return dependencies;
+    }
+
+    private static boolean isExcluded(List<Dependency> excludes, Dependency dependency) {
+        return excludes.stream().filter(Objects::nonNull).anyMatch(ex -> {
+            if (ex.getGroupId() == null) {
+                return false;
+            }
+            if (!ex.getGroupId().equals(dependency.getGroupId())) {
+                return false;
+            }
+
+            if (ex.getArtifactId() == null) {
+                return false;
+            }
+
+            if (!ex.getArtifactId().equals(dependency.getArtifactId())) {
+                return false;
+            }
+            if (ex.getVersionName().isEmpty()) {
+                return true;
+            }
+            return ex.getVersionName().equals(dependency.getVersionName());
+        });
+    }
+
     private void resolve(Pom pom) {
         if (resolvedPoms.containsKey(pom)) {
             if (pom.isUserDefined()) {
@@ -91,41 +272,10 @@ public class DependencyResolver {
 
         List<Dependency> excludes = pom.getExcludes();
 
-        for (Dependency dependency : pom.getDependencies()) {
-            if ("test".equals(dependency.getScope())) {
-                continue;
-            }
-
-            boolean excluded = excludes.stream().filter(Objects::nonNull).anyMatch(ex -> {
-                if (ex == null) {
-                    return false;
-                }
-                if (ex.getGroupId() == null) {
-                    return false;
-                }
-                if (!ex.getGroupId().equals(dependency.getGroupId())) {
-                    return false;
-                }
-
-                if (ex.getArtifactId() == null) {
-                    return false;
-                }
-
-                if (!ex.getArtifactId().equals(dependency.getArtifactId())) {
-                    return false;
-                }
-                if (TextUtils.isEmpty(ex.getVersionName())) {
-                    return true;
-                }
-                return ex.getVersionName().equals(dependency.getVersionName());
-            });
-
-            if (excluded) {
-                continue;
-            }
-
+        for (Dependency dependency : getDependencies(pom)) {
             Pom resolvedPom = repository.getPom(dependency.toString());
             if (resolvedPom == null) {
+                mFailures++;
                 if (mListener != null) {
                     mListener.onFailure("Failed to resolve " + dependency);
                 }
@@ -139,6 +289,88 @@ public class DependencyResolver {
         resolvedPoms.put(pom, pom.getVersionName());
     }
 
+    /**
+     * The key of a lock file, every declared dependency along with its exclusions
+     */
+    private static List<String> getLockKey(List<Dependency> declaredDependencies) {
+        List<String> key = new ArrayList<>();
+        for (Dependency dependency : declaredDependencies) {
+            StringBuilder builder = new StringBuilder(dependency.toString());
+            for (Dependency exclude : dependency.getExcludes()) {
+                builder.append(" -").append(exclude);
+            }
+            key.add(builder.toString());
+        }
+        Collections.sort(key);
+        return key;
+    }
+
+    private List<Pom> readLockFile(List<String> lockKey) {
+        if (!mLockFile.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mLockFile)))) {
+            if (in.readInt() != LOCK_MAGIC || in.readInt() != LOCK_VERSION) {
+                return null;
+            }
+            int keySize = in.readInt();
+            if (keySize != lockKey.size()) {
+                return null;
+            }
+            for (String declaration : lockKey) {
+                if (!declaration.equals(in.readUTF())) {
+                    return null;
+                }
+            }
+
+            int size = in.readInt();
+            List<Pom> poms = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Pom pom = Pom.valueOf(in.readUTF(), in.readUTF(), in.readUTF());
+                String packaging = in.readUTF();
+                pom.setPackaging(packaging.isEmpty() ? null : packaging);
+                pom.setUserDefined(in.readBoolean());
+                poms.add(pom);
+            }
+            return poms;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void writeLockFile(List<String> lockKey, List<Pom> poms) {
+        File parent = mLockFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            return;
+        }
+        File temp = new File(mLockFile.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(LOCK_MAGIC);
+                out.writeInt(LOCK_VERSION);
+                out.writeInt(lockKey.size());
+                for (String declaration : lockKey) {
+                    out.writeUTF(declaration);
+                }
+                out.writeInt(poms.size());
+                for (Pom pom : poms) {
+                    out.writeUTF(pom.getGroupId());
+                    out.writeUTF(pom.getArtifactId());
+                    out.writeUTF(pom.getVersionName());
+                    out.writeUTF(pom.getPackaging() == null ? "" : pom.getPackaging());
+                    out.writeBoolean(pom.isUserDefined());
+                }
+            }
+            Files.move(temp.toPath(), mLockFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            if (mListener != null) {
+                mListener.onFailure("Unable to write lock file: " + e.getMessage());
+            }
+        }
+    }
+
     private int getHigherVersion(String firstVersion, String secondVersion) {
         ComparableVersion firstComparableVersion = new ComparableVersion(firstVersion);
         ComparableVersion secondComparableVersion = new ComparableVersion(secondVersion);
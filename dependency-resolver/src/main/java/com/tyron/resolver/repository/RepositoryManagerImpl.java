@@ -10,8 +10,6 @@ import com.tyron.resolver.model.Pom;
 import com.tyron.resolver.parser.PomParser;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.SuffixFileFilter;
-import org.apache.commons.io.filefilter.TrueFileFilter;
 import org.xml.sax.SAXException;
 import org.xmlpull.v1.XmlPullParserException;
 
@@ -20,10 +18,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.jar.JarFile;
 import java.util.logging.Logger;
 import java.util.zip.ZipFile;
@@ -36,13 +37,28 @@ public class RepositoryManagerImpl implements RepositoryManager {
 
     private File cacheDir;
     private final List<Repository> repositories;
-    private final List<Pom> pomFiles;
+
+    /**
+     * Parsed poms keyed by {@code groupId:artifactId:version}
+     */
+    private final Map<String, Pom> pomFiles;
+
+    /**
+     * Poms that are being retrieved, so that concurrent requests for the same pom
+     * wait for a single download instead of starting their own
+     */
+    private final Map<String, FutureTask<Pom>> pendingPoms;
 
     public RepositoryManagerImpl() {
-        this.repositories = new ArrayList<>();
-        this.pomFiles = new ArrayList<>();
+        this.repositories = new CopyOnWriteArrayList<>();
+        this.pomFiles = new ConcurrentHashMap<>();
+        this.pendingPoms = new ConcurrentHashMap<>();
     }
 
+    /**
+     * Retrieve the pom file either from cache or from the network. This can be called from
+     * multiple threads, each pom is only retrieved and parsed once.
+     */
     @Override
     @Nullable
     public Pom getPom(String declaration) {
@@ -50,32 +66,50 @@ public class RepositoryManagerImpl implements RepositoryManager {
         if (pomNames == null) {
             return null;
         }
-        for (Pom pom : pomFiles) {
-            if (!pomNames[0].equals(pom.getGroupId())) {
-                continue;
-            }
-            if (!pomNames[1].equals(pom.getArtifactId())) {
-                continue;
-            }
-            if (!pomNames[2].equals(pom.getVersionName())) {
-                continue;
-            }
+        String key = pomNames[0] + ":" + pomNames[1] + ":" + pomNames[2];
+        Pom pom = pomFiles.get(key);
+        if (pom != null) {
             return pom;
         }
-        return getPomFromUrls(pomNames);
+
+        FutureTask<Pom> task = new FutureTask<>(() -> getPomFromUrls(pomNames));
+        FutureTask<Pom> pending = pendingPoms.putIfAbsent(key, task);
+        if (pending == null) {
+            pending = task;
+            try {
+                task.run();
+            } finally {
+                pendingPoms.remove(key, task);
+            }
+        }
+
+        try {
+            return pending.get();
+        } catch (ExecutionException e) {
+            sLogger.severe("Unable to retrieve pom " + key + ": " + e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
     }
 
     private Pom getPomFromUrls(String[] names) {
-        InputStream is = getFromUrls(getPathFromDeclaration(names) + ".pom");
-        if (is != null) {
-            String contents;
+        String key = names[0] + ":" + names[1] + ":" + names[2];
+        try (InputStream is = getFromUrls(getPathFromDeclaration(names) + ".pom")) {
+            if (is == null) {
+                return null;
+            }
             try {
-                contents = CharStreams.toString(new InputStreamReader(is));
+                String contents = CharStreams.toString(new InputStreamReader(is));
                 Pom parsed = new PomParser(this).parse(contents);
+                if (parsed == null) {
+                    return null;
+                }
                 parsed.setGroupId(names[0]);
                 parsed.setArtifactId(names[1]);
                 parsed.setVersionName(names[2]);
-                pomFiles.add(parsed);
+                pomFiles.put(key, parsed);
                 return parsed;
             } catch (IOException | XmlPullParserException | SAXException e) {
                 String message = "Failed to parse input stream.\n" +
@@ -83,11 +117,25 @@ public class RepositoryManagerImpl implements RepositoryManager {
                                  "Reason: " + e.getMessage();
                 sLogger.severe(message);
             }
+        } catch (IOException e) {
+            // failed to close the stream, ignored
         }
         return null;
     }
 
     private InputStream getFromUrls(String appendUrl) {
+        // check the caches of every repository before going to the network
+        for (Repository repository : repositories) {
+            try {
+                File cached = repository.getCachedFile(appendUrl);
+                if (cached != null && cached.exists()) {
+                    return FileUtils.openInputStream(cached);
+                }
+            } catch (IOException e) {
+                // ignored, try the next repository
+            }
+        }
+
         for (int i = 0; i < repositories.size(); i++) {
             Repository repository = repositories.get(i);
             try {
@@ -203,30 +251,10 @@ public class RepositoryManagerImpl implements RepositoryManager {
             throw new IllegalStateException("Cache directory is not set.");
         }
 
+        // poms are parsed lazily from the cache directories of the repositories when
+        // they are first requested
         for (Repository repository : repositories) {
             repository.setCacheDirectory(cacheDir);
-
-            File rootDirectory = repository.getRootDirectory();
-            if (rootDirectory == null || !rootDirectory.exists()) {
-                continue;
-            }
-            Iterator<File> pomFiles = FileUtils.iterateFiles(rootDirectory,
-                    new SuffixFileFilter(".pom"), TrueFileFilter.INSTANCE);
-
-            // save pom files for later
-            while (pomFiles.hasNext()) {
-                File pom = pomFiles.next();
-                PomParser parser = new PomParser(this);
-                try {
-                    Pom parsed = parser.parse(pom);
-                    this.pomFiles.add(parsed);
-                } catch (XmlPullParserException | IOException | SAXException e) {
-                    // ignored
-                    // TODO: should the file be deleted if its corrupt?
-                    sLogger.severe("Unable to parse file " + pom + "\n" +
-                                   "Reason: " + e.getMessage());
-                }
-            }
         }
     }
 }
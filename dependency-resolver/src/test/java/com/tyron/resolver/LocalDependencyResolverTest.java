@@ -0,0 +1,136 @@
+package com.tyron.resolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.tyron.resolver.model.Dependency;
+import com.tyron.resolver.model.Pom;
+import com.tyron.resolver.repository.LocalRepository;
+import com.tyron.resolver.repository.RepositoryManagerImpl;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Resolves a small dependency graph served from a local repository
+ */
+public class LocalDependencyResolverTest {
+
+    private File mCacheDir;
+    private File mLockFile;
+    private RepositoryManagerImpl mRepository;
+
+    @Before
+    public void setup() throws IOException {
+        mCacheDir = Files.createTempDirectory("resolver").toFile();
+        mLockFile = new File(mCacheDir, "dependencies.lock");
+
+        writePom("com.example", "app", "1.0",
+                dependency("com.example", "lib", "1.0", null),
+                dependency("com.example", "core", "1.0", null));
+        writePom("com.example", "lib", "1.0",
+                dependency("com.example", "core", "2.0", null),
+                dependency("junit", "junit", "4.13.2", "test"));
+        writePom("com.example", "core", "1.0");
+        writePom("com.example", "core", "2.0");
+
+        mRepository = createRepository();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(mCacheDir);
+    }
+
+    @Test
+    public void testResolve() {
+        DependencyResolver resolver = new DependencyResolver(mRepository);
+        List<Pom> poms = resolver.resolveDependencies(
+                ImmutableList.of(Dependency.valueOf("com.example:app:1.0")));
+
+        assertEquals(3, poms.size());
+        assertEquals("2.0", find(poms, "core").getVersionName());
+        assertNotNull(find(poms, "lib"));
+        assertFalse(poms.contains(Pom.valueOf("junit", "junit", "4.13.2")));
+    }
+
+    @Test
+    public void testLockFile() throws IOException {
+        List<Dependency> declared = ImmutableList.of(Dependency.valueOf("com.example:app:1.0"));
+
+        DependencyResolver resolver = new DependencyResolver(mRepository);
+        resolver.setLockFile(mLockFile);
+        List<Pom> resolved = resolver.resolveDependencies(declared);
+        assertTrue(mLockFile.exists());
+
+        // the repository is gone, only the lock file can resolve these
+        FileUtils.deleteDirectory(new File(mCacheDir, "local"));
+        DependencyResolver lockedResolver = new DependencyResolver(createRepository());
+        lockedResolver.setLockFile(mLockFile);
+        List<Pom> locked = lockedResolver.resolveDependencies(declared);
+        assertEquals(resolved.size(), locked.size());
+        assertEquals("2.0", find(locked, "core").getVersionName());
+        assertTrue(find(locked, "app").isUserDefined());
+
+        // a different set of declared dependencies is not locked
+        DependencyResolver changedResolver = new DependencyResolver(createRepository());
+        changedResolver.setLockFile(mLockFile);
+        List<Pom> changed = changedResolver.resolveDependencies(ImmutableList.of(
+                Dependency.valueOf("com.example:app:1.0"),
+                Dependency.valueOf("com.example:core:1.0")));
+        assertTrue(changed.isEmpty());
+    }
+
+    private RepositoryManagerImpl createRepository() {
+        RepositoryManagerImpl repository = new RepositoryManagerImpl();
+        repository.addRepository(new LocalRepository("local"));
+        repository.setCacheDirectory(mCacheDir);
+        repository.initialize();
+        return repository;
+    }
+
+    private static Pom find(List<Pom> poms, String artifactId) {
+        for (Pom pom : poms) {
+            if (artifactId.equals(pom.getArtifactId())) {
+                return pom;
+            }
+        }
+        return null;
+    }
+
+    private static String dependency(String groupId, String artifactId, String version,
+                                     String scope) {
+        return "<dependency>" +
+               "<groupId>" + groupId + "</groupId>" +
+               "<artifactId>" + artifactId + "</artifactId>" +
+               "<version>" + version + "</version>" +
+               (scope == null ? "" : "<scope>" + scope + "</scope>") +
+               "</dependency>";
+    }
+
+    private void writePom(String groupId, String artifactId, String version,
+                          String... dependencies) throws IOException {
+        String path = groupId.replace('.', '/') + "/" + artifactId + "/" + version + "/" +
+                      artifactId + "-" + version + ".pom";
+        String contents = "<project>" +
+                          "<groupId>" + groupId + "</groupId>" +
+                          "<artifactId>" + artifactId + "</artifactId>" +
+                          "<version>" + version + "</version>" +
+                          "<dependencies>" + String.join("", dependencies) +
+                          "</dependencies>" +
+                          "</project>";
+        FileUtils.writeStringToFile(new File(mCacheDir, "local/" + path), contents,
+                StandardCharsets.UTF_8);
+    }
+}
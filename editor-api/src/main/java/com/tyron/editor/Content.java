@@ -51,4 +51,14 @@ public interface Content extends CharSequence {
     void setModificationStamp(long stamp);
 
     long getModificationStamp();
+
+    /**
+     * Returns an immutable snapshot of the current text that can be read from any thread.
+     * Implementations that keep the snapshot up to date as the text is edited return it
+     * without copying, by default the text is copied.
+     */
+    @NotNull
+    default TextSnapshot getSnapshot() {
+        return TextSnapshot.of(this, getModificationStamp());
+    }
 }
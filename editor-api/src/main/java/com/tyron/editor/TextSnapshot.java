@@ -0,0 +1,341 @@
+package com.tyron.editor;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable snapshot of the text of a {@link Content}, stored as a balanced tree of
+ * chunks (a rope).
+ *
+ * <p>Editing a snapshot returns a new snapshot that shares every chunk that was not touched
+ * with the old one, so the editor can keep a snapshot up to date in {@code O(log n)} per edit
+ * and hand it to other threads without copying the whole document. The snapshot carries the
+ * modification stamp of the content it was taken from.
+ */
+public final class TextSnapshot implements CharSequence {
+
+    /**
+     * Chunks shorter than this are merged with their neighbours when concatenated
+     */
+    private static final int MAX_LEAF_LENGTH = 512;
+    private static final int MAX_DEPTH = 48;
+
+    private static final Node EMPTY_NODE = new Leaf("");
+    private static final TextSnapshot EMPTY = new TextSnapshot(EMPTY_NODE, 0);
+
+    private final Node mRoot;
+    private final long mModificationStamp;
+
+    /**
+     * The leaf that contained the last character read, sequential reads such as a lexer
+     * scanning the text then do not walk the tree for every character
+     */
+    private volatile LeafCursor mCursor;
+
+    private TextSnapshot(Node root, long modificationStamp) {
+        mRoot = root;
+        mModificationStamp = modificationStamp;
+    }
+
+    public static TextSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a snapshot of the given text, the text is copied once
+     */
+    @NotNull
+    public static TextSnapshot of(@NotNull CharSequence text, long modificationStamp) {
+        if (text instanceof TextSnapshot) {
+            return ((TextSnapshot) text).withModificationStamp(modificationStamp);
+        }
+        return new TextSnapshot(build(text, 0, text.length()), modificationStamp);
+    }
+
+    public long getModificationStamp() {
+        return mModificationStamp;
+    }
+
+    @NotNull
+    public TextSnapshot withModificationStamp(long modificationStamp) {
+        if (modificationStamp == mModificationStamp) {
+            return this;
+        }
+        return new TextSnapshot(mRoot, modificationStamp);
+    }
+
+    /**
+     * @return A snapshot with the text inserted at the given index
+     */
+    @NotNull
+    public TextSnapshot insert(int index, @NotNull CharSequence text, long modificationStamp) {
+        return replace(index, index, text, modificationStamp);
+    }
+
+    /**
+     * @return A snapshot without the text from start to end
+     */
+    @NotNull
+    public TextSnapshot delete(int start, int end, long modificationStamp) {
+        return replace(start, end, "", modificationStamp);
+    }
+
+    /**
+     * @return A snapshot with the text from start to end replaced with the given text
+     */
+    @NotNull
+    public TextSnapshot replace(int start, int end, @NotNull CharSequence text,
+                                long modificationStamp) {
+        checkRange(start, end);
+        Node left = slice(mRoot, 0, start);
+        Node right = slice(mRoot, end, mRoot.length);
+        Node middle = build(text, 0, text.length());
+        return new TextSnapshot(balance(concat(concat(left, middle), right)), modificationStamp);
+    }
+
+    @Override
+    public int length() {
+        return mRoot.length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= mRoot.length) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + mRoot.length);
+        }
+        LeafCursor cursor = mCursor;
+        if (cursor != null && index >= cursor.start && index < cursor.start + cursor.leaf.length) {
+            return cursor.leaf.text.charAt(index - cursor.start);
+        }
+        Node node = mRoot;
+        int start = 0;
+        while (node instanceof Concat) {
+            Concat concat = (Concat) node;
+            if (index - start < concat.left.length) {
+                node = concat.left;
+            } else {
+                start += concat.left.length;
+                node = concat.right;
+            }
+        }
+        Leaf leaf = (Leaf) node;
+        mCursor = new LeafCursor(leaf, start);
+        return leaf.text.charAt(index - start);
+    }
+
+    /**
+     * @return A snapshot of the given range, sharing the chunks of this snapshot
+     */
+    @NotNull
+    @Override
+    public TextSnapshot subSequence(int start, int end) {
+        checkRange(start, end);
+        return new TextSnapshot(slice(mRoot, start, end), mModificationStamp);
+    }
+
+    /**
+     * Copies the characters from start to end into the destination array
+     */
+    public void getChars(int start, int end, char[] destination, int destinationStart) {
+        checkRange(start, end);
+        getChars(mRoot, start, end, destination, destinationStart);
+    }
+
+    @NotNull
+    public char[] toCharArray() {
+        char[] chars = new char[mRoot.length];
+        getChars(mRoot, 0, mRoot.length, chars, 0);
+        return chars;
+    }
+
+    /**
+     * @return A buffer backed by an array holding a copy of the text, the javac scanner reads
+     * such buffers without copying them again
+     */
+    @NotNull
+    public CharBuffer toCharBuffer() {
+        return CharBuffer.wrap(toCharArray());
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return new String(toCharArray());
+    }
+
+    private void checkRange(int start, int end) {
+        if (start < 0 || end > mRoot.length || start > end) {
+            throw new IndexOutOfBoundsException(
+                    "start: " + start + ", end: " + end + ", length: " + mRoot.length);
+        }
+    }
+
+    private static abstract class Node {
+
+        final int length;
+        final int depth;
+
+        Node(int length, int depth) {
+            this.length = length;
+            this.depth = depth;
+        }
+    }
+
+    private static final class Leaf extends Node {
+
+        final String text;
+
+        Leaf(String text) {
+            super(text.length(), 0);
+            this.text = text;
+        }
+    }
+
+    private static final class Concat extends Node {
+
+        final Node left;
+        final Node right;
+
+        Concat(Node left, Node right) {
+            super(left.length + right.length, Math.max(left.depth, right.depth) + 1);
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    private static final class LeafCursor {
+
+        final Leaf leaf;
+        final int start;
+
+        LeafCursor(Leaf leaf, int start) {
+            this.leaf = leaf;
+            this.start = start;
+        }
+    }
+
+    /**
+     * Builds a balanced tree of the given range of the text
+     */
+    private static Node build(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length == 0) {
+            return EMPTY_NODE;
+        }
+        if (length <= MAX_LEAF_LENGTH) {
+            return new Leaf(text.subSequence(start, end).toString());
+        }
+        int middle = start + length / 2;
+        return new Concat(build(text, start, middle), build(text, middle, end));
+    }
+
+    private static Node concat(Node left, Node right) {
+        if (left.length == 0) {
+            return right;
+        }
+        if (right.length == 0) {
+            return left;
+        }
+        if (left instanceof Leaf && right instanceof Leaf &&
+            left.length + right.length <= MAX_LEAF_LENGTH) {
+            return new Leaf(((Leaf) left).text + ((Leaf) right).text);
+        }
+        // merge small edits into the neighbouring leaf to keep the tree shallow
+        if (right instanceof Leaf && left instanceof Concat) {
+            Concat concat = (Concat) left;
+            if (concat.right instanceof Leaf &&
+                concat.right.length + right.length <= MAX_LEAF_LENGTH) {
+                return new Concat(concat.left, concat(concat.right, right));
+            }
+        }
+        if (left instanceof Leaf && right instanceof Concat) {
+            Concat concat = (Concat) right;
+            if (concat.left instanceof Leaf &&
+                left.length + concat.left.length <= MAX_LEAF_LENGTH) {
+                return new Concat(concat(left, concat.left), concat.right);
+            }
+        }
+        return new Concat(left, right);
+    }
+
+    private static Node slice(Node node, int start, int end) {
+        if (start == 0 && end == node.length) {
+            return node;
+        }
+        if (start == end) {
+            return EMPTY_NODE;
+        }
+        if (node instanceof Leaf) {
+            return new Leaf(((Leaf) node).text.substring(start, end));
+        }
+        Concat concat = (Concat) node;
+        int leftLength = concat.left.length;
+        if (end <= leftLength) {
+            return slice(concat.left, start, end);
+        }
+        if (start >= leftLength) {
+            return slice(concat.right, start - leftLength, end - leftLength);
+        }
+        return concat(slice(concat.left, start, leftLength),
+                slice(concat.right, 0, end - leftLength));
+    }
+
+    /**
+     * Rebuilds the tree from its leaves once it gets too deep
+     */
+    private static Node balance(Node node) {
+        if (node.depth <= MAX_DEPTH) {
+            return node;
+        }
+        List<Leaf> leaves = new ArrayList<>();
+        collectLeaves(node, leaves);
+        return merge(leaves, 0, leaves.size());
+    }
+
+    private static void collectLeaves(Node node, List<Leaf> leaves) {
+        if (node instanceof Leaf) {
+            if (node.length > 0) {
+                leaves.add((Leaf) node);
+            }
+            return;
+        }
+        collectLeaves(((Concat) node).left, leaves);
+        collectLeaves(((Concat) node).right, leaves);
+    }
+
+    private static Node merge(List<Leaf> leaves, int start, int end) {
+        if (end - start == 0) {
+            return EMPTY_NODE;
+        }
+        if (end - start == 1) {
+            return leaves.get(start);
+        }
+        int middle = (start + end) >>> 1;
+        return new Concat(merge(leaves, start, middle), merge(leaves, middle, end));
+    }
+
+    private static void getChars(Node node, int start, int end, char[] destination,
+                                 int destinationStart) {
+        if (start >= end) {
+            return;
+        }
+        if (node instanceof Leaf) {
+            ((Leaf) node).text.getChars(start, end, destination, destinationStart);
+            return;
+        }
+        Concat concat = (Concat) node;
+        int leftLength = concat.left.length;
+        if (start < leftLength) {
+            getChars(concat.left, start, Math.min(end, leftLength), destination,
+                    destinationStart);
+        }
+        if (end > leftLength) {
+            int rightStart = Math.max(start, leftLength);
+            getChars(concat.right, rightStart - leftLength, end - leftLength, destination,
+                    destinationStart + rightStart - start);
+        }
+    }
+}
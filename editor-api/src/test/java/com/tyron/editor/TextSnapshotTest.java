@@ -0,0 +1,64 @@
+package com.tyron.editor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class TextSnapshotTest {
+
+    @Test
+    public void testEditsMatchStringBuilder() {
+        Random random = new Random(42);
+        StringBuilder expected = new StringBuilder();
+        TextSnapshot snapshot = TextSnapshot.empty();
+        for (int i = 0; i < 5000; i++) {
+            int start = random.nextInt(expected.length() + 1);
+            if (random.nextInt(3) == 0 && expected.length() > 0) {
+                int end = Math.min(expected.length(), start + random.nextInt(64));
+                expected.delete(start, end);
+                snapshot = snapshot.delete(start, end, i);
+            } else {
+                String text = randomText(random, random.nextInt(300));
+                expected.insert(start, text);
+                snapshot = snapshot.insert(start, text, i);
+            }
+        }
+        assertEquals(expected.toString(), snapshot.toString());
+        assertEquals(expected.length(), snapshot.length());
+        for (int i = 0; i < expected.length(); i++) {
+            assertEquals(expected.charAt(i), snapshot.charAt(i));
+        }
+    }
+
+    @Test
+    public void testEditsDoNotChangePreviousSnapshot() {
+        TextSnapshot first = TextSnapshot.of("class Main {}", 1);
+        TextSnapshot second = first.insert(12, "\n    void run() {}\n", 2);
+
+        assertEquals("class Main {}", first.toString());
+        assertEquals("class Main {\n    void run() {}\n}", second.toString());
+        assertEquals(1, first.getModificationStamp());
+        assertEquals(2, second.getModificationStamp());
+    }
+
+    @Test
+    public void testSubSequence() {
+        String text = randomText(new Random(7), 4000);
+        TextSnapshot snapshot = TextSnapshot.of(text, 0);
+
+        assertEquals(text.substring(100, 3000), snapshot.subSequence(100, 3000).toString());
+        assertEquals("", snapshot.subSequence(10, 10).toString());
+        assertSame(snapshot, snapshot.withModificationStamp(0));
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + random.nextInt(26)));
+        }
+        return builder.toString();
+    }
+}
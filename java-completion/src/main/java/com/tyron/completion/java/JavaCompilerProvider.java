@@ -6,6 +6,7 @@ import androidx.annotation.Nullable;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.util.IdentifierIndex;
 import com.tyron.completion.index.CompilerProvider;
 import com.tyron.completion.index.CompilerService;
 import com.tyron.completion.java.compiler.JavaCompilerService;
@@ -14,8 +15,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class JavaCompilerProvider extends CompilerProvider<JavaCompilerService> {
@@ -62,15 +65,22 @@ public class JavaCompilerProvider extends CompilerProvider<JavaCompilerService>
         Set<File> paths = new HashSet<>();
 
 
+        Map<Module, Set<File>> sources = new HashMap<>();
         for (Module dependency : dependencies) {
             if (dependency instanceof JavaModule) {
-                paths.addAll(((JavaModule) dependency).getJavaFiles().values());
+                Set<File> moduleSources = new HashSet<>();
+                moduleSources.addAll(((JavaModule) dependency).getJavaFiles().values());
+                moduleSources.addAll(((JavaModule) dependency).getInjectedClasses().values());
+                sources.put(dependency, moduleSources);
+                paths.addAll(moduleSources);
                 paths.addAll(((JavaModule) dependency).getLibraries());
-                paths.addAll(((JavaModule) dependency).getInjectedClasses().values());
             }
         }
 
         if (mProvider == null || changed(mCachedPaths, paths)) {
+            sources.forEach((dependency, files) ->
+                    IdentifierIndex.getInstance(dependency).update(files));
+
             mProvider = new JavaCompilerService(project, paths, Collections.emptySet(),
                                                 Collections.emptySet());
 
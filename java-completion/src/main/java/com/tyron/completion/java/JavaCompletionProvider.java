@@ -47,6 +47,7 @@ import com.tyron.completion.java.util.FileContentFixer;
 import com.tyron.completion.model.CachedCompletion;
 import com.tyron.completion.model.CompletionItem;
 import com.tyron.completion.model.CompletionList;
+import com.tyron.editor.TextSnapshot;
 import com.tyron.completion.progress.ProcessCanceledException;
 
 import java.io.File;
@@ -132,8 +133,13 @@ public class JavaCompletionProvider extends CompletionProvider {
         SimpleJavaFileObject fileObject = new SimpleJavaFileObject(parameters.getFile().toURI(), JavaFileObject.Kind.SOURCE) {
                     @Override
                     public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                        CharSequence contents = parameters.getContents();
+                        if (contents instanceof TextSnapshot) {
+                            // the scanner reads an array backed buffer without copying it
+                            contents = ((TextSnapshot) contents).toCharBuffer();
+                        }
                         StringBuilder pruned = new StringBuilder(
-                                new FileContentFixer(context).fixFileContent(parameters.getContents())
+                                new FileContentFixer(context).fixFileContent(contents)
                         );
                         int toInsert = StringSearch.endOfLine(pruned, (int) parameters.getIndex());
                         return pruned.insert(toInsert, ';');
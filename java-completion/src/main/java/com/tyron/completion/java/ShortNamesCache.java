@@ -4,17 +4,25 @@ import com.tyron.builder.model.CodeAssistLibrary;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
 import com.tyron.builder.project.impl.JavaModuleImpl;
+import com.tyron.builder.project.util.PackageTrie;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.function.Consumer;
 
 /**
- * Allows to retrieve java classes in a project by non-qualified names
+ * Allows to retrieve java classes in a project by non-qualified names.
+ *
+ * <p>Lookups are answered by the class indexes of the module and the modules it depends on,
+ * which are sorted by simple name and kept up to date as libraries and source files are
+ * added or removed, so the classes do not have to be collected on every query.
  */
 public class ShortNamesCache {
 
@@ -43,39 +51,71 @@ public class ShortNamesCache {
         this.module = module;
     }
 
+    /**
+     * Passes the fully qualified name of every class whose simple name starts with the given
+     * prefix to the consumer. A class may be passed more than once if it is found in
+     * multiple modules.
+     */
+    public void processClassNames(String prefix,
+                                  boolean caseSensitive,
+                                  Consumer<String> consumer) {
+        for (PackageTrie index : getClassIndexes()) {
+            index.processClassesBySimpleName(prefix, caseSensitive, consumer);
+        }
+    }
+
+    /**
+     * Passes the fully qualified name of every class whose simple name matches the given
+     * pattern by camel humps to the consumer.
+     */
+    public void processClassNamesByCamelHumps(String pattern, Consumer<String> consumer) {
+        for (PackageTrie index : getClassIndexes()) {
+            index.processClassesByCamelHumps(pattern, consumer);
+        }
+    }
+
     /**
      * Returns the list of fully qualified names of all classes in the project and (optionally)
      * libraries.
      */
     public String[] getAllClassNames() {
-        if (!(module instanceof JavaModule)) {
-            return new String[0];
+        Set<String> classNames = new HashSet<>();
+        for (PackageTrie index : getClassIndexes()) {
+            classNames.addAll(index.getLeafNodes());
         }
+        return classNames.toArray(new String[0]);
+    }
 
-        Set<String> classNames = new HashSet<>();
+    /**
+     * @return The class indexes of the module, the modules it depends on and the JDK
+     */
+    private List<PackageTrie> getClassIndexes() {
+        if (!(module instanceof JavaModule)) {
+            return new ArrayList<>();
+        }
 
-        Deque<Module> queue = new LinkedList<>();
+        List<PackageTrie> indexes = new ArrayList<>();
+        Deque<Module> queue = new ArrayDeque<>();
         Set<Module> visitedModules = new HashSet<>();
         queue.addLast(module);
+        visitedModules.add(module);
 
         while (!queue.isEmpty()) {
             Module current = queue.removeFirst();
 
             if (current instanceof JavaModule) {
-                JavaModule javaModule = (JavaModule) current;
-                classNames.addAll(javaModule.getClassIndex().getLeafNodes());
+                indexes.add(((JavaModule) current).getClassIndex());
             }
 
-            visitedModules.add(current);
             for (String path : current.getModuleDependencies()) {
                 Module dependingModule = current.getProject().getModuleByName(path);
-                if (dependingModule != null && !visitedModules.contains(dependingModule)) {
+                if (dependingModule != null && visitedModules.add(dependingModule)) {
                     queue.addLast(dependingModule);
                 }
             }
         }
 
-        classNames.addAll(JDK_MODULE.getClassIndex().getLeafNodes());
-        return classNames.toArray(new String[0]);
+        indexes.add(JDK_MODULE.getClassIndex());
+        return indexes;
     }
 }
@@ -0,0 +1,257 @@
+package com.tyron.completion.java.compiler;
+
+import androidx.annotation.Nullable;
+
+import java.lang.ref.SoftReference;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.JavaFileObject;
+
+/**
+ * Keeps the compile batches of the most recently compiled source sets so that switching
+ * between files does not require them to be parsed and attributed again.
+ *
+ * <p>Every batch owns its own {@link ReusableCompiler}, since a javac context can only back
+ * one batch at a time. Batches are evicted in least recently used order once their estimated
+ * heap usage exceeds the budget of the cache. Apart from the most recently used one, batches
+ * are only softly reachable so the garbage collector can reclaim their javac contexts before
+ * running out of memory.
+ */
+class CompileBatchCache {
+
+    /**
+     * Rough estimate of the heap retained by a javac context with the platform classes entered
+     */
+    private static final long CONTEXT_WEIGHT = 16 * 1024 * 1024;
+
+    /**
+     * Rough estimate of the heap retained by the trees and attribution of a byte of source
+     */
+    private static final long WEIGHT_PER_SOURCE_BYTE = 64;
+
+    private static final int DEFAULT_MAX_ENTRIES = 4;
+
+    static class Entry {
+        final ReusableCompiler compiler;
+        final CompileBatch batch;
+        final Map<JavaFileObject, Long> modified = new HashMap<>();
+        final long weight;
+
+        Entry(ReusableCompiler compiler,
+              CompileBatch batch,
+              Collection<? extends JavaFileObject> sources) {
+            this.compiler = compiler;
+            this.batch = batch;
+            long weight = CONTEXT_WEIGHT;
+            for (JavaFileObject source : sources) {
+                modified.put(source, source.getLastModified());
+                weight += WEIGHT_PER_SOURCE_BYTE * estimateLength(source);
+            }
+            this.weight = weight;
+        }
+
+        /**
+         * Checks whether the batch was compiled from exactly these sources and none of them
+         * have been modified since
+         */
+        boolean isUpToDate(Collection<? extends JavaFileObject> sources) {
+            if (modified.size() != sources.size()) {
+                return false;
+            }
+            for (JavaFileObject source : sources) {
+                Long cached = modified.get(source);
+                if (cached == null || source.getLastModified() != cached) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final Map<Set<JavaFileObject>, SoftReference<Entry>> mEntries =
+            new LinkedHashMap<>(8, 0.75f, true);
+    private final Map<Set<JavaFileObject>, Long> mWeights = new HashMap<>();
+    private final long mMaxWeight;
+    private final int mMaxEntries;
+
+    /**
+     * The most recently used entry, strongly referenced since it is the one being worked on
+     */
+    private Entry mActive;
+    /**
+     * A compiler whose batch has been evicted, its context can be reused by the next batch
+     */
+    private ReusableCompiler mIdleCompiler;
+    private long mTotalWeight;
+    private int mHitCount;
+    private int mMissCount;
+
+    CompileBatchCache() {
+        this(Runtime.getRuntime().maxMemory() / 4, DEFAULT_MAX_ENTRIES);
+    }
+
+    CompileBatchCache(long maxWeight, int maxEntries) {
+        mMaxWeight = maxWeight;
+        mMaxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the cached batch of the given sources, or null if there is none or one of the
+     * sources has changed since it was compiled. A stale batch is evicted.
+     */
+    @Nullable
+    synchronized CompileBatch get(Collection<? extends JavaFileObject> sources) {
+        Set<JavaFileObject> key = new HashSet<>(sources);
+        SoftReference<Entry> reference = mEntries.get(key);
+        Entry entry = reference == null ? null : reference.get();
+        if (entry != null && entry.isUpToDate(sources)) {
+            mHitCount++;
+            mActive = entry;
+            return entry.batch;
+        }
+
+        mMissCount++;
+        if (reference != null) {
+            remove(key);
+        }
+        return null;
+    }
+
+    /**
+     * @return A compiler to create a new batch with, reusing the context of an evicted batch
+     * if possible
+     */
+    synchronized ReusableCompiler takeCompiler() {
+        ReusableCompiler compiler = mIdleCompiler;
+        mIdleCompiler = null;
+        return compiler != null ? compiler : new ReusableCompiler();
+    }
+
+    synchronized void put(Collection<? extends JavaFileObject> sources,
+                          ReusableCompiler compiler,
+                          CompileBatch batch) {
+        Set<JavaFileObject> key = new HashSet<>(sources);
+        remove(key);
+
+        Entry entry = new Entry(compiler, batch, sources);
+        mEntries.put(key, new SoftReference<>(entry));
+        mWeights.put(key, entry.weight);
+        mTotalWeight += entry.weight;
+        mActive = entry;
+        trim();
+    }
+
+    /**
+     * Marks the given sources as modified in every batch that contains them
+     */
+    synchronized void invalidate(Collection<? extends JavaFileObject> sources) {
+        for (SoftReference<Entry> reference : mEntries.values()) {
+            Entry entry = reference.get();
+            if (entry != null) {
+                for (JavaFileObject source : sources) {
+                    entry.modified.remove(source);
+                }
+            }
+        }
+    }
+
+    @Nullable
+    synchronized CompileBatch getActiveBatch() {
+        return mActive == null ? null : mActive.batch;
+    }
+
+    @Nullable
+    synchronized ReusableCompiler getActiveCompiler() {
+        return mActive == null ? null : mActive.compiler;
+    }
+
+    synchronized void clear() {
+        for (SoftReference<Entry> reference : mEntries.values()) {
+            Entry entry = reference.get();
+            if (entry != null) {
+                release(entry);
+            }
+        }
+        mEntries.clear();
+        mWeights.clear();
+        mTotalWeight = 0;
+        mActive = null;
+        mIdleCompiler = null;
+    }
+
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Evicts the least recently used batches, except the active one, until the cache fits in
+     * its budget. Entries whose batch has already been reclaimed are dropped as well.
+     */
+    private void trim() {
+        Iterator<Map.Entry<Set<JavaFileObject>, SoftReference<Entry>>> iterator =
+                mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Set<JavaFileObject>, SoftReference<Entry>> eldest = iterator.next();
+            Entry entry = eldest.getValue().get();
+            boolean overBudget = mTotalWeight > mMaxWeight || mEntries.size() > mMaxEntries;
+            if (entry != null && (entry == mActive || !overBudget)) {
+                continue;
+            }
+            Long weight = mWeights.remove(eldest.getKey());
+            if (weight != null) {
+                mTotalWeight -= weight;
+            }
+            iterator.remove();
+            if (entry != null) {
+                release(entry);
+            }
+        }
+    }
+
+    private void remove(Set<JavaFileObject> key) {
+        SoftReference<Entry> reference = mEntries.remove(key);
+        Long weight = mWeights.remove(key);
+        if (weight != null) {
+            mTotalWeight -= weight;
+        }
+        Entry entry = reference == null ? null : reference.get();
+        if (entry != null) {
+            if (entry == mActive) {
+                mActive = null;
+            }
+            release(entry);
+        }
+    }
+
+    private void release(Entry entry) {
+        entry.batch.close();
+        ReusableCompiler.Borrow borrow = entry.batch.borrow;
+        if (borrow != null && !borrow.closed) {
+            borrow.close();
+        }
+        mIdleCompiler = entry.compiler;
+    }
+
+    private static long estimateLength(JavaFileObject source) {
+        try {
+            CharSequence contents = source.getCharContent(true);
+            return contents == null ? 0 : contents.length();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+}
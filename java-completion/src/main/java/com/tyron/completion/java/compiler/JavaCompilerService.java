@@ -7,14 +7,13 @@ import androidx.annotation.NonNull;
 
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
-import com.sun.tools.javac.api.JavacTaskImpl;
 import com.tyron.builder.model.SourceFileObject;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.util.IdentifierIndex;
 import com.tyron.builder.project.util.PackageTrie;
 import com.tyron.common.util.Cache;
-import com.tyron.common.util.StringSearch;
 import com.tyron.completion.java.CompilerProvider;
 import com.tyron.completion.java.Docs;
 import com.tyron.completion.java.FindTypeDeclarations;
@@ -38,7 +37,6 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -62,12 +60,14 @@ public class JavaCompilerService implements CompilerProvider {
     private JavaModule mCurrentModule;
     public final Set<File> classPath, docPath;
     public final Set<String> addExports;
+    /**
+     * The compiler of the most recently used compile batch
+     */
     public ReusableCompiler compiler = new ReusableCompiler();
     private final Docs docs;
 
     private final CompilerContainer mContainer = new CompilerContainer();
-    private CompileBatch cachedCompile;
-    private final Map<JavaFileObject, Long> cachedModified = new HashMap<>();
+    private final CompileBatchCache mBatchCache = new CompileBatchCache();
 
     public final ReentrantLock mLock = new ReentrantLock();
 
@@ -93,42 +93,18 @@ public class JavaCompilerService implements CompilerProvider {
     }
 
     /**
-     * Checks whether this list has been compiled before
-     *
-     * @param sources list of java files to compile
-     * @return true if there's a valid cache for it, false otherwise
+     * Compiles the sources and stores the batch in the cache, the compiler of an evicted batch
+     * is reused if there is one
      */
-    private boolean needsCompile(Collection<? extends JavaFileObject> sources) {
-        if (cachedModified.size() != sources.size()) {
-            return true;
-        }
-        for (JavaFileObject f : sources) {
-            if (!cachedModified.containsKey(f)) {
-                return true;
-            }
-            Long cached = cachedModified.get(f);
-            if (cached == null) {
-                return true;
-            }
-            if (f.getLastModified() != cached) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private synchronized void loadCompile(Collection<? extends JavaFileObject> sources) {
-        if (cachedCompile != null) {
-            if (!cachedCompile.closed) {
-                throw new RuntimeException("Compiler is still in-use!");
-            }
-            cachedCompile.borrow.close();
-        }
-        cachedCompile = doCompile(sources);
-        cachedModified.clear();
-        for (JavaFileObject f : sources) {
-            cachedModified.put(f, f.getLastModified());
-        }
+    private synchronized CompileBatch loadCompile(Collection<? extends JavaFileObject> sources) {
+        ReusableCompiler batchCompiler = mBatchCache.takeCompiler();
+        compiler = batchCompiler;
+        CompileBatch batch = doCompile(batchCompiler, sources);
+        mBatchCache.put(sources, batchCompiler, batch);
+        Log.d("JavaCompilerService", "Compile batch cache: " + mBatchCache.getHitCount() +
+                                     " hits, " + mBatchCache.getMissCount() + " misses, " +
+                                     mBatchCache.size() + " batches");
+        return batch;
     }
 
     public void invalidate(Path source) {
@@ -136,16 +112,15 @@ public class JavaCompilerService implements CompilerProvider {
     }
 
     public void invalidate(Collection<? extends JavaFileObject> sources) {
-        for (JavaFileObject source : sources) {
-            cachedModified.remove(source);
-        }
+        mBatchCache.invalidate(sources);
     }
 
-    private CompileBatch doCompile(Collection<? extends JavaFileObject> sources) {
+    private CompileBatch doCompile(ReusableCompiler batchCompiler,
+                                   Collection<? extends JavaFileObject> sources) {
         if (sources.isEmpty()) {
             throw new RuntimeException("empty sources");
         }
-        CompileBatch firstAttempt = new CompileBatch(this, sources);
+        CompileBatch firstAttempt = new CompileBatch(this, batchCompiler, sources);
         Set<Path> addFiles = firstAttempt.needsAdditionalSources();
         if (addFiles.isEmpty()) {
             return firstAttempt;
@@ -159,7 +134,7 @@ public class JavaCompilerService implements CompilerProvider {
         for (Path add : addFiles) {
             moreSources.add(new SourceFileObject(add, mCurrentModule));
         }
-        return new CompileBatch(this, moreSources);
+        return new CompileBatch(this, batchCompiler, moreSources);
     }
 
     /**
@@ -171,20 +146,21 @@ public class JavaCompilerService implements CompilerProvider {
     private CompilerContainer compileBatch(Collection<? extends JavaFileObject> sources) {
         try {
             mContainer.initialize(() -> {
-                if (needsCompile(sources)) {
-                    loadCompile(sources);
+                CompileBatch batch = mBatchCache.get(sources);
+                if (batch == null) {
+                    batch = loadCompile(sources);
+                } else {
+                    compiler = mBatchCache.getActiveCompiler();
                 }
-                if (cachedCompile.task == null || ((JavacTaskImpl) cachedCompile.task).getContext() == null) {
-                    System.out.println();
-                }
-                CompileTask task = new CompileTask(cachedCompile);
+                CompileTask task = new CompileTask(batch);
                 mContainer.setCompileTask(task);
             });
             return mContainer;
         } catch (Throwable t) {
             if (t instanceof CancelAbort || t.getCause() instanceof CancelAbort) {
-                if (cachedCompile != null) {
-                    cachedCompile.borrow.close();
+                CompileBatch batch = mBatchCache.getActiveBatch();
+                if (batch != null) {
+                    batch.borrow.close();
                 }
                 throw new ProcessCanceledException();
             }
@@ -265,9 +241,19 @@ public class JavaCompilerService implements CompilerProvider {
         return Collections.emptyList();
     }
 
+    /**
+     * @return The source files of the current module and its dependencies that contain every
+     * identifier of the query, files that have not been indexed yet are not included
+     */
     @Override
     public Iterable<Path> search(String query) {
-        return null;
+        List<Path> result = new ArrayList<>();
+        for (Module module : mProject.getDependencies(mCurrentModule)) {
+            for (File file : IdentifierIndex.getInstance(module).search(query)) {
+                result.add(file.toPath());
+            }
+        }
+        return result;
     }
 
     /**
@@ -330,15 +316,6 @@ public class JavaCompilerService implements CompilerProvider {
         return "";
     }
 
-    private static final Cache<String, Boolean> cacheContainsWord = new Cache<>();
-
-    private boolean containsWord(Path file, String word) {
-        if (cacheContainsWord.needs(file, word)) {
-            cacheContainsWord.load(file, word, StringSearch.containsWord(file, word));
-        }
-        return cacheContainsWord.get(file, word);
-    }
-
     private static final Cache<Void, List<String>> cacheContainsType = new Cache<>();
 
     private boolean containsType(Path file, String className) {
@@ -378,8 +355,9 @@ public class JavaCompilerService implements CompilerProvider {
                                                    String packageName,
                                                    String simpleName,
                                                    String className) {
+        IdentifierIndex index = IdentifierIndex.getInstance(module);
         for (File file : SourceFileManager.list(module, packageName)) {
-            if (containsWord(file.toPath(), simpleName) && containsType(file.toPath(), className)) {
+            if (index.containsWord(file, simpleName) && containsType(file.toPath(), className)) {
                 if (file.getName().endsWith(".java")) {
                     return file.toPath();
                 }
@@ -522,8 +500,9 @@ public class JavaCompilerService implements CompilerProvider {
     }
 
     public synchronized void close() {
-        if (cachedCompile != null && !cachedCompile.closed) {
-            cachedCompile.close();
+        CompileBatch batch = mBatchCache.getActiveBatch();
+        if (batch != null && !batch.closed) {
+            batch.close();
         }
         if (mLock.isHeldByCurrentThread() && mLock.isLocked()) {
             mLock.unlock();
@@ -537,20 +516,27 @@ public class JavaCompilerService implements CompilerProvider {
     public void destroy() {
         mContainer.initialize(() -> {
             close();
-            if (cachedCompile != null) {
-                final ReusableCompiler.Borrow borrow = cachedCompile.borrow;
-                if (borrow != null) {
-                    borrow.close();
-                }
-            }
-            cachedCompile = null;
-            cachedModified.clear();
+            mBatchCache.clear();
             compiler = new ReusableCompiler();
         });
     }
 
     public CompileBatch getCompileBatch() {
-        return cachedCompile;
+        return mBatchCache.getActiveBatch();
+    }
+
+    /**
+     * @return The number of compilations that were served by a cached compile batch
+     */
+    public int getCacheHitCount() {
+        return mBatchCache.getHitCount();
+    }
+
+    /**
+     * @return The number of compilations that required a new compile batch
+     */
+    public int getCacheMissCount() {
+        return mBatchCache.getMissCount();
     }
 
     @NonNull
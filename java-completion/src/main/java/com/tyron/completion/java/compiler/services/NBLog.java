@@ -17,6 +17,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
 import javax.tools.Diagnostic;
 import javax.tools.JavaFileObject;
 
@@ -141,4 +142,12 @@ public class NBLog extends Log {
     public void removeDiagnostics(URI toUri) {
         diagnosticMap.removeAll(toUri);
     }
+
+    /**
+     * Removes the diagnostics of the file that match the filter, used when only a part of
+     * the file is compiled again
+     */
+    public void removeDiagnostics(URI toUri, Predicate<? super JCDiagnostic> filter) {
+        diagnosticMap.get(toUri).removeIf(filter);
+    }
 }
\ No newline at end of file
@@ -1,25 +1,92 @@
 package com.tyron.completion.java.diagnostics;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
 import com.tyron.builder.project.api.Module;
 import com.tyron.completion.java.compiler.services.NBLog;
 import com.tyron.completion.java.parse.CompilationInfo;
 import com.tyron.diagnostics.DiagnosticProvider;
+import com.tyron.diagnostics.DiagnosticsResult;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
 
 public class JavaDiagnosticsProvider implements DiagnosticProvider {
+
+    /**
+     * The time to wait for more edits before compiling the file
+     */
+    private static final long DELAY = 300;
+
     @Override
     public List<? extends Diagnostic<?>> getDiagnostics(Module module, File file) {
         CompilationInfo compilationInfo = CompilationInfo.get(module.getProject(), file);
         if (compilationInfo == null) {
             return Collections.emptyList();
         }
+        return getDiagnostics(compilationInfo, file);
+    }
+
+    /**
+     * Parses the contents and publishes the syntax errors, then attributes the file and
+     * publishes all of its diagnostics. Both run on the update thread of the
+     * {@link CompilationInfo}, a newer request of the same file cancels the attribution of
+     * this one.
+     */
+    @Override
+    public void requestDiagnostics(Module module,
+                                   File file,
+                                   CharSequence contents,
+                                   long modificationStamp,
+                                   Consumer<DiagnosticsResult> callback) {
+        CompilationInfo compilationInfo = CompilationInfo.get(module);
+        if (compilationInfo == null) {
+            callback.accept(new DiagnosticsResult(file, modificationStamp,
+                    DiagnosticsResult.Phase.SEMANTIC, Collections.emptyList()));
+            return;
+        }
+
+        JavaFileObject fileObject = new SimpleJavaFileObject(file.toURI(),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return contents;
+            }
+        };
+        compilationInfo.update(fileObject, modificationStamp, DELAY,
+                new CompilationInfo.UpdateListener() {
+                    @Override
+                    public void onParsed(@NonNull JCCompilationUnit unit, long stamp) {
+                        callback.accept(new DiagnosticsResult(file, stamp,
+                                DiagnosticsResult.Phase.SYNTAX,
+                                getDiagnostics(compilationInfo, file)));
+                    }
+
+                    @Override
+                    public void onAnalyzed(@Nullable JCCompilationUnit unit, long stamp) {
+                        callback.accept(new DiagnosticsResult(file, stamp,
+                                DiagnosticsResult.Phase.SEMANTIC,
+                                getDiagnostics(compilationInfo, file)));
+                    }
+                });
+    }
 
-        return NBLog.instance(compilationInfo.impl.getJavacTask().getContext())
-                .getDiagnostics(file.toURI());
+    /**
+     * @return A copy of the diagnostics of the file, the log keeps changing while the
+     * file is compiled again
+     */
+    private static List<? extends Diagnostic<?>> getDiagnostics(CompilationInfo compilationInfo,
+                                                                File file) {
+        NBLog log = NBLog.instance(compilationInfo.impl.getJavacTask().getContext());
+        return new ArrayList<>(log.getDiagnostics(file.toURI()));
     }
 }
@@ -1,6 +1,7 @@
 package com.tyron.completion.java.parse;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.tree.Scope;
@@ -17,9 +18,10 @@ import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
 import com.tyron.builder.project.impl.AndroidModuleImpl;
-import com.tyron.common.util.DebouncerStore;
+import com.tyron.common.logging.IdeLog;
 import com.tyron.completion.java.compiler.services.NBEnter;
 import com.tyron.completion.java.compiler.services.NBLog;
+import com.tyron.editor.TextSnapshot;
 
 import org.jetbrains.kotlin.com.intellij.openapi.util.Key;
 
@@ -35,7 +37,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import javax.lang.model.element.Element;
@@ -45,6 +53,8 @@ import javax.tools.JavaFileObject;
 
 public class CompilationInfo {
 
+    private static final Logger LOGGER = IdeLog.getCurrentLogger(CompilationInfo.class);
+
     public static final Key<CompilationInfo> COMPILATION_INFO_KEY = Key.create("compilationInfo");
 
     public static CompilationInfo get(Module module) {
@@ -80,10 +90,70 @@ public class CompilationInfo {
         return get(module);
     }
 
+    /**
+     * The modification stamp of updates whose contents are not versioned
+     */
+    public static final long UNVERSIONED = -1;
+
+    /**
+     * Parsing and attribution of every module run on this thread, so they never block the
+     * editor and the shared javac context is never used concurrently
+     */
+    private static final ScheduledExecutorService sUpdateExecutor =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "CompilationInfo-update");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Receives the results of an update
+     */
+    public interface UpdateListener {
+
+        /**
+         * Called on the update thread once the file is parsed, the syntax errors of the file
+         * are available in the {@link NBLog} at this point. Not called if parsing failed.
+         */
+        default void onParsed(@NonNull JCCompilationUnit unit, long modificationStamp) {
+
+        }
+
+        /**
+         * Called on the update thread once the file is attributed and flow analyzed
+         *
+         * @param unit the attributed tree, or null if the update failed
+         */
+        void onAnalyzed(@Nullable JCCompilationUnit unit, long modificationStamp);
+    }
+
+    /**
+     * An update that has not started yet, newer updates of the same file replace its contents
+     * and add their listeners to it so only the latest version is compiled
+     */
+    private static class PendingUpdate {
+        JavaFileObject fileObject;
+        long modificationStamp;
+        final List<UpdateListener> listeners = new ArrayList<>();
+        ScheduledFuture<?> future;
+    }
+
     public final CompilationInfoImpl impl;
     private final Map<URI, JCCompilationUnit> compiledMap = new HashMap<>();
 
-    private final DebouncerStore<String> debouncerStore = DebouncerStore.DEFAULT;
+    /**
+     * The contents each tree of the compiled map was parsed from, used to find the member
+     * that changed since
+     */
+    private final Map<URI, CharSequence> compiledContents = new HashMap<>();
+
+    private final PartialReparser partialReparser = new DefaultPartialReparser();
+    private final ReparseStatistics reparseStatistics = new ReparseStatistics();
+
+    /**
+     * Guarded by this
+     */
+    private final Map<URI, PendingUpdate> pendingUpdates = new HashMap<>();
 
     private final Object parseLock = new Object();
     private Trees trees;
@@ -113,62 +183,192 @@ public class CompilationInfo {
         });
     }
 
+    public void update(JavaFileObject fileObject,
+                       long delay,
+                       Consumer<JCCompilationUnit> treeConsumer) {
+        update(fileObject, UNVERSIONED, delay, (unit, modificationStamp) ->
+                treeConsumer.accept(unit));
+    }
+
+    /**
+     * Parses, attributes and flow analyzes the file on the update thread after the given
+     * delay. If the file is updated again before this update starts, or while it is being
+     * parsed, this update is dropped and its listeners are notified with the results of the
+     * newer one.
+     *
+     * <p>If every change since the last update is inside the body of a single method,
+     * initializer block or field initializer, only that member is reparsed and attributed,
+     * see {@link PartialReparser}, and flow analysis runs again on the class of that member.
+     */
     public synchronized void update(JavaFileObject fileObject,
+                                    long modificationStamp,
                                     long delay,
-                                    Consumer<JCCompilationUnit> treeConsumer) {
-        debouncerStore.registerOrGetDebouncer("update").debounce(delay, () -> {
-            synchronized (parseLock) {
-                try {
-                    JavacTaskImpl javacTask = impl.getJavacTask();
-
-                    NBLog log = NBLog.instance(javacTask.getContext());
-                    log.useSource(fileObject);
-
-                    Set<Pair<JavaFileObject, Integer>> toRemove = new HashSet<>();
-                    for (Pair<JavaFileObject, Integer> pair : log.getRecorded()) {
-                        if (pair.fst.toUri().equals(fileObject.toUri())) {
-                            toRemove.add(pair);
-                        }
-                    }
-                    log.getRecorded().removeAll(toRemove);
-                    log.removeDiagnostics(fileObject.toUri());
-                    log.removeFileObject(fileObject);
+                                    UpdateListener listener) {
+        URI uri = fileObject.toUri();
+        PendingUpdate pending = pendingUpdates.get(uri);
+        if (pending == null) {
+            pending = new PendingUpdate();
+            pendingUpdates.put(uri, pending);
+        } else {
+            pending.future.cancel(false);
+        }
+        if (modificationStamp != UNVERSIONED || pending.fileObject == null) {
+            pending.fileObject = fileObject;
+            pending.modificationStamp = modificationStamp;
+        }
+        pending.listeners.add(listener);
+
+        PendingUpdate update = pending;
+        pending.future = sUpdateExecutor.schedule(() -> runUpdate(uri, update), delay,
+                TimeUnit.MILLISECONDS);
+    }
 
+    private void runUpdate(URI uri, PendingUpdate update) {
+        JavaFileObject fileObject;
+        long modificationStamp;
+        List<UpdateListener> listeners;
+        synchronized (this) {
+            if (pendingUpdates.get(uri) != update) {
+                // already run by a previous schedule of the same update
+                return;
+            }
+            pendingUpdates.remove(uri);
+            fileObject = update.fileObject;
+            modificationStamp = update.modificationStamp;
+            listeners = new ArrayList<>(update.listeners);
+        }
 
-                    JCCompilationUnit previous = compiledMap.get(fileObject.toUri());
-                    if (previous != null) {
-                        NBEnter enter = (NBEnter) NBEnter.instance(javacTask.getContext());
-                        enter.unenter(previous, previous);
-                        enter.removeCompilationUnit(fileObject);
+        synchronized (parseLock) {
+            JCCompilationUnit unit;
+            long start = System.currentTimeMillis();
+            boolean partial = false;
+            try {
+                CharSequence contents = immutableContents(fileObject.getCharContent(true));
+                JCCompilationUnit previous = compiledMap.get(uri);
+                if (previous != null) {
+                    // the diagnostics of a partial reparse are reported against the new file,
+                    // whose contents must not be read from the cached source of the old one
+                    NBLog log = NBLog.instance(impl.getJavacTask().getContext());
+                    log.removeFileObject(previous.sourcefile);
+                    log.removeFileObject(fileObject);
+                    previous.sourcefile = fileObject;
+                }
+                partial = previous != null && partialReparser.reparseMember(impl, previous,
+                        compiledContents.get(uri), contents);
+                if (partial) {
+                    // only the edited member was parsed and attributed again
+                    unit = previous;
+                    for (UpdateListener listener : listeners) {
+                        listener.onParsed(unit, modificationStamp);
+                    }
+                } else {
+                    unit = parse(fileObject);
+                    for (UpdateListener listener : listeners) {
+                        listener.onParsed(unit, modificationStamp);
                     }
 
-                    // reparse the whole file
-                    JCCompilationUnit unit;
-                    try {
-                        JavaCompiler compiler = JavaCompiler.instance(javacTask.getContext());
-                        unit = compiler.parse(fileObject);
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
+                    if (handOverToNewerUpdate(uri, listeners)) {
+                        // the previous tree stays entered until the newer version is analyzed
+                        return;
                     }
 
-                    Iterable<? extends Element> enter = javacTask.enter(List.of(unit));
+                    analyze(fileObject, unit);
+                }
+                compiledContents.put(uri, contents);
+            } catch (Throwable t) {
+                LOGGER.log(Level.WARNING, "Failed to update " + uri, t);
+                unit = null;
+                compiledContents.remove(uri);
+            }
 
-                    if (previous != null) {
-                        unit.packge = previous.packge;
-                    }
+            long elapsed = System.currentTimeMillis() - start;
+            reparseStatistics.record(partial, elapsed);
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine((partial ? "Partial" : "Full") + " reparse of " + uri + " took " +
+                            elapsed + " ms, " + reparseStatistics);
+            }
 
-                    Iterable<? extends Element> analyze = javacTask.analyze(enter);
+            for (UpdateListener listener : listeners) {
+                listener.onAnalyzed(unit, modificationStamp);
+            }
+        }
+    }
+
+    /**
+     * @return The contents, copied if they may change after they are read
+     */
+    private static CharSequence immutableContents(CharSequence contents) {
+        if (contents instanceof String || contents instanceof TextSnapshot) {
+            return contents;
+        }
+        return contents.toString();
+    }
 
-                    JCCompilationUnit newUnit = unit;
-                    compiledMap.put(fileObject.toUri(), newUnit);
+    /**
+     * @return How many updates reparsed only the edited member and how many the whole file
+     */
+    public ReparseStatistics getReparseStatistics() {
+        return reparseStatistics;
+    }
 
-                    treeConsumer.accept(unit);
-                } catch (Throwable t) {
-                    System.out.println(t);
-                    treeConsumer.accept(null);
-                }
+    /**
+     * @return Whether a newer update of the file is pending, the listeners are then notified
+     * by it
+     */
+    private synchronized boolean handOverToNewerUpdate(URI uri, List<UpdateListener> listeners) {
+        PendingUpdate newer = pendingUpdates.get(uri);
+        if (newer == null) {
+            return false;
+        }
+        newer.listeners.addAll(listeners);
+        return true;
+    }
+
+    /**
+     * Parses the file, replacing its diagnostics with the syntax errors
+     */
+    private JCCompilationUnit parse(JavaFileObject fileObject) {
+        JavacTaskImpl javacTask = impl.getJavacTask();
+
+        NBLog log = NBLog.instance(javacTask.getContext());
+        log.useSource(fileObject);
+
+        Set<Pair<JavaFileObject, Integer>> toRemove = new HashSet<>();
+        for (Pair<JavaFileObject, Integer> pair : log.getRecorded()) {
+            if (pair.fst.toUri().equals(fileObject.toUri())) {
+                toRemove.add(pair);
             }
-        });
+        }
+        log.getRecorded().removeAll(toRemove);
+        log.removeDiagnostics(fileObject.toUri());
+        log.removeFileObject(fileObject);
+
+        JavaCompiler compiler = JavaCompiler.instance(javacTask.getContext());
+        return compiler.parse(fileObject);
+    }
+
+    /**
+     * Replaces the previous tree of the file with the given one and attributes it
+     */
+    private void analyze(JavaFileObject fileObject, JCCompilationUnit unit) {
+        JavacTaskImpl javacTask = impl.getJavacTask();
+
+        JCCompilationUnit previous = compiledMap.get(fileObject.toUri());
+        if (previous != null) {
+            NBEnter enter = (NBEnter) NBEnter.instance(javacTask.getContext());
+            enter.unenter(previous, previous);
+            enter.removeCompilationUnit(fileObject);
+        }
+
+        Iterable<? extends Element> enter = javacTask.enter(List.of(unit));
+
+        if (previous != null) {
+            unit.packge = previous.packge;
+        }
+
+        javacTask.analyze(enter);
+
+        compiledMap.put(fileObject.toUri(), unit);
     }
 
     public JCCompilationUnit getCompilationUnit(JavaFileObject fileObject) {
@@ -22,6 +22,7 @@ import com.sun.tools.javac.comp.TypeEnter;
 import com.sun.tools.javac.parser.LazyDocCommentTable;
 import com.sun.tools.javac.parser.Scanner;
 import com.sun.tools.javac.parser.ScannerFactory;
+import com.sun.tools.javac.parser.Tokens.TokenKind;
 import com.sun.tools.javac.tree.DocCommentTable;
 import com.sun.tools.javac.tree.EndPosTable;
 import com.sun.tools.javac.tree.JCTree;
@@ -29,6 +30,7 @@ import com.sun.tools.javac.tree.TreeInfo;
 import com.sun.tools.javac.tree.TreeMaker;
 import com.sun.tools.javac.util.Context;
 import com.sun.tools.javac.util.JCDiagnostic;
+import com.sun.tools.javac.util.ListBuffer;
 import com.sun.tools.javac.util.Log;
 import com.sun.tools.javac.util.Names;
 import com.tyron.completion.java.compiler.services.CancelService;
@@ -36,10 +38,16 @@ import com.tyron.completion.java.compiler.services.NBLog;
 import com.tyron.completion.java.compiler.services.NBParserFactory;
 
 import java.io.IOException;
+import java.net.URI;
 import java.nio.CharBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -54,6 +62,53 @@ public class DefaultPartialReparser implements PartialReparser {
 
     }
 
+    @Override
+    public boolean reparseMember(CompilationInfoImpl ci,
+                                 CompilationUnitTree cu,
+                                 CharSequence previousContents,
+                                 CharSequence contents) throws IOException {
+        if (cu == null || previousContents == null || contents == null) {
+            return false;
+        }
+
+        int previousLength = previousContents.length();
+        int length = contents.length();
+        int changeStart = 0;
+        int maxCommon = Math.min(previousLength, length);
+        while (changeStart < maxCommon &&
+               previousContents.charAt(changeStart) == contents.charAt(changeStart)) {
+            changeStart++;
+        }
+        if (changeStart == previousLength && changeStart == length) {
+            // nothing changed, the tree is up to date
+            return true;
+        }
+        int commonSuffix = 0;
+        while (commonSuffix < maxCommon - changeStart &&
+               previousContents.charAt(previousLength - commonSuffix - 1) ==
+               contents.charAt(length - commonSuffix - 1)) {
+            commonSuffix++;
+        }
+        int changeEnd = previousLength - commonSuffix;
+        int delta = length - previousLength;
+
+        JCTree.JCCompilationUnit unit = (JCTree.JCCompilationUnit) cu;
+        ChangedMember member = findChangedMember(unit, unit.getTypeDecls(), changeStart,
+                changeEnd);
+        if (member == null) {
+            LOGGER.log(Level.FINER, "Skip partial reparse, the change at {0} is not inside a" +
+                                    " body", changeStart);   //NOI18N
+            return false;
+        }
+
+        String newBody = contents.subSequence(member.bodyStart, member.bodyEnd + delta)
+                .toString();
+        if (member.tree instanceof JCTree.JCMethodDecl) {
+            return reparseMethod(ci, contents, cu, (MethodTree) member.tree, newBody);
+        }
+        return reparseInitializer(ci, unit, member, newBody);
+    }
+
     @Override
     public boolean reparseMethod(CompilationInfoImpl ci,
                                  CharSequence contents,
@@ -87,23 +142,16 @@ public class DefaultPartialReparser implements PartialReparser {
                     new Object[]{origStartPos, origEndPos});  //NOI18N
             return false;
         }
+        // local and anonymous classes of the old body are unentered below and the ones of
+        // the new body are entered again while attributing it
         final FindAnonymousVisitor fav = new FindAnonymousVisitor();
-        fav.scan(orig.getBody(), null);
-        if (fav.hasLocalClass) {
-            if (LOGGER.isLoggable(Level.FINER)) {
-                LOGGER.log(Level.FINER, "Skip reparse method (old local classes): {0}",
-                        newBody);   //NOI18N
-            }
-            return false;
-        }
-        final int noInner = fav.noInner;
+        fav.scan(new TreePath(methodPath, orig.getBody()), null);
         final Context ctx = task.getContext();
+        final NBLog l = NBLog.instance(ctx);
+        l.startPartialReparse(cu.getSourceFile());
+        final JavaFileObject prevLogged = l.useSource(cu.getSourceFile());
         try {
-            final NBLog l = NBLog.instance(ctx);
-            l.startPartialReparse(cu.getSourceFile());
-            final JavaFileObject prevLogged = l.useSource(cu.getSourceFile());
 
-            long start = System.currentTimeMillis();
             Map<JCTree, LazyDocCommentTable.Entry> docComments = new HashMap<>();
             JCTree.JCBlock block = reparseMethodBody(ctx, cu, orig, newBody + " ", docComments);
             EndPosTable endPos = ((JCTree.JCCompilationUnit) cu).endPositions;
@@ -118,23 +166,17 @@ public class DefaultPartialReparser implements PartialReparser {
             if (newEndPos != origStartPos + newBody.length()) {
                 return false;
             }
-            fav.reset();
-            fav.scan(block, null);
-            final int newNoInner = fav.noInner;
-            if (fav.hasLocalClass || noInner != newNoInner) {
-                if (LOGGER.isLoggable(Level.FINER)) {
-                    LOGGER.log(Level.FINER, "Skeep reparse method (new local classes): {0}", ci);   //NOI18N
-                }
+            if (!hasSameClasses(fav, new TreePath(methodPath, block))) {
+                LOGGER.log(Level.FINER, "Skip reparse method (local classes changed): {0}",
+                        newBody);   //NOI18N
                 return false;
             }
-            Map<JCTree, LazyDocCommentTable.Entry> docCommentsTable = ((LazyDocCommentTable) ((JCTree.JCCompilationUnit) cu).docComments).table;
-            //noinspection SuspiciousMethodCalls
-            docCommentsTable.keySet().removeAll(fav.docOwners);
-            docCommentsTable.putAll(docComments);
+            replaceDocComments((JCTree.JCCompilationUnit) cu, fav.docOwners, docComments);
 
-            long end = System.currentTimeMillis();
             final int delta = newEndPos - origEndPos;
-            final TranslatePositionsVisitor tpv = new TranslatePositionsVisitor(orig, endPos, delta);
+            removeDiagnostics(l, cu, origStartPos, origEndPos);
+            final TranslatePositionsVisitor tpv =
+                    new TranslatePositionsVisitor(orig.getBody(), endPos, delta);
             tpv.scan(cu, null);
             Enter.instance(ctx).unenter(((JCTree.JCCompilationUnit) cu), ((JCTree.JCMethodDecl) orig).body);
             ((JCTree.JCMethodDecl)orig).body = block;
@@ -143,31 +185,295 @@ public class DefaultPartialReparser implements PartialReparser {
             if (LOGGER.isLoggable(Level.FINER)) {
                 LOGGER.log(Level.FINER, "Resolved method in: {0}", ci);     //NOI18N
             }
+            TreePath classPath = methodPath.getParentPath();
+            if (classPath == null || !(classPath.getLeaf() instanceof JCTree.JCClassDecl) ||
+                !reflowClass(ctx, (JCTree.JCCompilationUnit) cu,
+                        (JCTree.JCClassDecl) classPath.getLeaf(), origStartPos, newEndPos)) {
+                return false;
+            }
+        } catch (Throwable t) {
+            if (t instanceof ThreadDeath) {
+                throw (ThreadDeath) t;
+            }
+            LOGGER.log(Level.WARNING, "Failed to reparse method", t);   //NOI18N
+            return false;
+        } finally {
+            l.endPartialReparse(cu.getSourceFile());
+            l.useSource(prevLogged);
+        }
+        return true;
+    }
 
+    /**
+     * Reparses and attributes the initializer block or the field initializer that contains
+     * the change, the other members of the class keep their attribution
+     */
+    private boolean reparseInitializer(CompilationInfoImpl ci,
+                                       JCTree.JCCompilationUnit cu,
+                                       ChangedMember member,
+                                       String newBody) {
+        JavacTaskImpl task = ci.getJavacTask();
+        Trees trees = Trees.instance(task);
+        final Context ctx = task.getContext();
+
+        TreePath classPath = trees.getPath(cu, member.owner);
+        if (classPath == null || member.owner.sym == null) {
+            return false;
+        }
+        final Env<AttrContext> classEnv = ((JavacScope) trees.getScope(classPath)).getEnv();
 
+        final JCTree oldBody = member.tree instanceof JCTree.JCVariableDecl
+                ? ((JCTree.JCVariableDecl) member.tree).init
+                : member.tree;
+        final FindAnonymousVisitor fav = new FindAnonymousVisitor();
+        fav.scan(new TreePath(classPath, oldBody), null);
+        final NBLog l = NBLog.instance(ctx);
+        l.startPartialReparse(cu.getSourceFile());
+        final JavaFileObject prevLogged = l.useSource(cu.getSourceFile());
+        try {
+
+            Map<JCTree, LazyDocCommentTable.Entry> docComments = new HashMap<>();
+            com.sun.tools.javac.parser.JavacParser parser = newParser(ctx,
+                    padToPosition(member.bodyStart, newBody + " "), member.bodyStart,
+                    cu.endPositions);
+            final JCTree newTree;
+            if (member.tree instanceof JCTree.JCVariableDecl) {
+                newTree = parser.parseExpression();
+            } else {
+                JCTree.JCStatement statement = parser.parseStatement();
+                if (statement.getKind() != Tree.Kind.BLOCK) {
+                    return false;
+                }
+                // keep the static flag of the initializer
+                ((JCTree.JCBlock) statement).flags = ((JCTree.JCBlock) member.tree).flags;
+                newTree = statement;
+            }
+            if (parser.token().kind != TokenKind.EOF ||
+                TreeInfo.getEndPos(newTree, cu.endPositions) !=
+                member.bodyStart + newBody.length()) {
+                LOGGER.log(Level.FINER, "Skip reparse initializer, invalid position: {0}",
+                        newBody);   //NOI18N
+                return false;
+            }
+            if (!hasSameClasses(fav, new TreePath(classPath, newTree))) {
+                LOGGER.log(Level.FINER, "Skip reparse initializer (local classes changed): {0}",
+                        newBody);   //NOI18N
+                return false;
+            }
+            docComments.putAll(((LazyDocCommentTable) parser.getDocComments()).table);
+            replaceDocComments(cu, fav.docOwners, docComments);
+
+            final int delta = member.bodyStart + newBody.length() - member.bodyEnd;
+            removeDiagnostics(l, cu, member.bodyStart, member.bodyEnd);
+            new TranslatePositionsVisitor(oldBody, cu.endPositions, delta).scan(cu, null);
+            Enter.instance(ctx).unenter(cu, oldBody);
+
+            Attr attr = Attr.instance(ctx);
+            if (member.tree instanceof JCTree.JCVariableDecl) {
+                JCTree.JCVariableDecl field = (JCTree.JCVariableDecl) member.tree;
+                field.init = (JCTree.JCExpression) newTree;
+                attr.attribStat(field, classEnv);
+            } else {
+                member.owner.defs = replace(member.owner.defs, member.tree, newTree);
+                attr.attribStat(newTree, classEnv);
+            }
+            if (!reflowClass(ctx, cu, member.owner, member.bodyStart,
+                    member.bodyStart + newBody.length())) {
+                return false;
+            }
         } catch (Throwable t) {
             if (t instanceof ThreadDeath) {
                 throw (ThreadDeath) t;
             }
-            t.printStackTrace();
+            LOGGER.log(Level.WARNING, "Failed to reparse initializer", t);  //NOI18N
             return false;
+        } finally {
+            l.endPartialReparse(cu.getSourceFile());
+            l.useSource(prevLogged);
         }
         return true;
     }
 
+    /**
+     * Finds the innermost method, initializer block or field initializer of the given class
+     * declarations whose body contains the whole change.
+     */
+    private static ChangedMember findChangedMember(JCTree.JCCompilationUnit cu,
+                                                   List<? extends Tree> declarations,
+                                                   int changeStart,
+                                                   int changeEnd) {
+        EndPosTable endPos = cu.endPositions;
+        for (Tree declaration : declarations) {
+            if (!(declaration instanceof JCTree.JCClassDecl)) {
+                continue;
+            }
+            JCTree.JCClassDecl classDecl = (JCTree.JCClassDecl) declaration;
+            if (TreeInfo.getStartPos(classDecl) > changeStart ||
+                TreeInfo.getEndPos(classDecl, endPos) < changeEnd) {
+                continue;
+            }
+            for (JCTree def : classDecl.defs) {
+                if (def instanceof JCTree.JCClassDecl) {
+                    ChangedMember inner = findChangedMember(cu,
+                            Collections.singletonList(def), changeStart, changeEnd);
+                    if (inner != null) {
+                        return inner;
+                    }
+                } else if (def instanceof JCTree.JCMethodDecl) {
+                    JCTree.JCBlock body = ((JCTree.JCMethodDecl) def).body;
+                    if (body != null && isInsideBraces(body, endPos, changeStart, changeEnd)) {
+                        return new ChangedMember(classDecl, def, body.pos,
+                                TreeInfo.getEndPos(body, endPos));
+                    }
+                } else if (def instanceof JCTree.JCBlock) {
+                    if (isInsideBraces((JCTree.JCBlock) def, endPos, changeStart, changeEnd)) {
+                        return new ChangedMember(classDecl, def, def.pos,
+                                TreeInfo.getEndPos(def, endPos));
+                    }
+                } else if (def instanceof JCTree.JCVariableDecl) {
+                    JCTree.JCVariableDecl field = (JCTree.JCVariableDecl) def;
+                    // the initializers of constants are evaluated lazily from the old tree
+                    if (field.init == null || (field.mods.flags & Flags.FINAL) != 0) {
+                        continue;
+                    }
+                    int start = TreeInfo.getStartPos(field.init);
+                    int end = TreeInfo.getEndPos(field.init, endPos);
+                    if (start >= 0 && start <= changeStart && changeEnd <= end) {
+                        return new ChangedMember(classDecl, def, start, end);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isInsideBraces(JCTree.JCBlock block,
+                                          EndPosTable endPos,
+                                          int changeStart,
+                                          int changeEnd) {
+        int end = TreeInfo.getEndPos(block, endPos);
+        return block.pos >= 0 && block.pos < changeStart && changeEnd < end;
+    }
+
+    /**
+     * Runs flow analysis on the class of the reparsed member, so that errors such as a missing
+     * return or an uninitialized variable are reported for the new tree. Flow analyzes the
+     * whole class, the diagnostics it reports again outside of the given range are dropped.
+     *
+     * @return Whether the class could be analyzed
+     */
+    private static boolean reflowClass(Context ctx,
+                                       JCTree.JCCompilationUnit cu,
+                                       JCTree.JCClassDecl owner,
+                                       int start,
+                                       int end) {
+        Env<AttrContext> env = owner.sym == null ? null : Enter.instance(ctx).getEnv(owner.sym);
+        if (env == null) {
+            return false;
+        }
+        NBLog log = NBLog.instance(ctx);
+        URI uri = cu.getSourceFile().toUri();
+        Set<JCDiagnostic> previous = Collections.newSetFromMap(new IdentityHashMap<>());
+        previous.addAll(log.getDiagnostics(uri));
+
+        Flow.instance(ctx).analyzeTree(env, TreeMaker.instance(ctx));
+
+        log.removeDiagnostics(uri, diagnostic -> !previous.contains(diagnostic) &&
+                (diagnostic.getPosition() < start || diagnostic.getPosition() > end));
+        return true;
+    }
+
+    /**
+     * Local and anonymous classes get the lowest free index of their top level class when they
+     * are entered, a body that adds, removes or renames them would end up with other binary
+     * names than after a full reparse
+     */
+    private static boolean hasSameClasses(FindAnonymousVisitor fav, TreePath newBody) {
+        List<String> oldNames = new ArrayList<>(fav.classNames);
+        fav.reset();
+        fav.scan(newBody, null);
+        return oldNames.equals(fav.classNames);
+    }
+
+    /**
+     * The compiler only keeps the doc comments of a file when asked to, there is nothing to
+     * update otherwise
+     */
+    private static void replaceDocComments(JCTree.JCCompilationUnit cu,
+                                           Set<Tree> oldOwners,
+                                           Map<JCTree, LazyDocCommentTable.Entry> docComments) {
+        if (!(cu.docComments instanceof LazyDocCommentTable)) {
+            return;
+        }
+        Map<JCTree, LazyDocCommentTable.Entry> table = ((LazyDocCommentTable) cu.docComments).table;
+        //noinspection SuspiciousMethodCalls
+        table.keySet().removeAll(oldOwners);
+        table.putAll(docComments);
+    }
+
+    /**
+     * Removes the diagnostics reported for the replaced range, the new tree reports its own
+     * diagnostics while it is attributed
+     */
+    private static void removeDiagnostics(NBLog log, CompilationUnitTree cu, int start, int end) {
+        log.removeDiagnostics(cu.getSourceFile().toUri(), diagnostic ->
+                diagnostic.getPosition() >= start && diagnostic.getPosition() <= end);
+    }
+
+    private static com.sun.tools.javac.util.List<JCTree> replace(
+            com.sun.tools.javac.util.List<JCTree> list, JCTree from, JCTree to) {
+        ListBuffer<JCTree> buffer = new ListBuffer<>();
+        for (JCTree tree : list) {
+            buffer.append(tree == from ? to : tree);
+        }
+        return buffer.toList();
+    }
+
+    /**
+     * @return The text preceded by spaces so the positions of the parsed trees are the
+     * positions in the whole file
+     */
+    private static CharBuffer padToPosition(int startPos, String text) {
+        char[] body = new char[startPos + text.length() + 1];
+        Arrays.fill(body, 0, startPos, ' ');
+        text.getChars(0, text.length(), body, startPos);
+        body[startPos + text.length()] = '\u0000';
+        return CharBuffer.wrap(body, 0, body.length - 1);
+    }
+
+    /**
+     * A member whose body contains a change
+     */
+    private static class ChangedMember {
+
+        final JCTree.JCClassDecl owner;
+
+        /**
+         * The method, the initializer block or the field
+         */
+        final JCTree tree;
+
+        /**
+         * The range of the body in the previous contents, including the braces of blocks
+         */
+        final int bodyStart;
+        final int bodyEnd;
+
+        ChangedMember(JCTree.JCClassDecl owner, JCTree tree, int bodyStart, int bodyEnd) {
+            this.owner = owner;
+            this.tree = tree;
+            this.bodyStart = bodyStart;
+            this.bodyEnd = bodyEnd;
+        }
+    }
+
     public JCTree.JCBlock reparseMethodBody(Context ctx,
                                             CompilationUnitTree topLevel,
                                             MethodTree methodToReparse,
                                             String newBodyText,
                                             final Map<JCTree, LazyDocCommentTable.Entry> docComments) throws IllegalArgumentException, IllegalAccessException {
         int startPos = ((JCTree.JCBlock) methodToReparse.getBody()).pos;
-        char[] body = new char[startPos + newBodyText.length() + 1];
-        Arrays.fill(body, 0, startPos, ' ');
-        for (int i = 0; i < newBodyText.length(); i++) {
-            body[startPos + i] = newBodyText.charAt(i);
-        }
-        body[startPos + newBodyText.length()] = '\u0000';
-        CharBuffer buf = CharBuffer.wrap(body, 0, body.length - 1);
+        CharBuffer buf = padToPosition(startPos, newBodyText);
         com.sun.tools.javac.parser.JavacParser parser =
                 newParser(ctx, buf, ((JCTree.JCBlock) methodToReparse.getBody()).pos,
                         ((JCTree.JCCompilationUnit) topLevel).endPositions);
@@ -7,7 +7,9 @@ import com.sun.source.tree.VariableTree;
 import com.sun.tools.javac.tree.JCTree.JCClassDecl;
 import com.tyron.completion.java.util.ErrorAwareTreeScanner;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -21,12 +23,14 @@ class FindAnonymousVisitor extends ErrorAwareTreeScanner<Void,Void> {
 
     int noInner;
     boolean hasLocalClass;
+    final List<String> classNames = new ArrayList<>();
     final Set<Tree> docOwners = new HashSet<>();
     private Mode mode = Mode.COLLECT;            
     
     public final void reset () {
         this.noInner = 0;
         this.hasLocalClass = false;
+        this.classNames.clear();
         this.mode = Mode.CHECK;
     }
 
@@ -36,6 +40,7 @@ class FindAnonymousVisitor extends ErrorAwareTreeScanner<Void,Void> {
             hasLocalClass = true;
         }
         noInner++;
+        classNames.add(node.getSimpleName().toString());
         handleDoc(node);
         return super.visitClass(node, p);
     }
@@ -6,6 +6,19 @@ import com.sun.source.tree.MethodTree;
 import java.io.IOException;
 
 public interface PartialReparser {
+
+    /**
+     * Reparses and attributes only the method, initializer block or field initializer whose
+     * body contains every change between the contents the unit was parsed from and the new
+     * contents. The other members keep their trees and attribution.
+     *
+     * @return Whether the unit was updated, if not the whole file has to be parsed again
+     */
+    boolean reparseMember(final CompilationInfoImpl ci,
+                          final CompilationUnitTree compilationUnitTree,
+                          final CharSequence previousContents,
+                          final CharSequence contents) throws IOException;
+
     boolean reparseMethod(final CompilationInfoImpl ci,
                           final CharSequence contents,
                           final CompilationUnitTree compilationUnitTree,
@@ -0,0 +1,62 @@
+package com.tyron.completion.java.parse;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how many updates of a {@link CompilationInfo} only reparsed the edited member and
+ * how many had to reparse the whole file, along with the time spent on each.
+ */
+public class ReparseStatistics {
+
+    private final AtomicLong partialCount = new AtomicLong();
+    private final AtomicLong partialMillis = new AtomicLong();
+    private final AtomicLong fullCount = new AtomicLong();
+    private final AtomicLong fullMillis = new AtomicLong();
+
+    void record(boolean partial, long millis) {
+        if (partial) {
+            partialCount.incrementAndGet();
+            partialMillis.addAndGet(millis);
+        } else {
+            fullCount.incrementAndGet();
+            fullMillis.addAndGet(millis);
+        }
+    }
+
+    public long getPartialCount() {
+        return partialCount.get();
+    }
+
+    public long getFullCount() {
+        return fullCount.get();
+    }
+
+    public long getPartialMillis() {
+        return partialMillis.get();
+    }
+
+    public long getFullMillis() {
+        return fullMillis.get();
+    }
+
+    /**
+     * @return The fraction of the updates that were partial, between 0 and 1
+     */
+    public double getHitRate() {
+        long partial = getPartialCount();
+        long total = partial + getFullCount();
+        return total == 0 ? 0 : (double) partial / total;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ReparseStatistics{" +
+               "partial=" + getPartialCount() + " (" + getPartialMillis() + " ms)" +
+               ", full=" + getFullCount() + " (" + getFullMillis() + " ms)" +
+               ", hitRate=" + getHitRate() +
+               '}';
+    }
+}
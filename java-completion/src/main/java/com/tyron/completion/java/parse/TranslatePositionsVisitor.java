@@ -1,7 +1,6 @@
 package com.tyron.completion.java.parse;
 
 import com.sun.source.tree.CompilationUnitTree;
-import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.Tree;
 import com.sun.source.tree.VariableTree;
 import com.sun.tools.javac.tree.EndPosTable;
@@ -17,34 +16,49 @@ import com.tyron.completion.java.util.ErrorAwareTreeScanner;
  */
 class TranslatePositionsVisitor extends ErrorAwareTreeScanner<Void, Void> {
 
-    private final MethodTree changedMethod;
+    private final Tree changedTree;
     private final EndPosTable endPos;
     private final int delta;
     boolean active;
-    boolean inMethod;
+    boolean inChangedTree;
 
-    public TranslatePositionsVisitor(final MethodTree changedMethod,
+    /**
+     * @param changedTree the tree being replaced, e.g. the body of a method or the initializer
+     *                    of a field. The end positions of its subtrees are removed and the
+     *                    positions of the trees after it are translated.
+     */
+    public TranslatePositionsVisitor(final Tree changedTree,
                                      final EndPosTable endPos,
                                      final int delta) {
-//        assert changedMethod != null;
         assert endPos != null;
-        this.changedMethod = changedMethod;
+        this.changedTree = changedTree;
         this.endPos = endPos;
         this.delta = delta;
 
-        active = changedMethod == null;//hack
+        active = changedTree == null;//hack
     }
 
 
     @Override
     public Void scan(Tree node, Void p) {
+        if (node != null && node == changedTree) {
+            inChangedTree = true;
+            Void result = translate(node, p);
+            inChangedTree = false;
+            active = true;
+            return result;
+        }
+        return translate(node, p);
+    }
+
+    private Void translate(Tree node, Void p) {
         if (active && node != null) {
             if (((JCTree) node).pos >= 0) {
                 ((JCTree) node).pos += delta;
             }
         }
         Void result = super.scan(node, p);
-        if (inMethod && node != null) {
+        if (inChangedTree && node != null) {
             endPos.replaceTree((JCTree) node, null);//remove
         }
         if (active && node != null) {
@@ -67,32 +81,6 @@ class TranslatePositionsVisitor extends ErrorAwareTreeScanner<Void, Void> {
         return scan(node.getTypeDecls(), p);
     }
 
-
-    @Override
-    public Void visitMethod(MethodTree node, Void p) {
-        if (active || inMethod) {
-            scan(node.getModifiers(), p);
-            scan(node.getReturnType(), p);
-            scan(node.getTypeParameters(), p);
-            scan(node.getParameters(), p);
-            scan(node.getThrows(), p);
-        }
-        if (node == changedMethod) {
-            inMethod = true;
-        }
-        if (active || inMethod) {
-            scan(node.getBody(), p);
-        }
-        if (inMethod) {
-            active = inMethod;
-            inMethod = false;
-        }
-        if (active || inMethod) {
-            scan(node.getDefaultValue(), p);
-        }
-        return null;
-    }
-
     @Override
     public Void visitVariable(VariableTree node, Void p) {
         JCVariableDecl varDecl = (JCVariableDecl) node;
@@ -101,6 +89,4 @@ class TranslatePositionsVisitor extends ErrorAwareTreeScanner<Void, Void> {
         }
         return super.visitVariable(node, p);
     }
-
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,241 @@
+package com.tyron.completion.java.parse;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.tyron.completion.TestUtil.resolveBasePath;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.sun.tools.javac.tree.TreeScanner;
+import com.sun.tools.javac.util.JCDiagnostic;
+import com.tyron.builder.BuildModule;
+import com.tyron.completion.java.compiler.services.NBLog;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, resourceDir = Config.NONE)
+public class DefaultPartialReparserTest {
+
+    private static final String SOURCE = "public class Test {\n" +
+                                         "    private int field = 1;\n" +
+                                         "\n" +
+                                         "    int method() {\n" +
+                                         "        return 1;\n" +
+                                         "    }\n" +
+                                         "}\n";
+
+    private URI mUri;
+    private CompilationInfo mInfo;
+    private CompilationInfo mFullInfo;
+
+    @Before
+    public void setup() {
+        BuildModule.initialize(ApplicationProvider.getApplicationContext());
+        BuildModule.setAndroidJar(new File(resolveBasePath(), "classpath/rt.jar"));
+        BuildModule.setLambdaStubs(new File(resolveBasePath(), "classpath/core-lambda-stubs.jar"));
+
+        mUri = new File(resolveBasePath(), "Test.java").getAbsoluteFile().toURI();
+        mInfo = createCompilationInfo();
+        mFullInfo = createCompilationInfo();
+    }
+
+    @Test
+    public void testMethodBodyIsReparsedPartially() {
+        JCCompilationUnit first = update(SOURCE);
+        JavaFileObject edited = createFileObject(SOURCE.replace("return 1;", "return 2;"));
+        JCCompilationUnit second = mInfo.updateImmediately(edited);
+
+        assertThat(second).isSameInstanceAs(first);
+        assertThat(second.getSourceFile()).isSameInstanceAs(edited);
+        assertThat(mInfo.getReparseStatistics().getFullCount()).isEqualTo(1);
+        assertThat(mInfo.getReparseStatistics().getPartialCount()).isEqualTo(1);
+        assertThat(getErrorCodes(mInfo)).isEmpty();
+    }
+
+    @Test
+    public void testFieldInitializerIsReparsedPartially() {
+        update(SOURCE);
+        update(SOURCE.replace("field = 1;", "field = \"1\";"));
+
+        assertThat(mInfo.getReparseStatistics().getPartialCount()).isEqualTo(1);
+        assertThat(getErrorCodes(mInfo)).containsExactly("compiler.err.prob.found.req");
+    }
+
+    @Test
+    public void testFlowErrorsOfReparsedMethod() {
+        update(SOURCE);
+        update(SOURCE.replace("return 1;", "int unused = 0;"));
+
+        assertThat(mInfo.getReparseStatistics().getPartialCount()).isEqualTo(1);
+        assertThat(getErrorCodes(mInfo)).containsExactly("compiler.err.missing.ret.stmt");
+
+        update(SOURCE);
+
+        assertThat(mInfo.getReparseStatistics().getPartialCount()).isEqualTo(2);
+        assertThat(getErrorCodes(mInfo)).isEmpty();
+    }
+
+    @Test
+    public void testSignatureChangeReparsesFully() {
+        update(SOURCE);
+        update(SOURCE.replace("int method()", "long method()"));
+
+        assertThat(mInfo.getReparseStatistics().getFullCount()).isEqualTo(2);
+        assertThat(mInfo.getReparseStatistics().getPartialCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testLocalClassIsReparsedPartially() {
+        String source = "public class Test {\n" +
+                        "    Runnable other() { return new Runnable() { public void run() {} }; }\n" +
+                        "    int method() {\n" +
+                        "        class Local { int value() { return 1; } }\n" +
+                        "        return new Local().value();\n" +
+                        "    }\n" +
+                        "}\n";
+        assertReparsedPartially(source, source.replace("return 1; }", "}"));
+
+        assertThat(getErrorCodes(mInfo)).containsExactly("compiler.err.missing.ret.stmt");
+    }
+
+    @Test
+    public void testAnonymousClassIsReparsedPartially() {
+        String source = "public class Test {\n" +
+                        "    Runnable other() { return new Runnable() { public void run() {} }; }\n" +
+                        "    Runnable method() {\n" +
+                        "        return new Runnable() { public void run() { int a = 1; } };\n" +
+                        "    }\n" +
+                        "    Runnable last() { return new Runnable() { public void run() {} }; }\n" +
+                        "}\n";
+        assertReparsedPartially(source, source.replace("int a = 1;", "int a = \"1\";"));
+
+        assertThat(getErrorCodes(mInfo)).containsExactly("compiler.err.prob.found.req");
+    }
+
+    @Test
+    public void testLambdaIsReparsedPartially() {
+        String source = "public class Test {\n" +
+                        "    java.util.function.IntSupplier method() {\n" +
+                        "        int x = 1;\n" +
+                        "        return () -> x + 1;\n" +
+                        "    }\n" +
+                        "}\n";
+        assertReparsedPartially(source, source.replace("int x = 1;", "int x = 1;\n        x++;"));
+
+        assertThat(getErrorCodes(mInfo))
+                .containsExactly("compiler.err.cant.ref.non.effectively.final.var");
+    }
+
+    @Test
+    public void testAddedAnonymousClassReparsesFully() {
+        String source = "public class Test {\n" +
+                        "    Runnable method() {\n" +
+                        "        return null;\n" +
+                        "    }\n" +
+                        "    Runnable last() { return new Runnable() { public void run() {} }; }\n" +
+                        "}\n";
+        String edited = source.replace("return null;",
+                "return new Runnable() { public void run() {} };");
+        update(source);
+        JCCompilationUnit unit = update(edited);
+        JCCompilationUnit fullUnit = mFullInfo.updateImmediately(createFileObject(edited));
+
+        // the anonymous class of last() would keep Test$1 if only method() was reparsed
+        assertThat(mInfo.getReparseStatistics().getPartialCount()).isEqualTo(0);
+        assertThat(describe(unit)).containsExactlyElementsIn(describe(fullUnit)).inOrder();
+    }
+
+    /**
+     * Applies both sources and checks that the second one was reparsed partially, with the same
+     * trees, symbols and diagnostics as a full reparse of it
+     */
+    private void assertReparsedPartially(String source, String edited) {
+        update(source);
+        JCCompilationUnit unit = update(edited);
+        JCCompilationUnit fullUnit = mFullInfo.updateImmediately(createFileObject(edited));
+
+        assertThat(mInfo.getReparseStatistics().getPartialCount()).isEqualTo(1);
+        assertThat(describe(unit)).containsExactlyElementsIn(describe(fullUnit)).inOrder();
+        assertThat(getErrors(mInfo)).containsExactlyElementsIn(getErrors(mFullInfo)).inOrder();
+    }
+
+    private static List<String> describe(JCCompilationUnit unit) {
+        List<String> trees = new ArrayList<>();
+        new TreeScanner() {
+            @Override
+            public void scan(JCTree tree) {
+                if (tree != null) {
+                    StringBuilder sb = new StringBuilder();
+                    sb.append(tree.getTag()).append('@').append(tree.pos).append('-')
+                            .append(TreeInfo.getEndPos(tree, unit.endPositions));
+                    if (tree.type != null) {
+                        sb.append(' ').append(tree.type);
+                    }
+                    Symbol symbol = TreeInfo.symbolFor(tree);
+                    if (symbol != null) {
+                        sb.append(' ').append(symbol.flatName()).append(" in ").append(symbol.owner);
+                    }
+                    trees.add(sb.toString());
+                }
+                super.scan(tree);
+            }
+        }.scan(unit);
+        return trees;
+    }
+
+    private CompilationInfo createCompilationInfo() {
+        return new CompilationInfo(new CompilationInfoImpl(new JavacParser(), null, null,
+                Collections.emptyList(), Collections.emptyList(), null, null));
+    }
+
+    private JCCompilationUnit update(String contents) {
+        return mInfo.updateImmediately(createFileObject(contents));
+    }
+
+    private List<String> getErrorCodes(CompilationInfo info) {
+        return getErrorDiagnostics(info).stream()
+                .map(JCDiagnostic::getCode)
+                .collect(Collectors.toList());
+    }
+
+    private List<String> getErrors(CompilationInfo info) {
+        return getErrorDiagnostics(info).stream()
+                .map(it -> it.getCode() + "@" + it.getPosition())
+                .collect(Collectors.toList());
+    }
+
+    private List<JCDiagnostic> getErrorDiagnostics(CompilationInfo info) {
+        NBLog log = NBLog.instance(info.impl.getJavacTask().getContext());
+        return log.getDiagnostics(mUri).stream()
+                .filter(it -> it.getKind() == Diagnostic.Kind.ERROR)
+                .collect(Collectors.toList());
+    }
+
+    private JavaFileObject createFileObject(String contents) {
+        return new SimpleJavaFileObject(mUri, JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return contents;
+            }
+        };
+    }
+}
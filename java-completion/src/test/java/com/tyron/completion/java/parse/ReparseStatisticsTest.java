@@ -0,0 +1,31 @@
+package com.tyron.completion.java.parse;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+public class ReparseStatisticsTest {
+
+    @Test
+    public void testEmpty() {
+        ReparseStatistics statistics = new ReparseStatistics();
+        assertThat(statistics.getPartialCount()).isEqualTo(0);
+        assertThat(statistics.getFullCount()).isEqualTo(0);
+        assertThat(statistics.getHitRate()).isEqualTo(0.0);
+    }
+
+    @Test
+    public void testRecord() {
+        ReparseStatistics statistics = new ReparseStatistics();
+        statistics.record(true, 2);
+        statistics.record(true, 3);
+        statistics.record(true, 5);
+        statistics.record(false, 40);
+
+        assertThat(statistics.getPartialCount()).isEqualTo(3);
+        assertThat(statistics.getPartialMillis()).isEqualTo(10);
+        assertThat(statistics.getFullCount()).isEqualTo(1);
+        assertThat(statistics.getFullMillis()).isEqualTo(40);
+        assertThat(statistics.getHitRate()).isEqualTo(0.75);
+    }
+}
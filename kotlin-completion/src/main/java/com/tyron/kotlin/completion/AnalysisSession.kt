@@ -0,0 +1,172 @@
+@file:OptIn(FrontendInternals::class)
+
+package com.tyron.kotlin.completion
+
+import android.util.Log
+import com.tyron.kotlin.completion.model.Analysis
+import com.tyron.kotlin_completion.util.PsiUtils
+import org.jetbrains.kotlin.analyzer.AnalysisResult
+import org.jetbrains.kotlin.cli.jvm.compiler.CliBindingTrace
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
+import org.jetbrains.kotlin.cli.jvm.compiler.TopDownAnalyzerFacadeForJVM
+import org.jetbrains.kotlin.com.intellij.psi.PsiElement
+import org.jetbrains.kotlin.container.ComponentProvider
+import org.jetbrains.kotlin.container.getService
+import org.jetbrains.kotlin.descriptors.ModuleDescriptor
+import org.jetbrains.kotlin.idea.FrontendInternals
+import org.jetbrains.kotlin.psi.KtAnonymousInitializer
+import org.jetbrains.kotlin.psi.KtClassBody
+import org.jetbrains.kotlin.psi.KtDeclarationWithBody
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.psi.KtProperty
+import org.jetbrains.kotlin.resolve.LazyTopDownAnalyzer
+import org.jetbrains.kotlin.resolve.TopDownAnalysisMode
+import org.jetbrains.kotlin.resolve.calls.smartcasts.DataFlowInfo
+import org.jetbrains.kotlin.resolve.jvm.extensions.AnalysisHandlerExtension
+import org.jetbrains.kotlin.resolve.lazy.declarations.FileBasedDeclarationProviderFactory
+import java.util.Collections
+import java.util.IdentityHashMap
+
+/**
+ * Analyses the kotlin files of a module for completion.
+ *
+ * Instead of resolving every declaration of every file, only the body of the declaration
+ * being edited is resolved. The declarations of the other files are resolved lazily and only
+ * if the edited body refers to them, so the time spent grows with the size of the edited
+ * declaration rather than the number of files in the module.
+ *
+ * The component container is kept as long as the same file instances are analysed, files
+ * that have not changed keep their instance in [KotlinEnvironment], so analysing another
+ * declaration of an unchanged snapshot reuses the declarations resolved before.
+ */
+class AnalysisSession(private val kotlinEnvironment: KotlinCoreEnvironment) {
+
+    /**
+     * The time spent in each phase of the last analysis, in milliseconds
+     */
+    data class Timings(
+        val containerMillis: Long,
+        val declarationsMillis: Long,
+        val analyzedDeclarations: Int,
+        val reusedContainer: Boolean
+    )
+
+    private class Session(
+        val files: Set<KtFile>,
+        val componentProvider: ComponentProvider,
+        val trace: CliBindingTrace,
+        val analyzed: MutableSet<PsiElement>
+    )
+
+    private var session: Session? = null
+
+    @Volatile
+    var lastTimings: Timings? = null
+        private set
+
+    /**
+     * Analyses the declaration containing the given element, the files must contain the file
+     * of the element.
+     */
+    @Synchronized
+    fun analyze(files: Collection<KtFile>, element: PsiElement): Analysis {
+        val containerStart = System.currentTimeMillis()
+        var current = session
+        val reused = current != null && current.files.size == files.size &&
+                files.all { it in current!!.files }
+        if (!reused) {
+            current = createSession(files)
+            session = current
+        }
+        val containerMillis = System.currentTimeMillis() - containerStart
+
+        val declarationsStart = System.currentTimeMillis()
+        val declaration = findEnclosingDeclaration(element) ?: element.containingFile
+        var analyzedCount = 0
+        if (current!!.analyzed.add(declaration)) {
+            analyzeDeclarations(current, listOf(declaration))
+            analyzedCount++
+        }
+        val declarationsMillis = System.currentTimeMillis() - declarationsStart
+
+        lastTimings = Timings(containerMillis, declarationsMillis, analyzedCount, reused)
+        Log.d("AnalysisSession", lastTimings.toString())
+
+        val moduleDescriptor = current.componentProvider.getService(ModuleDescriptor::class.java)
+        return Analysis(
+            current.componentProvider,
+            AnalysisResult.success(current.trace.bindingContext, moduleDescriptor)
+        )
+    }
+
+    /**
+     * Forgets the cached container, the next analysis creates a new one
+     */
+    @Synchronized
+    fun invalidate() {
+        session = null
+    }
+
+    private fun createSession(files: Collection<KtFile>): Session {
+        val fileList = files.toList()
+        val trace = CliBindingTrace()
+        val componentProvider = TopDownAnalyzerFacadeForJVM.createContainer(
+            kotlinEnvironment.project,
+            fileList,
+            trace,
+            kotlinEnvironment.configuration,
+            { globalSearchScope -> kotlinEnvironment.createPackagePartProvider(globalSearchScope) },
+            { storageManager, ktFiles ->
+                FileBasedDeclarationProviderFactory(
+                    storageManager,
+                    ktFiles
+                )
+            },
+            sourceModuleSearchScope = TopDownAnalyzerFacadeForJVM.newModuleSearchScope(
+                kotlinEnvironment.project,
+                fileList
+            )
+        )
+        val identitySet = Collections.newSetFromMap(IdentityHashMap<KtFile, Boolean>())
+        identitySet.addAll(fileList)
+        return Session(
+            identitySet,
+            componentProvider,
+            trace,
+            Collections.newSetFromMap(IdentityHashMap())
+        )
+    }
+
+    private fun analyzeDeclarations(session: Session, declarations: List<PsiElement>) {
+        session.componentProvider.getService(LazyTopDownAnalyzer::class.java)
+            .analyzeDeclarations(
+                TopDownAnalysisMode.TopLevelDeclarations,
+                declarations,
+                DataFlowInfo.EMPTY
+            )
+        val project = kotlinEnvironment.project
+        val moduleDescriptor = session.componentProvider.getService(ModuleDescriptor::class.java)
+        val files = declarations.map { it.containingFile as KtFile }.distinct()
+        AnalysisHandlerExtension.getInstances(project)
+            .find { it.analysisCompleted(project, moduleDescriptor, session.trace, files) != null }
+    }
+
+    /**
+     * @return The outermost non local function, property or initializer containing the element,
+     * or null if the element is not inside one, e.g. in the import list
+     */
+    private fun findEnclosingDeclaration(element: PsiElement): PsiElement? {
+        var found: PsiElement? = null
+        for (parent in PsiUtils.getParentsWithSelf(element)) {
+            if (parent is KtFile) {
+                break
+            }
+            val isDeclaration = parent is KtDeclarationWithBody || parent is KtProperty ||
+                    parent is KtAnonymousInitializer
+            if (isDeclaration && (parent.parent is KtFile || parent.parent is KtClassBody)) {
+                found = parent
+            }
+        }
+        return found
+    }
+}
@@ -11,17 +11,16 @@ import com.tyron.kotlin.completion.codeInsight.ReferenceVariantsHelper
 import com.tyron.kotlin.completion.model.Analysis
 import com.tyron.kotlin.completion.util.*
 import com.tyron.kotlin_completion.util.PsiUtils
-import org.jetbrains.kotlin.analyzer.AnalysisResult
 import org.jetbrains.kotlin.cli.common.CLIConfigurationKeys
 import org.jetbrains.kotlin.cli.common.arguments.K2JVMCompilerArguments
 import org.jetbrains.kotlin.cli.common.environment.setIdeaIoUseFallback
 import org.jetbrains.kotlin.cli.jvm.compiler.*
 import org.jetbrains.kotlin.cli.jvm.config.addJvmClasspathRoots
+import org.jetbrains.kotlin.com.intellij.openapi.Disposable
 import org.jetbrains.kotlin.com.intellij.openapi.util.Key
 import org.jetbrains.kotlin.com.intellij.psi.PsiElement
 import org.jetbrains.kotlin.com.intellij.psi.tree.TokenSet
 import org.jetbrains.kotlin.config.*
-import org.jetbrains.kotlin.container.getService
 import org.jetbrains.kotlin.descriptors.*
 import org.jetbrains.kotlin.descriptors.impl.LocalVariableDescriptor
 import org.jetbrains.kotlin.descriptors.impl.TypeParameterDescriptorImpl
@@ -33,11 +32,6 @@ import org.jetbrains.kotlin.renderer.ClassifierNamePolicy
 import org.jetbrains.kotlin.renderer.ParameterNameRenderingPolicy
 import org.jetbrains.kotlin.resolve.BindingContext
 import org.jetbrains.kotlin.resolve.DescriptorUtils
-import org.jetbrains.kotlin.resolve.LazyTopDownAnalyzer
-import org.jetbrains.kotlin.resolve.TopDownAnalysisMode
-import org.jetbrains.kotlin.resolve.calls.smartcasts.DataFlowInfo
-import org.jetbrains.kotlin.resolve.jvm.extensions.AnalysisHandlerExtension
-import org.jetbrains.kotlin.resolve.lazy.declarations.FileBasedDeclarationProviderFactory
 import org.jetbrains.kotlin.resolve.scopes.DescriptorKindFilter
 import org.jetbrains.kotlin.resolve.scopes.MemberScope
 import org.jetbrains.kotlin.types.asFlexibleType
@@ -51,6 +45,13 @@ data class KotlinEnvironment(
     val kotlinEnvironment: KotlinCoreEnvironment
 ) {
     private val kotlinFiles = mutableMapOf<String, KotlinFile>()
+    private val analysisSession = AnalysisSession(kotlinEnvironment)
+
+    /**
+     * The time spent in each phase of the analysis of the last completion
+     */
+    val lastAnalysisTimings: AnalysisSession.Timings?
+        get() = analysisSession.lastTimings
 
     fun updateKotlinFile(name: String, contents: String): KotlinFile {
         val kotlinFile = KotlinFile.from(kotlinEnvironment.project, name, contents)
@@ -62,6 +63,15 @@ data class KotlinEnvironment(
         kotlinFiles.remove(name)
     }
 
+    /**
+     * Releases the shared core environment, this environment cannot be used afterwards
+     */
+    fun dispose() {
+        kotlinFiles.clear()
+        analysisSession.invalidate()
+        KotlinEnvironmentPool.release(kotlinEnvironment)
+    }
+
     private data class DescriptorInfo(
         val isTipsManagerCompletion: Boolean,
         val descriptors: List<DeclarationDescriptor>
@@ -171,7 +181,7 @@ data class KotlinEnvironment(
 
     private fun descriptorsFrom(element: PsiElement): DescriptorInfo {
         val files = kotlinFiles.values.map { it.kotlinFile }.toList()
-        val analysis = analysisOf(files)
+        val analysis = analysisSession.analyze(files, element)
         return with(analysis) {
             (referenceVariantsFrom(element)
                 ?: referenceVariantsFrom(element.parent))?.let { descriptors ->
@@ -212,43 +222,6 @@ data class KotlinEnvironment(
         }
     }
 
-    private fun analysisOf(files: List<KtFile>): Analysis {
-        val trace = CliBindingTrace()
-        val project = files.first().project
-        val componentProvider = TopDownAnalyzerFacadeForJVM.createContainer(
-            kotlinEnvironment.project,
-            files,
-            trace,
-            kotlinEnvironment.configuration,
-            { globalSearchScope -> kotlinEnvironment.createPackagePartProvider(globalSearchScope) },
-            { storageManager, ktFiles ->
-                FileBasedDeclarationProviderFactory(
-                    storageManager,
-                    ktFiles
-                )
-            },
-            sourceModuleSearchScope = TopDownAnalyzerFacadeForJVM.newModuleSearchScope(
-                project,
-                files
-            )
-        )
-        return logTime("analysis") {
-            componentProvider.getService(LazyTopDownAnalyzer::class.java)
-                .analyzeDeclarations(
-                    TopDownAnalysisMode.TopLevelDeclarations,
-                    files,
-                    DataFlowInfo.EMPTY
-                )
-            val moduleDescriptor = componentProvider.getService(ModuleDescriptor::class.java)
-            AnalysisHandlerExtension.getInstances(project)
-                .find { it.analysisCompleted(project, moduleDescriptor, trace, files) != null }
-            return@logTime Analysis(
-                componentProvider,
-                AnalysisResult.success(trace.bindingContext, moduleDescriptor)
-            )
-        }
-    }
-
     private fun Analysis.referenceVariantsFrom(element: PsiElement): List<DeclarationDescriptor>? {
         val prefix = getPrefix(element)
         val elementKt = element as? KtElement ?: return emptyList()
@@ -359,11 +332,32 @@ data class KotlinEnvironment(
             "kotlin.reflect.jvm.internal"
         )
 
+        /**
+         * Keeps the application environment, which holds the jar file system, alive when
+         * every project environment is disposed so the jars are not opened again
+         */
+        private const val KEEPALIVE_PROPERTY = "kotlin.environment.keepalive"
+
+        /**
+         * Creates an environment backed by the shared [KotlinCoreEnvironment] of the class
+         * path, it has to be released with [dispose] when it is no longer used
+         */
         fun with(classpath: List<File>): KotlinEnvironment {
             setIdeaIoUseFallback()
             setupIdeaStandaloneExecution()
-            return KotlinEnvironment(classpath, KotlinCoreEnvironment.createForProduction(
-                parentDisposable = {},
+            System.setProperty(KEEPALIVE_PROPERTY, "true")
+            val environment = KotlinEnvironmentPool.acquire(classpath) { disposable ->
+                createCoreEnvironment(classpath, disposable)
+            }
+            return KotlinEnvironment(classpath, environment)
+        }
+
+        private fun createCoreEnvironment(
+            classpath: List<File>,
+            disposable: Disposable
+        ): KotlinCoreEnvironment {
+            return KotlinCoreEnvironment.createForProduction(
+                parentDisposable = disposable,
                 configFiles = EnvironmentConfigFiles.JVM_CONFIG_FILES,
                 configuration = CompilerConfiguration().apply {
                     addJvmClasspathRoots(classpath.filter { it.exists() && it.isFile && it.extension == "jar" })
@@ -392,7 +386,7 @@ data class KotlinEnvironment(
                         put(JVMConfigurationKeys.DISABLE_CALL_ASSERTIONS, noCallAssertions)
                     }
                 }
-            ))
+            )
         }
 
         fun get(module: Module): KotlinEnvironment? {
@@ -413,5 +407,15 @@ data class KotlinEnvironment(
             androidModule.putUserData(ENVIRONMENT_KEY, environment)
             return environment
         }
+
+        /**
+         * Releases the environment of the module, e.g. when its project is closed
+         */
+        fun release(module: Module) {
+            val androidModule = module as? AndroidModuleImpl ?: return
+            val environment = androidModule.getUserData(ENVIRONMENT_KEY) ?: return
+            androidModule.putUserData(ENVIRONMENT_KEY, null)
+            environment.dispose()
+        }
     }
 }
\ No newline at end of file
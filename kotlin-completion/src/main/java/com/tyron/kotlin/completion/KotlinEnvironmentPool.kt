@@ -0,0 +1,110 @@
+package com.tyron.kotlin.completion
+
+import android.util.Log
+import com.google.common.hash.Hashing
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
+import org.jetbrains.kotlin.com.intellij.openapi.Disposable
+import org.jetbrains.kotlin.com.intellij.openapi.util.Disposer
+import java.io.File
+import java.nio.charset.StandardCharsets
+
+/**
+ * Shares [KotlinCoreEnvironment]s between the modules that have the same class path.
+ *
+ * Environments are keyed by a fingerprint of the path, size and last modified time of every
+ * class path entry. An environment is disposed once no module uses it anymore, except for the
+ * most recently released ones which are kept so that reopening a project does not open and
+ * index the same jars again.
+ */
+object KotlinEnvironmentPool {
+
+    private const val TAG = "KotlinEnvironmentPool"
+
+    /**
+     * The number of unused environments kept before the oldest one is disposed
+     */
+    private const val MAX_IDLE = 1
+
+    private class Entry(
+        val key: String,
+        val disposable: Disposable,
+        val environment: KotlinCoreEnvironment
+    ) {
+        var references = 0
+    }
+
+    /**
+     * In access order, so the first idle entry is the least recently used
+     */
+    private val entries = LinkedHashMap<String, Entry>(16, 0.75f, true)
+
+    /**
+     * Returns the environment of the given class path, creating it if no module with the same
+     * class path has one. Every call must be paired with a call to [release].
+     */
+    @Synchronized
+    fun acquire(
+        classpath: List<File>,
+        factory: (Disposable) -> KotlinCoreEnvironment
+    ): KotlinCoreEnvironment {
+        val key = fingerprint(classpath)
+        val existing = entries[key]
+        if (existing != null) {
+            existing.references++
+            return existing.environment
+        }
+
+        val start = System.currentTimeMillis()
+
+        val disposable = Disposer.newDisposable()
+        val environment = factory(disposable)
+        val entry = Entry(key, disposable, environment)
+        entry.references++
+        entries[key] = entry
+
+        Log.d(TAG, "Created environment for ${classpath.size} class path entries in " +
+                "${System.currentTimeMillis() - start} ms, ${entries.size} environments in the pool")
+        return environment
+    }
+
+    /**
+     * Releases an environment returned by [acquire]
+     */
+    @Synchronized
+    fun release(environment: KotlinCoreEnvironment) {
+        val entry = entries.values.firstOrNull { it.environment === environment } ?: return
+        entry.references--
+        if (entry.references > 0) {
+            return
+        }
+
+        val idle = entries.values.filter { it.references <= 0 }
+        for (i in 0 until idle.size - MAX_IDLE) {
+            dispose(idle[i])
+        }
+    }
+
+    /**
+     * Disposes every environment that is not used by a module
+     */
+    @Synchronized
+    fun trim() {
+        entries.values.filter { it.references <= 0 }.forEach(::dispose)
+    }
+
+    private fun dispose(entry: Entry) {
+        entries.remove(entry.key)
+        Disposer.dispose(entry.disposable)
+        Log.d(TAG, "Disposed environment, ${entries.size} environments in the pool")
+    }
+
+    private fun fingerprint(classpath: List<File>): String {
+        val hasher = Hashing.murmur3_128().newHasher()
+        for (file in classpath.sortedBy { it.absolutePath }) {
+            hasher.putString(file.absolutePath, StandardCharsets.UTF_8)
+            hasher.putLong(file.length())
+            hasher.putLong(file.lastModified())
+        }
+        return hasher.hash().toString()
+    }
+}
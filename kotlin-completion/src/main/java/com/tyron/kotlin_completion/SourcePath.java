@@ -52,13 +52,15 @@ public class SourcePath {
     }
 
     private final AsyncExecutor indexAsync = new AsyncExecutor();
-    private final SymbolIndex index = new SymbolIndex();
+    private final SymbolIndex index;
     private boolean indexEnabled = false;
-    private boolean indexInitialized;
+    private volatile boolean indexInitialized;
 
 
     public SourcePath(CompilerClassPath classPath) {
         cp = classPath;
+        index = new SymbolIndex(new File(classPath.getModule().getBuildDirectory(),
+                "caches/symbols"));
     }
 
     public CompilerClassPath getCompilerClassPath() {
@@ -162,6 +164,9 @@ public class SourcePath {
                 } finally {
                     parsedDataWriteLock.unlock();
                 }
+                if (!isTemporary) {
+                    updateIndexAsync(path, compiledFile, compiledContext);
+                }
             }
             initializeIndexAsyncIfNeeded(compiledcontainer);
         }
@@ -214,6 +219,7 @@ public class SourcePath {
 
     public void delete(File file) {
         files.remove(file.toURI());
+        indexAsync.execute(() -> index.removeSourceFile(getIndexKey(Paths.get(file.toURI()))));
     }
 
     public BindingContext compileFiles(Collection<File> all) {
@@ -233,12 +239,39 @@ public class SourcePath {
         indexAsync.execute(() -> {
             if (indexEnabled && !indexInitialized) {
                 ModuleDescriptor module = (ModuleDescriptor) container.resolve(ModuleDescriptor.class).getValue();
-                index.refresh(module, true);
+                index.refresh(module, cp.getClassPathJars(), false);
                 indexInitialized = true;
+
+                // index the source files compiled before the library symbols were loaded
+                for (SourceFile file : files.values()) {
+                    if (!file.isTemporary && file.compiledFile != null) {
+                        index.updateSourceFile(getIndexKey(file.path), file.compiledFile,
+                                file.compiledContext);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Replaces the indexed symbols of the file with the declarations of its latest compilation
+     */
+    private void updateIndexAsync(Path path, KtFile file, BindingContext context) {
+        indexAsync.execute(() -> {
+            if (indexEnabled && indexInitialized) {
+                index.updateSourceFile(getIndexKey(path), file, context);
             }
         });
     }
 
+    /**
+     * The key of a source file in the symbol index. The path of a parsed {@link KtFile} is the
+     * one of its light virtual file, so the path of the source file on disk is used instead.
+     */
+    private static String getIndexKey(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
 
     private BindingContext compileAndUpdate(Set<SourceFile> changed) {
         if (changed.isEmpty()) return null;
@@ -257,6 +290,9 @@ public class SourcePath {
                     f.compiledFile = parsed;
                     f.compiledContext = pair.getFirst();
                     f.compiledcontainer = pair.getSecond();
+                    if (!f.isTemporary) {
+                        updateIndexAsync(f.path, parsed, pair.getFirst());
+                    }
                 }
             } finally {
                 parsedDataWriteLock.unlock();
@@ -1,116 +1,258 @@
 package com.tyron.kotlin_completion.index
 
 import android.util.Log
+import com.google.common.hash.Hashing
+import com.tyron.builder.compiler.java.LibraryFingerprints
 import com.tyron.kotlin_completion.util.PsiUtils
-import org.jetbrains.exposed.sql.*
-import org.jetbrains.exposed.sql.transactions.transaction
 import org.jetbrains.kotlin.descriptors.DeclarationDescriptor
 import org.jetbrains.kotlin.descriptors.ModuleDescriptor
 import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.resolve.BindingContext
+import org.jetbrains.kotlin.resolve.DescriptorToSourceUtils
 import org.jetbrains.kotlin.resolve.scopes.DescriptorKindFilter
 import org.jetbrains.kotlin.resolve.scopes.MemberScope
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
 import java.lang.IllegalStateException
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
 import java.time.Duration
 import java.time.Instant
+import java.util.concurrent.ConcurrentHashMap
 import kotlin.sequences.Sequence
 
-private const val MAX_FQNAME_LENGTH = 255
-private const val MAX_SHORT_NAME_LENGTH = 80
+private const val MAGIC = 0x4b53594d
+private const val VERSION = 1
+private const val LIBRARIES_PREFIX = "libraries-"
 
-private object Symbols : Table() {
-    val fqName = varchar("fqname", length = MAX_FQNAME_LENGTH) references FqNames.fqName
-    val kind = integer("kind")
-    val visibility = integer("visibility")
-    val extensionReceiverType = varchar("extensionreceivertype", length = MAX_FQNAME_LENGTH).nullable()
+/**
+ * An immutable list of symbols sorted by their short name, so the symbols starting with a
+ * prefix are a contiguous range found with a binary search.
+ */
+private class SymbolTable(symbols: Collection<Symbol>) {
 
-    override val primaryKey = PrimaryKey(fqName)
-}
+    private val symbols: Array<Symbol> = symbols
+        .sortedWith(compareBy<Symbol>({ it.fqName.shortName().asString() }, { it.fqName.asString() }))
+        .toTypedArray()
+    private val shortNames: Array<String> = Array(this.symbols.size) {
+        this.symbols[it].fqName.shortName().asString()
+    }
 
-private object FqNames : Table() {
-    val fqName = varchar("fqname", length = MAX_FQNAME_LENGTH)
-    val shortName = varchar("shortname", length = MAX_SHORT_NAME_LENGTH)
+    val size get() = symbols.size
 
-    override val primaryKey = PrimaryKey(fqName)
-}
-class SymbolIndex {
-    private val db = Database.connect("jdbc:h2:mem:symbolindex;DB_CLOSE_DELAY=-1", "org.h2.Driver")
+    fun query(prefix: String, receiverType: String?, limit: Int, result: MutableList<Symbol>) {
+        var i = lowerBound(prefix)
+        while (i < shortNames.size && result.size < limit && shortNames[i].startsWith(prefix)) {
+            val symbol = symbols[i]
+            if (symbol.extensionReceiverType?.asString() == receiverType) {
+                result.add(symbol)
+            }
+            i++
+        }
+    }
 
-    var indexing: Boolean = false
+    private fun lowerBound(prefix: String): Int {
+        var low = 0
+        var high = shortNames.size
+        while (low < high) {
+            val middle = (low + high) ushr 1
+            if (shortNames[middle] < prefix) {
+                low = middle + 1
+            } else {
+                high = middle
+            }
+        }
+        return low
+    }
+
+    /**
+     * Writes the table to the given file, replacing it atomically
+     */
+    fun write(file: File) {
+        file.parentFile?.mkdirs()
+        val temp = File(file.path + ".tmp")
+        DataOutputStream(BufferedOutputStream(Files.newOutputStream(temp.toPath()))).use { out ->
+            out.writeInt(MAGIC)
+            out.writeInt(VERSION)
+            out.writeInt(symbols.size)
+            for (symbol in symbols) {
+                out.writeUTF(symbol.fqName.asString())
+                out.writeByte(symbol.kind.rawValue)
+                out.writeByte(symbol.visibility.rawValue)
+                val receiver = symbol.extensionReceiverType
+                out.writeBoolean(receiver != null)
+                if (receiver != null) {
+                    out.writeUTF(receiver.asString())
+                }
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING)
+    }
 
-    init {
-       transaction (db) {
-           SchemaUtils.create(Symbols, FqNames)
-       }
+    companion object {
+        val EMPTY = SymbolTable(emptyList())
+
+        /**
+         * @return The table written by [write], or null if the file does not exist or is not
+         * a table of this version
+         */
+        fun read(file: File): SymbolTable? {
+            if (!file.exists()) {
+                return null
+            }
+            try {
+                DataInputStream(BufferedInputStream(Files.newInputStream(file.toPath()))).use { input ->
+                    if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                        return null
+                    }
+                    val count = input.readInt()
+                    val symbols = ArrayList<Symbol>(count)
+                    repeat(count) {
+                        val fqName = FqName(input.readUTF())
+                        val kind = Symbol.Kind.fromRaw(input.readByte().toInt())
+                        val visibility = Symbol.Visibility.fromRaw(input.readByte().toInt())
+                        val receiver = if (input.readBoolean()) FqName(input.readUTF()) else null
+                        symbols.add(Symbol(fqName, kind, visibility, receiver))
+                    }
+                    return SymbolTable(symbols)
+                }
+            } catch (e: IOException) {
+                Log.w("SymbolIndex", "Unable to read the symbol index $file", e)
+                return null
+            }
+        }
     }
+}
 
-    fun refresh(module: ModuleDescriptor, forced: Boolean = true) {
+/**
+ * Indexes the top level declarations of the libraries and the kotlin source files of a module
+ * by their short name.
+ *
+ * The symbols of the libraries are written to a file named after the hash of the class path,
+ * so they are only collected from the module descriptor once and are reused across sessions
+ * until a library changes. The symbols of the source files are kept per file and replaced
+ * whenever a file is compiled again.
+ *
+ * @param cacheDir the directory the library symbols are stored in, if null the symbols are
+ * only kept in memory
+ */
+class SymbolIndex(private val cacheDir: File? = null) {
+
+    @Volatile
+    private var libraries = SymbolTable.EMPTY
+    private val sources = ConcurrentHashMap<String, SymbolTable>()
+
+    @Volatile
+    var indexing: Boolean = false
+
+    /**
+     * Loads the library symbols of the given class path, collecting them from the module
+     * descriptor if they have not been stored before or [forced] is true.
+     */
+    fun refresh(module: ModuleDescriptor, classPath: Collection<File>, forced: Boolean = false) {
         val started = System.currentTimeMillis()
-        Log.d("SymbolIndex", "Updating symbol index...");
+        Log.d("SymbolIndex", "Updating symbol index...")
 
         indexing = true
         try {
-            transaction(db) {
-                if (forced) {
-                    Symbols.deleteAll()
-                }
+            val store = cacheDir?.let { File(it, LIBRARIES_PREFIX + classPathKey(classPath) + ".bin") }
+            val stored = if (forced || store == null) null else SymbolTable.read(store)
+            if (stored != null) {
+                libraries = stored
+            } else {
+                val symbols = ArrayList<Symbol>()
                 for (descriptor in allDescriptors(module)) {
-                    val descriptorFqn = PsiUtils.getFqNameSafe(descriptor)
-                    val extensionReceiverFqn = descriptor.accept(ExtractSymbolExtensionReceiverType, Unit)
-
-                    if (canStoreFqName(descriptorFqn) && (extensionReceiverFqn?.let { canStoreFqName(it) } != false)) {
-
-                        for (fqn in listOfNotNull(descriptorFqn, extensionReceiverFqn)) {
-                            FqNames.replace {
-                                it[fqName] = fqn.toString()
-                                it[shortName] = fqn.shortName().toString()
-                            }
-                        }
-
-
-                        Symbols.replace {
-                            it[fqName] = descriptorFqn.toString()
-                            it[kind] = descriptor.accept(ExtractSymbolKind, Unit).rawValue
-                            it[visibility] = descriptor.accept(ExtractSymbolVisibility, Unit).rawValue
-                            it[extensionReceiverType] = extensionReceiverFqn?.toString()
-                        }
-                    } else {
-                        Log.w("SymbolIndex",
-                            "Excluding symbol $descriptorFqn from index since its name is too long"
-                        );
+                    // declarations of source files are indexed per file
+                    if (DescriptorToSourceUtils.descriptorToDeclaration(descriptor) == null) {
+                        toSymbol(descriptor)?.let(symbols::add)
                     }
                 }
-
-                indexing = false
+                val table = SymbolTable(symbols)
+                libraries = table
+                if (store != null) {
+                    deleteOtherStores(store)
+                    table.write(store)
+                }
             }
+            Log.d("SymbolIndex", "Indexed ${libraries.size} library symbols in " +
+                    (System.currentTimeMillis() - started) + " ms")
         } catch (e: Exception) {
-            Log.e("SymbolIndex", "Error while updating symbol index", e);
+            Log.e("SymbolIndex", "Error while updating symbol index", e)
+        } finally {
+            indexing = false
         }
     }
 
+    /**
+     * Replaces the symbols of the source file at the given path with the current top level
+     * declarations of its parsed file. The same path has to be given to [removeSourceFile].
+     */
+    fun updateSourceFile(path: String, file: KtFile, context: BindingContext) {
+        val symbols = file.declarations
+            .mapNotNull { context[BindingContext.DECLARATION_TO_DESCRIPTOR, it] }
+            .mapNotNull(::toSymbol)
+        sources[path] = SymbolTable(symbols)
+    }
+
+    fun removeSourceFile(path: String) {
+        sources.remove(path)
+    }
+
     fun query(prefix: String, receiverType: FqName? = null, limit: Int = 20): List<Symbol> {
         val start = Instant.now()
         try {
-            return transaction(db) {
-                (Symbols innerJoin FqNames)
-                    .select { FqNames.shortName.like("$prefix%") and (Symbols.extensionReceiverType eq receiverType?.toString()) }
-                    .limit(limit)
-                    .map {
-                        Symbol(
-                            fqName = FqName(it[Symbols.fqName]),
-                            kind = Symbol.Kind.fromRaw(it[Symbols.kind]),
-                            visibility = Symbol.Visibility.fromRaw(it[Symbols.visibility]),
-                            extensionReceiverType = it[Symbols.extensionReceiverType]?.let(::FqName)
-                        )
-                    }
+            val result = ArrayList<Symbol>()
+            val receiver = receiverType?.asString()
+            for (table in sources.values) {
+                table.query(prefix, receiver, limit, result)
             }
+            libraries.query(prefix, receiver, limit, result)
+            return result
         } finally {
             Log.d("SymbolIndex", "Query took " + Duration.between(start, Instant.now()).toMillis() + " ms")
         }
     }
 
-    private fun canStoreFqName(fqName: FqName) =
-        fqName.toString().length <= MAX_FQNAME_LENGTH
-                && fqName.shortName().toString().length <= MAX_SHORT_NAME_LENGTH
+    private fun toSymbol(descriptor: DeclarationDescriptor): Symbol? {
+        val descriptorFqn = PsiUtils.getFqNameSafe(descriptor)
+        if (descriptorFqn.isRoot) {
+            return null
+        }
+        return Symbol(
+            fqName = descriptorFqn,
+            kind = descriptor.accept(ExtractSymbolKind, Unit),
+            visibility = descriptor.accept(ExtractSymbolVisibility, Unit),
+            extensionReceiverType = descriptor.accept(ExtractSymbolExtensionReceiverType, Unit)
+        )
+    }
+
+    private fun deleteOtherStores(store: File) {
+        store.parentFile?.listFiles { file ->
+            file.name.startsWith(LIBRARIES_PREFIX) && file.name != store.name
+        }?.forEach { it.delete() }
+    }
+
+    private fun classPathKey(classPath: Collection<File>): String {
+        val fingerprints = LibraryFingerprints(File(cacheDir, "fingerprints.bin"))
+        val hashes = fingerprints.hash(classPath)
+        val hasher = Hashing.murmur3_128().newHasher()
+        for (file in classPath.sortedBy { it.absolutePath }) {
+            hasher.putString(file.absolutePath, StandardCharsets.UTF_8)
+            hasher.putString(hashes[file] ?: "", StandardCharsets.UTF_8)
+        }
+        try {
+            fingerprints.save()
+        } catch (e: IOException) {
+            Log.w("SymbolIndex", "Unable to save the class path fingerprints", e)
+        }
+        return hasher.hash().toString()
+    }
 
     private fun allDescriptors(module: ModuleDescriptor) : Sequence<DeclarationDescriptor> = allPackages(module)
         .map(module::getPackage)
@@ -127,4 +269,4 @@ class SymbolIndex {
         .getSubPackagesOf(pkgName) { it.toString()  != "META-INF"}
         .asSequence()
         .flatMap { sequenceOf(it) + allPackages(module, it) }
-}
\ No newline at end of file
+}
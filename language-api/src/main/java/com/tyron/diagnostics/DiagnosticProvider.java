@@ -4,6 +4,7 @@ import com.tyron.builder.project.api.Module;
 
 import java.io.File;
 import java.util.List;
+import java.util.function.Consumer;
 
 import javax.tools.Diagnostic;
 
@@ -13,4 +14,23 @@ import javax.tools.Diagnostic;
 public interface DiagnosticProvider {
 
     List<? extends Diagnostic<?>> getDiagnostics(Module module, File file);
+
+    /**
+     * Computes the diagnostics of the given contents of the file. Implementations should do
+     * the work in the background and may call the callback more than once per version, e.g.
+     * with the syntax errors first and with all the diagnostics later. The callback may be
+     * called from any thread and with the results of a newer version than the one requested
+     * if the request was superseded.
+     *
+     * @param modificationStamp the modification stamp of the contents, results are tagged
+     *                          with it so stale results can be ignored
+     */
+    default void requestDiagnostics(Module module,
+                                    File file,
+                                    CharSequence contents,
+                                    long modificationStamp,
+                                    Consumer<DiagnosticsResult> callback) {
+        callback.accept(new DiagnosticsResult(file, modificationStamp,
+                DiagnosticsResult.Phase.SEMANTIC, getDiagnostics(module, file)));
+    }
 }
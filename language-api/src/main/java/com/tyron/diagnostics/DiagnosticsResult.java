@@ -0,0 +1,62 @@
+package com.tyron.diagnostics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+
+/**
+ * The diagnostics of a version of a file, identified by the modification stamp of the
+ * contents they were computed from.
+ */
+public class DiagnosticsResult {
+
+    public enum Phase {
+        /**
+         * Only the errors found while parsing the file, semantic diagnostics may follow
+         */
+        SYNTAX,
+
+        /**
+         * All the diagnostics of the file, this is the last result of a version
+         */
+        SEMANTIC
+    }
+
+    private final File mFile;
+    private final long mModificationStamp;
+    private final Phase mPhase;
+    private final List<? extends Diagnostic<?>> mDiagnostics;
+
+    public DiagnosticsResult(@NotNull File file,
+                             long modificationStamp,
+                             @NotNull Phase phase,
+                             @NotNull List<? extends Diagnostic<?>> diagnostics) {
+        mFile = file;
+        mModificationStamp = modificationStamp;
+        mPhase = phase;
+        mDiagnostics = Collections.unmodifiableList(diagnostics);
+    }
+
+    @NotNull
+    public File getFile() {
+        return mFile;
+    }
+
+    public long getModificationStamp() {
+        return mModificationStamp;
+    }
+
+    @NotNull
+    public Phase getPhase() {
+        return mPhase;
+    }
+
+    @NotNull
+    public List<? extends Diagnostic<?>> getDiagnostics() {
+        return mDiagnostics;
+    }
+}
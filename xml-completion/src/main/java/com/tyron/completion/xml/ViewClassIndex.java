@@ -0,0 +1,220 @@
+package com.tyron.completion.xml;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.tyron.builder.compiler.java.LibraryFingerprints;
+import com.tyron.completion.xml.model.ViewClass;
+import com.tyron.completion.xml.util.ClassHeader;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarFile;
+
+/**
+ * Finds the classes that extend {@code android.view.View} in a set of jar files.
+ *
+ * <p>Only the name and the superclass name of every class are read, with {@link ClassHeader}.
+ * The pairs of each jar are stored in a file next to it along with the content hash of the
+ * jar, so a jar is only read again when its contents change. Classes that directly extend
+ * {@link Object} are not stored since they cannot be views.
+ */
+public class ViewClassIndex {
+
+    private static final String TAG = "ViewClassIndex";
+
+    private static final int MAGIC = 0x56494458;
+    private static final int VERSION = 1;
+
+    /**
+     * The index of a jar is stored in a file with the name of the jar followed by this suffix
+     */
+    public static final String INDEX_SUFFIX = ".views.bin";
+
+    private static final String VIEW = "android.view.View";
+    private static final String OBJECT = "java.lang.Object";
+
+    private final LibraryFingerprints mFingerprints;
+
+    /**
+     * The superclass of every indexed class, across all the added jars
+     */
+    private final Map<String, String> mSuperClasses = new HashMap<>();
+
+    /**
+     * The classes declared in each added jar
+     */
+    private final Map<File, List<String>> mClassNames = new LinkedHashMap<>();
+
+    public ViewClassIndex(@NonNull LibraryFingerprints fingerprints) {
+        mFingerprints = fingerprints;
+    }
+
+    /**
+     * Adds the classes of the given jars to the index, reading the stored index of a jar if
+     * its contents have not changed.
+     */
+    public void addLibraries(@NonNull Collection<File> jars) {
+        Map<File, String> hashes = mFingerprints.hash(jars);
+        for (File jar : jars) {
+            String hash = hashes.get(jar);
+            if (hash == null || mClassNames.containsKey(jar)) {
+                continue;
+            }
+            try {
+                addLibrary(jar, hash);
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to index " + jar, e);
+            }
+        }
+    }
+
+    private void addLibrary(File jar, String hash) throws IOException {
+        File indexFile = getIndexFile(jar);
+        Map<String, String> superClasses = read(indexFile, hash);
+        if (superClasses == null) {
+            long start = System.currentTimeMillis();
+            superClasses = scan(jar);
+            write(indexFile, hash, superClasses);
+            Log.d(TAG, "Indexed " + superClasses.size() + " classes of " + jar.getName() +
+                       " in " + (System.currentTimeMillis() - start) + " ms");
+        }
+        mSuperClasses.putAll(superClasses);
+        mClassNames.put(jar, new ArrayList<>(superClasses.keySet()));
+    }
+
+    /**
+     * @return The view classes declared in the given jar, the jar must have been added
+     */
+    @NonNull
+    public List<ViewClass> getViewClasses(@NonNull File jar) {
+        List<String> classNames = mClassNames.get(jar);
+        if (classNames == null) {
+            return Collections.emptyList();
+        }
+        List<ViewClass> viewClasses = new ArrayList<>();
+        for (String className : classNames) {
+            ViewClass viewClass = getViewClass(className);
+            if (viewClass != null) {
+                viewClasses.add(viewClass);
+            }
+        }
+        return viewClasses;
+    }
+
+    /**
+     * @return The view class with the given name, or null if the class is not in the index
+     * or does not extend {@code android.view.View}
+     */
+    @Nullable
+    public ViewClass getViewClass(@NonNull String className) {
+        if (!mSuperClasses.containsKey(className)) {
+            return null;
+        }
+        List<String> superClassNames = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        String current = mSuperClasses.get(className);
+        while (current != null && visited.add(current)) {
+            superClassNames.add(current);
+            current = mSuperClasses.get(current);
+        }
+        if (!VIEW.equals(className) && !superClassNames.contains(VIEW)) {
+            return null;
+        }
+        return new ViewClass(className, superClassNames);
+    }
+
+    public static File getIndexFile(File jar) {
+        return new File(jar.getParentFile(), jar.getName() + INDEX_SUFFIX);
+    }
+
+    /**
+     * Reads the name and the superclass of every class in the jar
+     */
+    private static Map<String, String> scan(File jar) throws IOException {
+        Map<String, String> superClasses = new HashMap<>();
+        try (JarFile jarFile = new JarFile(jar)) {
+            BytecodeScanner.iterateClasses(jarFile, entry -> {
+                String name = entry.getName();
+                if (name.endsWith("module-info.class") || name.endsWith("package-info.class")) {
+                    return;
+                }
+                try (InputStream inputStream = jarFile.getInputStream(entry)) {
+                    ClassHeader header = ClassHeader.read(IOUtils.toByteArray(inputStream));
+                    String superClassName = header.getSuperClassName();
+                    if (superClassName != null && !OBJECT.equals(superClassName)) {
+                        superClasses.put(header.getClassName(), superClassName);
+                    }
+                } catch (IOException e) {
+                    // ignored, keep reading the other classes
+                }
+            });
+        }
+        return superClasses;
+    }
+
+    /**
+     * @return The stored classes, or null if the index does not exist or was built from
+     * other contents
+     */
+    @Nullable
+    private static Map<String, String> read(File indexFile, String hash) {
+        if (!indexFile.exists()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(indexFile.toPath())))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION ||
+                !hash.equals(input.readUTF())) {
+                return null;
+            }
+            int count = input.readInt();
+            Map<String, String> superClasses = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                superClasses.put(input.readUTF(), input.readUTF());
+            }
+            return superClasses;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read " + indexFile, e);
+            return null;
+        }
+    }
+
+    private static void write(File indexFile,
+                              String hash,
+                              Map<String, String> superClasses) throws IOException {
+        File temp = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeUTF(hash);
+            output.writeInt(superClasses.size());
+            for (Map.Entry<String, String> entry : superClasses.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeUTF(entry.getValue());
+            }
+        }
+        Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,93 @@
+package com.tyron.completion.xml.model;
+
+import androidx.annotation.NonNull;
+
+import com.tyron.completion.xml.util.StyleUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A class that extends {@code android.view.View} and can be used as a tag in a layout file
+ */
+public class ViewClass {
+
+    private static final String VIEW_GROUP = "android.view.ViewGroup";
+
+    private final String className;
+    private final List<String> superClassNames;
+
+    /**
+     * @param superClassNames the fully qualified names of the superclasses, starting from the
+     *                        direct superclass, without {@link Object}
+     */
+    public ViewClass(@NonNull String className, @NonNull List<String> superClassNames) {
+        this.className = className;
+        this.superClassNames = Collections.unmodifiableList(new ArrayList<>(superClassNames));
+    }
+
+    @NonNull
+    public String getClassName() {
+        return className;
+    }
+
+    @NonNull
+    public String getPackageName() {
+        int index = className.lastIndexOf('.');
+        return index == -1 ? "" : className.substring(0, index);
+    }
+
+    @NonNull
+    public String getSimpleName() {
+        return StyleUtils.getSimpleName(className);
+    }
+
+    @NonNull
+    public List<String> getSuperClassNames() {
+        return superClassNames;
+    }
+
+    public boolean isViewGroup() {
+        return VIEW_GROUP.equals(className) || superClassNames.contains(VIEW_GROUP);
+    }
+
+    /**
+     * @return The names of the declare-styleables that apply to this view, the simple names
+     * of the view and of its superclasses
+     */
+    @NonNull
+    public List<String> getStyleableNames() {
+        List<String> names = new ArrayList<>(superClassNames.size() + 1);
+        names.add(getSimpleName());
+        for (String superClassName : superClassNames) {
+            names.add(StyleUtils.getSimpleName(superClassName));
+        }
+        return names;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ViewClass viewClass = (ViewClass) o;
+        return className.equals(viewClass.className) &&
+               superClassNames.equals(viewClass.superClassNames);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(className, superClassNames);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ViewClass{" + className + " extends " + superClassNames + '}';
+    }
+}
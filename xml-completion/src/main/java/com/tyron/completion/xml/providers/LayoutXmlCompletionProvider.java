@@ -60,7 +60,7 @@ public class LayoutXmlCompletionProvider extends CompletionProvider {
             XmlRepository repository =
                     XmlRepository.getRepository(params.getProject(), (AndroidModule) params.getModule());
 
-            String contents = params.getContents();
+            String contents = params.getContents().toString();
 
             ResourceNamespace namespace =
                     ResourceNamespace.fromPackageName(((AndroidModule) params.getModule()).getPackageName());
@@ -0,0 +1,162 @@
+package com.tyron.completion.xml.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * The name and the superclass name of a class file, read from the constant pool without
+ * parsing the fields, methods and attributes of the class.
+ */
+public final class ClassHeader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private final String className;
+    private final String superClassName;
+    private final int accessFlags;
+
+    private ClassHeader(String className, String superClassName, int accessFlags) {
+        this.className = className;
+        this.superClassName = superClassName;
+        this.accessFlags = accessFlags;
+    }
+
+    /**
+     * @return The fully qualified name of the class, e.g. {@code android.view.View}
+     */
+    @NonNull
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * @return The fully qualified name of the superclass, null for {@link Object} and
+     * module-info classes
+     */
+    @Nullable
+    public String getSuperClassName() {
+        return superClassName;
+    }
+
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    /**
+     * Reads the header of the given class file
+     *
+     * @throws IOException if the bytes are not a valid class file
+     */
+    @NonNull
+    public static ClassHeader read(byte[] bytes) throws IOException {
+        if (bytes.length < 10 || readInt(bytes, 0) != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        int count = readUnsignedShort(bytes, 8);
+        // the offset of each constant, the constants of the class names are only decoded
+        // once the this and super class indices are known
+        int[] offsets = new int[count];
+        int offset = 10;
+        for (int i = 1; i < count; i++) {
+            offsets[i] = offset;
+            int tag = bytes[offset] & 0xFF;
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    offset += 3 + readUnsignedShort(bytes, offset + 1);
+                    break;
+                case CONSTANT_CLASS:
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    offset += 3;
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    offset += 4;
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    offset += 5;
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    // takes two entries of the constant pool
+                    offset += 9;
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag + " at " + offset);
+            }
+            if (offset > bytes.length) {
+                throw new IOException("Truncated constant pool");
+            }
+        }
+        if (offset + 6 > bytes.length) {
+            throw new IOException("Truncated class file");
+        }
+
+        int accessFlags = readUnsignedShort(bytes, offset);
+        String className = readClassName(bytes, offsets, readUnsignedShort(bytes, offset + 2));
+        String superClassName =
+                readClassName(bytes, offsets, readUnsignedShort(bytes, offset + 4));
+        if (className == null) {
+            throw new IOException("Missing class name");
+        }
+        return new ClassHeader(className, superClassName, accessFlags);
+    }
+
+    private static String readClassName(byte[] bytes, int[] offsets, int index)
+            throws IOException {
+        if (index == 0) {
+            return null;
+        }
+        if (index >= offsets.length || bytes[offsets[index]] != CONSTANT_CLASS) {
+            throw new IOException("Invalid class index " + index);
+        }
+        int nameIndex = readUnsignedShort(bytes, offsets[index] + 1);
+        if (nameIndex >= offsets.length || bytes[offsets[nameIndex]] != CONSTANT_UTF8) {
+            throw new IOException("Invalid class name index " + nameIndex);
+        }
+        int nameOffset = offsets[nameIndex];
+        int length = readUnsignedShort(bytes, nameOffset + 1);
+        String internalName = new DataInputStream(
+                new ByteArrayInputStream(bytes, nameOffset + 1, length + 2)).readUTF();
+        return internalName.replace('/', '.');
+    }
+
+    private static int readUnsignedShort(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (readUnsignedShort(bytes, offset) << 16) | readUnsignedShort(bytes, offset + 2);
+    }
+}
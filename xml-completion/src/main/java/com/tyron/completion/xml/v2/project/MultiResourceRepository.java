@@ -32,6 +32,7 @@ import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -40,8 +41,11 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Predicate;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -59,32 +63,46 @@ import org.jetbrains.kotlin.com.intellij.util.SmartList;
  * replace/hide any subsequent definitions of the same resource.
  *
  * <p>In the resource repository hierarchy, MultiResourceRepository is an internal node, never a leaf.
+ *
+ * <p>Readers do not take {@link #ITEM_MAP_LOCK}. The merged resources of every namespace and type
+ * are published as an immutable snapshot that readers use directly. When a child invalidates some
+ * resource types, only the snapshots of those types are dropped, and the next reader rebuilds them
+ * under the lock, since the maps of the leaf repositories are mutated while holding it.
  */
-@SuppressWarnings("InstanceGuardedByStatic") // TODO: The whole locking scheme for resource repositories needs to be reworked.
+@SuppressWarnings("InstanceGuardedByStatic")
 public abstract class MultiResourceRepository extends LocalResourceRepository implements Disposable {
   private static final Logger LOG = Logger.getInstance(MultiResourceRepository.class);
 
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ImmutableList<LocalResourceRepository> myLocalResources = ImmutableList.of();
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ImmutableList<AarResourceRepository> myLibraryResources = ImmutableList.of();
+  private static final ResourceType[] RESOURCE_TYPES = ResourceType.values();
+
+  // The lists below are immutable and only replaced while holding ITEM_MAP_LOCK, so they can be read without it.
+  @NotNull private volatile ImmutableList<LocalResourceRepository> myLocalResources = ImmutableList.of();
+  @NotNull private volatile ImmutableList<AarResourceRepository> myLibraryResources = ImmutableList.of();
   /** A concatenation of {@link #myLocalResources} and {@link #myLibraryResources}. */
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ImmutableList<ResourceRepository> myChildren = ImmutableList.of();
+  @NotNull private volatile ImmutableList<ResourceRepository> myChildren = ImmutableList.of();
   /** Leaf resource repositories keyed by namespace. */
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ImmutableListMultimap<ResourceNamespace, SingleNamespaceResourceRepository> myLeafsByNamespace =
+  @NotNull private volatile ImmutableListMultimap<ResourceNamespace, SingleNamespaceResourceRepository> myLeafsByNamespace =
       ImmutableListMultimap.of();
   /** Contained single-namespace resource repositories keyed by namespace. */
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ImmutableListMultimap<ResourceNamespace, SingleNamespaceResourceRepository> myRepositoriesByNamespace =
+  @NotNull private volatile ImmutableListMultimap<ResourceNamespace, SingleNamespaceResourceRepository> myRepositoriesByNamespace =
       ImmutableListMultimap.of();
 
+  /**
+   * Immutable snapshots of the merged resources, indexed by the ordinal of the resource type.
+   * A null element means that the snapshot is out of date and has to be rebuilt from {@link #getMap}.
+   * Elements are only set while holding {@link #ITEM_MAP_LOCK} and can be read without it.
+   */
+  private final ConcurrentMap<ResourceNamespace, AtomicReferenceArray<ImmutableListMultimap<String, ResourceItem>>> mySnapshots =
+      new ConcurrentHashMap<>();
+
   @GuardedBy("ITEM_MAP_LOCK")
   @NotNull private ResourceItemComparator myResourceComparator =
       new ResourceItemComparator(new ResourcePriorityComparator(ImmutableList.of()));
 
-  @GuardedBy("ITEM_MAP_LOCK")
+  /** Guards {@link #myModificationCounts}, separate from {@link #ITEM_MAP_LOCK} so that readers checking for changes do not wait for rescans. */
+  private final Object myModificationCountLock = new Object();
+
+  @GuardedBy("myModificationCountLock")
   private long[] myModificationCounts;
 
   @GuardedBy("ITEM_MAP_LOCK")
@@ -133,19 +151,21 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
 
       myResourceComparator = new ResourceItemComparator(new ResourcePriorityComparator(myLeafsByNamespace.values()));
 
-      myModificationCounts = new long[localResources.size()];
-      if (localResources.size() == 1) {
-        // Make sure that the modification count of the child and the parent are same. This is
-        // done so that we can return child's modification count, instead of ours.
-        LocalResourceRepository child = localResources.get(0);
-        child.setModificationCount(getModificationCount());
-      }
-      int i = 0;
-      for (LocalResourceRepository child : myLocalResources) {
-        child.addParent(this);
-        myModificationCounts[i++] = child.getModificationCount();
+      synchronized (myModificationCountLock) {
+        myModificationCounts = new long[localResources.size()];
+        if (localResources.size() == 1) {
+          // Make sure that the modification count of the child and the parent are same. This is
+          // done so that we can return child's modification count, instead of ours.
+          LocalResourceRepository child = localResources.get(0);
+          child.setModificationCount(getModificationCount());
+        }
+        int i = 0;
+        for (LocalResourceRepository child : myLocalResources) {
+          child.addParent(this);
+          myModificationCounts[i++] = child.getModificationCount();
+        }
       }
-      myCachedMaps.clear();
+      clearCachedData();
 
       invalidateParentCaches();
     }
@@ -182,22 +202,16 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
   }
 
   public ImmutableList<LocalResourceRepository> getLocalResources() {
-    synchronized (ITEM_MAP_LOCK) {
-      return myLocalResources;
-    }
+    return myLocalResources;
   }
 
   public ImmutableList<AarResourceRepository> getLibraryResources() {
-    synchronized (ITEM_MAP_LOCK) {
-      return myLibraryResources;
-    }
+    return myLibraryResources;
   }
 
   @NotNull
   public final List<ResourceRepository> getChildren() {
-    synchronized (ITEM_MAP_LOCK) {
-      return myChildren;
-    }
+    return myChildren;
   }
 
   /**
@@ -210,22 +224,21 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
    */
   @NotNull
   public final List<SingleNamespaceResourceRepository> getRepositoriesForNamespace(@NotNull ResourceNamespace namespace) {
-    synchronized (ITEM_MAP_LOCK) {
-      return myRepositoriesByNamespace.get(namespace);
-    }
+    return myRepositoriesByNamespace.get(namespace);
   }
 
   @Override
   public long getModificationCount() {
-    synchronized (ITEM_MAP_LOCK) {
-      if (myLocalResources.size() == 1) {
-        return myLocalResources.get(0).getModificationCount();
+    synchronized (myModificationCountLock) {
+      ImmutableList<LocalResourceRepository> localResources = myLocalResources;
+      if (localResources.size() == 1) {
+        return localResources.get(0).getModificationCount();
       }
 
       // See if any of the delegates have changed.
       boolean changed = false;
-      for (int i = 0; i < myLocalResources.size(); i++) {
-        LocalResourceRepository child = myLocalResources.get(i);
+      for (int i = 0; i < localResources.size(); i++) {
+        LocalResourceRepository child = localResources.get(i);
         long rev = child.getModificationCount();
         if (rev != myModificationCounts[i]) {
           myModificationCounts[i] = rev;
@@ -244,26 +257,19 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
   @Override
   @NotNull
   public Set<ResourceNamespace> getNamespaces() {
-    synchronized (ITEM_MAP_LOCK) {
-      return myRepositoriesByNamespace.keySet();
-    }
+    return myRepositoriesByNamespace.keySet();
   }
 
   @Override
   @NotNull
   public ResourceVisitor.VisitResult accept(@NotNull ResourceVisitor visitor) {
-    synchronized (ITEM_MAP_LOCK) {
-      for (ResourceNamespace namespace : getNamespaces()) {
-        if (visitor.shouldVisitNamespace(namespace)) {
-          for (ResourceType type : ResourceType.values()) {
-            if (visitor.shouldVisitResourceType(type)) {
-              ListMultimap<String, ResourceItem> map = getMap(namespace, type);
-              if (map != null) {
-                for (ResourceItem item : map.values()) {
-                  if (visitor.visit(item) == ResourceVisitor.VisitResult.ABORT) {
-                    return ResourceVisitor.VisitResult.ABORT;
-                  }
-                }
+    for (ResourceNamespace namespace : getNamespaces()) {
+      if (visitor.shouldVisitNamespace(namespace)) {
+        for (ResourceType type : RESOURCE_TYPES) {
+          if (visitor.shouldVisitResourceType(type)) {
+            for (ResourceItem item : getSnapshot(namespace, type).values()) {
+              if (visitor.visit(item) == ResourceVisitor.VisitResult.ABORT) {
+                return ResourceVisitor.VisitResult.ABORT;
               }
             }
           }
@@ -274,6 +280,102 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
     return ResourceVisitor.VisitResult.CONTINUE;
   }
 
+  @Override
+  @NotNull
+  public ListMultimap<String, ResourceItem> getResources(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType) {
+    return getSnapshot(namespace, resourceType);
+  }
+
+  @Override
+  @NotNull
+  public List<ResourceItem> getResources(@NotNull ResourceNamespace namespace,
+                                         @NotNull ResourceType resourceType,
+                                         @NotNull String resourceName) {
+    return getSnapshot(namespace, resourceType).get(resourceName);
+  }
+
+  @Override
+  @NotNull
+  public List<ResourceItem> getResources(@NotNull ResourceNamespace namespace,
+                                         @NotNull ResourceType resourceType,
+                                         @NotNull Predicate<ResourceItem> filter) {
+    List<ResourceItem> result = null;
+    for (ResourceItem item : getSnapshot(namespace, resourceType).values()) {
+      if (filter.test(item)) {
+        if (result == null) {
+          result = new ArrayList<>();
+        }
+        result.add(item);
+      }
+    }
+    return result == null ? ImmutableList.of() : result;
+  }
+
+  @Override
+  @NotNull
+  public Set<String> getResourceNames(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType) {
+    return getSnapshot(namespace, resourceType).keySet();
+  }
+
+  @Override
+  public boolean hasResources(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType, @NotNull String resourceName) {
+    return getSnapshot(namespace, resourceType).containsKey(resourceName);
+  }
+
+  @Override
+  public boolean hasResources(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType) {
+    return !getSnapshot(namespace, resourceType).isEmpty();
+  }
+
+  @Override
+  @NotNull
+  public Set<ResourceType> getResourceTypes(@NotNull ResourceNamespace namespace) {
+    Set<ResourceType> types = EnumSet.noneOf(ResourceType.class);
+    for (ResourceType type : RESOURCE_TYPES) {
+      if (!getSnapshot(namespace, type).isEmpty()) {
+        types.add(type);
+      }
+    }
+    return types;
+  }
+
+  /**
+   * Returns the published snapshot of the resources of the given namespace and type, rebuilding it
+   * from the children if it is out of date. Only the rebuild takes {@link #ITEM_MAP_LOCK}.
+   */
+  @NotNull
+  private ImmutableListMultimap<String, ResourceItem> getSnapshot(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
+    AtomicReferenceArray<ImmutableListMultimap<String, ResourceItem>> snapshots = mySnapshots.get(namespace);
+    if (snapshots != null) {
+      ImmutableListMultimap<String, ResourceItem> snapshot = snapshots.get(type.ordinal());
+      if (snapshot != null) {
+        return snapshot;
+      }
+    }
+    if (!myLeafsByNamespace.containsKey(namespace)) {
+      return ImmutableListMultimap.of();
+    }
+
+    synchronized (ITEM_MAP_LOCK) {
+      snapshots = mySnapshots.computeIfAbsent(namespace, n -> new AtomicReferenceArray<>(RESOURCE_TYPES.length));
+      ImmutableListMultimap<String, ResourceItem> snapshot = snapshots.get(type.ordinal());
+      if (snapshot == null) {
+        ListMultimap<String, ResourceItem> map = getMap(namespace, type);
+        snapshot = map == null || map.isEmpty() ? ImmutableListMultimap.of() : ImmutableListMultimap.copyOf(map);
+        snapshots.set(type.ordinal(), snapshot);
+      }
+      return snapshot;
+    }
+  }
+
+  @GuardedBy("ITEM_MAP_LOCK")
+  private void invalidateSnapshot(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
+    AtomicReferenceArray<ImmutableListMultimap<String, ResourceItem>> snapshots = mySnapshots.get(namespace);
+    if (snapshots != null) {
+      snapshots.set(type.ordinal(), null);
+    }
+  }
+
   @GuardedBy("ITEM_MAP_LOCK")
   @Override
   @Nullable
@@ -389,16 +491,18 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
   /**
    * Notifies this repository that all its caches are no longer valid.
    */
-  @GuardedBy("ITEM_MAP_LOCK")
   public void invalidateCache() {
-    clearCachedData();
-    setModificationCount(ourModificationCounter.incrementAndGet());
+    synchronized (ITEM_MAP_LOCK) {
+      clearCachedData();
+      setModificationCount(ourModificationCounter.incrementAndGet());
 
-    invalidateParentCaches();
+      invalidateParentCaches();
+    }
   }
 
   @GuardedBy("ITEM_MAP_LOCK")
   private void clearCachedData() {
+    mySnapshots.clear();
     myCachedMaps.clear();
     myResourceNames.clear();
     myUnreconciledResources.clear();
@@ -415,32 +519,37 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
    * Notifies this delegating repository that the given dependent repository has invalidated
    * resources of the given types.
    */
-  @GuardedBy("ITEM_MAP_LOCK")
   public void invalidateCache(@NotNull SingleNamespaceResourceRepository repository, @NotNull ResourceType... types) {
     ResourceNamespace namespace = repository.getNamespace();
 
-    // Since myLeafsByNamespace updates are not atomic with respect to grandchildren updates, it is
-    // possible that the repository that triggered cache invalidation is not in myLeafsByNamespace.
-    // In such a case we don't need to do anything.
-    ImmutableList<SingleNamespaceResourceRepository> leafs = myLeafsByNamespace.get(namespace);
-    if (leafs.contains(repository)) {
-      // Update myUnreconciledResources only if myCachedMaps is used for this namespace.
-      if (leafs.size() != 1) {
+    synchronized (ITEM_MAP_LOCK) {
+      // Since myLeafsByNamespace updates are not atomic with respect to grandchildren updates, it is
+      // possible that the repository that triggered cache invalidation is not in myLeafsByNamespace.
+      // In such a case we don't need to do anything.
+      ImmutableList<SingleNamespaceResourceRepository> leafs = myLeafsByNamespace.get(namespace);
+      if (leafs.contains(repository)) {
         for (ResourceType type : types) {
-          if (myCachedMaps.get(namespace, type) != null) {
-            Set<SingleNamespaceResourceRepository> repositories = myUnreconciledResources.get(namespace, type);
-            if (repositories == null) {
-              repositories = new HashSet<>();
-              myUnreconciledResources.put(namespace, type, repositories);
+          invalidateSnapshot(namespace, type);
+        }
+
+        // Update myUnreconciledResources only if myCachedMaps is used for this namespace.
+        if (leafs.size() != 1) {
+          for (ResourceType type : types) {
+            if (myCachedMaps.get(namespace, type) != null) {
+              Set<SingleNamespaceResourceRepository> repositories = myUnreconciledResources.get(namespace, type);
+              if (repositories == null) {
+                repositories = new HashSet<>();
+                myUnreconciledResources.put(namespace, type, repositories);
+              }
+              repositories.add(repository);
             }
-            repositories.add(repository);
           }
+
+          setModificationCount(ourModificationCounter.incrementAndGet());
         }
 
-        setModificationCount(ourModificationCounter.incrementAndGet());
+        invalidateParentCaches(repository, types);
       }
-
-      invalidateParentCaches(repository, types);
     }
   }
 
@@ -472,9 +581,7 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
   @Override
   @NotNull
   public Collection<SingleNamespaceResourceRepository> getLeafResourceRepositories() {
-    synchronized (ITEM_MAP_LOCK) {
-      return myLeafsByNamespace.values();
-    }
+    return myLeafsByNamespace.values();
   }
 
   @VisibleForTesting
@@ -385,6 +385,9 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
             return;
         }
         Map<ResourceType, ListMultimap<String, ResourceItem>> result = new HashMap<>();
+        // Parents are only notified once the new items are committed, otherwise they could
+        // publish a snapshot of the resources that misses them.
+        ResourceType[] changedTypes = null;
 
         System.out.println("Scanning " + file.getName());
 
@@ -409,8 +412,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
             if (added || removed) {
                 // TODO: Consider doing a deeper diff of the changes to the resource items
                 //       to determine if the removed and added items actually differ.
-                setModificationCount(ourModificationCounter.incrementAndGet());
-                invalidateParentCaches(this, ResourceType.values());
+                changedTypes = ResourceType.values();
             }
         } else if (checkResourceFilename(toPathString(file), folderType)) {
             ResourceItemSource<?> source = mySources.get(file);
@@ -479,8 +481,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                     }
 
                     // Identities may have changed even if the ids are the same, so update maps.
-                    setModificationCount(ourModificationCounter.incrementAndGet());
-                    invalidateParentCaches(this, ResourceType.ID);
+                    changedTypes = new ResourceType[] {ResourceType.ID};
                 }
             } else {
                 // Either we're switching to PSI or the file is not XML (image or font), which is
@@ -514,13 +515,16 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                                 result);
                     }
                 }
-                setModificationCount(ourModificationCounter.incrementAndGet());
-                invalidateParentCaches(this, ResourceType.values());
+                changedTypes = ResourceType.values();
             }
         }
 
-        myFacet.getProject().getEventManager().dispatchEvent(new XmlReparsedEvent(file));
         commitToRepository(result);
+        if (changedTypes != null) {
+            setModificationCount(ourModificationCounter.incrementAndGet());
+            invalidateParentCaches(this, changedTypes);
+        }
+        myFacet.getProject().getEventManager().dispatchEvent(new XmlReparsedEvent(file));
     }
 
 
@@ -0,0 +1,113 @@
+package com.tyron.completion.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.tyron.builder.compiler.java.LibraryFingerprints;
+import com.tyron.completion.xml.model.ViewClass;
+import com.tyron.completion.xml.util.ClassHeader;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+public class ViewClassIndexTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testReadClassHeader() throws IOException {
+        ClassHeader header = ClassHeader.read(readClass("java.util.ArrayList"));
+
+        assertEquals("java.util.ArrayList", header.getClassName());
+        assertEquals("java.util.AbstractList", header.getSuperClassName());
+    }
+
+    @Test
+    public void testFindsViewsAcrossJars() throws IOException {
+        File framework = createJar("framework.jar",
+                "android.view.View", "android.widget.TextView");
+        File library = createJar("library.jar", "android.widget.Button");
+
+        ViewClassIndex index = new ViewClassIndex(createFingerprints());
+        index.addLibraries(Arrays.asList(framework, library));
+
+        List<ViewClass> viewClasses = index.getViewClasses(library);
+        assertEquals(1, viewClasses.size());
+        ViewClass button = viewClasses.get(0);
+        assertEquals("android.widget.Button", button.getClassName());
+        assertEquals(Arrays.asList("android.widget.TextView", "android.view.View"),
+                button.getSuperClassNames());
+        assertEquals(Arrays.asList("Button", "TextView", "View"), button.getStyleableNames());
+        assertTrue(ViewClassIndex.getIndexFile(library).exists());
+    }
+
+    @Test
+    public void testIgnoresClassesThatAreNotViews() throws IOException {
+        File library = createJar("library.jar", "java.util.ArrayList", "java.lang.String");
+
+        ViewClassIndex index = new ViewClassIndex(createFingerprints());
+        index.addLibraries(Collections.singletonList(library));
+
+        assertTrue(index.getViewClasses(library).isEmpty());
+        assertNull(index.getViewClass("java.util.ArrayList"));
+    }
+
+    @Test
+    public void testRebuildsIndexOfChangedContents() throws IOException {
+        File framework = createJar("framework.jar",
+                "android.view.View", "android.widget.TextView");
+        File indexFile = ViewClassIndex.getIndexFile(framework);
+        Files.write(indexFile.toPath(), "stale".getBytes(StandardCharsets.UTF_8));
+
+        ViewClassIndex index = new ViewClassIndex(createFingerprints());
+        index.addLibraries(Collections.singletonList(framework));
+
+        assertNotNull(index.getViewClass("android.widget.TextView"));
+
+        // the stored index is used by the next session
+        ViewClassIndex reloaded = new ViewClassIndex(createFingerprints());
+        reloaded.addLibraries(Collections.singletonList(framework));
+        assertEquals(index.getViewClasses(framework), reloaded.getViewClasses(framework));
+    }
+
+    private LibraryFingerprints createFingerprints() {
+        return new LibraryFingerprints(new File(mFolder.getRoot(), "fingerprints.bin"));
+    }
+
+    private File createJar(String name, String... classNames) throws IOException {
+        File jar = mFolder.newFile(name);
+        try (JarOutputStream output = new JarOutputStream(new FileOutputStream(jar))) {
+            for (String className : classNames) {
+                output.putNextEntry(new JarEntry(className.replace('.', '/') + ".class"));
+                output.write(readClass(className));
+                output.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private static byte[] readClass(String className) throws IOException {
+        String resource = className.replace('.', '/') + ".class";
+        try (InputStream inputStream = ClassLoader.getSystemResourceAsStream(resource)) {
+            assertNotNull("Missing class " + className, inputStream);
+            return IOUtils.toByteArray(inputStream);
+        }
+    }
+}
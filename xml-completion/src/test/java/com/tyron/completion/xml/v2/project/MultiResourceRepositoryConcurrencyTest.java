@@ -0,0 +1,335 @@
+package com.tyron.completion.xml.v2.project;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.android.ide.common.rendering.api.ResourceNamespace;
+import com.android.ide.common.rendering.api.ResourceReference;
+import com.android.ide.common.rendering.api.ResourceValue;
+import com.android.ide.common.resources.ResourceItem;
+import com.android.ide.common.resources.ResourceVisitor;
+import com.android.ide.common.resources.SingleNamespaceResourceRepository;
+import com.android.ide.common.resources.configuration.FolderConfiguration;
+import com.android.ide.common.util.PathString;
+import com.android.resources.ResourceType;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.com.intellij.openapi.util.Disposer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class MultiResourceRepositoryConcurrencyTest {
+
+    private static final ResourceNamespace NAMESPACE = ResourceNamespace.RES_AUTO;
+
+    private static final int READERS = 8;
+    private static final int STRINGS = 500;
+    private static final long DURATION_MILLIS = 2000;
+
+    private TestLeafRepository mFirst;
+    private TestLeafRepository mSecond;
+    private TestMultiRepository mRepository;
+
+    @Before
+    public void setUp() {
+        mFirst = new TestLeafRepository("first");
+        mSecond = new TestLeafRepository("second");
+        mFirst.rescan(0);
+        mSecond.rescan(0);
+        mRepository = new TestMultiRepository(ImmutableList.of(mFirst, mSecond));
+    }
+
+    @After
+    public void tearDown() {
+        Disposer.dispose(mRepository);
+    }
+
+    @Test
+    public void testInvalidatesOnlyChangedType() {
+        ListMultimap<String, ResourceItem> strings =
+                mRepository.getResources(NAMESPACE, ResourceType.STRING);
+        ListMultimap<String, ResourceItem> ids = mRepository.getResources(NAMESPACE, ResourceType.ID);
+        assertSame(strings, mRepository.getResources(NAMESPACE, ResourceType.STRING));
+
+        mFirst.rescan(1);
+
+        ListMultimap<String, ResourceItem> newStrings =
+                mRepository.getResources(NAMESPACE, ResourceType.STRING);
+        assertNotSame(strings, newStrings);
+        assertSame(ids, mRepository.getResources(NAMESPACE, ResourceType.ID));
+        // the first child has priority over the second one
+        assertEquals(1, ((TestResourceItem) newStrings.get("string0").get(0)).generation);
+    }
+
+    @Test
+    public void testSnapshotIsNotAffectedByLaterRescans() {
+        ListMultimap<String, ResourceItem> strings =
+                mRepository.getResources(NAMESPACE, ResourceType.STRING);
+        mFirst.rescan(1);
+        mSecond.rescan(1);
+
+        for (ResourceItem item : strings.values()) {
+            assertEquals(0, ((TestResourceItem) item).generation);
+        }
+        assertTrue(mRepository.hasResources(NAMESPACE, ResourceType.STRING, "string0"));
+        assertFalse(mRepository.hasResources(NAMESPACE, ResourceType.STRING, "missing"));
+    }
+
+    /**
+     * Readers resolve resources while a writer keeps rescanning one of the children. This is a
+     * liveness check, not a benchmark: it only checks that neither side is blocked for good and
+     * that a reader never sees the resources of a rescan that is only partially applied.
+     */
+    @Test
+    public void testReadersStayLiveWhileWriterRescans() throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong reads = new AtomicLong();
+        AtomicLong rescans = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < READERS; i++) {
+            int reader = i;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    long count = 0;
+                    while (running.get()) {
+                        String name = "string" + (count % STRINGS);
+                        List<ResourceItem> items =
+                                mRepository.getResources(NAMESPACE, ResourceType.STRING, name);
+                        assertEquals(name, 1, items.size());
+                        if (reader == 0 && count % 64 == 0) {
+                            assertConsistent(mRepository.getResources(NAMESPACE, ResourceType.STRING));
+                        }
+                        count++;
+                    }
+                    reads.addAndGet(count);
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }, "reader-" + i));
+        }
+        threads.add(new Thread(() -> {
+            try {
+                start.await();
+                int generation = 1;
+                while (running.get()) {
+                    mFirst.rescan(generation++);
+                    rescans.incrementAndGet();
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        }, "writer"));
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        Thread.sleep(DURATION_MILLIS);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        for (Thread thread : threads) {
+            assertFalse(thread.getName() + " did not finish", thread.isAlive());
+        }
+        assertTrue("readers made no progress", reads.get() >= READERS);
+        assertTrue("writer made no progress", rescans.get() > 0);
+    }
+
+    private static void assertConsistent(ListMultimap<String, ResourceItem> strings) {
+        assertEquals(STRINGS, strings.keySet().size());
+        int generation = -1;
+        for (ResourceItem item : strings.values()) {
+            int itemGeneration = ((TestResourceItem) item).generation;
+            if (generation == -1) {
+                generation = itemGeneration;
+            }
+            assertEquals(generation, itemGeneration);
+        }
+    }
+
+    private static class TestMultiRepository extends MultiResourceRepository {
+
+        TestMultiRepository(List<? extends LocalResourceRepository> children) {
+            super("test");
+            setChildren(children, ImmutableList.of(), ImmutableList.of());
+        }
+    }
+
+    /**
+     * A resource folder with {@link #STRINGS} strings and ids, all replaced on every rescan.
+     */
+    private static class TestLeafRepository extends LocalResourceRepository
+            implements SingleNamespaceResourceRepository {
+
+        private final Map<ResourceType, ListMultimap<String, ResourceItem>> mTable =
+                new EnumMap<>(ResourceType.class);
+
+        TestLeafRepository(String displayName) {
+            super(displayName);
+        }
+
+        void rescan(int generation) {
+            ListMultimap<String, ResourceItem> strings = LinkedListMultimap.create();
+            for (int i = 0; i < STRINGS; i++) {
+                String name = "string" + i;
+                strings.put(name, new TestResourceItem(this, ResourceType.STRING, name, generation));
+            }
+            synchronized (ITEM_MAP_LOCK) {
+                mTable.put(ResourceType.STRING, strings);
+                mTable.computeIfAbsent(ResourceType.ID, type -> {
+                    ListMultimap<String, ResourceItem> ids = LinkedListMultimap.create();
+                    ids.put("id", new TestResourceItem(this, ResourceType.ID, "id", generation));
+                    return ids;
+                });
+            }
+            setModificationCount(ourModificationCounter.incrementAndGet());
+            invalidateParentCaches(this, ResourceType.STRING);
+        }
+
+        @Nullable
+        @Override
+        protected ListMultimap<String, ResourceItem> getMap(@NotNull ResourceNamespace namespace,
+                                                            @NotNull ResourceType type) {
+            return NAMESPACE.equals(namespace) ? mTable.get(type) : null;
+        }
+
+        @NotNull
+        @Override
+        protected Set<File> computeResourceDirs() {
+            return Collections.emptySet();
+        }
+
+        @NotNull
+        @Override
+        public ResourceNamespace getNamespace() {
+            return NAMESPACE;
+        }
+
+        @Nullable
+        @Override
+        public String getPackageName() {
+            return null;
+        }
+
+        @NotNull
+        @Override
+        public ResourceVisitor.VisitResult accept(@NotNull ResourceVisitor visitor) {
+            return ResourceVisitor.VisitResult.CONTINUE;
+        }
+    }
+
+    private static class TestResourceItem implements ResourceItem {
+
+        private static final FolderConfiguration CONFIGURATION = new FolderConfiguration();
+
+        private final SingleNamespaceResourceRepository repository;
+        private final ResourceType type;
+        private final String name;
+        private final int generation;
+
+        TestResourceItem(SingleNamespaceResourceRepository repository,
+                         ResourceType type,
+                         String name,
+                         int generation) {
+            this.repository = repository;
+            this.type = type;
+            this.name = name;
+            this.generation = generation;
+        }
+
+        @NotNull
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @NotNull
+        @Override
+        public ResourceType getType() {
+            return type;
+        }
+
+        @NotNull
+        @Override
+        public ResourceNamespace getNamespace() {
+            return NAMESPACE;
+        }
+
+        @Nullable
+        @Override
+        public String getLibraryName() {
+            return null;
+        }
+
+        @NotNull
+        @Override
+        public ResourceReference getReferenceToSelf() {
+            return new ResourceReference(NAMESPACE, type, name);
+        }
+
+        @NotNull
+        @Override
+        public SingleNamespaceResourceRepository getRepository() {
+            return repository;
+        }
+
+        @NotNull
+        @Override
+        public String getKey() {
+            return type.getName() + '/' + name;
+        }
+
+        @Nullable
+        @Override
+        public ResourceValue getResourceValue() {
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public PathString getSource() {
+            return null;
+        }
+
+        @Override
+        public boolean isFileBased() {
+            return false;
+        }
+
+        @NotNull
+        @Override
+        public FolderConfiguration getConfiguration() {
+            return CONFIGURATION;
+        }
+    }
+}